@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+
+/**
+ * Log4jEventImpl.appendLine() with the stack trace of the exception data file: one operation is one event, which
+ * gets all the stack trace lines appended, and then it is finished.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AppendLineBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"EXCEPTION", "MESSAGE"})
+    public String appendMode;
+
+    private byte mode;
+
+    private String[] lines;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        mode = "EXCEPTION".equals(appendMode) ?
+                Log4jEventImpl.EXCEPTION_APPEND_MODE : Log4jEventImpl.MESSAGE_APPEND_MODE;
+
+        lines = LogData.stackTraceLines().toArray(new String[0]);
+    }
+
+    @Benchmark
+    public Log4jEventImpl appendLines() {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setAppendMode(mode);
+
+        for(String line: lines) {
+
+            e.appendLine(line);
+        }
+
+        e.finish();
+
+        return e;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
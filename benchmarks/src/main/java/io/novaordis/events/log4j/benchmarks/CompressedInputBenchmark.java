@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.Compression;
+import io.novaordis.events.log4j.impl.Log4jParser;
+
+/**
+ * The line-by-line feed lg uses, over the same content read from an uncompressed file, from a gzip file decompressed in
+ * process, as lg does when given a compressed file, and from the output of an external "gzip -dc" process, as in
+ * "zcat ... | lg". One operation is one file, of about FILE_SIZE bytes uncompressed.
+ *
+ * The ZCAT source needs gzip on the PATH.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CompressedInputBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int FILE_SIZE = 16 * 1024 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"PLAIN", "GZIP", "ZCAT"})
+    public String source;
+
+    private File plainFile;
+    private File gzipFile;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        plainFile = File.createTempFile("compressed-input-benchmark-", ".log");
+        gzipFile = new File(plainFile.getPath() + ".gz");
+
+        List<String> lines = new ArrayList<>();
+
+        for(String f: LogData.EVENT_FILES) {
+
+            lines.addAll(LogData.readLines(f));
+        }
+
+        long size = 0;
+
+        try(Writer plain = new OutputStreamWriter(new FileOutputStream(plainFile), StandardCharsets.UTF_8);
+            Writer gzip = new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(gzipFile)), StandardCharsets.UTF_8)) {
+
+            while(size < FILE_SIZE) {
+
+                for(String line: lines) {
+
+                    plain.write(line);
+                    plain.write('\n');
+                    gzip.write(line);
+                    gzip.write('\n');
+                    size += line.length() + 1;
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        plainFile.delete();
+        gzipFile.delete();
+    }
+
+    @Benchmark
+    public long parse() throws Exception {
+
+        if ("PLAIN".equals(source)) {
+
+            try(InputStream is = new FileInputStream(plainFile)) {
+
+                return parse(is);
+            }
+        }
+
+        if ("GZIP".equals(source)) {
+
+            try(InputStream is = Compression.open(gzipFile)) {
+
+                return parse(is);
+            }
+        }
+
+        Process zcat = new ProcessBuilder("gzip", "-dc", gzipFile.getPath()).start();
+
+        try(InputStream is = zcat.getInputStream()) {
+
+            return parse(is);
+        }
+        finally {
+
+            zcat.waitFor();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of events.
+     */
+    private static long parse(InputStream is) throws Exception {
+
+        Log4jParser parser = new Log4jParser();
+        parser.setLayoutInferenceSampleSize(Log4jParser.DEFAULT_LAYOUT_INFERENCE_SAMPLE_SIZE);
+
+        long events = 0;
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+
+        String line;
+
+        while((line = br.readLine()) != null) {
+
+            events += parser.parse(line, null).size();
+        }
+
+        return events + parser.close().size();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.api.event.GenericTimedEvent;
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.StringDictionary;
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+/**
+ * The per-event footprint of the field-backed Log4jEventImpl, compared with the property-map layout it replaced, where
+ * the level, logger, thread name, message and exception rendering were StringProperty instances kept in the event's
+ * property map. The benchmarks build events from values parsed in advance, so the value strings, shared by both
+ * layouts, are not counted. Everything an operation allocates stays reachable from the event it returns, so
+ * "gc.alloc.rate.norm", reported by the GC profiler Benchmarks adds, is the number of bytes each event retains. One
+ * operation is one event.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EventFootprintBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"false", "true"})
+    public boolean exception;
+
+    private long[] times;
+    private Log4jLevel[] levels;
+    private String[] loggers;
+    private String[] threadNames;
+    private String[] messages;
+    private String exceptionRendering;
+
+    private int index;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        Log4jPatternLayout layout = Workload.MESSAGE.newPatternLayout();
+        StringDictionary dictionary = new StringDictionary();
+        String[] lines = Workload.MESSAGE.getLines();
+
+        times = new long[lines.length];
+        levels = new Log4jLevel[lines.length];
+        loggers = new String[lines.length];
+        threadNames = new String[lines.length];
+        messages = new String[lines.length];
+        index = 0;
+
+        for(int i = 0; i < lines.length; i ++) {
+
+            Log4jEventImpl e = layout.parse(i + 1, lines[i], null, dictionary);
+
+            times[i] = e.getTime();
+            levels[i] = e.getLevel();
+            loggers[i] = e.getLogger();
+            threadNames[i] = e.getThreadName();
+            messages[i] = e.getMessage();
+        }
+
+        exceptionRendering = exception ? String.join("\n", LogData.stackTraceLines()) : null;
+    }
+
+    /**
+     * The layout before the fields were moved out of the property map.
+     */
+    @Benchmark
+    public GenericTimedEvent propertyMapEvent() {
+
+        int i = index;
+
+        index = i + 1 == times.length ? 0 : i + 1;
+
+        GenericTimedEvent e = new GenericTimedEvent(times[i]);
+
+        e.setLineNumber((long)(i + 1));
+        e.setStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME, levels[i].toLiteral());
+        e.setStringProperty(Log4jEventImpl.LOGGER_PROPERTY_NAME, loggers[i]);
+        e.setStringProperty(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME, threadNames[i]);
+        e.setStringProperty(Log4jEventImpl.MESSAGE_PROPERTY_NAME, messages[i]);
+
+        if (exceptionRendering != null) {
+
+            e.setStringProperty(Log4jEventImpl.EXCEPTION_PROPERTY_NAME, exceptionRendering);
+        }
+
+        return e;
+    }
+
+    @Benchmark
+    public Log4jEventImpl fieldBackedEvent() {
+
+        int i = index;
+
+        index = i + 1 == times.length ? 0 : i + 1;
+
+        Log4jEventImpl e =
+                new Log4jEventImpl(i + 1, times[i], levels[i], loggers[i], threadNames[i], messages[i], null);
+
+        if (exceptionRendering != null) {
+
+            e.setExceptionRendering(exceptionRendering);
+        }
+
+        return e;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
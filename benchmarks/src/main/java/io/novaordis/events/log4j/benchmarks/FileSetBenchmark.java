@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.FileOrdering;
+import io.novaordis.events.log4j.impl.FileSetParser;
+import io.novaordis.events.log4j.impl.Log4jParser;
+
+/**
+ * FileSetParser over many small files, the output of aggressive rotation, where the per-file overhead dominates,
+ * compared with parsing the files one after another with a Log4jParser each. One operation is the whole file set.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class FileSetBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int FILE_COUNT = 1000;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"4096", "65536"})
+    public int fileSize;
+
+    @Param
+    public FileOrdering ordering;
+
+    private File directory;
+    private List<File> files;
+
+    private ExecutorService executor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        List<String> lines = new ArrayList<>();
+
+        for(String f: LogData.EVENT_FILES) {
+
+            lines.addAll(LogData.readLines(f));
+        }
+
+        directory = Files.createTempDirectory("file-set-benchmark-").toFile();
+        files = new ArrayList<>();
+
+        for(int i = 0; i < FILE_COUNT; i ++) {
+
+            File f = new File(directory, String.format("server.log.%04d", i));
+
+            long size = 0;
+
+            try(Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8)) {
+
+                while(size < fileSize) {
+
+                    for(String line: lines) {
+
+                        w.write(line);
+                        w.write('\n');
+                        size += line.length() + 1;
+                    }
+                }
+            }
+
+            files.add(f);
+        }
+
+        executor = FileSetParser.newExecutor();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+
+        executor.shutdownNow();
+
+        for(File f: files) {
+
+            f.delete();
+        }
+
+        directory.delete();
+    }
+
+    @Benchmark
+    public long fileSetParser() throws Exception {
+
+        FileSetParser p = new FileSetParser(
+                Workload.WILDFLY.newPatternLayout(), ordering, executor, FileSetParser.DEFAULT_READ_AHEAD,
+                FileSetParser.DEFAULT_PREFETCH);
+
+        return p.parse(files, events -> {});
+    }
+
+    @Benchmark
+    public long sequential() throws Exception {
+
+        long lineCount = 0;
+
+        for(File f: files) {
+
+            lineCount += new Log4jParser(Workload.WILDFLY.newPatternLayout()).parse(f, events -> {});
+        }
+
+        return lineCount;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
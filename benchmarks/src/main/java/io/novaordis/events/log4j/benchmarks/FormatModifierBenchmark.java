@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.pattern.FormatModifier;
+import io.novaordis.events.log4j.pattern.LineCursor;
+import io.novaordis.events.log4j.pattern.ProcessedString;
+
+/**
+ * FormatModifier.unapply() over logger names from the data files, rendered with the format modifier. Both the
+ * ProcessedString-returning form and the cursor-based form used by the compiled pattern layout are measured. One
+ * operation is one rendering.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FormatModifierBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"-5", "5", "-40", "40", ".30", "-20.30"})
+    public String modifier;
+
+    private FormatModifier formatModifier;
+
+    private String[] renderings;
+    private int index;
+
+    private LineCursor cursor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        formatModifier = new FormatModifier(modifier);
+
+        List<String> lines = LogData.eventStartLines();
+
+        renderings = new String[lines.size()];
+        index = 0;
+
+        for(int i = 0; i < renderings.length; i ++) {
+
+            //
+            // the logger is the first bracket-enclosed token, and it is followed by the thread name
+            //
+
+            String line = lines.get(i);
+
+            String logger = line.substring(line.indexOf('[') + 1, line.indexOf("] ("));
+
+            renderings[i] = formatModifier.apply(logger);
+        }
+
+        cursor = new LineCursor();
+    }
+
+    @Benchmark
+    public ProcessedString unapply() {
+
+        int i = index;
+
+        index = i + 1 == renderings.length ? 0 : i + 1;
+
+        return formatModifier.unapply(renderings[i], 0, null);
+    }
+
+    @Benchmark
+    public int unapplyToCursor() {
+
+        int i = index;
+
+        index = i + 1 == renderings.length ? 0 : i + 1;
+
+        String s = renderings[i];
+
+        formatModifier.unapply(s, 0, s.length(), cursor);
+
+        return cursor.getValueTo() - cursor.getValueFrom();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.Log4jEvent;
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.impl.TimestampMatcher;
+
+/**
+ * The heuristic path, used when no pattern layout is specified: Log4jEvent.build() alone, with the timestamp already
+ * matched, and the full per-line work, TimestampMatcher.find() followed by Log4jEvent.build(). One operation is one
+ * line.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HeuristicEventBuildBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param({"MESSAGE", "DEFAULT_DATE"})
+    public Workload workload;
+
+    private String[] lines;
+    private TimestampMatcher[] timestamps;
+    private int index;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        lines = workload.getLines();
+        timestamps = new TimestampMatcher[lines.length];
+        index = 0;
+
+        for(int i = 0; i < lines.length; i ++) {
+
+            timestamps[i] = TimestampMatcher.find(i + 1, lines[i]);
+
+            if (timestamps[i] == null) {
+
+                throw new IllegalStateException("no timestamp found in line " + lines[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Log4jEventImpl build() throws Exception {
+
+        int i = index;
+
+        index = i + 1 == lines.length ? 0 : i + 1;
+
+        TimestampMatcher t = timestamps[i];
+
+        return Log4jEvent.build(i + 1, t, t.getIndexOfNextCharInLine(), lines[i]);
+    }
+
+    @Benchmark
+    public Log4jEventImpl findAndBuild() throws Exception {
+
+        int i = index;
+
+        index = i + 1 == lines.length ? 0 : i + 1;
+
+        String line = lines[i];
+
+        TimestampMatcher t = TimestampMatcher.find(i + 1, line);
+
+        return Log4jEvent.build(i + 1, t, t.getIndexOfNextCharInLine(), line);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Access to the realistic log content the benchmarks run over. The content is the same the tests use, and it is
+ * packaged with the benchmarks, under "data/".
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+final class LogData {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    static final String[] EVENT_FILES = {
+
+            "production-line-001.txt",
+            "jboss.server.log",
+            "jboss.server-with-off-line-properties.log",
+            "jboss-exception.log",
+    };
+
+    static final String EXCEPTION_FILE = "jboss-exception.log";
+
+    //
+    // the lines that start an event, in the "HH:mm:ss,SSS" format used by all data files
+    //
+    private static final Pattern EVENT_START = Pattern.compile("^\\d\\d:\\d\\d:\\d\\d,\\d\\d\\d .*");
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the lines that start an event, from all data files, in file order.
+     */
+    static List<String> eventStartLines() throws IOException {
+
+        List<String> result = new ArrayList<>();
+
+        for(String f: EVENT_FILES) {
+
+            for(String line: readLines(f)) {
+
+                if (EVENT_START.matcher(line).matches()) {
+
+                    result.add(line);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the continuation lines (the stack trace) of the first event of the exception data file.
+     */
+    static List<String> stackTraceLines() throws IOException {
+
+        List<String> lines = readLines(EXCEPTION_FILE);
+
+        List<String> result = new ArrayList<>();
+
+        for(int i = 1; i < lines.size(); i ++) {
+
+            String line = lines.get(i);
+
+            if (line.isEmpty() || EVENT_START.matcher(line).matches()) {
+
+                break;
+            }
+
+            result.add(line);
+        }
+
+        return result;
+    }
+
+    static List<String> readLines(String name) throws IOException {
+
+        InputStream is = LogData.class.getResourceAsStream("/data/" + name);
+
+        if (is == null) {
+
+            throw new IOException("data file " + name + " not found on the classpath");
+        }
+
+        List<String> result = new ArrayList<>();
+
+        try(BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+
+            String line;
+
+            while((line = br.readLine()) != null) {
+
+                result.add(line);
+            }
+        }
+
+        return result;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private LogData() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
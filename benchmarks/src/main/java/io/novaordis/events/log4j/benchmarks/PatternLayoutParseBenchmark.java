@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.StringDictionary;
+
+/**
+ * Log4jPatternLayout.parse() over event start lines, for several pattern layouts, with and without lazy
+ * materialization. The logger and thread names are interned with a dictionary, as Log4jParser does. One operation is
+ * one line.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PatternLayoutParseBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Param
+    public Workload workload;
+
+    @Param({"false", "true"})
+    public boolean lazyMaterialization;
+
+    private Log4jPatternLayout layout;
+    private StringDictionary dictionary;
+
+    private String[] lines;
+    private int index;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        layout = workload.newPatternLayout();
+        layout.setLazyMaterialization(lazyMaterialization);
+        dictionary = new StringDictionary();
+        lines = workload.getLines();
+        index = 0;
+
+        //
+        // fail early if the lines do not match the layout
+        //
+
+        for(int i = 0; i < lines.length; i ++) {
+
+            if (layout.parse(i + 1, lines[i], null, dictionary) == null) {
+
+                throw new IllegalStateException(workload + " does not match line " + lines[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Log4jEventImpl parse() throws Exception {
+
+        int i = index;
+
+        index = i + 1 == lines.length ? 0 : i + 1;
+
+        return layout.parse(i + 1, lines[i], null, dictionary);
+    }
+
+    /**
+     * Includes the cost of materializing the values deferred by the parse.
+     */
+    @Benchmark
+    public String parseAndGetMessage() throws Exception {
+
+        int i = index;
+
+        index = i + 1 == lines.length ? 0 : i + 1;
+
+        return layout.parse(i + 1, lines[i], null, dictionary).getMessage();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
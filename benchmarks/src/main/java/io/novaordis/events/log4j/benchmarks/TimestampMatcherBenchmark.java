@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.novaordis.events.log4j.impl.TimestampMatcher;
+
+/**
+ * TimestampMatcher.find() over event start lines and over stack trace lines, which do not carry a timestamp and are
+ * the common case in logs with exceptions. One operation is one line.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TimestampMatcherBenchmark {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    //
+    // only the date rendering is relevant
+    //
+    @Param({"MESSAGE", "DEFAULT_DATE", "ISO8601_DATE"})
+    public Workload workload;
+
+    private String[] lines;
+    private int index;
+
+    private String[] stackTraceLines;
+    private int stackTraceIndex;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setUp() throws Exception {
+
+        lines = workload.getLines();
+        index = 0;
+
+        stackTraceLines = LogData.stackTraceLines().toArray(new String[0]);
+        stackTraceIndex = 0;
+    }
+
+    @Benchmark
+    public TimestampMatcher eventStartLine() throws Exception {
+
+        int i = index;
+
+        index = i + 1 == lines.length ? 0 : i + 1;
+
+        return TimestampMatcher.find(i + 1, lines[i]);
+    }
+
+    @Benchmark
+    public TimestampMatcher stackTraceLine() throws Exception {
+
+        int i = stackTraceIndex;
+
+        stackTraceIndex = i + 1 == stackTraceLines.length ? 0 : i + 1;
+
+        return TimestampMatcher.find(i + 1, stackTraceLines[i]);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
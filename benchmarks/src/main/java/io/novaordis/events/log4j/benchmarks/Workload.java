@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+
+/**
+ * A pattern layout and the log lines rendered with it. The lines are the event start lines of the data files, with the
+ * date rendered as the layout expects it.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public enum Workload {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // the WildFly/EAP default server.log layout
+    //
+    WILDFLY("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n", ""),
+
+    MESSAGE("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n", ""),
+
+    DEFAULT_DATE("%d %-5p [%c] (%t) %m%n", "2017-11-23 "),
+
+    ISO8601_DATE("%d{ISO8601} %-5p [%c] (%t) %m%n", "2017-11-23T");
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String layout;
+
+    // prepended to the "HH:mm:ss,SSS" timestamps of the data files
+    private String datePrefix;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    Workload(String layout, String datePrefix) {
+
+        this.layout = layout;
+        this.datePrefix = datePrefix;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public String getLayout() {
+
+        return layout;
+    }
+
+    public Log4jPatternLayout newPatternLayout() throws Log4jPatternLayoutException {
+
+        return new Log4jPatternLayout(layout);
+    }
+
+    public String[] getLines() throws IOException {
+
+        List<String> lines = LogData.eventStartLines();
+
+        String[] result = new String[lines.size()];
+
+        for(int i = 0; i < result.length; i ++) {
+
+            result[i] = datePrefix + lines.get(i);
+        }
+
+        return result;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -19,6 +19,7 @@ package io.novaordis.events.log4j.cli;
 import java.util.List;
 
 import io.novaordis.events.log4j.experimental.MessageProcessing;
+import io.novaordis.events.log4j.procedures.ExceptionSummary;
 import io.novaordis.events.processing.Procedure;
 import io.novaordis.events.processing.ProcedureFactory;
 
@@ -45,6 +46,10 @@ public class Log4jParserProcedureFactory implements ProcedureFactory {
 
             return new MessageProcessing();
         }
+        else if (ExceptionSummary.COMMAND_LINE_LABEL.equals(commandLineLabel)) {
+
+            return new ExceptionSummary();
+        }
 
         return null;
     }
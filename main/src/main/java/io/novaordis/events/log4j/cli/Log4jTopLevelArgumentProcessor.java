@@ -130,6 +130,13 @@ public class Log4jTopLevelArgumentProcessor implements TopLevelArgumentProcessor
             throw new UserErrorException(msg, e);
         }
 
+        //
+        // the procedures and queries usually read only a few of the event fields, do not copy the others out of the
+        // line unless they are needed
+        //
+
+        log4jPatternLayout.setLazyMaterialization(true);
+
         //
         // we inject the log4j pattern layout into the application-specific configuration ...
         //
@@ -16,7 +16,17 @@
 
 package io.novaordis.events.log4j.cli;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import io.novaordis.events.cli.EventParserRuntime;
+import io.novaordis.events.log4j.impl.Compression;
 import io.novaordis.events.log4j.impl.Log4jParser;
 import io.novaordis.utilities.UserErrorException;
 import io.novaordis.utilities.appspec.ApplicationSpecificBehavior;
@@ -41,8 +51,32 @@ public class Main {
 
             StderrVerboseLogging.init();
 
+            //
+            // the runtime reads the files as text, so if any of the files is compressed, we decompress the files in
+            // process and hand the content to the runtime as stdin, the same way "zcat ... | lg" would
+            //
+
+            List<String> arguments = new ArrayList<>(Arrays.asList(args));
+
+            InputStream decompressed = decompressedInput(arguments);
+
+            if (decompressed != null) {
+
+                System.setIn(decompressed);
+                args = arguments.toArray(new String[arguments.size()]);
+            }
+
+            //
+            // if no pattern layout is specified with -f, infer it from the beginning of the content
+            //
+
+            Log4jParser parser = new Log4jParser();
+            parser.setLayoutInferenceSampleSize(Log4jParser.DEFAULT_LAYOUT_INFERENCE_SAMPLE_SIZE);
+            parser.setMaxContinuationLines(Log4jParser.DEFAULT_MAX_CONTINUATION_LINES);
+            parser.setMaxContinuationCharacters(Log4jParser.DEFAULT_MAX_CONTINUATION_CHARACTERS);
+
             ApplicationSpecificBehavior b = new ApplicationSpecificBehavior(
-                    new Log4jParser(),
+                    parser,
                     new Log4jTopLevelArgumentProcessor(),
                     new Log4jParserProcedureFactory());
 
@@ -70,6 +104,61 @@ public class Main {
         System.err.print(content);
     }
 
+    /**
+     * The files are the trailing arguments of the command line. If at least one of them is compressed, removes all of
+     * them from the argument list and returns their decompressed content, concatenated in command line order.
+     *
+     * @return null if none of the files is compressed, in which case the argument list is not modified.
+     *
+     * @see Compression
+     */
+    static InputStream decompressedInput(List<String> arguments) throws IOException {
+
+        int firstFile = arguments.size();
+
+        while(firstFile > 0 && new File(arguments.get(firstFile - 1)).isFile()) {
+
+            firstFile --;
+        }
+
+        List<String> fileArguments = arguments.subList(firstFile, arguments.size());
+
+        boolean compressed = false;
+
+        for(String f: fileArguments) {
+
+            compressed |= Compression.NONE != Compression.detect(new File(f));
+        }
+
+        if (!compressed) {
+
+            return null;
+        }
+
+        List<InputStream> streams = new ArrayList<>();
+
+        try {
+
+            for(String f: fileArguments) {
+
+                streams.add(Compression.open(new File(f)));
+            }
+        }
+        catch(IOException e) {
+
+            for(InputStream is: streams) {
+
+                is.close();
+            }
+
+            throw e;
+        }
+
+        fileArguments.clear();
+
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
     // Constructors ----------------------------------------------------------------------------------------------------
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * The compression formats the ingestion layer reads directly. The format of a file is detected by its magic bytes,
+ * not by its extension.
+ *
+ * gzip is decompressed with the JDK codec; multi-member content (bgzip output, concatenated archives) is decompressed
+ * in parallel, while single-member content, which is what gzip and most rotation tools produce, is decompressed
+ * sequentially. zstd and xz are decompressed sequentially, with the codecs of the zstd-jni (com.github.luben:zstd-jni)
+ * and XZ for Java (org.tukaani:xz) libraries. They are runtime dependencies, shipped with the release, and they are
+ * looked up reflectively, so the library can be embedded without them: a file in a format whose codec is not on the
+ * classpath fails with an explicit error.
+ *
+ * @see ParallelGzipInputStream
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public enum Compression {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    NONE(null, null, null),
+
+    GZIP(new byte[] { 0x1f, (byte)0x8b }, null, null),
+
+    ZSTD(new byte[] { 0x28, (byte)0xb5, 0x2f, (byte)0xfd }, "com.github.luben.zstd.ZstdInputStream",
+            "com.github.luben:zstd-jni"),
+
+    XZ(new byte[] { (byte)0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00 }, "org.tukaani.xz.XZInputStream", "org.tukaani:xz");
+
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // the number of leading bytes that identify the format
+    public static final int HEADER_SIZE = 8;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the compression format of the file, NONE if it is not compressed, or compressed in a format we don't
+     * know about.
+     */
+    public static Compression detect(File file) throws IOException {
+
+        byte[] header = new byte[HEADER_SIZE];
+        int length = 0;
+
+        try(InputStream is = new FileInputStream(file)) {
+
+            int n;
+
+            while(length < header.length && (n = is.read(header, length, header.length - length)) > 0) {
+
+                length += n;
+            }
+        }
+
+        return detect(header, length);
+    }
+
+    /**
+     * @return the compression format indicated by the first 'length' bytes of the content.
+     */
+    public static Compression detect(byte[] header, int length) {
+
+        for(Compression c: values()) {
+
+            if (c.matches(header, length)) {
+
+                return c;
+            }
+        }
+
+        return NONE;
+    }
+
+    /**
+     * @return a stream of the decompressed content of the file, or of its content, if the file is not compressed.
+     */
+    public static InputStream open(File file) throws IOException {
+
+        return detect(file).decompress(file);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private byte[] magic;
+
+    // the optional codec, for the formats the JDK does not support
+    private String codecClassName;
+    private String codecArtifact;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    Compression(byte[] magic, String codecClassName, String codecArtifact) {
+
+        this.magic = magic;
+        this.codecClassName = codecClassName;
+        this.codecArtifact = codecArtifact;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return a stream of the decompressed content of the file, assuming it is compressed in this format.
+     *
+     * @exception IOException if the codec is not available.
+     */
+    public InputStream decompress(File file) throws IOException {
+
+        if (NONE == this) {
+
+            return new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        }
+
+        if (GZIP == this) {
+
+            return new ParallelGzipInputStream(file);
+        }
+
+        Constructor<?> constructor;
+
+        try {
+
+            constructor = Class.forName(codecClassName).getConstructor(InputStream.class);
+        }
+        catch(ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+
+            throw new IOException(
+                    file + " is " + this + " compressed, which requires " + codecArtifact + " on the classpath", e);
+        }
+
+        InputStream is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+        try {
+
+            return new BufferedInputStream((InputStream)constructor.newInstance(is), BUFFER_SIZE);
+        }
+        catch(InvocationTargetException e) {
+
+            is.close();
+
+            Throwable cause = e.getCause();
+
+            throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        }
+        catch(ReflectiveOperationException | RuntimeException e) {
+
+            is.close();
+
+            throw new IOException("failed to initialize the " + this + " codec", e);
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    boolean matches(byte[] header, int length) {
+
+        if (magic == null || length < magic.length) {
+
+            return false;
+        }
+
+        for(int i = 0; i < magic.length; i ++) {
+
+            if (header[i] != magic[i]) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
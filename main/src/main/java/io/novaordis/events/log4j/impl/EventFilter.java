@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.query.FieldQuery;
+import io.novaordis.events.query.Query;
+import io.novaordis.events.query.TimeQuery;
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+/**
+ * Simple event predicates that can be evaluated while a line is being parsed, before the event is fully built: a
+ * timestamp range, a set of levels, a logger prefix and a thread name. The predicates are AND-ed, and a predicate that
+ * is not set accepts anything. A predicate that is set never accepts an event that does not carry the corresponding
+ * value.
+ *
+ * When installed on a Log4jParser, the filter is pushed down into the pattern layout: each predicate is checked right
+ * after the corresponding conversion specifier was matched, and an event that cannot match is abandoned on the spot,
+ * together with its continuation lines. A Query is pushed down as far as its type allows, and it is also evaluated once
+ * the event is complete, continuation lines included; the events it does not select are dropped by the parser.
+ *
+ * Not thread safe, it must be configured before parsing starts.
+ *
+ * @see Log4jParser#setFilter(EventFilter)
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class EventFilter {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // inclusive, null means unbounded
+    private Long from;
+
+    // exclusive, null means unbounded
+    private Long to;
+
+    // null means any level
+    private Set<Log4jLevel> levels;
+
+    private String loggerPrefix;
+
+    private String threadName;
+
+    // null means no query
+    private Query query;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param from the start of the range, inclusive. Null means unbounded.
+     * @param to the end of the range, exclusive. Null means unbounded.
+     */
+    public void setTimeRange(Long from, Long to) {
+
+        if (from != null && to != null && from > to) {
+
+            throw new IllegalArgumentException("invalid time range [" + from + ", " + to + ")");
+        }
+
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * May return null.
+     */
+    public Long getFrom() {
+
+        return from;
+    }
+
+    /**
+     * May return null.
+     */
+    public Long getTo() {
+
+        return to;
+    }
+
+    /**
+     * @param levels the accepted levels. No levels means any level.
+     */
+    public void setLevels(Log4jLevel... levels) {
+
+        if (levels == null || levels.length == 0) {
+
+            this.levels = null;
+            return;
+        }
+
+        EnumSet<Log4jLevel> s = EnumSet.noneOf(Log4jLevel.class);
+
+        for(Log4jLevel l: levels) {
+
+            if (l == null) {
+
+                throw new IllegalArgumentException("null level");
+            }
+
+            s.add(l);
+        }
+
+        this.levels = s;
+    }
+
+    /**
+     * @return the accepted levels, or null if any level is accepted.
+     */
+    public Set<Log4jLevel> getLevels() {
+
+        return levels == null ? null : Collections.unmodifiableSet(levels);
+    }
+
+    /**
+     * @param s null means any logger.
+     */
+    public void setLoggerPrefix(String s) {
+
+        this.loggerPrefix = s;
+    }
+
+    /**
+     * May return null.
+     */
+    public String getLoggerPrefix() {
+
+        return loggerPrefix;
+    }
+
+    /**
+     * @param s null means any thread.
+     */
+    public void setThreadName(String s) {
+
+        this.threadName = s;
+    }
+
+    /**
+     * May return null.
+     */
+    public String getThreadName() {
+
+        return threadName;
+    }
+
+    /**
+     * @param query null means no query.
+     *
+     * @see EventFilter#selects(Event)
+     */
+    public void setQuery(Query query) {
+
+        this.query = query;
+    }
+
+    /**
+     * May return null.
+     */
+    public Query getQuery() {
+
+        return query;
+    }
+
+    /**
+     * Installs the query and derives from it the predicates that can be evaluated while the line is parsed: a
+     * TimeQuery becomes the time range, and a FieldQuery on the level, the logger or the thread becomes the
+     * corresponding predicate. The derived predicates are never narrower than the query - the end of the time range is
+     * extended by one millisecond, in case the query includes it, and the logger becomes a prefix - and the query is
+     * still evaluated on the complete event, so pushing it down does not change the result, it only abandons the
+     * events that cannot be selected earlier. The other query types are only evaluated on the complete event, and the
+     * predicates that are already set are not replaced.
+     *
+     * @param query null means no query.
+     */
+    public void pushDown(Query query) {
+
+        setQuery(query);
+
+        if (query instanceof TimeQuery) {
+
+            TimeQuery q = (TimeQuery)query;
+
+            Long start = q.getFromTimestamp();
+            Long end = q.getToTimestamp();
+
+            if (end != null && end != Long.MAX_VALUE) {
+
+                end = end + 1;
+            }
+
+            if (from == null && to == null && (start == null || end == null || start <= end)) {
+
+                setTimeRange(start, end);
+            }
+        }
+        else if (query instanceof FieldQuery) {
+
+            FieldQuery q = (FieldQuery)query;
+
+            String name = q.getFieldName();
+            Object value = q.getValue();
+
+            if (!(value instanceof String)) {
+
+                return;
+            }
+
+            String s = (String)value;
+
+            if (Log4jEventImpl.LEVEL_PROPERTY_NAME.equals(name) && levels == null) {
+
+                Log4jLevel level = Log4jLevel.fromLiteral(s);
+
+                if (level != null) {
+
+                    setLevels(level);
+                }
+            }
+            else if (Log4jEventImpl.LOGGER_PROPERTY_NAME.equals(name) && loggerPrefix == null) {
+
+                setLoggerPrefix(s);
+            }
+            else if (Log4jEventImpl.THREAD_NAME_PROPERTY_NAME.equals(name) && threadName == null) {
+
+                setThreadName(s);
+            }
+        }
+    }
+
+    /**
+     * @return true if no predicate is set, so the filter accepts anything.
+     */
+    public boolean isEmpty() {
+
+        return from == null && to == null && levels == null && loggerPrefix == null && threadName == null &&
+                query == null;
+    }
+
+    /**
+     * @param time may be null.
+     */
+    public boolean acceptsTime(Long time) {
+
+        if (from == null && to == null) {
+
+            return true;
+        }
+
+        if (time == null) {
+
+            return false;
+        }
+
+        return (from == null || time >= from) && (to == null || time < to);
+    }
+
+    /**
+     * @param level may be null.
+     */
+    public boolean acceptsLevel(Log4jLevel level) {
+
+        return levels == null || (level != null && levels.contains(level));
+    }
+
+    /**
+     * Checks the logger in place, without copying it out of the line.
+     *
+     * @param s may be null, meaning "no logger".
+     */
+    public boolean acceptsLogger(CharSequence s, int from, int to) {
+
+        if (loggerPrefix == null) {
+
+            return true;
+        }
+
+        int length = loggerPrefix.length();
+
+        if (s == null || to - from < length) {
+
+            return false;
+        }
+
+        for(int i = 0; i < length; i ++) {
+
+            if (s.charAt(from + i) != loggerPrefix.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the thread name in place, without copying it out of the line.
+     *
+     * @param s may be null, meaning "no thread name".
+     */
+    public boolean acceptsThreadName(CharSequence s, int from, int to) {
+
+        if (threadName == null) {
+
+            return true;
+        }
+
+        int length = threadName.length();
+
+        if (s == null || to - from != length) {
+
+            return false;
+        }
+
+        for(int i = 0; i < length; i ++) {
+
+            if (s.charAt(from + i) != threadName.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Evaluates all predicates against a fully built event.
+     */
+    public boolean accepts(Log4jEvent e) {
+
+        if (!acceptsTime(e.getTime()) || !acceptsLevel(e.getLevel())) {
+
+            return false;
+        }
+
+        String logger = loggerPrefix == null ? null : e.getLogger();
+
+        if (!acceptsLogger(logger, 0, logger == null ? 0 : logger.length())) {
+
+            return false;
+        }
+
+        String thread = threadName == null ? null : e.getThreadName();
+
+        return acceptsThreadName(thread, 0, thread == null ? 0 : thread.length());
+    }
+
+    /**
+     * Evaluates the query, if any, against a complete event. Unlike the other predicates, the query may depend on the
+     * continuation lines, so it must not be evaluated before the event is complete.
+     */
+    public boolean selects(Event e) {
+
+        return query == null || query.selects(e);
+    }
+
+    /**
+     * @return a new filter with the same predicates and query.
+     */
+    public EventFilter copy() {
+
+        EventFilter c = new EventFilter();
+
+        c.from = from;
+        c.to = to;
+        c.levels = levels == null ? null : EnumSet.copyOf(levels);
+        c.loggerPrefix = loggerPrefix;
+        c.threadName = threadName;
+        c.query = query;
+
+        return c;
+    }
+
+    @Override
+    public String toString() {
+
+        String s = "";
+
+        if (from != null || to != null) {
+
+            s += "time in [" + from + ", " + to + ")";
+        }
+
+        if (levels != null) {
+
+            s += (s.isEmpty() ? "" : ", ") + "level in " + levels;
+        }
+
+        if (loggerPrefix != null) {
+
+            s += (s.isEmpty() ? "" : ", ") + "logger starts with \"" + loggerPrefix + "\"";
+        }
+
+        if (threadName != null) {
+
+            s += (s.isEmpty() ? "" : ", ") + "thread is \"" + threadName + "\"";
+        }
+
+        if (query != null) {
+
+            s += (s.isEmpty() ? "" : ", ") + "selected by " + query;
+        }
+
+        return s.isEmpty() ? "no predicates" : s;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
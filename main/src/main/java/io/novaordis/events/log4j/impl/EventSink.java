@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.List;
+
+import io.novaordis.events.api.event.Event;
+
+/**
+ * The destination of the events produced by the ingestion modes that drive a Log4jParser directly, instead of being
+ * fed line by line by the runtime (memory-mapped files, parallel parsing, etc.).
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+public interface EventSink {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Receives a batch of fully parsed events, in the order in which they occur in the log content.
+     *
+     * @param events never null and never empty. The sink may keep the list, it won't be modified by the caller.
+     */
+    void accept(List<Event> events);
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded dictionary of canonical exception renderings, keyed by fingerprint. The events whose exception renderings
+ * are identical share the same stored instance, which matters for logs where the same stack trace is logged over and
+ * over: the duplicates become garbage as soon as the events are finished, instead of being retained.
+ *
+ * A rendering is replaced with the canonical instance only if the two are equal, a fingerprint match alone is not
+ * enough, as renderings with the same fingerprint may differ in their messages. The first rendering seen for a
+ * fingerprint becomes the canonical instance.
+ *
+ * Once the dictionary holds 'capacity' renderings, new renderings are not added anymore. This keeps the memory
+ * footprint bounded for content with many distinct exceptions.
+ *
+ * Not thread safe, it is meant to be used by one parser at a time.
+ *
+ * @see ExceptionFingerprint
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ExceptionDictionary {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int capacity;
+
+    private Map<Long, String> renderings;
+
+    private long hits;
+    private long misses;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public ExceptionDictionary() {
+
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of renderings the dictionary holds.
+     */
+    public ExceptionDictionary(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.renderings = new HashMap<>();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param fingerprint the fingerprint of the rendering.
+     *
+     * @return the canonical instance of the rendering. A rendering that was not seen before becomes the canonical
+     * instance, if the dictionary is not full and no other rendering was stored under the same fingerprint.
+     */
+    public String intern(long fingerprint, String rendering) {
+
+        if (rendering == null) {
+
+            throw new IllegalArgumentException("null rendering");
+        }
+
+        String canonical = renderings.get(fingerprint);
+
+        if (canonical != null && canonical.equals(rendering)) {
+
+            hits ++;
+            return canonical;
+        }
+
+        misses ++;
+
+        if (canonical == null && renderings.size() < capacity) {
+
+            renderings.put(fingerprint, rendering);
+        }
+
+        return rendering;
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return the number of canonical renderings.
+     */
+    public int size() {
+
+        return renderings.size();
+    }
+
+    /**
+     * @return the number of intern() invocations that found an equal canonical rendering.
+     */
+    public long getHits() {
+
+        return hits;
+    }
+
+    public long getMisses() {
+
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+
+        return "ExceptionDictionary[" + renderings.size() + "/" + capacity + ", hits=" + hits + ", misses=" + misses +
+                "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
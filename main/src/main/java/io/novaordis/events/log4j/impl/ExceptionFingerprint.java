@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+/**
+ * Computes exception fingerprints: 64-bit hashes over the normalized form of an exception rendering, so renderings
+ * of the same failure, thrown from the same place, have the same fingerprint, even if their messages differ.
+ *
+ * The normalized form consists of the exception class chain (the top level exception, the "Caused by:" and
+ * "Suppressed:" exceptions) and of the stack frames, reduced to the fully qualified method name. Messages, source file
+ * names and line numbers, the jar information appended by some containers, and the "... N more" lines are ignored.
+ * The names generated at runtime, such as "$Proxy12", "GeneratedMethodAccessor34" or
+ * "Service$$EnhancerBySpringCGLIB$$5f1c2b", are reduced to their stable part, as they vary from run to run.
+ *
+ * If the rendering contains no recognizable exception class or stack frame, the fingerprint is computed over the
+ * trimmed rendering.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public final class ExceptionFingerprint {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final String CAUSED_BY = "Caused by:";
+    private static final String SUPPRESSED = "Suppressed:";
+
+    //
+    // the generated name markers whose trailing digits vary from run to run
+    //
+    private static final String[] NUMBERED_MARKERS = { "$Proxy", "Accessor" };
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the fingerprint of the rendering. Never returns 0, so 0 can be used by callers to mean "not computed".
+     *
+     * @exception IllegalArgumentException on null rendering.
+     */
+    public static long compute(String rendering) {
+
+        if (rendering == null) {
+
+            throw new IllegalArgumentException("null rendering");
+        }
+
+        long h = FNV_OFFSET_BASIS;
+        boolean recognized = false;
+        boolean first = true;
+
+        for(int start = 0, length = rendering.length(); start <= length; ) {
+
+            int end = rendering.indexOf('\n', start);
+
+            if (end == -1) {
+
+                end = length;
+            }
+
+            String token = normalize(rendering, start, end, first);
+
+            if (token != null) {
+
+                h = hash(h, token);
+                recognized = true;
+            }
+
+            first = false;
+            start = end + 1;
+        }
+
+        if (!recognized) {
+
+            h = hash(FNV_OFFSET_BASIS, rendering.trim());
+        }
+
+        return h == 0L ? 1L : h;
+    }
+
+    /**
+     * @return the fully qualified class name of the top level exception, or null if none can be identified.
+     */
+    public static String getExceptionClass(String rendering) {
+
+        if (rendering == null) {
+
+            return null;
+        }
+
+        int end = rendering.indexOf('\n');
+
+        return className(rendering, 0, end == -1 ? rendering.length() : end, true);
+    }
+
+    /**
+     * @return the fixed width (16 characters) hexadecimal representation of the fingerprint.
+     */
+    public static String toHex(long fingerprint) {
+
+        String s = Long.toHexString(fingerprint);
+
+        return "0000000000000000".substring(s.length()) + s;
+    }
+
+    /**
+     * @return the normalized form of the [from, to) line - a class name or a frame - or null if the line does not
+     * contribute to the fingerprint.
+     */
+    static String normalize(String s, int from, int to, boolean firstLine) {
+
+        from = skipWhitespace(s, from, to);
+
+        if (s.startsWith("at ", from)) {
+
+            return frame(s, from + 3, to);
+        }
+
+        return className(s, from, to, firstLine);
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private ExceptionFingerprint() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static long hash(long h, String token) {
+
+        for(int i = 0; i < token.length(); i ++) {
+
+            h ^= token.charAt(i);
+            h *= FNV_PRIME;
+        }
+
+        //
+        // token separator
+        //
+
+        h ^= '\n';
+        h *= FNV_PRIME;
+
+        return h;
+    }
+
+    private static int skipWhitespace(String s, int from, int to) {
+
+        while(from < to && Character.isWhitespace(s.charAt(from))) {
+
+            from ++;
+        }
+
+        return from;
+    }
+
+    /**
+     * @return the exception class name introduced by the [from, to) line, or null. Only the first line and the
+     * "Caused by:"/"Suppressed:" lines introduce exception classes.
+     */
+    private static String className(String s, int from, int to, boolean firstLine) {
+
+        from = skipWhitespace(s, from, to);
+
+        if (s.startsWith(CAUSED_BY, from)) {
+
+            from = skipWhitespace(s, from + CAUSED_BY.length(), to);
+        }
+        else if (s.startsWith(SUPPRESSED, from)) {
+
+            from = skipWhitespace(s, from + SUPPRESSED.length(), to);
+        }
+        else if (firstLine) {
+
+            //
+            // WildFly's %E rendering starts with ": "
+            //
+
+            if (s.startsWith(":", from)) {
+
+                from = skipWhitespace(s, from + 1, to);
+            }
+        }
+        else {
+
+            return null;
+        }
+
+        int end = from;
+
+        while(end < to && s.charAt(end) != ':' && !Character.isWhitespace(s.charAt(end))) {
+
+            end ++;
+        }
+
+        if (end == from || (end < to && s.charAt(end) != ':')) {
+
+            //
+            // "class: message" or "class" are the only acceptable forms
+            //
+
+            return null;
+        }
+
+        String name = s.substring(from, end);
+
+        return isClassName(name) ? name : null;
+    }
+
+    /**
+     * A qualified name: dot-separated Java identifiers, at least two of them.
+     */
+    private static boolean isClassName(String name) {
+
+        int dots = 0;
+        boolean start = true;
+
+        for(int i = 0; i < name.length(); i ++) {
+
+            char c = name.charAt(i);
+
+            if (c == '.') {
+
+                if (start) {
+
+                    return false;
+                }
+
+                dots ++;
+                start = true;
+            }
+            else if (start ? Character.isJavaIdentifierStart(c) : Character.isJavaIdentifierPart(c)) {
+
+                start = false;
+            }
+            else {
+
+                return false;
+            }
+        }
+
+        return dots > 0 && !start;
+    }
+
+    /**
+     * @return the fully qualified method name of the "at ..." frame that starts at 'from', with the generated name
+     * parts reduced to their stable form.
+     */
+    private static String frame(String s, int from, int to) {
+
+        int end = s.indexOf('(', from);
+
+        if (end == -1 || end > to) {
+
+            end = to;
+        }
+
+        while(end > from && Character.isWhitespace(s.charAt(end - 1))) {
+
+            end --;
+        }
+
+        StringBuilder sb = new StringBuilder(end - from);
+
+        for(int i = from; i < end; ) {
+
+            char c = s.charAt(i);
+
+            if (c == '$' && i + 1 < end && s.charAt(i + 1) == '$') {
+
+                //
+                // "$$EnhancerByCGLIB$$5f1c2b", "$$Lambda$12/1234": drop everything up to the method name
+                //
+
+                sb.append("$$");
+
+                int dot = s.lastIndexOf('.', end - 1);
+
+                i = dot > i ? dot : end;
+                continue;
+            }
+
+            sb.append(c);
+            i ++;
+
+            for(String marker: NUMBERED_MARKERS) {
+
+                if (endsWith(sb, marker)) {
+
+                    while(i < end && Character.isDigit(s.charAt(i))) {
+
+                        i ++;
+                    }
+                }
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean endsWith(StringBuilder sb, String suffix) {
+
+        int offset = sb.length() - suffix.length();
+
+        if (offset < 0) {
+
+            return false;
+        }
+
+        for(int i = 0; i < suffix.length(); i ++) {
+
+            if (sb.charAt(offset + i) != suffix.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index of the values of an event field (level, logger, thread name) over the blocks of a log file.
+ *
+ * Each distinct value gets a dictionary ID, in the order in which it was first seen, and each ID maps to the list of
+ * blocks that contain at least one event with that value. The block lists are kept, in memory and on disk, as
+ * delta-encoded variable length integers: consecutive blocks cost one byte each.
+ *
+ * Not thread safe.
+ *
+ * @see TimeIndex
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FieldIndex {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final int[] NO_BLOCKS = new int[0];
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    static FieldIndex read(DataInputStream in) throws IOException {
+
+        FieldIndex index = new FieldIndex(in.readUTF());
+
+        int count = in.readInt();
+
+        for(int id = 0; id < count; id ++) {
+
+            String value = in.readUTF();
+
+            index.ids.put(value, id);
+            index.values.add(value);
+            index.postings.add(Postings.read(in));
+        }
+
+        return index;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String name;
+
+    private Map<String, Integer> ids;
+
+    // indexed by dictionary ID
+    private List<String> values;
+    private List<Postings> postings;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param name the name of the indexed event property.
+     */
+    public FieldIndex(String name) {
+
+        if (name == null) {
+
+            throw new IllegalArgumentException("null name");
+        }
+
+        this.name = name;
+        this.ids = new HashMap<>();
+        this.values = new ArrayList<>();
+        this.postings = new ArrayList<>();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public String getName() {
+
+        return name;
+    }
+
+    /**
+     * @return the distinct values seen so far, in dictionary ID order.
+     */
+    public List<String> getValues() {
+
+        return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * @return the dictionary ID of the value, or -1 if the value was not seen.
+     */
+    public int getId(String value) {
+
+        Integer id = ids.get(value);
+
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the blocks that contain the value, in ascending order. Never returns null.
+     */
+    public int[] getBlocks(String value) {
+
+        int id = getId(value);
+
+        return id == -1 ? NO_BLOCKS : postings.get(id).decode();
+    }
+
+    @Override
+    public String toString() {
+
+        return "FieldIndex[" + name + ", " + values.size() + " value(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Records the occurrence of the value in the given block. Blocks must be recorded in ascending order.
+     *
+     * @param value null values are not indexed.
+     */
+    void add(String value, int block) {
+
+        if (value == null) {
+
+            return;
+        }
+
+        Integer id = ids.get(value);
+
+        if (id == null) {
+
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+            postings.add(new Postings());
+        }
+
+        postings.get(id).add(block);
+    }
+
+    /**
+     * Adds to 'result' the blocks that contain the values whose dictionary IDs are set in 'selected'.
+     */
+    void collectBlocks(BitSet selected, BitSet result) {
+
+        for(int id = selected.nextSetBit(0); id >= 0; id = selected.nextSetBit(id + 1)) {
+
+            for(int block: postings.get(id).decode()) {
+
+                result.set(block);
+            }
+        }
+    }
+
+    void write(DataOutputStream out) throws IOException {
+
+        out.writeUTF(name);
+        out.writeInt(values.size());
+
+        for(int id = 0; id < values.size(); id ++) {
+
+            out.writeUTF(values.get(id));
+            postings.get(id).write(out);
+        }
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * An ascending list of block numbers, delta-encoded as variable length integers (7 bits per byte, the high bit set
+     * on all bytes but the last).
+     */
+    static final class Postings {
+
+        private byte[] data;
+        private int length;
+        private int count;
+        private int last;
+
+        Postings() {
+
+            this.data = new byte[4];
+            this.last = -1;
+        }
+
+        void add(int block) {
+
+            if (block < last) {
+
+                throw new IllegalArgumentException("block " + block + " recorded after block " + last);
+            }
+
+            if (block == last) {
+
+                return;
+            }
+
+            int delta = block - (last == -1 ? 0 : last);
+
+            if (length + 5 > data.length) {
+
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+
+            while((delta & ~0x7F) != 0) {
+
+                data[length ++] = (byte)((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+
+            data[length ++] = (byte)delta;
+
+            last = block;
+            count ++;
+        }
+
+        int[] decode() {
+
+            int[] blocks = new int[count];
+            int block = 0;
+            int i = 0;
+
+            for(int n = 0; n < count; n ++) {
+
+                int delta = 0;
+                int shift = 0;
+                byte b;
+
+                do {
+
+                    b = data[i ++];
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                }
+                while((b & 0x80) != 0);
+
+                block += delta;
+                blocks[n] = block;
+            }
+
+            return blocks;
+        }
+
+        /**
+         * @return the size of the encoded list, in bytes.
+         */
+        int getEncodedLength() {
+
+            return length;
+        }
+
+        static Postings read(DataInputStream in) throws IOException {
+
+            Postings p = new Postings();
+
+            p.count = in.readInt();
+            p.last = in.readInt();
+            p.length = in.readInt();
+            p.data = new byte[Math.max(p.length, 4)];
+
+            in.readFully(p.data, 0, p.length);
+
+            return p;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+
+            out.writeInt(count);
+            out.writeInt(last);
+            out.writeInt(length);
+            out.write(data, 0, length);
+        }
+    }
+
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Follow mode ("tail -f"): reads a log file as it grows, and delivers the events to the sink as soon as they are
+ * parsed, until stopped.
+ *
+ * When there is no new content, the follower waits, with an interval that starts short and doubles with each empty
+ * poll up to the maximum poll interval, so an idle file costs a file attribute read every few hundred milliseconds,
+ * and an active one is read with little delay. The wait is interrupted by stop().
+ *
+ * Rotation is detected by the file key (the inode, on the platforms that expose it): when the path points to a
+ * different file, what is left of the old file is read, and the new file is read from the beginning. Truncation
+ * ("copytruncate" rotation) is detected by the size of the file dropping below the read position, in which case the
+ * file is read again from the beginning. If the file disappears, the follower waits for it to be re-created.
+ *
+ * The events are parsed by the given parser, so they are the same events the other ingestion modes produce. A
+ * line is only parsed once it is terminated, as the writer may be in the middle of writing it. The last event is
+ * held by the parser until the next event starts or, if the parser has an idle timeout, until the timeout expires;
+ * otherwise, it is delivered when the follower stops. Lines that cannot be parsed, such as the continuation lines of
+ * an event that started before the follower did, are logged and skipped, so they do not end the watch.
+ *
+ * Line numbers start over with each new or truncated file.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FileFollower {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(FileFollower.class);
+
+    public static final long DEFAULT_MIN_POLL_INTERVAL_MS = 10L;
+    public static final long DEFAULT_MAX_POLL_INTERVAL_MS = 500L;
+
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private Path path;
+    private Log4jParser parser;
+    private Charset charset;
+
+    private boolean startAtEnd;
+
+    private long minPollInterval;
+    private long maxPollInterval;
+
+    private final Object lock;
+    private volatile boolean stopped;
+
+    private FileChannel channel;
+
+    // the key of the file the channel was opened on, null if the platform does not expose file keys
+    private Object fileKey;
+
+    // the offset of the next byte to read
+    private long position;
+
+    private long lineNumber;
+
+    private ByteBuffer buffer;
+
+    // the bytes of the line being read, which was not terminated yet
+    private byte[] line;
+    private int lineLength;
+
+    private volatile long rotationCount;
+    private volatile long truncationCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public FileFollower(File file, Log4jParser parser) {
+
+        if (file == null) {
+
+            throw new IllegalArgumentException("null file");
+        }
+
+        if (parser == null) {
+
+            throw new IllegalArgumentException("null parser");
+        }
+
+        this.path = file.toPath();
+        this.parser = parser;
+        this.charset = StandardCharsets.UTF_8;
+        this.minPollInterval = DEFAULT_MIN_POLL_INTERVAL_MS;
+        this.maxPollInterval = DEFAULT_MAX_POLL_INTERVAL_MS;
+        this.lock = new Object();
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.line = new byte[256];
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public boolean isStartAtEnd() {
+
+        return startAtEnd;
+    }
+
+    /**
+     * By default, the file is read from the beginning. If set to true, only the content written after the follower
+     * started is read. Rotated and truncated files are always read from the beginning.
+     */
+    public void setStartAtEnd(boolean b) {
+
+        this.startAtEnd = b;
+    }
+
+    public long getMinPollInterval() {
+
+        return minPollInterval;
+    }
+
+    public long getMaxPollInterval() {
+
+        return maxPollInterval;
+    }
+
+    /**
+     * @param min the wait after the first empty poll, in milliseconds.
+     * @param max the maximum wait between polls, in milliseconds. It bounds the delay with which new content is
+     *            noticed on an idle file.
+     */
+    public void setPollInterval(long min, long max) {
+
+        if (min <= 0 || max < min) {
+
+            throw new IllegalArgumentException("invalid poll interval [" + min + ", " + max + "]");
+        }
+
+        this.minPollInterval = min;
+        this.maxPollInterval = max;
+    }
+
+    /**
+     * Follows the file until stop() is invoked, delivering the events to the sink as they are parsed. The last event is
+     * delivered before the method returns. Interrupting the thread while it waits for new content also stops the
+     * follower.
+     *
+     * @return the number of lines read.
+     */
+    public long follow(EventSink sink) throws IOException, ParsingException {
+
+        if (sink == null) {
+
+            throw new IllegalArgumentException("null sink");
+        }
+
+        long lineCount = 0L;
+        long wait = minPollInterval;
+
+        try {
+
+            open(startAtEnd);
+
+            while(!stopped) {
+
+                long n = read(sink);
+
+                lineCount += n;
+
+                if (n > 0 || reopenIfRotatedOrTruncated(sink)) {
+
+                    wait = minPollInterval;
+                    continue;
+                }
+
+                //
+                // no new content, do not hold the last event longer than the parser's idle timeout, if any
+                //
+
+                deliver(parser.flushIfIdle(), sink);
+
+                long idleTimeout = parser.getIdleTimeout();
+
+                if (!pause(idleTimeout > 0L ? Math.min(wait, idleTimeout) : wait)) {
+
+                    break;
+                }
+
+                wait = Math.min(2 * wait, maxPollInterval);
+            }
+
+            //
+            // the content written until now is not going to be completed, parse it as it is
+            //
+
+            lineCount += read(sink);
+            lineCount += endOfContent(sink);
+
+            deliver(parser.close(lineNumber), sink);
+        }
+        catch(ClosedByInterruptException e) {
+
+            //
+            // interrupted while reading
+            //
+
+            stopped = true;
+            throw e;
+        }
+        finally {
+
+            closeChannel();
+        }
+
+        return lineCount;
+    }
+
+    /**
+     * Stops the follower. The follow() invocation returns after it reads what is left of the file, and it delivers
+     * the last event. May be invoked from any thread.
+     */
+    public void stop() {
+
+        synchronized (lock) {
+
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    public boolean isStopped() {
+
+        return stopped;
+    }
+
+    /**
+     * @return the number of times the file was found to be replaced by a different file.
+     */
+    public long getRotationCount() {
+
+        return rotationCount;
+    }
+
+    /**
+     * @return the number of times the file was found to be truncated.
+     */
+    public long getTruncationCount() {
+
+        return truncationCount;
+    }
+
+    @Override
+    public String toString() {
+
+        return "FileFollower[" + path + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the file was opened, false if it does not exist.
+     */
+    private boolean open(boolean atEnd) throws IOException {
+
+        try {
+
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+        catch(NoSuchFileException e) {
+
+            log.debug(this + " waiting for the file to be created");
+            return false;
+        }
+
+        fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        position = atEnd ? channel.size() : 0L;
+        lineNumber = 0L;
+        lineLength = 0;
+
+        log.debug(this + " reading " + fileKey + " from offset " + position);
+
+        return true;
+    }
+
+    private void closeChannel() throws IOException {
+
+        if (channel != null) {
+
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads all the content available at the time of the invocation, and delivers the events parsed from it.
+     *
+     * @return the number of lines read.
+     */
+    private long read(EventSink sink) throws IOException {
+
+        if (channel == null) {
+
+            return 0L;
+        }
+
+        long lineCount = 0L;
+
+        List<Event> events = new ArrayList<>();
+
+        int n;
+
+        while((n = channel.read(buffer, position)) > 0) {
+
+            position += n;
+
+            buffer.flip();
+
+            while(buffer.hasRemaining()) {
+
+                byte b = buffer.get();
+
+                if (b != '\n') {
+
+                    if (lineLength == line.length) {
+
+                        line = Arrays.copyOf(line, 2 * line.length);
+                    }
+
+                    line[lineLength ++] = b;
+                    continue;
+                }
+
+                parseLine(events);
+                lineCount ++;
+            }
+
+            buffer.clear();
+
+            //
+            // deliver as we go, do not hold the events until the end of a large backlog
+            //
+
+            deliver(events, sink);
+            events = new ArrayList<>();
+        }
+
+        return lineCount;
+    }
+
+    /**
+     * Parses the line that was not terminated, if any.
+     *
+     * @return the number of lines read.
+     */
+    private long endOfContent(EventSink sink) {
+
+        if (lineLength == 0) {
+
+            return 0L;
+        }
+
+        List<Event> events = new ArrayList<>();
+
+        parseLine(events);
+
+        deliver(events, sink);
+
+        return 1L;
+    }
+
+    private void parseLine(List<Event> events) {
+
+        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+
+        lineLength = 0;
+
+        String s = new String(line, 0, length, charset);
+
+        try {
+
+            events.addAll(parser.parse(++ lineNumber, s));
+        }
+        catch(ParsingException e) {
+
+            log.warn(this + " skipped line " + lineNumber + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if the file was rotated, truncated or created, and the follower is now positioned at the beginning
+     * of the new content.
+     */
+    private boolean reopenIfRotatedOrTruncated(EventSink sink) throws IOException {
+
+        BasicFileAttributes attributes;
+
+        try {
+
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        }
+        catch(NoSuchFileException e) {
+
+            //
+            // rotated away, and the new file was not created yet
+            //
+
+            return false;
+        }
+
+        if (channel == null) {
+
+            return open(false);
+        }
+
+        Object key = attributes.fileKey();
+
+        if (key != null && !key.equals(fileKey)) {
+
+            //
+            // what was written to the old file before the rotation still belongs to it
+            //
+
+            read(sink);
+            endOfContent(sink);
+            closeChannel();
+
+            rotationCount ++;
+
+            log.debug(this + " was rotated");
+
+            return open(false);
+        }
+
+        if (attributes.size() < position) {
+
+            truncationCount ++;
+
+            log.debug(this + " was truncated from " + position + " to " + attributes.size() + " bytes");
+
+            position = 0L;
+            lineNumber = 0L;
+            lineLength = 0;
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return false if the follower was stopped or interrupted while waiting.
+     */
+    private boolean pause(long ms) {
+
+        synchronized (lock) {
+
+            if (stopped) {
+
+                return false;
+            }
+
+            try {
+
+                lock.wait(ms);
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                stopped = true;
+                return false;
+            }
+
+            return !stopped;
+        }
+    }
+
+    private static void deliver(List<Event> events, EventSink sink) {
+
+        if (!events.isEmpty()) {
+
+            sink.accept(events);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
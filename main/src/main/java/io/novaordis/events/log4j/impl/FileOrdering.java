@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+/**
+ * The order in which the events parsed from a set of files are delivered.
+ *
+ * @see FileSetParser
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public enum FileOrdering {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The files are delivered one after another, in the order they were specified, and the events of each file in file
+     * order. Suitable for the rotated files of a single log, specified oldest first.
+     */
+    PER_FILE,
+
+    /**
+     * The events of all files are merged into a single stream ordered by event time. Events with the same time are
+     * ordered by file, in the order the files were specified, and then by line number.
+     */
+    TIME_MERGED
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Code shared by the parsers that parse several files, or several parts of a file, on different threads: building the
+ * per-thread pattern layouts, surfacing the workers' failures on the calling thread and merging per-file event
+ * streams by time.
+ *
+ * @see MultiFileParser
+ * @see FileSetParser
+ * @see ParallelFileParser
+ * @see PipelinedFileParser
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+final class FileParsers {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Pattern layout instances are not shared between threads, each worker builds its own from the literal of the
+     * layout it was configured with.
+     *
+     * @param patternLayoutLiteral null means "heuristics".
+     *
+     * @return a new pattern layout instance, or null for heuristics.
+     */
+    static Log4jPatternLayout newPatternLayout(String patternLayoutLiteral, boolean lazyMaterialization) {
+
+        if (patternLayoutLiteral == null) {
+
+            return null;
+        }
+
+        try {
+
+            Log4jPatternLayout patternLayout = new Log4jPatternLayout(patternLayoutLiteral);
+
+            patternLayout.setLazyMaterialization(lazyMaterialization);
+
+            return patternLayout;
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            //
+            // we built it from the literal of a valid instance, this should not happen
+            //
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Rethrows a failure captured on a worker thread on the calling thread, unchanged if the type allows it.
+     *
+     * @param t null is a noop.
+     */
+    static void rethrow(Throwable t) throws IOException, ParsingException {
+
+        if (t == null) {
+
+            return;
+        }
+
+        if (t instanceof IOException) {
+
+            throw (IOException)t;
+        }
+
+        if (t instanceof ParsingException) {
+
+            throw (ParsingException)t;
+        }
+
+        if (t instanceof RuntimeException) {
+
+            throw (RuntimeException)t;
+        }
+
+        if (t instanceof Error) {
+
+            throw (Error)t;
+        }
+
+        throw new IllegalStateException(t);
+    }
+
+    /**
+     * Waits for the result of a worker, and rethrows its failure, if any.
+     */
+    static <T> T join(Future<T> future) throws IOException, ParsingException {
+
+        try {
+
+            return future.get();
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + future, e);
+        }
+        catch(ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            //
+            // ForkJoinTask wraps the checked exceptions thrown by a Callable in plain RuntimeExceptions
+            //
+
+            while(cause != null && cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+
+                cause = cause.getCause();
+            }
+
+            rethrow(cause == null ? e : cause);
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * K-way heap merge of per-file event streams, by event time. Events with the same time are ordered by source index
+     * and then by line number. The merged events are delivered to the sink in batches of at most 'batchSize' events.
+     */
+    static void mergeByTime(Collection<? extends TimeOrderedSource> sources, int batchSize, EventSink sink)
+            throws IOException, ParsingException {
+
+        PriorityQueue<TimeOrderedSource> heap = new PriorityQueue<>(Math.max(1, sources.size()));
+
+        for(TimeOrderedSource s: sources) {
+
+            if (s.advance()) {
+
+                heap.add(s);
+            }
+        }
+
+        List<Event> batch = new ArrayList<>(batchSize);
+
+        while(!heap.isEmpty()) {
+
+            TimeOrderedSource s = heap.poll();
+
+            batch.add(s.head);
+
+            if (batch.size() == batchSize) {
+
+                sink.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+
+            if (s.advance()) {
+
+                heap.add(s);
+            }
+        }
+
+        if (!batch.isEmpty()) {
+
+            sink.accept(batch);
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private FileParsers() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The merging side of a per-file event stream: the head of the stream, and the time it is ordered by. Events that
+     * do not carry a timestamp are assigned the time of the previous event from the same stream, so they stay in place
+     * relative to their neighbors.
+     */
+    abstract static class TimeOrderedSource implements Comparable<TimeOrderedSource> {
+
+        private final int index;
+
+        private Log4jEvent head;
+        private long headTime;
+        private long lastTime;
+
+        /**
+         * @param index the position of the stream in the list of merged streams, used to break time ties.
+         */
+        TimeOrderedSource(int index) {
+
+            this.index = index;
+            this.lastTime = Long.MIN_VALUE;
+        }
+
+        // Comparable implementation -----------------------------------------------------------------------------------
+
+        @Override
+        public int compareTo(TimeOrderedSource o) {
+
+            int c = Long.compare(headTime, o.headTime);
+
+            if (c != 0) {
+
+                return c;
+            }
+
+            c = Integer.compare(index, o.index);
+
+            if (c != 0) {
+
+                return c;
+            }
+
+            return Long.compare(lineNumber(head), lineNumber(o.head));
+        }
+
+        // Package protected -------------------------------------------------------------------------------------------
+
+        int getIndex() {
+
+            return index;
+        }
+
+        /**
+         * Installs the next event of the stream as head.
+         *
+         * @return false if there are no more events.
+         */
+        final boolean advance() throws IOException, ParsingException {
+
+            head = nextEvent();
+
+            if (head == null) {
+
+                return false;
+            }
+
+            Long t = head.getTime();
+
+            if (t != null) {
+
+                lastTime = t;
+            }
+
+            headTime = lastTime;
+
+            return true;
+        }
+
+        /**
+         * Blocks until the next event of the stream is available.
+         *
+         * @return the next event, or null if there are no more events.
+         */
+        abstract Log4jEvent nextEvent() throws IOException, ParsingException;
+
+        // Private -----------------------------------------------------------------------------------------------------
+
+        private static long lineNumber(Log4jEvent e) {
+
+            Long l = e.getLineNumber();
+            return l == null ? 0L : l;
+        }
+    }
+
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Parses a large number of log files, typically the small files produced by aggressive rotation, where the per-file
+ * overhead dominates.
+ *
+ * Each file gets its own Log4jParser, with its own pattern layout instance built from the literal of the layout given
+ * to the constructor, as pattern layouts are not thread safe. The files are parsed by short tasks: a task
+ * parses up to 'read-ahead' events of a file and returns, and the next task for that file is submitted when the
+ * consumer starts on the events of the previous one. No thread ever waits for the consumer, so any executor works, no
+ * matter how many files there are, and the blocking file I/O of different files overlaps. By default, the tasks run
+ * on virtual threads where the JDK supports them (21 and newer), and on a small fixed pool otherwise.
+ *
+ * Uncompressed files that fit in one mapping window, which is the case of rotated files, are opened and mapped once,
+ * and closed right away: the mapping, which does not hold a file descriptor, is kept until they are fully read. Larger
+ * uncompressed files are closed between tasks and reopened at the offset where the previous task stopped. Either way,
+ * the number of open files does not grow with the number of files being merged. Compressed files stay open until
+ * they are fully read.
+ *
+ * Unlike the MultiFileParser, which holds a blocked worker per file, this parser does not need the executor to be
+ * able to run all files' workers at the same time.
+ *
+ * @see FileOrdering
+ * @see MultiFileParser
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FileSetParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(FileSetParser.class);
+
+    public static final int DEFAULT_READ_AHEAD = 256;
+
+    public static final int DEFAULT_PREFETCH = 64;
+
+    // the maximum number of merged events delivered to the sink in one batch
+    public static final int BATCH_SIZE = 256;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return an executor that runs each task on a new virtual thread, if the JDK supports virtual threads, or a fixed
+     * pool of daemon threads, sized for blocking I/O, otherwise. The caller must shut it down.
+     */
+    public static ExecutorService newExecutor() {
+
+        ExecutorService executor = newVirtualThreadExecutor();
+
+        if (executor != null) {
+
+            return executor;
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+
+        ThreadFactory threadFactory = r -> {
+
+            Thread t = new Thread(r, "log4j-file-set-parser-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+
+        return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors(), threadFactory);
+    }
+
+    /**
+     * @return a virtual thread per task executor, or null if the JDK does not support virtual threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+
+        try {
+
+            //
+            // the code is built for older JDKs, so we look the factory method up at runtime
+            //
+
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            return (ExecutorService)m.invoke(null);
+        }
+        catch(ReflectiveOperationException | RuntimeException e) {
+
+            //
+            // not available, or available as a preview feature that is not enabled
+            //
+
+            return null;
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private String patternLayoutLiteral;
+
+    private boolean lazyMaterialization;
+
+    private FileOrdering ordering;
+
+    // null means a new executor is created and shut down by each parse() invocation
+    private ExecutorService executor;
+
+    private int readAhead;
+    private int prefetch;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses an executor created with newExecutor() for each parse() invocation, and the default read-ahead and
+     * prefetch.
+     *
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     */
+    public FileSetParser(Log4jPatternLayout patternLayout, FileOrdering ordering) {
+
+        this(patternLayout, ordering, null, DEFAULT_READ_AHEAD, DEFAULT_PREFETCH);
+    }
+
+    /**
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     * @param executor the executor the per-file tasks run on. Null means an executor created with newExecutor() for
+     *                 each parse() invocation.
+     * @param readAhead the number of events a task parses from a file before returning. A file has at most two tasks'
+     *                  worth of events buffered at any time.
+     * @param prefetch the number of files, following the one being delivered, that are parsed ahead. Only relevant
+     *                 for PER_FILE ordering: in TIME_MERGED mode all files are parsed at the same time.
+     */
+    public FileSetParser(Log4jPatternLayout patternLayout, FileOrdering ordering, ExecutorService executor,
+                         int readAhead, int prefetch) {
+
+        if (ordering == null) {
+
+            throw new IllegalArgumentException("null ordering");
+        }
+
+        if (readAhead <= 0) {
+
+            throw new IllegalArgumentException("invalid read-ahead " + readAhead);
+        }
+
+        if (prefetch < 0) {
+
+            throw new IllegalArgumentException("invalid prefetch " + prefetch);
+        }
+
+        this.patternLayoutLiteral = patternLayout == null ? null : patternLayout.getLiteral();
+        this.lazyMaterialization = patternLayout != null && patternLayout.isLazyMaterialization();
+        this.ordering = ordering;
+        this.executor = executor;
+        this.readAhead = readAhead;
+        this.prefetch = prefetch;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the files and delivers the events to the sink, in the configured order, including the last event of
+     * each file. The sink is invoked on the calling thread.
+     *
+     * @return the total number of lines read.
+     */
+    public long parse(List<File> files, EventSink sink) throws IOException, ParsingException {
+
+        if (files == null) {
+
+            throw new IllegalArgumentException("null file list");
+        }
+
+        if (sink == null) {
+
+            throw new IllegalArgumentException("null sink");
+        }
+
+        ExecutorService e = executor == null ? newExecutor() : executor;
+
+        List<Source> sources = new ArrayList<>();
+
+        for(int i = 0; i < files.size(); i ++) {
+
+            sources.add(new Source(i, files.get(i), e));
+        }
+
+        log.debug(this + " parsing " + files.size() + " file(s)");
+
+        try {
+
+            if (FileOrdering.PER_FILE == ordering) {
+
+                deliverInFileOrder(sources, sink);
+            }
+            else {
+
+                deliverTimeMerged(sources, sink);
+            }
+
+            long lineCount = 0;
+
+            for(Source s: sources) {
+
+                lineCount += s.lineCount;
+            }
+
+            return lineCount;
+        }
+        finally {
+
+            for(Source s: sources) {
+
+                s.abandon();
+            }
+
+            if (executor == null) {
+
+                e.shutdownNow();
+            }
+        }
+    }
+
+    public FileOrdering getOrdering() {
+
+        return ordering;
+    }
+
+    public int getReadAhead() {
+
+        return readAhead;
+    }
+
+    public int getPrefetch() {
+
+        return prefetch;
+    }
+
+    @Override
+    public String toString() {
+
+        return "FileSetParser[" + (patternLayoutLiteral == null ? "heuristics" : patternLayoutLiteral) + ", " +
+                ordering + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void deliverInFileOrder(List<Source> sources, EventSink sink) throws IOException, ParsingException {
+
+        int size = sources.size();
+
+        for(int i = 0; i < Math.min(size, prefetch + 1); i ++) {
+
+            sources.get(i).submit();
+        }
+
+        for(int i = 0; i < size; i ++) {
+
+            if (i + prefetch + 1 < size) {
+
+                sources.get(i + prefetch + 1).submit();
+            }
+
+            Source s = sources.get(i);
+
+            List<Event> events;
+
+            while((events = s.next()) != null) {
+
+                if (!events.isEmpty()) {
+
+                    sink.accept(events);
+                }
+            }
+        }
+    }
+
+    private void deliverTimeMerged(List<Source> sources, EventSink sink) throws IOException, ParsingException {
+
+        for(Source s: sources) {
+
+            s.submit();
+        }
+
+        FileParsers.mergeByTime(sources, BATCH_SIZE, sink);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The result of a task.
+     */
+    private static final class Chunk {
+
+        private final List<Event> events;
+
+        // true if the file was read to the end, or the task failed
+        private final boolean last;
+
+        private final Throwable failure;
+
+        private Chunk(List<Event> events, boolean last, Throwable failure) {
+
+            this.events = events;
+            this.last = last;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * The per-file state. The task side (run()) is only executed by one task at a time, as the next task is only
+     * submitted after the result of the previous one was taken.
+     */
+    private final class Source extends FileParsers.TimeOrderedSource implements Runnable {
+
+        private final File file;
+        private final ExecutorService executor;
+
+        private final BlockingQueue<Chunk> chunks;
+
+        // written by the task that reads the end of the file, read after its chunk was taken
+        private volatile long lineCount;
+
+        //
+        // task side state
+        //
+
+        private Log4jParser parser;
+        private boolean mapped;
+        private long lineNumber;
+
+        // the offset the next task resumes from, for uncompressed files that are not mapped to the end
+        private long offset;
+
+        // kept between tasks, unless it holds the file open and it can be reopened at 'offset'
+        private LineReader reader;
+
+        // guarded by 'this'
+        private boolean running;
+        private boolean abandoned;
+
+        //
+        // consumer side state
+        //
+
+        private boolean exhausted;
+
+        private List<Event> current;
+        private int position;
+
+        Source(int index, File file, ExecutorService executor) {
+
+            super(index);
+
+            this.file = file;
+            this.executor = executor;
+            this.chunks = new LinkedBlockingQueue<>();
+        }
+
+        // Runnable implementation -------------------------------------------------------------------------------------
+
+        @Override
+        public void run() {
+
+            Chunk chunk;
+
+            try {
+
+                chunk = read();
+            }
+            catch(Exception | Error e) {
+
+                closeReader();
+
+                chunk = new Chunk(Collections.<Event>emptyList(), true, e);
+            }
+
+            synchronized(this) {
+
+                running = false;
+
+                if (abandoned) {
+
+                    closeReader();
+                    return;
+                }
+            }
+
+            chunks.add(chunk);
+        }
+
+        // FileParsers.TimeOrderedSource overrides ---------------------------------------------------------------------
+
+        @Override
+        Log4jEvent nextEvent() throws IOException, ParsingException {
+
+            while(current == null || position == current.size()) {
+
+                current = next();
+                position = 0;
+
+                if (current == null) {
+
+                    return null;
+                }
+            }
+
+            return (Log4jEvent)current.get(position ++);
+        }
+
+        // Public ------------------------------------------------------------------------------------------------------
+
+        @Override
+        public String toString() {
+
+            return getIndex() + ": " + file;
+        }
+
+        // Package protected -------------------------------------------------------------------------------------------
+
+        /**
+         * Submits the next task, unless the file was read to the end, or a task is already running.
+         */
+        synchronized void submit() {
+
+            if (running || abandoned || exhausted) {
+
+                return;
+            }
+
+            running = true;
+
+            executor.execute(this);
+        }
+
+        /**
+         * Blocks until the next chunk of events is available, and submits the task that parses the following one. The
+         * first task must have been submitted with submit().
+         *
+         * @return the events, or null if there are no more events.
+         */
+        List<Event> next() throws IOException, ParsingException {
+
+            if (exhausted) {
+
+                return null;
+            }
+
+            Chunk chunk;
+
+            try {
+
+                chunk = chunks.take();
+            }
+            catch(InterruptedException ie) {
+
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for events from " + file, ie);
+            }
+
+            if (chunk.last) {
+
+                exhausted = true;
+
+                FileParsers.rethrow(chunk.failure);
+            }
+            else {
+
+                //
+                // parse the next chunk while this one is consumed
+                //
+
+                submit();
+            }
+
+            return chunk.events;
+        }
+
+        synchronized void abandon() {
+
+            abandoned = true;
+
+            if (!running) {
+
+                closeReader();
+            }
+        }
+
+        // Private -----------------------------------------------------------------------------------------------------
+
+        /**
+         * Parses up to 'readAhead' events.
+         */
+        private Chunk read() throws IOException, ParsingException {
+
+            if (parser == null) {
+
+                //
+                // the parser, and its pattern layout, are used by one task at a time
+                //
+
+                parser = new Log4jParser(FileParsers.newPatternLayout(patternLayoutLiteral, lazyMaterialization));
+                reader = Log4jParser.newLineReader(file);
+                mapped = reader instanceof MappedLineReader;
+            }
+
+            if (reader == null) {
+
+                reader = new MappedLineReader(
+                        file, offset, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8);
+            }
+
+            List<Event> events = new ArrayList<>();
+
+            CharSequence line;
+
+            while((line = reader.readLine()) != null) {
+
+                List<Event> parsed = parser.parse(++ lineNumber, line);
+
+                if (!parsed.isEmpty()) {
+
+                    events.addAll(parsed);
+
+                    if (events.size() >= readAhead) {
+
+                        break;
+                    }
+                }
+            }
+
+            if (line == null) {
+
+                events.addAll(parser.close(lineNumber));
+
+                closeReader();
+
+                lineCount = lineNumber;
+
+                return new Chunk(events, true, null);
+            }
+
+            if (mapped && !((MappedLineReader)reader).isMappedToEnd()) {
+
+                offset = ((MappedLineReader)reader).getOffset();
+
+                closeReader();
+            }
+
+            return new Chunk(events, false, null);
+        }
+
+        private void closeReader() {
+
+            if (reader == null) {
+
+                return;
+            }
+
+            try {
+
+                reader.close();
+            }
+            catch(IOException e) {
+
+                log.warn("failed to close " + file + ": " + e.getMessage());
+            }
+
+            reader = null;
+        }
+    }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Parses log files with the help of a persistent sparse index, kept in a sidecar file next to the log.
+ *
+ * A full parse builds the index as a by-product and stores it. Time range and line range parsing use the index to
+ * start reading close to the requested range, instead of reading the file from the beginning; if there is no valid
+ * index, it is built first, and if the log has grown since the index was built, the index is extended by indexing only
+ * the new content. Unlike in the case of the TimeRangeFileParser, the events carry absolute line numbers.
+ *
+ * Queries on the level, logger and thread name use the inverted indexes carried by the index to read only the blocks
+ * that may contain matching events.
+ *
+ * If the sidecar file cannot be written, the index is still used for the current operation.
+ *
+ * @see TimeIndex
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class IndexedFileParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(IndexedFileParser.class);
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private Log4jPatternLayout patternLayout;
+
+    private long checkpointInterval;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param patternLayout null is acceptable, it means the parser will use heuristics.
+     */
+    public IndexedFileParser(Log4jPatternLayout patternLayout) {
+
+        this(patternLayout, TimeIndex.DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param patternLayout null is acceptable, it means the parser will use heuristics.
+     * @param checkpointInterval the approximate distance, in bytes, between index checkpoints.
+     */
+    public IndexedFileParser(Log4jPatternLayout patternLayout, long checkpointInterval) {
+
+        if (checkpointInterval <= 0) {
+
+            throw new IllegalArgumentException("invalid checkpoint interval " + checkpointInterval);
+        }
+
+        this.patternLayout = patternLayout;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the whole file and delivers the events to the sink, in file order, including the last event. The index is
+     * rebuilt along the way, and stored.
+     *
+     * @return the number of lines read.
+     */
+    public long parse(File file, EventSink sink) throws IOException, ParsingException {
+
+        TimeIndex index = new TimeIndex(getLayoutLiteral(), checkpointInterval);
+
+        long lineCount = index(file, index, sink);
+
+        store(file, index);
+
+        return lineCount;
+    }
+
+    /**
+     * Delivers to the sink, in file order, the events whose timestamp is in the [from, to) interval. The timestamps
+     * are assumed to be monotonic.
+     *
+     * @return the number of lines read, not including the lines read to build or extend the index.
+     */
+    public long parse(File file, long from, long to, EventSink sink) throws IOException, ParsingException {
+
+        if (from > to) {
+
+            throw new IllegalArgumentException("invalid time range [" + from + ", " + to + ")");
+        }
+
+        TimeIndex.Checkpoint c = getIndex(file).floorByTime(from);
+
+        long start = c == null ? 0L : c.getOffset();
+        long lineNumberOffset = c == null ? 0L : c.getLineNumber() - 1;
+
+        return new TimeRangeFileParser(patternLayout).parse(file, start, lineNumberOffset, from, to, sink);
+    }
+
+    /**
+     * Delivers to the sink, in file order, the events that start on a line whose number is in the [from, to) interval.
+     * Line numbers start with 1.
+     *
+     * @return the number of lines read, not including the lines read to build or extend the index.
+     */
+    public long parseLines(File file, long from, long to, EventSink sink) throws IOException, ParsingException {
+
+        if (from > to) {
+
+            throw new IllegalArgumentException("invalid line range [" + from + ", " + to + ")");
+        }
+
+        TimeIndex.Checkpoint c = getIndex(file).floorByLine(from);
+
+        long start = c == null ? 0L : c.getOffset();
+        long lineNumber = c == null ? 0L : c.getLineNumber() - 1;
+        long lineNumberOffset = lineNumber;
+
+        Log4jParser parser = new Log4jParser(patternLayout);
+
+        try(MappedLineReader reader = new MappedLineReader(
+                file, start, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = reader.readLine()) != null) {
+
+                deliver(parser.parse(++ lineNumber, line), from, to, sink);
+
+                Log4jEvent current = parser.getCurrentEvent();
+
+                if (current != null && current.getLineNumber() >= to) {
+
+                    return lineNumber - lineNumberOffset;
+                }
+            }
+        }
+
+        deliver(parser.close(lineNumber), from, to, sink);
+
+        return lineNumber - lineNumberOffset;
+    }
+
+    /**
+     * Delivers to the sink, in file order, the events accepted by the filter. Only the blocks that may contain such
+     * events, according to the index, are read.
+     *
+     * @return the number of lines read, not including the lines read to build or extend the index.
+     */
+    public long parse(File file, EventFilter filter, EventSink sink) throws IOException, ParsingException {
+
+        if (filter == null) {
+
+            throw new IllegalArgumentException("null filter");
+        }
+
+        TimeIndex index = getIndex(file);
+
+        BitSet blocks = index.selectBlocks(filter);
+
+        log.debug(this + " reads " + blocks.cardinality() + " of " + index.getBlockCount() + " block(s) for " + filter);
+
+        long linesRead = 0L;
+
+        for(int first = blocks.nextSetBit(0); first >= 0; ) {
+
+            //
+            // adjacent blocks are read in one pass
+            //
+
+            int last = blocks.nextClearBit(first) - 1;
+
+            TimeIndex.Checkpoint c = index.getCheckpoints().get(first);
+
+            linesRead += parse(file, c.getOffset(), index.getBlockEnd(last), c.getLineNumber() - 1, filter, sink);
+
+            first = blocks.nextSetBit(last + 1);
+        }
+
+        return linesRead;
+    }
+
+    /**
+     * @return the index of the file, loaded from the sidecar file and extended if the file has grown, or built if
+     * there is no valid sidecar file. If the index was built or extended, it is stored.
+     */
+    public TimeIndex getIndex(File file) throws IOException, ParsingException {
+
+        TimeIndex index = TimeIndex.load(file, getLayoutLiteral());
+
+        if (index == null) {
+
+            log.debug(this + " building the index of " + file);
+
+            index = new TimeIndex(getLayoutLiteral(), checkpointInterval);
+        }
+        else if (index.getIndexedLength() == file.length()) {
+
+            return index;
+        }
+        else {
+
+            log.debug(this + " extending the index of " + file + " from offset " + index.getIndexedLength());
+        }
+
+        index(file, index, null);
+
+        store(file, index);
+
+        return index;
+    }
+
+    @Override
+    public String toString() {
+
+        return "IndexedFileParser[" + (patternLayout == null ? "heuristics" : patternLayout.getLiteral()) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the file from the start of the last indexed event (or from the beginning, if no event was indexed) to
+     * the end, and records the event starts in the index.
+     *
+     * @param sink may be null, in which case the events are discarded.
+     *
+     * @return the number of lines read.
+     */
+    long index(File file, TimeIndex index, EventSink sink) throws IOException, ParsingException {
+
+        TimeIndex.Checkpoint resume = index.getLastEvent();
+
+        long start = resume == null ? 0L : resume.getOffset();
+        long lineNumber = resume == null ? 0L : resume.getLineNumber() - 1;
+        long ordinal = resume == null ? -1L : resume.getOrdinal() - 1;
+        long lineNumberOffset = lineNumber;
+        long end;
+
+        Log4jParser parser = new Log4jParser(patternLayout);
+
+        try(MappedLineReader reader = new MappedLineReader(
+                file, start, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8)) {
+
+            Log4jEvent previous = null;
+
+            CharSequence line;
+
+            while((line = reader.readLine()) != null) {
+
+                List<Event> events = parser.parse(++ lineNumber, line);
+
+                if (sink != null && !events.isEmpty()) {
+
+                    sink.accept(events);
+                }
+
+                Log4jEvent current = parser.getCurrentEvent();
+
+                if (current != null && current != previous) {
+
+                    //
+                    // the line starts a new event
+                    //
+
+                    index.addEvent(current, reader.getLineOffset(), lineNumber, ++ ordinal);
+
+                    previous = current;
+                }
+            }
+
+            end = reader.getOffset();
+        }
+
+        List<Event> events = parser.close(lineNumber);
+
+        if (sink != null && !events.isEmpty()) {
+
+            sink.accept(events);
+        }
+
+        index.setIndexedLength(file, end);
+
+        return lineNumber - lineNumberOffset;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private String getLayoutLiteral() {
+
+        return patternLayout == null ? null : patternLayout.getLiteral();
+    }
+
+    private void store(File file, TimeIndex index) {
+
+        try {
+
+            index.store(file);
+        }
+        catch(IOException e) {
+
+            log.warn("failed to store the index of " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the [start, end) byte range, which must start and end on event boundaries, and delivers the events
+     * accepted by the filter.
+     *
+     * @return the number of lines read.
+     */
+    private long parse(File file, long start, long end, long lineNumberOffset, EventFilter filter, EventSink sink)
+            throws IOException, ParsingException {
+
+        Log4jParser parser = new Log4jParser(patternLayout);
+        parser.setFilter(filter);
+
+        long lineNumber = lineNumberOffset;
+
+        try(MappedLineReader reader = new MappedLineReader(
+                file, start, end, MappedLineReader.DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = reader.readLine()) != null) {
+
+                List<Event> events = parser.parse(++ lineNumber, line);
+
+                if (!events.isEmpty()) {
+
+                    sink.accept(events);
+                }
+            }
+        }
+
+        List<Event> events = parser.close(lineNumber);
+
+        if (!events.isEmpty()) {
+
+            sink.accept(events);
+        }
+
+        return lineNumber - lineNumberOffset;
+    }
+
+    private static void deliver(List<Event> events, long from, long to, EventSink sink) {
+
+        List<Event> selected = new ArrayList<>(events.size());
+
+        for(Event e: events) {
+
+            Long n = e.getLineNumber();
+
+            if (n != null && n >= from && n < to) {
+
+                selected.add(e);
+            }
+        }
+
+        if (!selected.isEmpty()) {
+
+            sink.accept(selected);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
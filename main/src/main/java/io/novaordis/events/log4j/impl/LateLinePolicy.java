@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+/**
+ * The handling of the continuation lines that arrive after their event was flushed on idle timeout.
+ *
+ * @see Log4jParser#setIdleTimeout(long)
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public enum LateLinePolicy {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    /**
+     * The late lines are collected into a follow-up event, which carries the timestamp, level, logger and thread name
+     * of the flushed event and is marked as a follow-up. The follow-up event is completed and emitted like any other
+     * event.
+     */
+    FOLLOW_UP,
+
+    /**
+     * The late lines are not attached to any event: they are logged, counted in the parser metrics, and discarded.
+     */
+    REPORT
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of log content lines that does not necessarily decode each line into a String: memory-mapped files,
+ * decompressed streams, etc.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+interface LineReader extends Closeable {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the next line, without the line terminator, or null if there are no more lines. The returned instance
+     * is only valid until the next invocation.
+     */
+    CharSequence readLine() throws IOException;
+
+    /**
+     * @return the number of lines read so far.
+     */
+    long getLineCount();
+
+}
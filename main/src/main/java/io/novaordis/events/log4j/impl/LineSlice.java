@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A CharSequence view of a line of single-byte (ASCII) content stored in a ByteBuffer, typically a memory-mapped
+ * file window. The bytes are not copied, unless toString() or subSequence() is invoked. The instance is reused from
+ * line to line, so it is only valid until the next line is read.
+ *
+ * Not thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+class LineSlice implements CharSequence {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    LineSlice() {
+    }
+
+    // CharSequence implementation -------------------------------------------------------------------------------------
+
+    @Override
+    public int length() {
+
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+
+        if (index < 0 || index >= length) {
+
+            throw new IndexOutOfBoundsException("index " + index + " out of bounds, length " + length);
+        }
+
+        return (char)(buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+
+        if (start < 0 || end > length || start > end) {
+
+            throw new IndexOutOfBoundsException("invalid subsequence boundaries " + start + ", " + end);
+        }
+
+        return toString(start, end);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return toString(0, length);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Points the slice to a new line.
+     */
+    void set(ByteBuffer buffer, int offset, int length) {
+
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private String toString(int start, int end) {
+
+        char[] chars = new char[end - start];
+
+        for(int i = start; i < end; i ++) {
+
+            chars[i - start] = (char)(buffer.get(offset + i) & 0xff);
+        }
+
+        return new String(chars);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -162,4 +162,11 @@ public interface Log4jEvent extends TimedEvent {
 
     String getExceptionRendering();
 
+    /**
+     * @return the fingerprint of the exception rendering, or null if the event does not carry an exception rendering.
+     *
+     * @see ExceptionFingerprint
+     */
+    Long getExceptionFingerprint();
+
 }
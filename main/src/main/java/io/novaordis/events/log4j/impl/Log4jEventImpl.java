@@ -18,8 +18,11 @@ package io.novaordis.events.log4j.impl;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 import io.novaordis.events.api.event.GenericTimedEvent;
+import io.novaordis.events.api.event.Property;
 import io.novaordis.events.api.event.StringProperty;
 import io.novaordis.utilities.logging.log4j.Log4jLevel;
 
@@ -30,6 +33,28 @@ import io.novaordis.utilities.logging.log4j.Log4jLevel;
  *
  * Once the '%E' conversion character is identified, the instance enters a "exception collection" mode.
  *
+ * The level, logger, thread name, message and exception rendering are kept in direct fields, and not in the generic
+ * property storage inherited from GenericTimedEvent: the level is stored as a Log4jLevel reference, and the other
+ * values as plain String references. The corresponding properties (LEVEL_PROPERTY_NAME, LOGGER_PROPERTY_NAME, etc.)
+ * are still visible to the code that needs them, via getProperties(), getProperty() and getStringProperty(), but they
+ * are built on demand and are not retained by the event. Setting them with setProperty() or setStringProperty() is
+ * routed to the corresponding setters, and an invalid level literal is rejected.
+ *
+ * Unlike the property storage, which keeps a property instance and a map entry for each value, the field storage
+ * does not allocate any objects beyond the value strings, and getLevel() does not look up the level by its literal.
+ *
+ * The logger, thread name and message may also be set as offsets into the first line of the raw representation, in
+ * which case they are materialized on first access. This is what Log4jPatternLayout does in lazy materialization mode.
+ *
+ * Continuation lines (multi-line messages, exception stack traces) are accumulated in a single buffer, and folded into
+ * the message or exception rendering, and into the raw representation, only once, when the event is finished. This
+ * keeps the accumulation of a N-line event linear, instead of rebuilding the values on each appended line. Accessors
+ * finish the event implicitly, so the content is always consistent when read.
+ *
+ * The exception stack trace lines that end the raw representation are not stored twice: the raw representation only
+ * keeps what precedes them, and it is rebuilt on demand from the exception rendering. When the parser replaces the
+ * rendering with its interned instance, the trace is shared by all events that carry it, including their raw
+ * representations.
  *
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 4/28/17
@@ -54,8 +79,43 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    private Log4jLevel level;
+    private String logger;
+    private String threadName;
+    private String message;
+    private String exceptionRendering;
+
+    // the fingerprint of the exception rendering, 0 if not computed yet
+    private long exceptionFingerprint;
+
+    //
+    // the offset in the exception rendering of the content that ends the raw representation, and which is not stored
+    // with the rest of the raw representation; -1 if the raw representation is stored in its entirety
+    //
+    private int rawExceptionFrom = -1;
+
+    //
+    // offsets into the raw representation of the values that were not materialized yet, -1 if none
+    //
+    private int loggerFrom = -1;
+    private int loggerTo;
+    private int threadNameFrom = -1;
+    private int threadNameTo;
+    private int messageFrom = -1;
+    private int messageTo;
+
     private byte appendMode;
 
+    // true if the event carries the continuation lines that arrived after the preceding event was flushed
+    private boolean followUp;
+
+    //
+    // the continuation lines appended since the event was last finished, joined with '\n', and their destination:
+    // MESSAGE_APPEND_MODE, EXCEPTION_APPEND_MODE or NO_APPEND_MODE for "raw representation only"; null if none
+    //
+    private StringBuilder continuation;
+    private byte continuationMode;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Log4jEventImpl() {
@@ -89,108 +149,348 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
 
     /**
      * May return null.
-     *
-     * @exception IllegalStateException if the internal storage for property cannot be converted to Log4jLevel
      */
     @Override
     public Log4jLevel getLevel() {
 
-        StringProperty sp = getStringProperty(LEVEL_PROPERTY_NAME);
+        return level;
+    }
+
+    @Override
+    public String getLogger() {
 
-        if (sp == null) {
+        if (logger == null && loggerFrom >= 0) {
 
-            return null;
+            logger = materialize(loggerFrom, loggerTo);
         }
 
-        String s = sp.getString();
+        return logger;
+    }
 
-        if (s == null) {
+    @Override
+    public String getThreadName() {
 
-            return null;
+        if (threadName == null && threadNameFrom >= 0) {
+
+            threadName = materialize(threadNameFrom, threadNameTo);
         }
 
-        Log4jLevel level =  Log4jLevel.fromLiteral(s);
+        return threadName;
+    }
+
+    @Override
+    public String getMessage() {
+
+        finish();
 
-        if (level == null) {
+        if (message == null && messageFrom >= 0) {
 
-            throw new IllegalStateException("invalid '" + LEVEL_PROPERTY_NAME + "' value: \"" + s + "\"");
+            message = materialize(messageFrom, messageTo);
         }
 
-        return level;
+        return message;
     }
 
     @Override
-    public String getLogger() {
+    public String getExceptionRendering() {
+
+        finish();
+
+        return exceptionRendering;
+    }
+
+    /**
+     * The fingerprint is computed on first access, after the event is finished, and it is cached until the exception
+     * rendering changes.
+     */
+    @Override
+    public Long getExceptionFingerprint() {
 
-        StringProperty sp = getStringProperty(LOGGER_PROPERTY_NAME);
+        finish();
 
-        if (sp == null) {
+        if (exceptionRendering == null) {
 
             return null;
         }
 
-        return sp.getString();
+        if (exceptionFingerprint == 0L) {
+
+            exceptionFingerprint = ExceptionFingerprint.compute(exceptionRendering);
+        }
+
+        return exceptionFingerprint;
     }
 
+    // Event implementation --------------------------------------------------------------------------------------------
+
+    /**
+     * The field-backed properties come first, in the LEVEL, LOGGER, THREAD_NAME, MESSAGE, EXCEPTION order, followed by
+     * the properties kept in the generic storage. The field-backed properties are built on each invocation, so
+     * modifying them does not change the state of the event - use the corresponding setters instead.
+     */
     @Override
-    public String getThreadName() {
+    public List<Property> getProperties() {
 
-        StringProperty sp = getStringProperty(THREAD_NAME_PROPERTY_NAME);
+        List<Property> generic = super.getProperties();
 
-        if (sp == null) {
+        List<Property> result = new ArrayList<>(generic.size() + 5);
 
-            return null;
+        addIfNotNull(result, LEVEL_PROPERTY_NAME);
+        addIfNotNull(result, LOGGER_PROPERTY_NAME);
+        addIfNotNull(result, THREAD_NAME_PROPERTY_NAME);
+        addIfNotNull(result, MESSAGE_PROPERTY_NAME);
+        addIfNotNull(result, EXCEPTION_PROPERTY_NAME);
+
+        result.addAll(generic);
+
+        return result;
+    }
+
+    /**
+     * For field-backed properties, the returned instance is built on each invocation, so modifying it does not change
+     * the state of the event - use the corresponding setter instead.
+     */
+    @Override
+    public StringProperty getStringProperty(String name) {
+
+        String value;
+
+        if (LEVEL_PROPERTY_NAME.equals(name)) {
+
+            value = level == null ? null : level.toLiteral();
+        }
+        else if (LOGGER_PROPERTY_NAME.equals(name)) {
+
+            value = getLogger();
         }
+        else if (THREAD_NAME_PROPERTY_NAME.equals(name)) {
 
-        return sp.getString();
+            value = getThreadName();
+        }
+        else if (MESSAGE_PROPERTY_NAME.equals(name)) {
+
+            value = getMessage();
+        }
+        else if (EXCEPTION_PROPERTY_NAME.equals(name)) {
+
+            value = getExceptionRendering();
+        }
+        else {
+
+            return super.getStringProperty(name);
+        }
+
+        return value == null ? null : new StringProperty(name, value);
     }
 
+    /**
+     * For field-backed properties, the returned instance is built on each invocation, so modifying it does not change
+     * the state of the event - use the corresponding setter instead.
+     */
     @Override
-    public String getMessage() {
+    public Property getProperty(String name) {
 
-        StringProperty sp = getStringProperty(MESSAGE_PROPERTY_NAME);
+        if (isFieldBacked(name)) {
 
-        if (sp == null) {
+            return getStringProperty(name);
+        }
 
-            return null;
+        return super.getProperty(name);
+    }
+
+    /**
+     * Field-backed properties are routed to the corresponding setters. Their values must be strings, and the value of
+     * the level property must be a valid log level literal. A null value clears the field.
+     *
+     * @return the property previously associated with the name, if any.
+     *
+     * @exception IllegalArgumentException if the value of a field-backed property is invalid.
+     */
+    @Override
+    public Property setProperty(Property property) {
+
+        if (property == null || !isFieldBacked(property.getName())) {
+
+            return super.setProperty(property);
         }
 
-        return sp.getString();
+        String name = property.getName();
+        Object value = property.getValue();
+
+        if (value != null && !(value instanceof String)) {
+
+            throw new IllegalArgumentException(
+                    "invalid '" + name + "' value type: " + value.getClass().getName());
+        }
+
+        StringProperty previous = getStringProperty(name);
+
+        setFieldBackedValue(name, (String)value);
+
+        return previous;
     }
 
+    /**
+     * Field-backed properties are routed to the corresponding setters, and the value of the level property must be a
+     * valid log level literal. A null value clears the field.
+     *
+     * @exception IllegalArgumentException if the value of the level property is not a valid log level literal.
+     */
     @Override
-    public String getExceptionRendering() {
+    public StringProperty setStringProperty(String name, String value) {
+
+        if (!isFieldBacked(name)) {
 
-        StringProperty sp = getStringProperty(EXCEPTION_PROPERTY_NAME);
+            return super.setStringProperty(name, value);
+        }
 
-        if (sp == null) {
+        setFieldBackedValue(name, value);
 
-            return null;
+        return value == null ? null : new StringProperty(name, value);
+    }
+
+    /**
+     * The exception stack trace lines that end the raw representation are appended from the exception rendering, so
+     * the string is built on each invocation, unless the raw representation consists of the exception rendering alone.
+     */
+    @Override
+    public String getRawRepresentation() {
+
+        finish();
+
+        String raw = super.getRawRepresentation();
+
+        if (rawExceptionFrom < 0) {
+
+            return raw;
+        }
+
+        String tail = exceptionRendering.substring(rawExceptionFrom);
+
+        return raw == null ? tail : raw + "\n" + tail;
+    }
+
+    /**
+     * The first raw line is stored directly, subsequent lines are accumulated and folded into the raw representation
+     * when the event is finished.
+     *
+     * @see Log4jEventImpl#finish()
+     */
+    @Override
+    public void appendRawLine(String line) {
+
+        if (line == null ||
+                (continuation == null && super.getRawRepresentation() == null && rawExceptionFrom < 0)) {
+
+            super.appendRawLine(line);
+            return;
         }
 
-        return sp.getString();
+        accumulate(NO_APPEND_MODE, line);
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
 
     public void setLevel(Log4jLevel level) {
 
-        setStringProperty(LEVEL_PROPERTY_NAME, level == null ? null : level.toLiteral());
+        this.level = level;
     }
 
     public void setLogger(String s) {
 
-        setStringProperty(LOGGER_PROPERTY_NAME, s);
+        this.logger = s;
+        this.loggerFrom = -1;
+    }
+
+    /**
+     * Records the logger as offsets into the first line of the raw representation, to be materialized on the first
+     * getLogger() invocation.
+     */
+    public void setLoggerOffsets(int from, int to) {
+
+        checkOffsets(from, to);
+
+        this.logger = null;
+        this.loggerFrom = from;
+        this.loggerTo = to;
     }
 
     public void setThreadName(String s) {
 
-        setStringProperty(THREAD_NAME_PROPERTY_NAME, s);
+        this.threadName = s;
+        this.threadNameFrom = -1;
+    }
+
+    /**
+     * Records the thread name as offsets into the first line of the raw representation, to be materialized on the
+     * first getThreadName() invocation.
+     */
+    public void setThreadNameOffsets(int from, int to) {
+
+        checkOffsets(from, to);
+
+        this.threadName = null;
+        this.threadNameFrom = from;
+        this.threadNameTo = to;
     }
 
     public void setMessage(String s) {
 
-        setStringProperty(MESSAGE_PROPERTY_NAME, s);
+        finish();
+
+        this.message = s;
+        this.messageFrom = -1;
+    }
+
+    /**
+     * Records the message as offsets into the first line of the raw representation, to be materialized on the first
+     * getMessage() invocation.
+     */
+    public void setMessageOffsets(int from, int to) {
+
+        checkOffsets(from, to);
+
+        finish();
+
+        this.message = null;
+        this.messageFrom = from;
+        this.messageTo = to;
+    }
+
+    public void setExceptionRendering(String s) {
+
+        finish();
+
+        if (s == null || !s.equals(exceptionRendering)) {
+
+            //
+            // an equal rendering, such as the canonical instance of the same rendering, keeps the fingerprint, and
+            // the end of the raw representation
+            //
+
+            storeRawException();
+
+            this.exceptionFingerprint = 0L;
+        }
+
+        this.exceptionRendering = s;
+    }
+
+    /**
+     * @return true if the event was created by the parser to carry the continuation lines that arrived after the
+     * preceding event was flushed on idle timeout. A follow-up event has the timestamp, level, logger and thread name
+     * of the flushed event, and the late lines as its message, exception rendering or raw representation.
+     *
+     * @see LateLinePolicy#FOLLOW_UP
+     */
+    public boolean isFollowUp() {
+
+        return followUp;
+    }
+
+    public void setFollowUp(boolean b) {
+
+        this.followUp = b;
     }
 
     /**
@@ -212,6 +512,12 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
             throw new IllegalArgumentException("invalid append mode: " + m);
         }
 
+        //
+        // the lines accumulated so far belong to the previous mode
+        //
+
+        finish();
+
         this.appendMode = m;
     }
 
@@ -219,7 +525,8 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
      * Use it to append lines following a formatted log event rendering line. These lines belong either to a
      * multi-line message or to an exception stack trace. The Log4jEventImpl instance will interpret the semantics
      * of the line being appended relative to the value of the appendMode flag. Possible append modes:
-     * EXCEPTION_APPEND_MODE, MESSAGE_APPEND_MODE. The method updates the raw representation internally.
+     * EXCEPTION_APPEND_MODE, MESSAGE_APPEND_MODE. The line is accumulated, and folded into the corresponding value and
+     * into the raw representation when the event is finished.
      *
      * It is imperative that the whole log line is added in a single appendLine() invocation, otherwise the line number
      * counting will fail.
@@ -227,6 +534,8 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
      * @param line may be an empty line, but never null.
      *
      * @exception IllegalStateException if the instance is not in append mode.
+     *
+     * @see Log4jEventImpl#finish()
      */
     public void appendLine(String line) {
 
@@ -235,45 +544,80 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
             throw new IllegalArgumentException("null line");
         }
 
-        String propertyName;
-
-        if (MESSAGE_APPEND_MODE == appendMode) {
+        if (MESSAGE_APPEND_MODE != appendMode && EXCEPTION_APPEND_MODE != appendMode) {
 
-            propertyName = MESSAGE_PROPERTY_NAME;
+            throw new IllegalStateException("not in append mode");
         }
-        else if (EXCEPTION_APPEND_MODE == appendMode) {
 
-            propertyName = EXCEPTION_PROPERTY_NAME;
-        }
-        else {
+        accumulate(appendMode, line);
+    }
 
-            throw new IllegalStateException("not in append mode");
+    /**
+     * Folds the accumulated continuation lines into the message or the exception rendering, and into the raw
+     * representation. It is invoked by the parser when the event is complete, and implicitly by the accessors, so it
+     * is safe to invoke it more than once, and the event can still be appended to after it was finished.
+     */
+    public void finish() {
+
+        if (continuation == null) {
+
+            return;
         }
 
-        StringProperty p = getStringProperty(propertyName);
+        String lines = continuation.toString();
+        byte mode = continuationMode;
 
-        if (p == null) {
+        continuation = null;
 
-            p = new StringProperty(propertyName);
+        if (EXCEPTION_APPEND_MODE == mode) {
 
-            setProperty(p);
-        }
+            //
+            // the lines go to the end of the raw representation, which is where the exception rendering lines already
+            // in the raw representation, if any, are; they are not stored twice
+            //
 
-        String s = p.getString();
+            if (rawExceptionFrom < 0) {
 
-        if (s == null) {
+                rawExceptionFrom = exceptionRendering == null ? 0 : exceptionRendering.length() + 1;
+            }
 
-            s = line;
-        }
-        else {
+            exceptionRendering = exceptionRendering == null ? lines : exceptionRendering + "\n" + lines;
+            exceptionFingerprint = 0L;
 
-            s += "\n";
-            s += line;
+            return;
         }
 
-        p.setValue(s);
+        //
+        // anything else goes after the exception rendering lines, so they must be stored in the raw representation
+        //
+
+        storeRawException();
+
+        if (MESSAGE_APPEND_MODE == mode) {
 
-        appendRawLine(line);
+            String raw = super.getRawRepresentation();
+
+            if (message == null && messageFrom >= 0 && raw != null && messageTo == raw.length()) {
+
+                //
+                // the message extends to the end of the raw representation, and so it will after the lines are
+                // appended, so there is no need to materialize it
+                //
+
+                super.appendRawLine(lines);
+
+                messageTo = super.getRawRepresentation().length();
+
+                return;
+            }
+
+            String s = getMessage();
+
+            message = s == null ? lines : s + "\n" + lines;
+            messageFrom = -1;
+        }
+
+        super.appendRawLine(lines);
     }
 
     @Override
@@ -300,6 +644,127 @@ public class Log4jEventImpl extends GenericTimedEvent implements Log4jEvent {
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    private static boolean isFieldBacked(String name) {
+
+        return LEVEL_PROPERTY_NAME.equals(name) ||
+                LOGGER_PROPERTY_NAME.equals(name) ||
+                THREAD_NAME_PROPERTY_NAME.equals(name) ||
+                MESSAGE_PROPERTY_NAME.equals(name) ||
+                EXCEPTION_PROPERTY_NAME.equals(name);
+    }
+
+    private static void checkOffsets(int from, int to) {
+
+        if (from < 0 || to < from) {
+
+            throw new IllegalArgumentException("invalid offsets [" + from + ", " + to + ")");
+        }
+    }
+
+    private void accumulate(byte mode, String line) {
+
+        if (continuation != null && continuationMode != mode) {
+
+            finish();
+        }
+
+        if (continuation == null) {
+
+            continuation = new StringBuilder(Math.max(128, 2 * line.length()));
+            continuationMode = mode;
+        }
+        else {
+
+            continuation.append('\n');
+        }
+
+        continuation.append(line);
+    }
+
+    private void setFieldBackedValue(String name, String value) {
+
+        if (LEVEL_PROPERTY_NAME.equals(name)) {
+
+            Log4jLevel l = null;
+
+            if (value != null) {
+
+                l = Log4jLevel.fromLiteral(value);
+
+                if (l == null) {
+
+                    throw new IllegalArgumentException(
+                            "invalid '" + LEVEL_PROPERTY_NAME + "' value: \"" + value + "\"");
+                }
+            }
+
+            setLevel(l);
+        }
+        else if (LOGGER_PROPERTY_NAME.equals(name)) {
+
+            setLogger(value);
+        }
+        else if (THREAD_NAME_PROPERTY_NAME.equals(name)) {
+
+            setThreadName(value);
+        }
+        else if (MESSAGE_PROPERTY_NAME.equals(name)) {
+
+            setMessage(value);
+        }
+        else if (EXCEPTION_PROPERTY_NAME.equals(name)) {
+
+            setExceptionRendering(value);
+        }
+        else {
+
+            throw new IllegalArgumentException("'" + name + "' is not a field-backed property");
+        }
+    }
+
+    /**
+     * Stores the exception rendering lines that end the raw representation with the rest of the raw representation.
+     */
+    private void storeRawException() {
+
+        if (rawExceptionFrom < 0) {
+
+            return;
+        }
+
+        String tail = exceptionRendering.substring(rawExceptionFrom);
+
+        rawExceptionFrom = -1;
+
+        super.appendRawLine(tail);
+    }
+
+    private String materialize(int from, int to) {
+
+        //
+        // the offsets point into the first line, the accumulated continuation lines, if any, are not relevant
+        //
+
+        String raw = super.getRawRepresentation();
+
+        if (raw == null) {
+
+            throw new IllegalStateException("no raw representation to materialize [" + from + ", " + to + ") from");
+        }
+
+        return raw.substring(from, to);
+    }
+
+    private void addIfNotNull(List<Property> properties, String name) {
+
+        StringProperty p = getStringProperty(name);
+
+        if (p != null) {
+
+            properties.add(p);
+        }
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
@@ -16,10 +16,14 @@
 
 package io.novaordis.events.log4j.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.LongSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +32,7 @@ import io.novaordis.events.api.event.Event;
 import io.novaordis.events.api.parser.ParserBase;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+import io.novaordis.events.log4j.pattern.StringDictionary;
 import io.novaordis.events.query.Query;
 import io.novaordis.utilities.parsing.ParsingException;
 
@@ -41,6 +46,14 @@ public class Log4jParser extends ParserBase {
 
     private static final Logger log = LoggerFactory.getLogger(Log4jParser.class);
 
+    public static final int DEFAULT_LAYOUT_INFERENCE_SAMPLE_SIZE = 100;
+
+    //
+    // the continuation caps applied by the command line; a parser instance is not capped unless configured
+    //
+    public static final int DEFAULT_MAX_CONTINUATION_LINES = 10000;
+    public static final int DEFAULT_MAX_CONTINUATION_CHARACTERS = 1024 * 1024;
+
     // Static ----------------------------------------------------------------------------------------------------------
 
     // Attributes ------------------------------------------------------------------------------------------------------
@@ -51,6 +64,72 @@ public class Log4jParser extends ParserBase {
 
     private Log4jEventImpl currentEvent;
 
+    // the filter installed with setFilter(), null means no filtering
+    private EventFilter configuredFilter;
+
+    // the last query passed to parse(long, String, Query), null means no query
+    private Query query;
+
+    // the filter in effect: the configured one, combined with the predicates derived from the query, if any
+    private EventFilter filter;
+
+    //
+    // true if the last log event rendering line was rejected by the filter, so its continuation lines must be discarded
+    //
+    private boolean rejected;
+
+    // 0 means no pattern layout inference
+    private int layoutInferenceSampleSize;
+
+    //
+    // the lines buffered while sampling for pattern layout inference, null when not sampling
+    //
+    private List<String> sample;
+    private List<Long> sampleLineNumbers;
+
+    //
+    // true if the pattern layout was inferred, in which case the lines that start with a timestamp but do not match the
+    // layout are parsed as new events with heuristics, instead of being appended to the current event
+    //
+    private boolean layoutInferred;
+    private long layoutMismatchCount;
+
+    //
+    // the per-event cap on retained continuation lines; the lines past the cap are dropped and counted. Unlimited
+    // (Integer.MAX_VALUE) by default.
+    //
+    private int maxContinuationLines;
+    private int maxContinuationCharacters;
+
+    //
+    // the continuation lines retained by, and dropped from, the current event
+    //
+    private int continuationLines;
+    private long continuationCharacters;
+    private int truncatedLines;
+
+    // null means the exception renderings are not interned
+    private ExceptionDictionary exceptionDictionary;
+
+    // null means the logger and thread names are not interned
+    private StringDictionary dictionary;
+
+    //
+    // streaming support: 0 means the current event is held until the next event starts or the parser is closed
+    //
+    private long idleTimeout;
+    private LateLinePolicy lateLinePolicy;
+    private LongSupplier clock;
+
+    // the time the last line was received, and the time the first line of the current event was received
+    private long lastLineTime;
+    private long currentEventTime;
+
+    // the last event flushed on idle timeout, as long as no other event started; the late lines belong to it
+    private Log4jEventImpl flushedEvent;
+
+    private Log4jParserMetrics metrics;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Log4jParser() {
@@ -61,6 +140,13 @@ public class Log4jParser extends ParserBase {
     public Log4jParser(Log4jPatternLayout patternLayout) {
 
         fullyParsedEvents = new ArrayList<>();
+        maxContinuationLines = Integer.MAX_VALUE;
+        maxContinuationCharacters = Integer.MAX_VALUE;
+        exceptionDictionary = new ExceptionDictionary();
+        dictionary = new StringDictionary();
+        lateLinePolicy = LateLinePolicy.FOLLOW_UP;
+        clock = System::currentTimeMillis;
+        metrics = new Log4jParserMetrics();
 
         setPatternLayout(patternLayout);
     }
@@ -70,64 +156,41 @@ public class Log4jParser extends ParserBase {
     @Override
     protected List<Event> parse(long lineNumber, String line, Query query) throws ParsingException {
 
-        if (patternLayout == null) {
-
-            applyHeuristics(lineNumber, line);
-        }
-        else {
+        if (query != this.query) {
 
             //
-            // there is a pattern layout in place, use it to parse the line
+            // translate the query into a filter; the configured filter is not modified, it may be shared
             //
 
-            //
-            // in most cases, lines are structured log event renderings so attempt preemptive parsing
-            //
-
-            try {
-
-                Log4jEventImpl event = patternLayout.parse(lineNumber, line);
-
-                //
-                // parsing succeeded, we got another log event, move the current one, if any, to the fully parsed
-                // event queue, and roll with this one
-                //
-
-                if (currentEvent != null) {
-
-                    fullyParsedEvents.add(currentEvent);
-                }
+            this.query = query;
 
-                currentEvent = event;
+            if (query == null) {
 
+                filter = configuredFilter;
             }
-            catch(Log4jPatternLayoutException e) {
-
-                if (currentEvent == null) {
-
-                    //
-                    // bubble the exception up
-                    //
-
-                    throw new ParsingException(lineNumber, e);
-                }
-
-                //
-                // attempt to pass it to the current event, it may be an exception stack trace or multi-line message
-                // line
-                //
+            else {
 
-                currentEvent.appendLine(line);
+                EventFilter f = configuredFilter == null ? new EventFilter() : configuredFilter.copy();
+                f.pushDown(query);
+                filter = f;
             }
-
         }
 
-        return flush();
+        return parse(lineNumber, line);
     }
 
     @Override
     protected List<Event> close(long lineNumber) throws ParsingException {
 
+        if (sample != null) {
+
+            //
+            // the content is shorter than the sample, infer from what we have
+            //
+
+            endSampling();
+        }
+
         List<Event> result = flush();
 
         if (currentEvent == null) {
@@ -135,6 +198,13 @@ public class Log4jParser extends ParserBase {
             return result;
         }
 
+        complete();
+
+        if (filter != null && !filter.selects(currentEvent)) {
+
+            return result;
+        }
+
         if (result.isEmpty()) {
 
             return Arrays.asList(currentEvent);
@@ -156,6 +226,17 @@ public class Log4jParser extends ParserBase {
     public void setPatternLayout(Log4jPatternLayout patternLayout) {
 
         this.patternLayout = patternLayout;
+        this.layoutInferred = false;
+
+        if (patternLayout != null) {
+
+            //
+            // an explicit layout makes inference unnecessary
+            //
+
+            this.sample = null;
+            this.sampleLineNumbers = null;
+        }
 
         log.debug(this + " installed a log4j pattern layout: " + patternLayout);
     }
@@ -168,6 +249,282 @@ public class Log4jParser extends ParserBase {
         return patternLayout;
     }
 
+    /**
+     * Enables pattern layout inference: if no pattern layout is installed when parsing starts, the parser buffers the
+     * first 'sampleSize' lines, attempts to infer a pattern layout from them and, if it succeeds, it uses the inferred
+     * layout for the entire content instead of heuristics. The inferred layout literal is logged, so it can be
+     * specified explicitly next time. Must be invoked before the instance is used to parse content.
+     *
+     * The sample may not cover all the formats present in the content: the lines that start with a timestamp but do
+     * not match the inferred layout are parsed as new events with heuristics, instead of being appended to the
+     * preceding event, and a warning is logged.
+     *
+     * @param sampleSize 0 disables inference.
+     *
+     * @see PatternLayoutInference
+     */
+    public void setLayoutInferenceSampleSize(int sampleSize) {
+
+        if (sampleSize < 0) {
+
+            throw new IllegalArgumentException("invalid sample size " + sampleSize);
+        }
+
+        this.layoutInferenceSampleSize = sampleSize;
+
+        if (sampleSize > 0 && patternLayout == null) {
+
+            this.sample = new ArrayList<>();
+            this.sampleLineNumbers = new ArrayList<>();
+        }
+        else {
+
+            this.sample = null;
+            this.sampleLineNumbers = null;
+        }
+    }
+
+    public int getLayoutInferenceSampleSize() {
+
+        return layoutInferenceSampleSize;
+    }
+
+    /**
+     * Installs a filter whose predicates are evaluated while the lines are parsed, so the events that cannot match are
+     * abandoned as early as possible, together with their continuation lines, instead of being fully built and
+     * discarded downstream. Must be invoked before the instance is used to parse content.
+     *
+     * The Query passed to parse(long, String, Query) is pushed down into a copy of this filter, the instance passed
+     * here is not modified.
+     *
+     * @param filter null or empty means no filtering.
+     *
+     * @see EventFilter#pushDown(Query)
+     */
+    public void setFilter(EventFilter filter) {
+
+        this.configuredFilter = filter == null || filter.isEmpty() ? null : filter;
+        this.filter = configuredFilter;
+        this.query = null;
+    }
+
+    /**
+     * May return null.
+     */
+    public EventFilter getFilter() {
+
+        return configuredFilter;
+    }
+
+    /**
+     * @see Log4jParser#setMaxContinuationLines(int)
+     */
+    public int getMaxContinuationLines() {
+
+        return maxContinuationLines;
+    }
+
+    /**
+     * Caps the number of continuation lines (multi-line message or exception stack trace lines) retained by an event.
+     * The lines past the cap are dropped, and replaced by a single marker line that states how many lines were
+     * dropped, so pathological stack traces cannot exhaust the heap. Unlimited by default. Must be invoked before the
+     * instance is used to parse content.
+     */
+    public void setMaxContinuationLines(int n) {
+
+        if (n <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum continuation line count " + n);
+        }
+
+        this.maxContinuationLines = n;
+    }
+
+    /**
+     * @see Log4jParser#setMaxContinuationCharacters(int)
+     */
+    public int getMaxContinuationCharacters() {
+
+        return maxContinuationCharacters;
+    }
+
+    /**
+     * Caps the total length of the continuation lines retained by an event, line separators included.
+     *
+     * @see Log4jParser#setMaxContinuationLines(int)
+     */
+    public void setMaxContinuationCharacters(int n) {
+
+        if (n <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum continuation character count " + n);
+        }
+
+        this.maxContinuationCharacters = n;
+    }
+
+    /**
+     * May return null.
+     *
+     * @see Log4jParser#setExceptionDictionary(ExceptionDictionary)
+     */
+    public ExceptionDictionary getExceptionDictionary() {
+
+        return exceptionDictionary;
+    }
+
+    /**
+     * Installs the dictionary the identical exception renderings are interned into, as the events are completed. By
+     * default, each parser has its own dictionary. Null disables interning; the fingerprints are still available on
+     * demand, from the events.
+     */
+    public void setExceptionDictionary(ExceptionDictionary d) {
+
+        this.exceptionDictionary = d;
+    }
+
+    /**
+     * May return null.
+     *
+     * @see Log4jParser#setDictionary(StringDictionary)
+     */
+    public StringDictionary getDictionary() {
+
+        return dictionary;
+    }
+
+    /**
+     * Installs the dictionary the logger and thread names parsed with the pattern layout are interned with, so all
+     * events produced by this parser share the same instance for the same name. By default, each parser has its own
+     * bounded dictionary. The dictionary is not thread safe, so it must not be shared with parsers that run
+     * concurrently. Null disables interning.
+     *
+     * When interning is enabled, logger and thread names are not deferred in lazy materialization mode.
+     *
+     * @see Log4jPatternLayout#setLazyMaterialization(boolean)
+     */
+    public void setDictionary(StringDictionary d) {
+
+        this.dictionary = d;
+    }
+
+    /**
+     * @see Log4jParser#setIdleTimeout(long)
+     */
+    public long getIdleTimeout() {
+
+        return idleTimeout;
+    }
+
+    /**
+     * Streaming support: the current event is held by the parser until the next event starts, as the following lines
+     * may still belong to it. With an idle timeout, flushIfIdle() completes and emits the current event if no line
+     * was received within the timeout, so an event is not held indefinitely when the content stops growing. The
+     * continuation lines that arrive after that are handled according to the late line policy.
+     *
+     * @param ms the idle timeout, in milliseconds. 0 disables the idle flush.
+     *
+     * @see Log4jParser#flushIfIdle()
+     * @see Log4jParser#setLateLinePolicy(LateLinePolicy)
+     */
+    public void setIdleTimeout(long ms) {
+
+        if (ms < 0) {
+
+            throw new IllegalArgumentException("invalid idle timeout " + ms);
+        }
+
+        this.idleTimeout = ms;
+    }
+
+    public LateLinePolicy getLateLinePolicy() {
+
+        return lateLinePolicy;
+    }
+
+    /**
+     * @see Log4jParser#setIdleTimeout(long)
+     */
+    public void setLateLinePolicy(LateLinePolicy p) {
+
+        if (p == null) {
+
+            throw new IllegalArgumentException("null late line policy");
+        }
+
+        this.lateLinePolicy = p;
+    }
+
+    /**
+     * Completes and returns the current event if an idle timeout is configured and no line was received within the
+     * timeout. If the parser is still sampling the content for pattern layout inference, the layout is inferred from
+     * the lines received so far. Meant to be invoked by the code that feeds the parser, when it finds no new content.
+     *
+     * @return the events completed by this invocation, never null.
+     *
+     * @see Log4jParser#setIdleTimeout(long)
+     */
+    public List<Event> flushIfIdle() throws ParsingException {
+
+        if (idleTimeout == 0L || clock.getAsLong() - lastLineTime < idleTimeout) {
+
+            return Collections.emptyList();
+        }
+
+        if (sample != null) {
+
+            if (sample.isEmpty()) {
+
+                return Collections.emptyList();
+            }
+
+            endSampling();
+        }
+
+        if (currentEvent != null) {
+
+            log.debug(this + " flushing the event that starts on line " + currentEvent.getLineNumber() +
+                    " on idle timeout");
+
+            complete();
+            fullyParsedEvents.add(currentEvent);
+
+            flushedEvent = currentEvent;
+            currentEvent = null;
+
+            metrics.idleFlush();
+        }
+
+        return flush();
+    }
+
+    public Log4jParserMetrics getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Memory-mapped ingestion mode: parses the whole file without going through the line-by-line String feed. The
+     * events are delivered to the sink in batches, as soon as they are fully parsed, and the last event is delivered
+     * when the end of the file is reached. Like in the case of the line-by-line feed, the parser instance should not be
+     * reused after the file was parsed.
+     *
+     * Compressed files (gzip, zstd, xz) are detected by their magic bytes, and they are decompressed while read; their
+     * lines are fed to the parser the same way.
+     *
+     * @return the number of lines read.
+     *
+     * @see MappedLineReader
+     * @see Compression
+     */
+    public long parse(File file, EventSink sink) throws IOException, ParsingException {
+
+        try(LineReader reader = newLineReader(file)) {
+
+            return parse(reader, 0L, sink);
+        }
+    }
+
     @Override
     public String toString() {
 
@@ -184,6 +541,206 @@ public class Log4jParser extends ParserBase {
 
     // Package protected -----------------------------------------------------------------------------------------------
 
+    /**
+     * @return a memory-mapped reader for uncompressed files, and a reader of the decompressed content for compressed
+     * files. The format is detected from the beginning of the mapped content, so uncompressed files are only opened
+     * once.
+     */
+    static LineReader newLineReader(File file) throws IOException {
+
+        MappedLineReader mapped = new MappedLineReader(file);
+
+        byte[] header = new byte[Compression.HEADER_SIZE];
+
+        Compression compression = Compression.detect(header, mapped.peek(header));
+
+        if (Compression.NONE == compression) {
+
+            return mapped;
+        }
+
+        mapped.close();
+
+        log.debug("reading " + compression + " compressed content from " + file);
+
+        return new StreamLineReader(
+                compression.decompress(file), StreamLineReader.DEFAULT_BUFFER_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The CharSequence equivalent of parse(long, String, Query), used by the ingestion modes that do not decode each
+     * line into a String (memory-mapped files, for example). The line is only copied if it ends up being stored.
+     */
+    List<Event> parse(long lineNumber, CharSequence line) throws ParsingException {
+
+        if (idleTimeout > 0L) {
+
+            lastLineTime = clock.getAsLong();
+        }
+
+        if (sample != null && patternLayout == null) {
+
+            sample.add(line.toString());
+            sampleLineNumbers.add(lineNumber);
+
+            if (sample.size() < layoutInferenceSampleSize) {
+
+                return Collections.emptyList();
+            }
+
+            endSampling();
+
+            return flush();
+        }
+
+        if (patternLayout == null) {
+
+            applyHeuristics(lineNumber, line.toString());
+        }
+        else {
+
+            //
+            // there is a pattern layout in place, use it to parse the line
+            //
+
+            //
+            // in most cases, lines are structured log event renderings so attempt preemptive parsing
+            //
+
+            try {
+
+                Log4jEventImpl event = patternLayout.parse(lineNumber, line, filter, dictionary);
+
+                //
+                // parsing succeeded, we got another log event, move the current one, if any, to the fully parsed
+                // event queue, and roll with this one; a null event means the event was rejected by the filter
+                //
+
+                if (currentEvent != null) {
+
+                    complete();
+                    fullyParsedEvents.add(currentEvent);
+                }
+
+                currentEvent = event;
+                currentEventTime = lastLineTime;
+                flushedEvent = null;
+                rejected = event == null;
+            }
+            catch(Log4jPatternLayoutException | IllegalArgumentException e) {
+
+                //
+                // a field shorter than the padding of its specifier is reported by the format modifier as an
+                // IllegalArgumentException; it is a mismatch like any other
+                //
+
+                if (layoutInferred) {
+
+                    //
+                    // the sample may not have covered all the formats present in the content; a line that starts with
+                    // a timestamp is a new event, even if it does not match the inferred layout
+                    //
+
+                    String s = line.toString();
+
+                    TimestampMatcher t = TimestampMatcher.find(lineNumber, s);
+
+                    if (t != null) {
+
+                        layoutMismatch(lineNumber);
+                        startHeuristicEvent(lineNumber, t, s);
+
+                        return flush();
+                    }
+                }
+
+                if (rejected) {
+
+                    //
+                    // continuation line of a rejected event
+                    //
+
+                    return flush();
+                }
+
+                if (currentEvent == null && flushedEvent != null) {
+
+                    appendLateLine(lineNumber, line.toString());
+
+                    return flush();
+                }
+
+                if (currentEvent == null) {
+
+                    //
+                    // bubble the exception up
+                    //
+
+                    throw new ParsingException(lineNumber, e);
+                }
+
+                //
+                // attempt to pass it to the current event, it may be an exception stack trace or multi-line message
+                // line
+                //
+
+                appendContinuationLine(line.toString());
+            }
+        }
+
+        return flush();
+    }
+
+    /**
+     * Parses all lines provided by the reader and sends the events to the sink, including the last one.
+     *
+     * @param lineNumberOffset the number of lines in the file that precede the lines provided by the reader, used to
+     *                         compute the line numbers.
+     *
+     * @return the number of lines read.
+     */
+    long parse(LineReader reader, long lineNumberOffset, EventSink sink) throws IOException, ParsingException {
+
+        long lineNumber = lineNumberOffset;
+
+        CharSequence line;
+
+        while((line = reader.readLine()) != null) {
+
+            List<Event> events = parse(++ lineNumber, line);
+
+            if (!events.isEmpty()) {
+
+                sink.accept(events);
+            }
+        }
+
+        List<Event> events = close(lineNumber);
+
+        if (!events.isEmpty()) {
+
+            sink.accept(events);
+        }
+
+        return lineNumber - lineNumberOffset;
+    }
+
+    /**
+     * Completes the current event and returns it, together with the fully parsed events not returned yet, like close()
+     * does, but leaves the parser able to parse more content. Only valid if the content that follows starts with an
+     * event, as it is the case of the content split at event boundaries.
+     */
+    List<Event> flushAtEventBoundary(long lineNumber) throws ParsingException {
+
+        List<Event> events = close(lineNumber);
+
+        currentEvent = null;
+        flushedEvent = null;
+        rejected = false;
+
+        return events;
+    }
+
     void applyHeuristics(long lineNumber, String line) throws ParsingException {
 
         TimestampMatcher t = TimestampMatcher.find(lineNumber, line);
@@ -195,38 +752,66 @@ public class Log4jParser extends ParserBase {
             // discarded
             //
 
-            if (currentEvent == null) {
+            if (rejected) {
+
+                //
+                // continuation line of a rejected event
+                //
+
+                return;
+            }
+
+            if (currentEvent == null && flushedEvent != null) {
+
+                appendLateLine(lineNumber, line);
+            }
+            else if (currentEvent == null) {
 
                 log.warn("discarding line " + lineNumber + ", no timestamp and no previous event");
             }
             else {
 
-                currentEvent.appendRawLine(line);
+                appendContinuationLine(line);
             }
         }
         else {
 
-
             //
             // we found a timestamp at the beginning of the line, this is a new event
             //
 
-            if (currentEvent != null) {
-
-                //
-                // save the current event, we're done with it
-                //
-
-                fullyParsedEvents.add(currentEvent);
-            }
-
-            currentEvent = Log4jEvent.build(lineNumber, t, t.getIndexOfNextCharInLine(), line);
+            startHeuristicEvent(lineNumber, t, line);
         }
     }
 
+    /**
+     * @return a new parser with the configuration of this one: the pattern layout, as a distinct instance built from
+     * the same literal, the filter, the continuation caps, the idle timeout and the late line policy. The dictionaries
+     * are not shared, the new parser gets empty ones if interning is enabled, and layout inference is not copied.
+     * Intended for the parsers that run concurrently on parts of the same content.
+     */
+    Log4jParser copyConfiguration() {
+
+        Log4jParser p = new Log4jParser(patternLayout == null ? null :
+                FileParsers.newPatternLayout(patternLayout.getLiteral(), patternLayout.isLazyMaterialization()));
+
+        p.configuredFilter = configuredFilter;
+        p.query = query;
+        p.filter = filter;
+        p.maxContinuationLines = maxContinuationLines;
+        p.maxContinuationCharacters = maxContinuationCharacters;
+        p.exceptionDictionary = exceptionDictionary == null ? null : new ExceptionDictionary();
+        p.dictionary = dictionary == null ? null : new StringDictionary();
+        p.idleTimeout = idleTimeout;
+        p.lateLinePolicy = lateLinePolicy;
+        p.clock = clock;
+
+        return p;
+    }
+
     /**
      * Returns the actual fully parsed events list instance, if it contains accumulated events, and replaces it with
-     * a new one.
+     * a new one. The events not selected by the filter's query, if any, are dropped.
      */
     List<Event> flush() {
 
@@ -239,6 +824,11 @@ public class Log4jParser extends ParserBase {
 
         fullyParsedEvents = new ArrayList<>();
 
+        if (filter != null && filter.getQuery() != null) {
+
+            result.removeIf(e -> !filter.selects(e));
+        }
+
         return result;
     }
 
@@ -258,10 +848,219 @@ public class Log4jParser extends ParserBase {
         return fullyParsedEvents;
     }
 
+    /**
+     * The time source used for the idle timeout and the emission latency, in milliseconds.
+     */
+    void setClock(LongSupplier clock) {
+
+        this.clock = clock;
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    /**
+     * Appends the line to the current event, unless the event already retains the maximum number of continuation
+     * lines or characters. With a pattern layout, the line goes to the message or the exception rendering, according
+     * to the event's append mode; with heuristics, it only goes to the raw representation.
+     */
+    private void appendContinuationLine(String line) {
+
+        if (currentEvent.isFollowUp()) {
+
+            metrics.lateLine();
+        }
+
+        if (truncatedLines > 0 || continuationLines >= maxContinuationLines ||
+                continuationCharacters + line.length() + 1 > maxContinuationCharacters) {
+
+            truncatedLines ++;
+            return;
+        }
+
+        continuationLines ++;
+        continuationCharacters += line.length() + 1;
+
+        append(line);
+    }
+
+    /**
+     * Invoked when the current event is complete: it records the truncation, if any, folds the accumulated
+     * continuation lines into the event, and fingerprints and interns the exception rendering, if any.
+     */
+    private void complete() {
+
+        if (truncatedLines > 0) {
+
+            log.debug(this + " dropped " + truncatedLines + " continuation line(s) of the event that starts on line " +
+                    currentEvent.getLineNumber());
+
+            append("... " + truncatedLines + " more line(s) truncated");
+        }
+
+        currentEvent.finish();
+
+        Long fingerprint = currentEvent.getExceptionFingerprint();
+
+        if (fingerprint != null && exceptionDictionary != null) {
+
+            currentEvent.setExceptionRendering(
+                    exceptionDictionary.intern(fingerprint, currentEvent.getExceptionRendering()));
+        }
+
+        continuationLines = 0;
+        continuationCharacters = 0L;
+        truncatedLines = 0;
+
+        if (idleTimeout > 0L) {
+
+            metrics.eventEmitted(clock.getAsLong() - currentEventTime);
+        }
+        else {
+
+            metrics.eventEmitted();
+        }
+    }
+
+    /**
+     * Handles a continuation line that arrived after its event was flushed on idle timeout.
+     */
+    private void appendLateLine(long lineNumber, String line) {
+
+        if (LateLinePolicy.REPORT == lateLinePolicy) {
+
+            metrics.lateLine();
+
+            log.warn(this + " discarding line " + lineNumber + ", which arrived after the event that starts on line " +
+                    flushedEvent.getLineNumber() + " was flushed: " + line);
+            return;
+        }
+
+        Log4jEventImpl e = new Log4jEventImpl(lineNumber, flushedEvent.getTime(), flushedEvent.getLevel(),
+                flushedEvent.getLogger(), flushedEvent.getThreadName(), null, null);
+
+        e.setFollowUp(true);
+        e.setAppendMode(flushedEvent.getAppendMode());
+
+        currentEvent = e;
+        currentEventTime = lastLineTime;
+        flushedEvent = null;
+
+        metrics.followUpEvent();
+
+        appendContinuationLine(line);
+    }
+
+    /**
+     * Builds a new event with heuristics from a line that starts with a timestamp, and makes it the current event.
+     */
+    private void startHeuristicEvent(long lineNumber, TimestampMatcher t, String line) throws ParsingException {
+
+        if (currentEvent != null) {
+
+            //
+            // save the current event, we're done with it
+            //
+
+            complete();
+            fullyParsedEvents.add(currentEvent);
+        }
+
+        currentEvent = Log4jEvent.build(lineNumber, t, t.getIndexOfNextCharInLine(), line);
+        currentEventTime = lastLineTime;
+        flushedEvent = null;
+
+        //
+        // without a pattern layout there is nothing to push down, the event is evaluated once built
+        //
+
+        rejected = filter != null && !filter.accepts(currentEvent);
+
+        if (rejected) {
+
+            currentEvent = null;
+        }
+    }
+
+    /**
+     * Warns on the first line that starts with a timestamp but does not match the inferred layout, the following ones
+     * are only counted.
+     */
+    private void layoutMismatch(long lineNumber) {
+
+        if (layoutMismatchCount ++ == 0) {
+
+            log.warn("line " + lineNumber + " starts with a timestamp but does not match the inferred log4j pattern " +
+                    "layout \"" + patternLayout.getLiteral() + "\", parsing it, and the similar lines that follow, " +
+                    "with heuristics; specify the layout with -f if this is not intended");
+        }
+        else {
+
+            log.debug("line " + lineNumber + " does not match the inferred log4j pattern layout, parsing it with " +
+                    "heuristics");
+        }
+    }
+
+    private void append(String line) {
+
+        //
+        // the events built with heuristics, even when a pattern layout is in place, only have a raw representation
+        //
+
+        if (patternLayout == null || Log4jEventImpl.NO_APPEND_MODE == currentEvent.getAppendMode()) {
+
+            currentEvent.appendRawLine(line);
+        }
+        else {
+
+            currentEvent.appendLine(line);
+        }
+    }
+
+    /**
+     * Attempts to infer the pattern layout from the sample, installs it on success, and then parses the buffered lines.
+     */
+    private void endSampling() throws ParsingException {
+
+        List<String> lines = sample;
+        List<Long> lineNumbers = sampleLineNumbers;
+
+        sample = null;
+        sampleLineNumbers = null;
+
+        Log4jPatternLayout inferred = PatternLayoutInference.infer(lines);
+
+        if (inferred == null) {
+
+            log.info("could not infer the log4j pattern layout from the first " + lines.size() +
+                    " line(s), using heuristics");
+        }
+        else {
+
+            log.info("inferred log4j pattern layout from the first " + lines.size() + " line(s): \"" +
+                    inferred.getLiteral() + "\", specify it with -f to skip inference");
+
+            setPatternLayout(inferred);
+
+            layoutInferred = true;
+        }
+
+        List<Event> events = new ArrayList<>();
+
+        for(int i = 0; i < lines.size(); i ++) {
+
+            events.addAll(parse(lineNumbers.get(i), lines.get(i)));
+        }
+
+        //
+        // put the events back, they will be returned by the next flush()
+        //
+
+        events.addAll(fullyParsedEvents);
+        fullyParsedEvents = events;
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+/**
+ * The counters of a Log4jParser instance.
+ *
+ * The emission latency is the time between the parser receiving the first line of an event and the event being
+ * emitted - returned by parse(), flushIfIdle() or close(). In streaming use, where lines are parsed as soon as they
+ * are written, it approximates the latency from write to emission. Since it requires reading the clock for each
+ * line, it is only measured when an idle timeout is configured.
+ *
+ * Not thread safe, the counters are updated by the parsing thread.
+ *
+ * @see Log4jParser#setIdleTimeout(long)
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class Log4jParserMetrics {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private long emittedEventCount;
+    private long idleFlushCount;
+    private long lateLineCount;
+    private long followUpEventCount;
+
+    private long latencyCount;
+    private long totalLatency;
+    private long maxLatency;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of completed events.
+     */
+    public long getEmittedEventCount() {
+
+        return emittedEventCount;
+    }
+
+    /**
+     * @return the number of events that were flushed because no line arrived within the idle timeout.
+     */
+    public long getIdleFlushCount() {
+
+        return idleFlushCount;
+    }
+
+    /**
+     * @return the number of continuation lines that arrived after their event was flushed on idle timeout.
+     */
+    public long getLateLineCount() {
+
+        return lateLineCount;
+    }
+
+    public long getFollowUpEventCount() {
+
+        return followUpEventCount;
+    }
+
+    /**
+     * @return the number of events whose emission latency was measured.
+     */
+    public long getLatencyCount() {
+
+        return latencyCount;
+    }
+
+    /**
+     * @return the average emission latency, in milliseconds, or 0 if no latency was measured.
+     */
+    public double getAverageLatency() {
+
+        return latencyCount == 0 ? 0d : (double)totalLatency / latencyCount;
+    }
+
+    /**
+     * @return the maximum emission latency, in milliseconds.
+     */
+    public long getMaxLatency() {
+
+        return maxLatency;
+    }
+
+    @Override
+    public String toString() {
+
+        return "emitted=" + emittedEventCount + ", idle flushes=" + idleFlushCount + ", late lines=" + lateLineCount +
+                ", follow-ups=" + followUpEventCount + ", average latency=" + getAverageLatency() +
+                " ms, max latency=" + maxLatency + " ms";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    void eventEmitted() {
+
+        emittedEventCount ++;
+    }
+
+    /**
+     * @param latency the emission latency, in milliseconds.
+     */
+    void eventEmitted(long latency) {
+
+        emittedEventCount ++;
+        latencyCount ++;
+        totalLatency += latency;
+
+        if (latency > maxLatency) {
+
+            maxLatency = latency;
+        }
+    }
+
+    void idleFlush() {
+
+        idleFlushCount ++;
+    }
+
+    void lateLine() {
+
+        lateLineCount ++;
+    }
+
+    void followUpEvent() {
+
+        followUpEventCount ++;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
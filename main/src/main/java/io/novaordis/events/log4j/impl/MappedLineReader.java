@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads lines from a memory-mapped log file. The file is mapped in large windows that roll over the file, so files
+ * larger than 2 GB can be read, and line boundaries are identified directly in the mapped buffer.
+ *
+ * Lines that only contain ASCII characters, which is the vast majority of log content, are handed over as CharSequence
+ * views of the mapped buffer, without being decoded or copied. Lines that contain other characters are decoded with
+ * the configured charset, which must be ASCII-compatible (UTF-8, ISO-8859-1, etc.).
+ *
+ * Lines are terminated by '\n' or "\r\n". The last line of the file does not need to be terminated.
+ *
+ * The reader may be restricted to a byte range of the file: it returns the lines that <b>start</b> within the range,
+ * including the last one, which may extend past the end of the range. The start of the range must be a line start.
+ *
+ * Not thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+public class MappedLineReader implements LineReader {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private Charset charset;
+
+    private long fileSize;
+    private long end;
+    private int windowSize;
+
+    private MappedByteBuffer window;
+
+    // the file offset of the first byte of the current window
+    private long windowStart;
+
+    // the position, within the current window, of the next line start
+    private int position;
+
+    // the file offset of the last line returned by readLine()
+    private long lineOffset;
+
+    private long lineCount;
+
+    private LineSlice slice;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public MappedLineReader(File f) throws IOException {
+
+        this(f, 0L, Long.MAX_VALUE, DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param start the file offset of the first line to read. Must be a line start.
+     * @param end the offset past which no new lines are read. Long.MAX_VALUE means "to the end of the file".
+     * @param windowSize the initial size of the mapped window. It is increased, if needed, to fit lines that are
+     *                   longer than the window.
+     */
+    public MappedLineReader(File f, long start, long end, int windowSize, Charset charset) throws IOException {
+
+        if (f == null) {
+
+            throw new IllegalArgumentException("null file");
+        }
+
+        if (start < 0 || start > end) {
+
+            throw new IllegalArgumentException("invalid range [" + start + ", " + end + ")");
+        }
+
+        if (windowSize <= 0) {
+
+            throw new IllegalArgumentException("invalid window size " + windowSize);
+        }
+
+        if (charset == null) {
+
+            throw new IllegalArgumentException("null charset");
+        }
+
+        this.file = new RandomAccessFile(f, "r");
+        this.channel = file.getChannel();
+        this.charset = charset;
+        this.fileSize = channel.size();
+        this.end = Math.min(end, fileSize);
+        this.windowSize = windowSize;
+        this.slice = new LineSlice();
+        this.lineOffset = -1L;
+
+        map(Math.min(start, fileSize), windowSize);
+    }
+
+    // LineReader implementation ---------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        //
+        // the mapped window is released when garbage collected
+        //
+
+        window = null;
+
+        closeFile();
+    }
+
+    /**
+     * @return the next line, without the line terminator, or null if there are no more lines in the range. The
+     * returned instance is only valid until the next invocation.
+     */
+    @Override
+    public CharSequence readLine() throws IOException {
+
+        if (window == null) {
+
+            throw new IOException("reader closed");
+        }
+
+        while(true) {
+
+            if (windowStart + position >= end) {
+
+                return null;
+            }
+
+            int limit = window.limit();
+            int i = position;
+            boolean ascii = true;
+
+            while(i < limit) {
+
+                byte b = window.get(i);
+
+                if (b == '\n') {
+
+                    break;
+                }
+
+                if (b < 0) {
+
+                    ascii = false;
+                }
+
+                i ++;
+            }
+
+            if (i == limit && windowStart + limit < fileSize) {
+
+                //
+                // the line continues past the end of the window, roll the window so it starts with this line; if the
+                // line is longer than the whole window, grow the window
+                //
+
+                int size = windowSize;
+
+                if (position == 0) {
+
+                    if (limit == Integer.MAX_VALUE) {
+
+                        throw new IOException("line at offset " + windowStart + " longer than " + limit + " bytes");
+                    }
+
+                    size = (int)Math.min((long)limit * 2, Integer.MAX_VALUE);
+                }
+
+                map(windowStart + position, size);
+
+                continue;
+            }
+
+            int lineEnd = i;
+
+            if (lineEnd > position && window.get(lineEnd - 1) == '\r') {
+
+                lineEnd --;
+            }
+
+            lineOffset = windowStart + position;
+            lineCount ++;
+
+            CharSequence line;
+
+            if (ascii) {
+
+                slice.set(window, position, lineEnd - position);
+                line = slice;
+            }
+            else {
+
+                line = decode(position, lineEnd);
+            }
+
+            position = i < limit ? i + 1 : limit;
+
+            return line;
+        }
+    }
+
+    @Override
+    public long getLineCount() {
+
+        return lineCount;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the file offset of the last line returned by readLine(), or -1 if no line was read yet.
+     */
+    public long getLineOffset() {
+
+        return lineOffset;
+    }
+
+    /**
+     * @return the file offset of the next line to be read.
+     */
+    public long getOffset() {
+
+        return windowStart + position;
+    }
+
+    public long getFileSize() {
+
+        return fileSize;
+    }
+
+    /**
+     * @return true if the current window extends to the end of the file. The window does not move anymore, and the
+     * file was closed: the reader does not hold a file descriptor, only the mapping, until it is closed.
+     */
+    public boolean isMappedToEnd() {
+
+        return channel == null;
+    }
+
+    @Override
+    public String toString() {
+
+        return "MappedLineReader[" + windowStart + "+" + position + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Copies the first bytes of the current window, without moving the read position.
+     *
+     * @return the number of bytes copied, at most b.length.
+     */
+    int peek(byte[] b) {
+
+        int n = Math.min(b.length, window.limit());
+
+        for(int i = 0; i < n; i ++) {
+
+            b[i] = window.get(i);
+        }
+
+        return n;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void map(long start, int size) throws IOException {
+
+        long length = Math.min((long)size, fileSize - start);
+
+        this.window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        this.windowStart = start;
+        this.position = 0;
+
+        if (start + length == fileSize) {
+
+            //
+            // the mapping stays valid after the file is closed, and there is nothing left to map
+            //
+
+            closeFile();
+        }
+    }
+
+    private void closeFile() throws IOException {
+
+        if (channel == null) {
+
+            return;
+        }
+
+        channel.close();
+        file.close();
+
+        channel = null;
+        file = null;
+    }
+
+    private String decode(int from, int to) {
+
+        ByteBuffer b = window.duplicate();
+        b.position(from);
+        b.limit(to);
+
+        return charset.decode(b).toString();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
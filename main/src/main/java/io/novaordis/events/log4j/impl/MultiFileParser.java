@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Parses several log files concurrently, each file on its own worker, and delivers a single event stream, ordered by
+ * event time, to the sink. The per-file streams are merged with a k-way heap merge. Events with the same time are
+ * ordered by file (in the order the files were specified) and then by line number.
+ *
+ * Each worker may read ahead at most a fixed number of events before blocking, so the memory used is bounded by
+ * the number of files times the read-ahead, no matter how large the files are.
+ *
+ * Events that do not carry a timestamp are assigned the time of the previous event from the same file, so they stay
+ * in place relative to their neighbors.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class MultiFileParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(MultiFileParser.class);
+
+    public static final int DEFAULT_READ_AHEAD = 1024;
+
+    // the maximum number of merged events delivered to the sink in one batch
+    public static final int BATCH_SIZE = 256;
+
+    // how often a blocked worker checks whether the merge was abandoned
+    private static final long POLL_INTERVAL_MS = 100L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private String patternLayoutLiteral;
+
+    private boolean lazyMaterialization;
+
+    private ExecutorService executor;
+
+    private int readAhead;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     * @param executor the executor the per-file workers run on. It must be able to run all files' workers at the same
+     *                 time, otherwise the merge will block.
+     */
+    public MultiFileParser(Log4jPatternLayout patternLayout, ExecutorService executor, int readAhead) {
+
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor");
+        }
+
+        if (readAhead <= 0) {
+
+            throw new IllegalArgumentException("invalid read-ahead " + readAhead);
+        }
+
+        //
+        // pattern layout instances are not shared between threads, each worker builds its own from the literal
+        //
+
+        this.patternLayoutLiteral = patternLayout == null ? null : patternLayout.getLiteral();
+        this.lazyMaterialization = patternLayout != null && patternLayout.isLazyMaterialization();
+        this.executor = executor;
+        this.readAhead = readAhead;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the files and delivers the merged events to the sink.
+     *
+     * @return the total number of lines read.
+     */
+    public long parse(List<File> files, EventSink sink) throws IOException, ParsingException {
+
+        if (files == null) {
+
+            throw new IllegalArgumentException("null file list");
+        }
+
+        List<Source> sources = new ArrayList<>();
+
+        for(int i = 0; i < files.size(); i ++) {
+
+            sources.add(new Source(i, files.get(i)));
+        }
+
+        log.debug(this + " merging " + files.size() + " file(s)");
+
+        try {
+
+            for(Source s: sources) {
+
+                s.future = executor.submit(s);
+            }
+
+            FileParsers.mergeByTime(sources, BATCH_SIZE, sink);
+
+            long lineCount = 0;
+
+            for(Source s: sources) {
+
+                lineCount += s.lineCount;
+            }
+
+            return lineCount;
+        }
+        finally {
+
+            for(Source s: sources) {
+
+                s.abandon();
+            }
+        }
+    }
+
+    public int getReadAhead() {
+
+        return readAhead;
+    }
+
+    @Override
+    public String toString() {
+
+        return "MultiFileParser[" + (patternLayoutLiteral == null ? "heuristics" : patternLayoutLiteral) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The per-file worker and, on the merging side, the head of the per-file stream.
+     */
+    private class Source extends FileParsers.TimeOrderedSource implements Runnable {
+
+        //
+        // the item that marks the end of the per-file stream
+        //
+        private final Event endOfStream = new Log4jEventImpl();
+
+        private File file;
+
+        private BlockingQueue<Event> queue;
+
+        private Future<?> future;
+
+        private volatile boolean abandoned;
+
+        // written by the worker, read by the merger after the end of stream was seen
+        private volatile long lineCount;
+        private volatile Throwable failure;
+
+        Source(int index, File file) {
+
+            super(index);
+
+            this.file = file;
+            this.queue = new ArrayBlockingQueue<>(readAhead);
+        }
+
+        // Runnable implementation -------------------------------------------------------------------------------------
+
+        @Override
+        public void run() {
+
+            try {
+
+                Log4jParser parser =
+                        new Log4jParser(FileParsers.newPatternLayout(patternLayoutLiteral, lazyMaterialization));
+
+                lineCount = parser.parse(file, events -> {
+
+                    for(Event e: events) {
+
+                        put(e);
+                    }
+                });
+            }
+            catch(CancellationException e) {
+
+                //
+                // the merge was abandoned, nobody is interested in the rest of the file
+                //
+
+                return;
+            }
+            catch(Exception | Error e) {
+
+                //
+                // errors must reach the merger too, otherwise it would wait forever for the end of the stream
+                //
+
+                failure = e;
+            }
+
+            try {
+
+                put(endOfStream);
+            }
+            catch(CancellationException e) {
+
+                // noop
+            }
+        }
+
+        // FileParsers.TimeOrderedSource overrides ---------------------------------------------------------------------
+
+        @Override
+        Log4jEvent nextEvent() throws IOException, ParsingException {
+
+            Event e;
+
+            try {
+
+                e = queue.take();
+            }
+            catch(InterruptedException ie) {
+
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for events from " + file, ie);
+            }
+
+            if (e == endOfStream) {
+
+                FileParsers.rethrow(failure);
+
+                return null;
+            }
+
+            return (Log4jEvent)e;
+        }
+
+        // Public ------------------------------------------------------------------------------------------------------
+
+        @Override
+        public String toString() {
+
+            return getIndex() + ": " + file;
+        }
+
+        // Package protected -------------------------------------------------------------------------------------------
+
+        void abandon() {
+
+            abandoned = true;
+
+            if (future != null) {
+
+                future.cancel(true);
+            }
+
+            queue.clear();
+        }
+
+        // Private -----------------------------------------------------------------------------------------------------
+
+        private void put(Event e) {
+
+            try {
+
+                while(!queue.offer(e, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+
+                    if (abandoned) {
+
+                        throw new CancellationException();
+                    }
+                }
+            }
+            catch(InterruptedException ie) {
+
+                throw new CancellationException();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Parses a single large log file in parallel. The file is split into byte ranges (chunks), each range is snapped to
+ * the next line that starts an event, and the ranges are parsed concurrently on a fork-join pool, each with its own
+ * Log4jParser. The per-chunk event streams are stitched back in file order, with global line numbers, and delivered to
+ * the sink.
+ *
+ * A line starts an event if the sequential parser would have started a new event on it: the line is parsed
+ * successfully by the pattern layout or, in absence of a pattern layout, it starts with a timestamp recognized by the
+ * TimestampMatcher. Since that decision only depends on the line itself, multi-line events (stack traces, multi-line
+ * messages) never span chunks, and the result is identical with the result of the sequential parsing.
+ *
+ * The chunk parsers are configured like the parser given to the constructor, if any: filter, continuation caps, late
+ * line policy. The parsing errors report file line numbers, not chunk line numbers.
+ *
+ * The events of a chunk are buffered until the chunk is delivered, and the number of chunks being parsed or waiting to
+ * be delivered at any time is bounded by 'max chunks in flight', by default twice the parallelism of the pool. The
+ * heap must accommodate the events parsed from 'max chunks in flight' x 'chunk size' bytes of content - with the
+ * defaults and 8 worker threads, the events of 1 GB of log. Lower the chunk size or the limit if that does not fit.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+public class ParallelFileParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelFileParser.class);
+
+    public static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    // the size of the buffer used to look for the next line start when snapping chunk boundaries
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // the parser whose configuration is copied by the chunk parsers, it does not parse anything itself
+    private Log4jParser configuration;
+
+    // null means "heuristics"
+    private String patternLayoutLiteral;
+
+    private boolean lazyMaterialization;
+
+    private ForkJoinPool pool;
+
+    private long chunkSize;
+
+    private int maxChunksInFlight;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses the common fork-join pool and the default chunk size.
+     *
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     */
+    public ParallelFileParser(Log4jPatternLayout patternLayout) {
+
+        this(patternLayout, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     */
+    public ParallelFileParser(Log4jPatternLayout patternLayout, ForkJoinPool pool, long chunkSize) {
+
+        this(new Log4jParser(patternLayout), pool, chunkSize);
+    }
+
+    /**
+     * @param parser the parser whose configuration is copied by the chunk parsers: pattern layout, filter,
+     *               continuation caps, late line policy. It is not used to parse anything, and it should not be
+     *               reconfigured while parse() runs.
+     */
+    public ParallelFileParser(Log4jParser parser, ForkJoinPool pool, long chunkSize) {
+
+        if (parser == null) {
+
+            throw new IllegalArgumentException("null parser");
+        }
+
+        if (pool == null) {
+
+            throw new IllegalArgumentException("null pool");
+        }
+
+        if (chunkSize <= 0) {
+
+            throw new IllegalArgumentException("invalid chunk size " + chunkSize);
+        }
+
+        //
+        // pattern layout instances are not shared between threads, each chunk parser builds its own from the literal
+        //
+
+        Log4jPatternLayout patternLayout = parser.getPatternLayout();
+
+        this.configuration = parser;
+        this.patternLayoutLiteral = patternLayout == null ? null : patternLayout.getLiteral();
+        this.lazyMaterialization = patternLayout != null && patternLayout.isLazyMaterialization();
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = 2 * pool.getParallelism();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the file and delivers the events to the sink, in file order, including the last event.
+     *
+     * @return the number of lines read.
+     */
+    public long parse(File file, EventSink sink) throws IOException, ParsingException {
+
+        long[] boundaries = split(file);
+
+        int chunkCount = boundaries.length - 1;
+
+        log.debug(this + " split " + file + " in " + chunkCount + " chunk(s)");
+
+        Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+
+        int next = 0;
+        long lineCount = 0;
+
+        try {
+
+            for(int i = 0; i < chunkCount; i ++) {
+
+                while(next < chunkCount && inFlight.size() < maxChunksInFlight) {
+
+                    inFlight.add(pool.submit(new Chunk(file, boundaries[next], boundaries[next + 1])));
+                    next ++;
+                }
+
+                Chunk c;
+
+                try {
+
+                    c = FileParsers.join(inFlight.removeFirst());
+                }
+                catch(ParsingException e) {
+
+                    throw toFileLineNumber(e, lineCount);
+                }
+
+                //
+                // the chunk was parsed with line numbers relative to its start
+                //
+
+                c.renumber(lineCount);
+
+                if (!c.events.isEmpty()) {
+
+                    sink.accept(c.events);
+                }
+
+                lineCount += c.lineCount;
+            }
+        }
+        finally {
+
+            for(ForkJoinTask<Chunk> t: inFlight) {
+
+                t.cancel(true);
+            }
+        }
+
+        return lineCount;
+    }
+
+    public long getChunkSize() {
+
+        return chunkSize;
+    }
+
+    public int getMaxChunksInFlight() {
+
+        return maxChunksInFlight;
+    }
+
+    /**
+     * @param n the maximum number of chunks being parsed or waiting to be delivered at any time. It bounds the number
+     *          of buffered events, and the parallelism: there is no point in setting it lower than the parallelism of
+     *          the pool, unless memory is scarce.
+     */
+    public void setMaxChunksInFlight(int n) {
+
+        if (n <= 0) {
+
+            throw new IllegalArgumentException("invalid maximum number of chunks in flight " + n);
+        }
+
+        this.maxChunksInFlight = n;
+    }
+
+    @Override
+    public String toString() {
+
+        return "ParallelFileParser[" + (patternLayoutLiteral == null ? "heuristics" : patternLayoutLiteral) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the chunk boundaries: the first element is 0, the last is the file size, and all others are offsets of
+     * lines that start events.
+     */
+    long[] split(File file) throws IOException {
+
+        List<Long> boundaries = new ArrayList<>();
+
+        boundaries.add(0L);
+
+        long size;
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            FileChannel channel = raf.getChannel();
+
+            size = channel.size();
+
+            long last = 0L;
+
+            for(long b = chunkSize; b < size; b += chunkSize) {
+
+                if (b <= last) {
+
+                    //
+                    // the previous boundary was snapped past this one
+                    //
+
+                    continue;
+                }
+
+                long lineStart = nextLineStart(channel, b);
+
+                long eventStart = lineStart >= size ? size : nextEventStart(file, lineStart);
+
+                if (eventStart >= size) {
+
+                    break;
+                }
+
+                boundaries.add(eventStart);
+
+                last = eventStart;
+            }
+        }
+
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+
+        for(int i = 0; i < result.length; i ++) {
+
+            result[i] = boundaries.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true if the sequential parser would start a new event on this line.
+     */
+    static boolean isEventStart(Log4jPatternLayout layout, CharSequence line) {
+
+        if (layout != null) {
+
+            try {
+
+                layout.parse(0L, line);
+                return true;
+            }
+            catch(Log4jPatternLayoutException | IllegalArgumentException e) {
+
+                return false;
+            }
+        }
+
+        try {
+
+            return TimestampMatcher.find(0L, line.toString()) != null;
+        }
+        catch(ParsingException e) {
+
+            //
+            // a timestamp-like prefix, the sequential parser would fail on it too
+            //
+
+            return true;
+        }
+    }
+
+    /**
+     * @return the offset of the first line that starts at or after the given offset, or the file size.
+     */
+    static long nextLineStart(FileChannel channel, long offset) throws IOException {
+
+        long size = channel.size();
+
+        if (offset == 0) {
+
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+        //
+        // start with the byte that precedes the offset, if it is a new line, the offset is a line start
+        //
+
+        long position = offset - 1;
+
+        while(position < size) {
+
+            buffer.clear();
+
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) {
+
+                break;
+            }
+
+            for(int i = 0; i < read; i ++) {
+
+                if (buffer.get(i) == '\n') {
+
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+
+        return size;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param lineNumberOffset the number of lines that precede the chunk the exception was thrown for.
+     */
+    private static ParsingException toFileLineNumber(ParsingException e, long lineNumberOffset) {
+
+        if (e.getLineNumber() == null || lineNumberOffset == 0) {
+
+            return e;
+        }
+
+        return new ParsingException(e.getLineNumber() + lineNumberOffset, e.getMessage(), e);
+    }
+
+    /**
+     * @param lineStart must be a line start.
+     *
+     * @return the offset of the first line that starts an event, at or after the given line start, or the file size.
+     */
+    private long nextEventStart(File file, long lineStart) throws IOException {
+
+        Log4jPatternLayout layout = FileParsers.newPatternLayout(patternLayoutLiteral, lazyMaterialization);
+
+        try(MappedLineReader r = new MappedLineReader(
+                file, lineStart, Long.MAX_VALUE, SCAN_BUFFER_SIZE, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = r.readLine()) != null) {
+
+                if (isEventStart(layout, line)) {
+
+                    return r.getLineOffset();
+                }
+            }
+
+            return r.getFileSize();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private class Chunk implements Callable<Chunk> {
+
+        private File file;
+        private long start;
+        private long end;
+
+        private List<Event> events;
+        private long lineCount;
+
+        Chunk(File file, long start, long end) {
+
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.events = new ArrayList<>();
+        }
+
+        @Override
+        public Chunk call() throws Exception {
+
+            Log4jParser parser = configuration.copyConfiguration();
+
+            int windowSize = (int)Math.min(end - start + 1, MappedLineReader.DEFAULT_WINDOW_SIZE);
+
+            try(MappedLineReader r = new MappedLineReader(file, start, end, windowSize, StandardCharsets.UTF_8)) {
+
+                lineCount = parser.parse(r, 0L, events::addAll);
+            }
+
+            return this;
+        }
+
+        void renumber(long lineNumberOffset) {
+
+            if (lineNumberOffset == 0) {
+
+                return;
+            }
+
+            for(Event e: events) {
+
+                Log4jEventImpl le = (Log4jEventImpl)e;
+
+                le.setLineNumber(le.getLineNumber() + lineNumberOffset);
+            }
+        }
+
+        @Override
+        public String toString() {
+
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stream of the decompressed content of a gzip file that decompresses multi-member files (bgzip output,
+ * concatenated or appended archives) in parallel.
+ *
+ * The file is split in chunks that start at member boundaries: the end of a chunk is the first position, past the
+ * nominal chunk size, that looks like the beginning of a gzip member. The chunks are decompressed concurrently by the
+ * executor, and handed over in file order, with a bounded read-ahead. Since the member header is not distinctive
+ * enough, a chunk is only accepted if its members decompress cleanly, their trailers check out, and the last one ends
+ * exactly at the chunk end; the first chunk that is not accepted is read again, together with the rest of the file,
+ * with a sequential GZIPInputStream. The same happens when no member boundary shows up where one is expected, which
+ * is the case of single-member files, so their cost is one extra scan of a chunk's worth of compressed content.
+ *
+ * Single-member files, which is what gzip and most log rotation tools produce, get no speedup: a deflate stream cannot
+ * be split without decompressing it, so they are decompressed sequentially. Only multi-member files benefit.
+ *
+ * Not thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelGzipInputStream.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    public static final int SEQUENTIAL_BUFFER_SIZE = 64 * 1024;
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+    private static final int RESERVED_FLAGS = 0xe0;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Decompresses the gzip members stored in data[0, length), which must start with a member header and end with a
+     * member trailer.
+     *
+     * @return the decompressed content, or null if data[0, length) is not a sequence of valid gzip members.
+     */
+    static Block decompress(byte[] data, int length) {
+
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+
+        byte[] out = new byte[Math.max(4 * length, 8192)];
+        int outLength = 0;
+        int p = 0;
+
+        try {
+
+            while(p < length) {
+
+                int headerLength = headerLength(data, p, length);
+
+                if (headerLength < 0) {
+
+                    return null;
+                }
+
+                p += headerLength;
+
+                int memberStart = outLength;
+
+                inflater.reset();
+                inflater.setInput(data, p, length - p);
+
+                while(!inflater.finished()) {
+
+                    if (outLength == out.length) {
+
+                        out = Arrays.copyOf(out, 2 * out.length);
+                    }
+
+                    int n = inflater.inflate(out, outLength, out.length - outLength);
+
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+
+                        //
+                        // the member is truncated at the chunk end
+                        //
+
+                        return null;
+                    }
+
+                    outLength += n;
+                }
+
+                p = length - inflater.getRemaining();
+
+                if (p + 8 > length) {
+
+                    return null;
+                }
+
+                crc.reset();
+                crc.update(out, memberStart, outLength - memberStart);
+
+                if (readInt(data, p) != (int)crc.getValue() || readInt(data, p + 4) != outLength - memberStart) {
+
+                    return null;
+                }
+
+                p += 8;
+            }
+
+            return new Block(out, outLength);
+        }
+        catch(DataFormatException e) {
+
+            return null;
+        }
+        finally {
+
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return the length of the gzip member header that starts at data[from], or -1 if there is no valid header.
+     */
+    static int headerLength(byte[] data, int from, int length) {
+
+        int p = from + 10;
+
+        if (p > length || !isHeaderCandidate(data, from, length)) {
+
+            return -1;
+        }
+
+        int flags = data[from + 3] & 0xff;
+
+        if ((flags & FEXTRA) != 0) {
+
+            if (p + 2 > length) {
+
+                return -1;
+            }
+
+            p += 2 + ((data[p] & 0xff) | (data[p + 1] & 0xff) << 8);
+        }
+
+        if ((flags & FNAME) != 0) {
+
+            while(p < length && data[p] != 0) {
+
+                p ++;
+            }
+
+            p ++;
+        }
+
+        if ((flags & FCOMMENT) != 0) {
+
+            while(p < length && data[p] != 0) {
+
+                p ++;
+            }
+
+            p ++;
+        }
+
+        if ((flags & FHCRC) != 0) {
+
+            p += 2;
+        }
+
+        return p > length ? -1 : p - from;
+    }
+
+    /**
+     * @return true if data[from] looks like the beginning of a gzip member header: magic, deflate, no reserved flags.
+     */
+    static boolean isHeaderCandidate(byte[] data, int from, int length) {
+
+        return from + 4 <= length &&
+                data[from] == 0x1f &&
+                data[from + 1] == (byte)0x8b &&
+                data[from + 2] == 8 &&
+                (data[from + 3] & RESERVED_FLAGS) == 0;
+    }
+
+    private static int readInt(byte[] data, int from) {
+
+        return (data[from] & 0xff) |
+                (data[from + 1] & 0xff) << 8 |
+                (data[from + 2] & 0xff) << 16 |
+                (data[from + 3] & 0xff) << 24;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private File file;
+    private FileChannel channel;
+    private long fileSize;
+
+    private ExecutorService executor;
+    private int chunkSize;
+    private int readAhead;
+
+    // the chunks submitted for decompression, in file order
+    private Deque<Chunk> pending;
+
+    // the start of the next chunk to be submitted
+    private long nextChunkStart;
+
+    // the offset the sequential decompression starts from, once the parallel decompression is given up, or -1
+    private long sequentialStart;
+
+    private InputStream sequential;
+
+    private Block current;
+    private int currentPosition;
+
+    private long parallelChunkCount;
+
+    private boolean closed;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Decompresses with the common fork/join pool, with a read-ahead of two chunks per processor.
+     */
+    public ParallelGzipInputStream(File file) throws IOException {
+
+        this(file, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param chunkSize the nominal size of the compressed content decompressed by a task.
+     * @param readAhead the maximum number of chunks submitted for decompression, but not consumed yet.
+     */
+    public ParallelGzipInputStream(File file, ExecutorService executor, int chunkSize, int readAhead)
+            throws IOException {
+
+        if (file == null) {
+
+            throw new IllegalArgumentException("null file");
+        }
+
+        if (executor == null) {
+
+            throw new IllegalArgumentException("null executor");
+        }
+
+        if (chunkSize <= 0) {
+
+            throw new IllegalArgumentException("invalid chunk size " + chunkSize);
+        }
+
+        if (readAhead <= 0) {
+
+            throw new IllegalArgumentException("invalid read-ahead " + readAhead);
+        }
+
+        this.file = file;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.readAhead = readAhead;
+        this.pending = new ArrayDeque<>();
+        this.sequentialStart = -1L;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+    }
+
+    // InputStream overrides -------------------------------------------------------------------------------------------
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] b = new byte[1];
+
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+        if (closed) {
+
+            throw new IOException("stream closed");
+        }
+
+        if (off < 0 || len < 0 || len > b.length - off) {
+
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+
+            return 0;
+        }
+
+        while(true) {
+
+            if (sequential != null) {
+
+                return sequential.read(b, off, len);
+            }
+
+            if (current != null && currentPosition < current.length) {
+
+                int n = Math.min(len, current.length - currentPosition);
+
+                System.arraycopy(current.data, currentPosition, b, off, n);
+
+                currentPosition += n;
+
+                return n;
+            }
+
+            if (!advance()) {
+
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) {
+
+            return;
+        }
+
+        closed = true;
+
+        cancelPending();
+
+        current = null;
+
+        try {
+
+            if (sequential != null) {
+
+                sequential.close();
+            }
+        }
+        finally {
+
+            channel.close();
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "ParallelGzipInputStream[" + file + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * @return the number of chunks that were decompressed in parallel and handed over so far.
+     */
+    long getParallelChunkCount() {
+
+        return parallelChunkCount;
+    }
+
+    /**
+     * @return true if the parallel decompression was given up, and the rest of the file is decompressed sequentially.
+     */
+    boolean isSequential() {
+
+        return sequential != null;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Makes the next decompressed block current, or switches to sequential decompression.
+     *
+     * @return false on end of file.
+     */
+    private boolean advance() throws IOException {
+
+        submit();
+
+        Chunk chunk = pending.poll();
+
+        if (chunk == null) {
+
+            if (sequentialStart < 0) {
+
+                return false;
+            }
+
+            startSequential(sequentialStart);
+
+            return true;
+        }
+
+        Block block;
+
+        try {
+
+            block = chunk.future.get();
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("interrupted while decompressing " + file);
+        }
+        catch(ExecutionException e) {
+
+            throw new IOException("failed to decompress " + file, e.getCause());
+        }
+
+        if (block == null) {
+
+            //
+            // the chunk does not start or end on a member boundary, or it is not valid gzip content at all
+            //
+
+            log.debug(this + " falls back to sequential decompression at offset " + chunk.start);
+
+            cancelPending();
+
+            startSequential(chunk.start);
+
+            return true;
+        }
+
+        parallelChunkCount ++;
+
+        current = block;
+        currentPosition = 0;
+
+        return true;
+    }
+
+    /**
+     * Submits chunks for decompression until the read-ahead is exhausted, the end of the file is reached, or it is
+     * decided that the rest of the file is to be decompressed sequentially.
+     */
+    private void submit() throws IOException {
+
+        while(sequentialStart < 0 && nextChunkStart < fileSize && pending.size() < readAhead) {
+
+            long start = nextChunkStart;
+            long remaining = fileSize - start;
+
+            //
+            // read the nominal chunk and the window the next member boundary is expected in, plus a header's worth
+            //
+
+            int length = (int)Math.min(remaining, 2L * chunkSize + 4);
+
+            byte[] data = new byte[length];
+
+            readFully(start, data);
+
+            int end = -1;
+
+            if (remaining <= chunkSize) {
+
+                end = length;
+            }
+            else {
+
+                int windowEnd = (int)Math.min(2L * chunkSize, length);
+
+                for(int i = chunkSize; i < windowEnd; i ++) {
+
+                    if (isHeaderCandidate(data, i, length)) {
+
+                        end = i;
+                        break;
+                    }
+                }
+
+                if (end < 0 && remaining <= 2L * chunkSize) {
+
+                    end = length;
+                }
+            }
+
+            if (end < 0) {
+
+                //
+                // no member boundary where we expect one, most likely a large member
+                //
+
+                sequentialStart = start;
+
+                return;
+            }
+
+            final byte[] chunkData = data;
+            final int chunkLength = end;
+
+            pending.add(new Chunk(start, executor.submit(() -> decompress(chunkData, chunkLength))));
+
+            nextChunkStart = start + end;
+        }
+    }
+
+    private void startSequential(long start) throws IOException {
+
+        sequentialStart = -1L;
+        nextChunkStart = fileSize;
+        current = null;
+
+        channel.position(start);
+
+        sequential = new GZIPInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), SEQUENTIAL_BUFFER_SIZE),
+                SEQUENTIAL_BUFFER_SIZE);
+    }
+
+    private void cancelPending() {
+
+        for(Chunk c: pending) {
+
+            c.future.cancel(true);
+        }
+
+        pending.clear();
+    }
+
+    private void readFully(long position, byte[] data) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        while(buffer.hasRemaining()) {
+
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+
+                throw new IOException(file + " was truncated while being read");
+            }
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    static final class Block {
+
+        private final byte[] data;
+        private final int length;
+
+        Block(byte[] data, int length) {
+
+            this.data = data;
+            this.length = length;
+        }
+
+        byte[] getData() {
+
+            return data;
+        }
+
+        int getLength() {
+
+            return length;
+        }
+    }
+
+    private static final class Chunk {
+
+        private final long start;
+        private final Future<Block> future;
+
+        private Chunk(long start, Future<Block> future) {
+
+            this.start = start;
+            this.future = future;
+        }
+    }
+
+}
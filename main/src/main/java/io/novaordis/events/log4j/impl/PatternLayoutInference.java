@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Infers a log4j pattern layout from a sample of log lines, so the parser can use the compiled layout instead of
+ * heuristics when the layout is not specified.
+ *
+ * The lines that start with a timestamp known to the TimestampFormatRegistry are broken down into a sequence of
+ * elements: the date, the level (possibly padded), a bracketed logger, a thread in parentheses or in brackets, and the
+ * message. The most frequent shape wins. If both the logger and the thread are present, the message is rendered as
+ * WildFly "%s%E", otherwise as "%m".
+ *
+ * The inferred layout is validated against the sample: the first line and all lines that start with a timestamp must
+ * be parsed by it, otherwise no layout is inferred.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public final class PatternLayoutInference {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(PatternLayoutInference.class);
+
+    //
+    // stands for the level element in shapes, its final form depends on all lines of the shape
+    //
+    private static final char LEVEL_PLACEHOLDER = '\0';
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the inferred and validated layout, or null if no layout can be inferred from the sample.
+     */
+    public static Log4jPatternLayout infer(List<? extends CharSequence> sample) {
+
+        //
+        // break down the lines that start with a timestamp and group them by shape
+        //
+
+        Map<String, Shape> shapes = new LinkedHashMap<>();
+
+        for(CharSequence line: sample) {
+
+            Shape s = shapeOf(line.toString());
+
+            if (s == null) {
+
+                continue;
+            }
+
+            Shape existing = shapes.get(s.key);
+
+            if (existing == null) {
+
+                shapes.put(s.key, s);
+            }
+            else {
+
+                existing.merge(s);
+            }
+        }
+
+        Shape winner = null;
+
+        for(Shape s: shapes.values()) {
+
+            if (winner == null || s.count > winner.count) {
+
+                winner = s;
+            }
+        }
+
+        if (winner == null) {
+
+            log.debug("no line starting with a known timestamp in the sample, no pattern layout can be inferred");
+            return null;
+        }
+
+        String literal = winner.toLiteral();
+
+        Log4jPatternLayout layout;
+
+        try {
+
+            layout = new Log4jPatternLayout(literal);
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            log.debug("inferred an invalid pattern layout \"" + literal + "\"", e);
+            return null;
+        }
+
+        if (!validate(layout, sample)) {
+
+            log.debug("the inferred pattern layout \"" + literal + "\" does not parse the sample");
+            return null;
+        }
+
+        return layout;
+    }
+
+    /**
+     * @return the shape of the line, or null if the line does not start with a known timestamp.
+     */
+    static Shape shapeOf(String line) {
+
+        TimestampMatcher t = findTimestamp(line);
+
+        if (t == null || t.getTimestampFormat() == null) {
+
+            return null;
+        }
+
+        TimestampFormat f = t.getTimestampFormat();
+
+        if (f.decode(line, 0) == TimestampFormat.INVALID) {
+
+            //
+            // the timestamp does not start the line, there are leading control characters
+            //
+
+            return null;
+        }
+
+        Shape shape = new Shape();
+
+        StringBuilder key = new StringBuilder();
+
+        key.append("%d{").append(f.getPattern()).append('}');
+
+        boolean level = false;
+        boolean logger = false;
+        boolean thread = false;
+
+        int length = line.length();
+        int i = f.getWidth();
+
+        while(true) {
+
+            int spaces = countSpaces(line, i);
+
+            int j = i + spaces;
+
+            if (j >= length) {
+
+                //
+                // nothing left for the message, the rendering of an empty message ends the line
+                //
+
+                key.append(spaces(spaces));
+                break;
+            }
+
+            Log4jLevel l = level ? null : levelAt(line, j);
+
+            if (l != null) {
+
+                int end = j + l.toLiteral().length();
+                int padding = countSpaces(line, end);
+
+                if (padding == 0 || end + padding >= length) {
+
+                    break;
+                }
+
+                key.append(spaces(spaces)).append(LEVEL_PLACEHOLDER).append(' ');
+
+                shape.levelWidth = end - j + padding - 1;
+                shape.padded = padding > 1;
+
+                level = true;
+                i = end + padding;
+                continue;
+            }
+
+            char c = line.charAt(j);
+
+            if (c == '[' && (!logger || !thread)) {
+
+                int end = line.indexOf(']', j + 1);
+
+                if (end == -1) {
+
+                    break;
+                }
+
+                key.append(spaces(spaces)).append(logger ? "[%t]" : "[%c]");
+
+                if (logger) {
+
+                    thread = true;
+                }
+
+                logger = true;
+                i = end + 1;
+                continue;
+            }
+
+            if (c == '(' && !thread) {
+
+                //
+                // thread names may contain parentheses, the layout will look for the closing parenthesis that is
+                // followed by the next delimiter, so do we
+                //
+
+                int end = line.indexOf(") ", j + 1);
+
+                if (end == -1) {
+
+                    end = line.charAt(length - 1) == ')' ? length - 1 : -1;
+                }
+
+                if (end == -1) {
+
+                    break;
+                }
+
+                key.append(spaces(spaces)).append("(%t)");
+
+                thread = true;
+                i = end + 1;
+                continue;
+            }
+
+            key.append(spaces(spaces));
+            break;
+        }
+
+        //
+        // the rest is the message
+        //
+
+        key.append(logger && thread ? "%s%E" : "%m").append("%n");
+
+        shape.key = key.toString();
+        shape.count = 1;
+
+        return shape;
+    }
+
+    private static boolean validate(Log4jPatternLayout layout, List<? extends CharSequence> sample) {
+
+        for(int i = 0; i < sample.size(); i ++) {
+
+            CharSequence line = sample.get(i);
+
+            //
+            // the first line must be an event, otherwise the parser cannot start, and all lines that start with a
+            // timestamp must be events
+            //
+
+            if (i > 0 && findTimestamp(line.toString()) == null) {
+
+                continue;
+            }
+
+            try {
+
+                layout.parse((long)(i + 1), line);
+            }
+            catch(Log4jPatternLayoutException | IllegalArgumentException e) {
+
+                //
+                // a field shorter than the padding of its specifier (%-5p, for example) is reported as an
+                // IllegalArgumentException by the format modifier; either way, the candidate does not match
+                //
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static TimestampMatcher findTimestamp(String line) {
+
+        try {
+
+            return TimestampMatcher.find(0L, line);
+        }
+        catch(ParsingException e) {
+
+            return null;
+        }
+    }
+
+    private static Log4jLevel levelAt(String line, int i) {
+
+        for(Log4jLevel l: Log4jLevel.values()) {
+
+            if (line.startsWith(l.toLiteral(), i)) {
+
+                return l;
+            }
+        }
+
+        return null;
+    }
+
+    private static int countSpaces(String line, int from) {
+
+        int i = from;
+
+        while(i < line.length() && line.charAt(i) == ' ') {
+
+            i ++;
+        }
+
+        return i - from;
+    }
+
+    private static String spaces(int count) {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < count; i ++) {
+
+            sb.append(' ');
+        }
+
+        return sb.toString();
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private PatternLayoutInference() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The structure shared by a group of lines.
+     */
+    static class Shape {
+
+        private String key;
+
+        private int count;
+
+        // the widest level rendering, including the padding, if any
+        private int levelWidth;
+
+        private boolean padded;
+
+        void merge(Shape s) {
+
+            count += s.count;
+            levelWidth = Math.max(levelWidth, s.levelWidth);
+            padded = padded || s.padded;
+        }
+
+        String toLiteral() {
+
+            String level = padded ? "%-" + levelWidth + "p" : "%p";
+
+            return key.replace("" + LEVEL_PLACEHOLDER, level);
+        }
+
+        @Override
+        public String toString() {
+
+            return toLiteral() + " (" + count + ")";
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The counters of a PipelinedFileParser stage. They are updated by the stage thread and can be read from any thread,
+ * while the pipeline is running.
+ *
+ * The input stall time is the time the stage spent waiting for batches from the upstream stage - the stage is faster
+ * than its input. The output stall time is the time the stage spent waiting for room in the queue of the downstream
+ * stage - the downstream stage is slower.
+ *
+ * @see PipelinedFileParser
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class PipelineStageMetrics {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String name;
+
+    private List<SpscRingBuffer<?>> inputs;
+    private List<SpscRingBuffer<?>> outputs;
+
+    // only written by the stage thread
+    private volatile long batchCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param inputs the queues the stage consumes from. May be null.
+     * @param outputs the queues the stage produces into. May be null.
+     */
+    PipelineStageMetrics(String name, List<SpscRingBuffer<?>> inputs, List<SpscRingBuffer<?>> outputs) {
+
+        this.name = name;
+        this.inputs = inputs == null ? Collections.<SpscRingBuffer<?>>emptyList() : inputs;
+        this.outputs = outputs == null ? Collections.<SpscRingBuffer<?>>emptyList() : outputs;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public String getName() {
+
+        return name;
+    }
+
+    /**
+     * @return the number of batches processed by the stage.
+     */
+    public long getBatchCount() {
+
+        return batchCount;
+    }
+
+    /**
+     * @return the number of batches waiting in the stage's input queue(s).
+     */
+    public int getQueueDepth() {
+
+        int depth = 0;
+
+        for(SpscRingBuffer<?> b: inputs) {
+
+            depth += b.size();
+        }
+
+        return depth;
+    }
+
+    /**
+     * @return the highest number of batches observed waiting in any of the stage's input queues.
+     */
+    public int getMaxQueueDepth() {
+
+        int max = 0;
+
+        for(SpscRingBuffer<?> b: inputs) {
+
+            max = Math.max(max, b.getHighWaterMark());
+        }
+
+        return max;
+    }
+
+    /**
+     * @return the capacity of the stage's input queue(s), in batches. 0 for the stage that reads the file.
+     */
+    public int getQueueCapacity() {
+
+        int capacity = 0;
+
+        for(SpscRingBuffer<?> b: inputs) {
+
+            capacity += b.capacity();
+        }
+
+        return capacity;
+    }
+
+    /**
+     * @return the time spent waiting for input, in nanoseconds.
+     */
+    public long getInputStallNanos() {
+
+        long nanos = 0L;
+
+        for(SpscRingBuffer<?> b: inputs) {
+
+            nanos += b.getConsumerStallNanos();
+        }
+
+        return nanos;
+    }
+
+    /**
+     * @return the time spent waiting for room in the downstream queue(s), in nanoseconds.
+     */
+    public long getOutputStallNanos() {
+
+        long nanos = 0L;
+
+        for(SpscRingBuffer<?> b: outputs) {
+
+            nanos += b.getProducerStallNanos();
+        }
+
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+
+        return name + ": batches=" + batchCount + ", queue depth=" + getQueueDepth() + "/" + getQueueCapacity() +
+                ", max queue depth=" + getMaxQueueDepth() + ", input stall=" + getInputStallNanos() / 1000000L +
+                " ms, output stall=" + getOutputStallNanos() / 1000000L + " ms";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    void batchProcessed() {
+
+        batchCount ++;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
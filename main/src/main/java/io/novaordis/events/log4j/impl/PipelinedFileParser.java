@@ -0,0 +1,637 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Parses a log file in a pipeline, so reading, parsing and event processing do not run in lockstep on the same thread,
+ * and a slow stage only stalls the others when the queues between them fill up.
+ *
+ * The reader stage reads the file (compressed or not) and hands over batches of lines. One or more parser stages,
+ * each with its own Log4jParser, turn line batches into event batches. The procedure stage - the thread that invoked
+ * parse() - delivers the event batches to the sink, in file order. The stages are connected by bounded
+ * single-producer/single-consumer ring buffers, one per parser stage on each side; the reader distributes the batches
+ * to the parser stages round-robin, and the procedure stage collects them in the same order.
+ *
+ * With more than one parser stage, the reader only ends a batch on a line that starts an event, in the same way the
+ * ParallelFileParser snaps its chunks, so multi-line events never span batches and the result is identical with the
+ * result of the sequential parsing.
+ *
+ * The queue depth and the stall time of each stage are available while the pipeline runs, and after it completes.
+ *
+ * @see SpscRingBuffer
+ * @see PipelineStageMetrics
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class PipelinedFileParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedFileParser.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private String patternLayoutLiteral;
+
+    private boolean lazyMaterialization;
+
+    private int parserStageCount;
+    private int batchSize;
+    private int queueCapacity;
+
+    private volatile List<PipelineStageMetrics> stageMetrics;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * Uses one parser stage, and the default batch size and queue capacity.
+     *
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     */
+    public PipelinedFileParser(Log4jPatternLayout patternLayout) {
+
+        this(patternLayout, 1, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param patternLayout null is acceptable, it means the parsers will use heuristics.
+     * @param batchSize the number of lines handed over by the reader stage in one batch. With more than one parser
+     *                  stage, a batch may be longer, as it only ends on a line that starts an event.
+     * @param queueCapacity the capacity, in batches, of each queue between stages.
+     */
+    public PipelinedFileParser(
+            Log4jPatternLayout patternLayout, int parserStageCount, int batchSize, int queueCapacity) {
+
+        if (parserStageCount <= 0) {
+
+            throw new IllegalArgumentException("invalid parser stage count " + parserStageCount);
+        }
+
+        if (batchSize <= 0) {
+
+            throw new IllegalArgumentException("invalid batch size " + batchSize);
+        }
+
+        if (queueCapacity <= 0) {
+
+            throw new IllegalArgumentException("invalid queue capacity " + queueCapacity);
+        }
+
+        //
+        // pattern layout instances are not shared between threads, each stage builds its own from the literal
+        //
+
+        this.patternLayoutLiteral = patternLayout == null ? null : patternLayout.getLiteral();
+        this.lazyMaterialization = patternLayout != null && patternLayout.isLazyMaterialization();
+        this.parserStageCount = parserStageCount;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.stageMetrics = Collections.emptyList();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the file and delivers the events to the sink, in file order, including the last event. The sink is
+     * invoked on the calling thread.
+     *
+     * @return the number of lines read.
+     */
+    public long parse(File file, EventSink sink) throws IOException, ParsingException {
+
+        if (sink == null) {
+
+            throw new IllegalArgumentException("null sink");
+        }
+
+        List<SpscRingBuffer<LineBatch>> lineQueues = new ArrayList<>();
+        List<SpscRingBuffer<EventBatch>> eventQueues = new ArrayList<>();
+        List<SpscRingBuffer<?>> all = new ArrayList<>();
+
+        for(int i = 0; i < parserStageCount; i ++) {
+
+            lineQueues.add(new SpscRingBuffer<>(queueCapacity));
+            eventQueues.add(new SpscRingBuffer<>(queueCapacity));
+        }
+
+        all.addAll(lineQueues);
+        all.addAll(eventQueues);
+
+        List<PipelineStageMetrics> metrics = new ArrayList<>();
+
+        PipelineStageMetrics readerMetrics = new PipelineStageMetrics("reader", null, new ArrayList<>(lineQueues));
+
+        metrics.add(readerMetrics);
+
+        for(int i = 0; i < parserStageCount; i ++) {
+
+            metrics.add(new PipelineStageMetrics("parser-" + i,
+                    Collections.singletonList(lineQueues.get(i)), Collections.singletonList(eventQueues.get(i))));
+        }
+
+        PipelineStageMetrics procedureMetrics =
+                new PipelineStageMetrics("procedure", new ArrayList<>(eventQueues), null);
+
+        metrics.add(procedureMetrics);
+
+        this.stageMetrics = Collections.unmodifiableList(metrics);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Reader reader = new Reader(file, lineQueues, readerMetrics, failure, all);
+
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(reader, "log4j-pipeline-reader"));
+
+        for(int i = 0; i < parserStageCount; i ++) {
+
+            threads.add(new Thread(
+                    new Parser(lineQueues.get(i), eventQueues.get(i), metrics.get(i + 1), failure, all),
+                    "log4j-pipeline-parser-" + i));
+        }
+
+        for(Thread t: threads) {
+
+            t.setDaemon(true);
+            t.start();
+        }
+
+        boolean completed = false;
+
+        try {
+
+            deliver(eventQueues, sink, procedureMetrics);
+
+            completed = failure.get() == null;
+        }
+        catch(InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for events", e);
+        }
+        finally {
+
+            if (!completed) {
+
+                abort(all);
+            }
+
+            join(threads);
+        }
+
+        FileParsers.rethrow(failure.get());
+
+        log.debug(this + " parsed " + file + ": " + stageMetrics);
+
+        return reader.lineCount;
+    }
+
+    /**
+     * @return the metrics of the stages of the current or last parse() invocation, in pipeline order: the reader, the
+     * parsers and the procedure stage. Empty if parse() was not invoked yet.
+     */
+    public List<PipelineStageMetrics> getStageMetrics() {
+
+        return stageMetrics;
+    }
+
+    public int getParserStageCount() {
+
+        return parserStageCount;
+    }
+
+    public int getBatchSize() {
+
+        return batchSize;
+    }
+
+    public int getQueueCapacity() {
+
+        return queueCapacity;
+    }
+
+    @Override
+    public String toString() {
+
+        return "PipelinedFileParser[" + (patternLayoutLiteral == null ? "heuristics" : patternLayoutLiteral) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * The procedure stage: collects the event batches in the order the reader distributed the line batches.
+     */
+    private void deliver(List<SpscRingBuffer<EventBatch>> queues, EventSink sink, PipelineStageMetrics metrics)
+            throws InterruptedException {
+
+        for(int i = 0; ; i = (i + 1) % queues.size()) {
+
+            EventBatch b = queues.get(i).take();
+
+            if (b == null) {
+
+                //
+                // aborted
+                //
+
+                return;
+            }
+
+            if (b == EventBatch.END) {
+
+                //
+                // all the other parser stages are done too, and their end markers are the only thing left in their
+                // queues; consume them
+                //
+
+                for(int j = 1; j < queues.size(); j ++) {
+
+                    queues.get((i + j) % queues.size()).take();
+                }
+
+                return;
+            }
+
+            if (!b.events.isEmpty()) {
+
+                sink.accept(b.events);
+            }
+
+            metrics.batchProcessed();
+        }
+    }
+
+    private static void abort(List<SpscRingBuffer<?>> queues) {
+
+        for(SpscRingBuffer<?> q: queues) {
+
+            q.close();
+        }
+    }
+
+    private static void fail(Throwable t, AtomicReference<Throwable> failure, List<SpscRingBuffer<?>> queues) {
+
+        failure.compareAndSet(null, t);
+
+        abort(queues);
+    }
+
+    private static void join(List<Thread> threads) {
+
+        boolean interrupted = false;
+
+        for(Thread t: threads) {
+
+            while(true) {
+
+                try {
+
+                    t.join();
+                    break;
+                }
+                catch(InterruptedException e) {
+
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The lines of a batch, stored back to back in a single char array and handed over to the parser stage as slices
+     * of that array. The line readers reuse their buffers, so the content must be copied once before it crosses
+     * threads, but it is copied in bulk, without allocating a String per line.
+     */
+    private static final class LineBatch {
+
+        private static final LineBatch END = new LineBatch(0L, 0);
+
+        // the number of the first line in the batch
+        private final long firstLineNumber;
+
+        private char[] chars;
+        private int length;
+
+        // the end offset of each line in chars
+        private int[] ends;
+        private int lineCount;
+
+        private LineBatch(long firstLineNumber, int capacity) {
+
+            this.firstLineNumber = firstLineNumber;
+            this.chars = new char[capacity * 128];
+            this.ends = new int[capacity];
+        }
+
+        private void add(CharSequence line) {
+
+            int n = line.length();
+
+            if (length + n > chars.length) {
+
+                chars = Arrays.copyOf(chars, Math.max(2 * chars.length, length + n));
+            }
+
+            if (line instanceof String) {
+
+                ((String)line).getChars(0, n, chars, length);
+            }
+            else {
+
+                for(int i = 0; i < n; i ++) {
+
+                    chars[length + i] = line.charAt(i);
+                }
+            }
+
+            length += n;
+
+            if (lineCount == ends.length) {
+
+                ends = Arrays.copyOf(ends, 2 * ends.length);
+            }
+
+            ends[lineCount ++] = length;
+        }
+    }
+
+    private static final class EventBatch {
+
+        private static final EventBatch END = new EventBatch(Collections.<Event>emptyList());
+
+        private final List<Event> events;
+
+        private EventBatch(List<Event> events) {
+
+            this.events = events;
+        }
+    }
+
+    /**
+     * The reader stage.
+     */
+    private final class Reader implements Runnable {
+
+        private final File file;
+        private final List<SpscRingBuffer<LineBatch>> queues;
+        private final PipelineStageMetrics metrics;
+        private final AtomicReference<Throwable> failure;
+        private final List<SpscRingBuffer<?>> all;
+
+        // only read after the thread was joined
+        private long lineCount;
+
+        private Reader(File file, List<SpscRingBuffer<LineBatch>> queues, PipelineStageMetrics metrics,
+                       AtomicReference<Throwable> failure, List<SpscRingBuffer<?>> all) {
+
+            this.file = file;
+            this.queues = queues;
+            this.metrics = metrics;
+            this.failure = failure;
+            this.all = all;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                read();
+            }
+            catch(Throwable t) {
+
+                fail(t, failure, all);
+            }
+        }
+
+        private void read() throws IOException, InterruptedException {
+
+            //
+            // the batches can end anywhere if there is only one parser stage, otherwise only on event starts
+            //
+
+            boolean snap = queues.size() > 1;
+
+            Log4jPatternLayout layout =
+                    snap ? FileParsers.newPatternLayout(patternLayoutLiteral, lazyMaterialization) : null;
+
+            int next = 0;
+            long lineNumber = 0L;
+
+            LineBatch batch = new LineBatch(1L, batchSize);
+
+            try(LineReader reader = Log4jParser.newLineReader(file)) {
+
+                CharSequence line;
+
+                while((line = reader.readLine()) != null) {
+
+                    lineNumber ++;
+
+                    if (batch.lineCount >= batchSize && (!snap || ParallelFileParser.isEventStart(layout, line))) {
+
+                        if (!queues.get(next).put(batch)) {
+
+                            return;
+                        }
+
+                        metrics.batchProcessed();
+
+                        next = (next + 1) % queues.size();
+
+                        batch = new LineBatch(lineNumber, batchSize);
+                    }
+
+                    batch.add(line);
+                }
+            }
+
+            if (batch.lineCount > 0) {
+
+                if (!queues.get(next).put(batch)) {
+
+                    return;
+                }
+
+                metrics.batchProcessed();
+            }
+
+            lineCount = lineNumber;
+
+            for(SpscRingBuffer<LineBatch> q: queues) {
+
+                if (!q.put(LineBatch.END)) {
+
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A parser stage.
+     */
+    private final class Parser implements Runnable {
+
+        private final SpscRingBuffer<LineBatch> input;
+        private final SpscRingBuffer<EventBatch> output;
+        private final PipelineStageMetrics metrics;
+        private final AtomicReference<Throwable> failure;
+        private final List<SpscRingBuffer<?>> all;
+
+        private Parser(SpscRingBuffer<LineBatch> input, SpscRingBuffer<EventBatch> output,
+                       PipelineStageMetrics metrics, AtomicReference<Throwable> failure,
+                       List<SpscRingBuffer<?>> all) {
+
+            this.input = input;
+            this.output = output;
+            this.metrics = metrics;
+            this.failure = failure;
+            this.all = all;
+        }
+
+        @Override
+        public void run() {
+
+            try {
+
+                parse();
+            }
+            catch(Throwable t) {
+
+                fail(t, failure, all);
+            }
+        }
+
+        private void parse() throws ParsingException, InterruptedException {
+
+            //
+            // with one parser stage, the parser sees all lines and carries the current event across batches; with
+            // more, each batch starts with an event, and the parser is flushed at the end of each batch
+            //
+
+            boolean boundaries = parserStageCount > 1;
+
+            Log4jParser parser =
+                    new Log4jParser(FileParsers.newPatternLayout(patternLayoutLiteral, lazyMaterialization));
+
+            long lineNumber = 0L;
+
+            while(true) {
+
+                LineBatch b = input.take();
+
+                if (b == null) {
+
+                    return;
+                }
+
+                if (b == LineBatch.END) {
+
+                    if (!boundaries) {
+
+                        List<Event> events = parser.close(lineNumber);
+
+                        if (!events.isEmpty() && !output.put(new EventBatch(events))) {
+
+                            return;
+                        }
+                    }
+
+                    output.put(EventBatch.END);
+
+                    return;
+                }
+
+                List<Event> events = new ArrayList<>();
+
+                lineNumber = b.firstLineNumber;
+
+                //
+                // the parser does not retain the line past the parse() invocation, so the same view is moved from
+                // slice to slice
+                //
+
+                CharBuffer line = CharBuffer.wrap(b.chars);
+
+                for(int i = 0, start = 0; i < b.lineCount; start = b.ends[i ++]) {
+
+                    line.limit(b.ends[i]);
+                    line.position(start);
+
+                    List<Event> parsed = parser.parse(lineNumber ++, line);
+
+                    if (!parsed.isEmpty()) {
+
+                        events.addAll(parsed);
+                    }
+                }
+
+                lineNumber --;
+
+                if (boundaries) {
+
+                    events.addAll(parser.flushAtEventBoundary(lineNumber));
+                }
+
+                if (!output.put(new EventBatch(events))) {
+
+                    return;
+                }
+
+                metrics.batchProcessed();
+            }
+        }
+    }
+
+}
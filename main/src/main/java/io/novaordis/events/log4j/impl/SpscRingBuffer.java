@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free ring buffer for exactly one producer thread and one consumer thread, used to hand over batches
+ * between pipeline stages.
+ *
+ * The producer and the consumer publish their positions with ordered writes, and each side caches the other side's
+ * position, so the shared positions are only read when the cached value says the buffer is full or empty. A blocked
+ * side spins, then yields, then parks for short intervals. The time spent blocked is accumulated separately for the
+ * producer (buffer full) and for the consumer (buffer empty).
+ *
+ * close() is meant for aborting: it wakes up the blocked sides, and all subsequent blocking operations fail.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+class SpscRingBuffer<T> {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private final Object[] slots;
+    private final int mask;
+
+    // the position of the next element to be consumed, only written by the consumer
+    private final AtomicLong head;
+
+    // the position of the next element to be produced, only written by the producer
+    private final AtomicLong tail;
+
+    // the producer's view of the head, and the consumer's view of the tail
+    private long headCache;
+    private long tailCache;
+
+    private volatile boolean closed;
+
+    // only written by the producer
+    private volatile long producerStallNanos;
+    private volatile int highWaterMark;
+
+    // only written by the consumer
+    private volatile long consumerStallNanos;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param capacity rounded up to the next power of two.
+     */
+    SpscRingBuffer(int capacity) {
+
+        if (capacity <= 0 || capacity > (1 << 30)) {
+
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+
+        if (size < capacity) {
+
+            size <<= 1;
+        }
+
+        this.slots = new Object[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "SpscRingBuffer[" + size() + "/" + slots.length + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Producer side.
+     *
+     * @return false if the buffer is full.
+     */
+    boolean offer(T e) {
+
+        if (e == null) {
+
+            throw new IllegalArgumentException("null element");
+        }
+
+        long t = tail.get();
+
+        if (t - headCache >= slots.length) {
+
+            headCache = head.get();
+
+            if (t - headCache >= slots.length) {
+
+                return false;
+            }
+        }
+
+        slots[(int)t & mask] = e;
+
+        tail.lazySet(t + 1);
+
+        int depth = (int)(t + 1 - headCache);
+
+        if (depth > highWaterMark) {
+
+            highWaterMark = depth;
+        }
+
+        return true;
+    }
+
+    /**
+     * Consumer side.
+     *
+     * @return null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+
+        long h = head.get();
+
+        if (h >= tailCache) {
+
+            tailCache = tail.get();
+
+            if (h >= tailCache) {
+
+                return null;
+            }
+        }
+
+        int i = (int)h & mask;
+
+        T e = (T)slots[i];
+
+        slots[i] = null;
+
+        head.lazySet(h + 1);
+
+        return e;
+    }
+
+    /**
+     * Producer side: waits until there is room in the buffer.
+     *
+     * @return false if the buffer was closed while waiting.
+     */
+    boolean put(T e) throws InterruptedException {
+
+        if (offer(e)) {
+
+            return true;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+
+            for(int attempt = 0; !offer(e); attempt ++) {
+
+                if (closed) {
+
+                    return false;
+                }
+
+                idle(attempt);
+            }
+
+            return true;
+        }
+        finally {
+
+            producerStallNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Consumer side: waits until an element is available.
+     *
+     * @return null if the buffer was closed while waiting.
+     */
+    T take() throws InterruptedException {
+
+        T e = poll();
+
+        if (e != null) {
+
+            return e;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+
+            for(int attempt = 0; (e = poll()) == null; attempt ++) {
+
+                if (closed) {
+
+                    return null;
+                }
+
+                idle(attempt);
+            }
+
+            return e;
+        }
+        finally {
+
+            consumerStallNanos += System.nanoTime() - start;
+        }
+    }
+
+    void close() {
+
+        closed = true;
+    }
+
+    boolean isClosed() {
+
+        return closed;
+    }
+
+    /**
+     * @return the number of elements in the buffer. The value is approximate if read while the buffer is in use.
+     */
+    int size() {
+
+        long size = tail.get() - head.get();
+
+        return size < 0 ? 0 : (int)Math.min(size, slots.length);
+    }
+
+    int capacity() {
+
+        return slots.length;
+    }
+
+    /**
+     * @return the highest number of elements observed in the buffer by the producer.
+     */
+    int getHighWaterMark() {
+
+        return highWaterMark;
+    }
+
+    /**
+     * @return the time the producer spent waiting for room in the buffer, in nanoseconds.
+     */
+    long getProducerStallNanos() {
+
+        return producerStallNanos;
+    }
+
+    /**
+     * @return the time the consumer spent waiting for elements, in nanoseconds.
+     */
+    long getConsumerStallNanos() {
+
+        return consumerStallNanos;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static void idle(int attempt) throws InterruptedException {
+
+        if (attempt < SPINS) {
+
+            return;
+        }
+
+        if (attempt < SPINS + YIELDS) {
+
+            Thread.yield();
+            return;
+        }
+
+        LockSupport.parkNanos(PARK_NANOS);
+
+        if (Thread.interrupted()) {
+
+            throw new InterruptedException();
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a byte stream, typically a decompressed one, with the same conventions as the MappedLineReader:
+ * the lines that only contain ASCII characters are handed over as CharSequence views of the read buffer, without
+ * being decoded or copied, and the other lines are decoded with the configured charset, which must be ASCII-compatible.
+ *
+ * Lines are terminated by '\n' or "\r\n". The last line does not need to be terminated.
+ *
+ * Not thread safe.
+ *
+ * @see MappedLineReader
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class StreamLineReader implements LineReader {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private InputStream in;
+    private Charset charset;
+
+    private byte[] buffer;
+    private ByteBuffer view;
+
+    // the next line start, and the end of the valid content
+    private int position;
+    private int limit;
+
+    private boolean endOfStream;
+
+    private long lineCount;
+
+    private LineSlice slice;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param bufferSize the initial size of the read buffer. It is increased, if needed, to fit lines that are longer
+     *                   than the buffer.
+     */
+    public StreamLineReader(InputStream in, int bufferSize, Charset charset) {
+
+        if (in == null) {
+
+            throw new IllegalArgumentException("null input stream");
+        }
+
+        if (bufferSize <= 0) {
+
+            throw new IllegalArgumentException("invalid buffer size " + bufferSize);
+        }
+
+        if (charset == null) {
+
+            throw new IllegalArgumentException("null charset");
+        }
+
+        this.in = in;
+        this.charset = charset;
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buffer);
+        this.slice = new LineSlice();
+    }
+
+    // LineReader implementation ---------------------------------------------------------------------------------------
+
+    @Override
+    public void close() throws IOException {
+
+        buffer = null;
+
+        in.close();
+    }
+
+    @Override
+    public CharSequence readLine() throws IOException {
+
+        if (buffer == null) {
+
+            throw new IOException("reader closed");
+        }
+
+        int i = position;
+        boolean ascii = true;
+
+        while(true) {
+
+            while(i < limit) {
+
+                byte b = buffer[i];
+
+                if (b == '\n') {
+
+                    break;
+                }
+
+                if (b < 0) {
+
+                    ascii = false;
+                }
+
+                i ++;
+            }
+
+            if (i < limit || endOfStream) {
+
+                break;
+            }
+
+            //
+            // the line continues past the end of the content read so far
+            //
+
+            i -= fill();
+        }
+
+        if (i == position && i == limit) {
+
+            //
+            // no more content
+            //
+
+            return null;
+        }
+
+        int lineEnd = i;
+
+        if (lineEnd > position && buffer[lineEnd - 1] == '\r') {
+
+            lineEnd --;
+        }
+
+        lineCount ++;
+
+        CharSequence line;
+
+        if (ascii) {
+
+            slice.set(view, position, lineEnd - position);
+            line = slice;
+        }
+        else {
+
+            line = new String(buffer, position, lineEnd - position, charset);
+        }
+
+        position = i < limit ? i + 1 : limit;
+
+        return line;
+    }
+
+    @Override
+    public long getLineCount() {
+
+        return lineCount;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "StreamLineReader[" + lineCount + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Moves the unconsumed content to the beginning of the buffer, growing it if it is full, and reads more content
+     * after it.
+     *
+     * @return the number of positions the unconsumed content was moved by.
+     */
+    private int fill() throws IOException {
+
+        int shift = position;
+
+        if (shift > 0) {
+
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        else if (limit == buffer.length) {
+
+            if (buffer.length == Integer.MAX_VALUE - 8) {
+
+                throw new IOException("line longer than " + buffer.length + " bytes");
+            }
+
+            buffer = Arrays.copyOf(buffer, (int)Math.min(2L * buffer.length, Integer.MAX_VALUE - 8));
+            view = ByteBuffer.wrap(buffer);
+        }
+
+        int n = in.read(buffer, limit, buffer.length - limit);
+
+        if (n < 0) {
+
+            endOfStream = true;
+        }
+        else {
+
+            limit += n;
+        }
+
+        return shift;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
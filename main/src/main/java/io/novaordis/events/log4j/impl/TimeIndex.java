@@ -0,0 +1,667 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+/**
+ * A sparse index of a log file, persisted in a sidecar file next to the log (server.log.lgidx for server.log).
+ *
+ * The index records periodic checkpoints - (timestamp, byte offset, line number, event ordinal) for lines that start
+ * events - roughly one every 'checkpoint interval' bytes, plus the start of the last event that was indexed, which is
+ * where indexing resumes when the log has grown. The indexed content is fingerprinted (its length and the checksums
+ * of its first and last bytes), so an index that does not describe the current file (the file was rotated, truncated
+ * or rewritten) is detected and discarded. The index is only valid for the pattern layout it was built with.
+ *
+ * The checkpoints split the file into blocks: block k extends from checkpoint k to checkpoint k + 1 (or to the end of
+ * the indexed content, for the last checkpoint). The index also carries inverted indexes of the level, logger and
+ * thread name over the blocks, so a query on those fields only needs to read the blocks that may contain matches.
+ *
+ * Time seeks assume the timestamps are monotonic.
+ *
+ * Not thread safe.
+ *
+ * @see IndexedFileParser
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimeIndex {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(TimeIndex.class);
+
+    public static final String SIDECAR_SUFFIX = ".lgidx";
+
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 1024L * 1024;
+
+    // "LGIX"
+    private static final int MAGIC = 0x4C474958;
+    private static final int VERSION = 2;
+
+    // the number of bytes checksummed at the beginning and at the end of the indexed content
+    static final int FINGERPRINT_WINDOW = 4096;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    public static File getSidecar(File file) {
+
+        return new File(file.getPath() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * @param layoutLiteral the literal of the pattern layout used to parse the file, null for heuristics.
+     *
+     * @return the index read from the log's sidecar file, or null if there is no sidecar file, it cannot be read, it
+     * was built with a different pattern layout or it does not describe the current content of the log file.
+     */
+    public static TimeIndex load(File file, String layoutLiteral) throws IOException {
+
+        File sidecar = getSidecar(file);
+
+        if (!sidecar.isFile()) {
+
+            return null;
+        }
+
+        TimeIndex index;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+
+            index = read(in);
+        }
+        catch(EOFException | IllegalStateException e) {
+
+            log.warn("discarding invalid index " + sidecar + ": " + e.getMessage());
+            return null;
+        }
+
+        if (layoutLiteral == null ? index.layoutLiteral != null : !layoutLiteral.equals(index.layoutLiteral)) {
+
+            log.debug("discarding index " + sidecar + ", built for a different pattern layout");
+            return null;
+        }
+
+        if (!index.matches(file)) {
+
+            log.debug("discarding index " + sidecar + ", it does not match the content of " + file);
+            return null;
+        }
+
+        return index;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private String layoutLiteral;
+
+    private long checkpointInterval;
+
+    private List<Checkpoint> checkpoints;
+
+    // the start of the last indexed event, null if no event was indexed
+    private Checkpoint lastEvent;
+
+    private FieldIndex levels;
+    private FieldIndex loggers;
+    private FieldIndex threadNames;
+
+    // the fingerprint of the indexed content
+    private long indexedLength;
+    private long headChecksum;
+    private long tailChecksum;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param layoutLiteral the literal of the pattern layout used to parse the file, null for heuristics.
+     */
+    public TimeIndex(String layoutLiteral, long checkpointInterval) {
+
+        if (checkpointInterval <= 0) {
+
+            throw new IllegalArgumentException("invalid checkpoint interval " + checkpointInterval);
+        }
+
+        this.layoutLiteral = layoutLiteral;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpoints = new ArrayList<>();
+        this.levels = new FieldIndex(Log4jEventImpl.LEVEL_PROPERTY_NAME);
+        this.loggers = new FieldIndex(Log4jEventImpl.LOGGER_PROPERTY_NAME);
+        this.threadNames = new FieldIndex(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * May return null.
+     */
+    public String getLayoutLiteral() {
+
+        return layoutLiteral;
+    }
+
+    public long getCheckpointInterval() {
+
+        return checkpointInterval;
+    }
+
+    public List<Checkpoint> getCheckpoints() {
+
+        return Collections.unmodifiableList(checkpoints);
+    }
+
+    /**
+     * @return the start of the last indexed event, or null if no event was indexed.
+     */
+    public Checkpoint getLastEvent() {
+
+        return lastEvent;
+    }
+
+    /**
+     * @return the number of bytes of the log file described by this index.
+     */
+    public long getIndexedLength() {
+
+        return indexedLength;
+    }
+
+    /**
+     * @return the number of blocks, which is the number of checkpoints.
+     */
+    public int getBlockCount() {
+
+        return checkpoints.size();
+    }
+
+    /**
+     * @return the offset of the first byte that follows the block: the offset of the next checkpoint, or the indexed
+     * length for the last block.
+     */
+    public long getBlockEnd(int block) {
+
+        return block + 1 < checkpoints.size() ? checkpoints.get(block + 1).getOffset() : indexedLength;
+    }
+
+    /**
+     * @param propertyName one of Log4jEventImpl.LEVEL_PROPERTY_NAME, Log4jEventImpl.LOGGER_PROPERTY_NAME and
+     *                     Log4jEventImpl.THREAD_NAME_PROPERTY_NAME.
+     *
+     * @exception IllegalArgumentException if the property is not indexed.
+     */
+    public FieldIndex getFieldIndex(String propertyName) {
+
+        if (Log4jEventImpl.LEVEL_PROPERTY_NAME.equals(propertyName)) {
+
+            return levels;
+        }
+        else if (Log4jEventImpl.LOGGER_PROPERTY_NAME.equals(propertyName)) {
+
+            return loggers;
+        }
+        else if (Log4jEventImpl.THREAD_NAME_PROPERTY_NAME.equals(propertyName)) {
+
+            return threadNames;
+        }
+
+        throw new IllegalArgumentException("property " + propertyName + " is not indexed");
+    }
+
+    /**
+     * @return the last checkpoint whose timestamp precedes the given time, or null if there is no such checkpoint, in
+     * which case the content must be read from the beginning.
+     */
+    public Checkpoint floorByTime(long time) {
+
+        int lo = 0;
+        int hi = checkpoints.size();
+
+        //
+        // the first checkpoint whose timestamp is not smaller than 'time'
+        //
+
+        while(lo < hi) {
+
+            int mid = (lo + hi) >>> 1;
+
+            if (checkpoints.get(mid).getTime() < time) {
+
+                lo = mid + 1;
+            }
+            else {
+
+                hi = mid;
+            }
+        }
+
+        return lo == 0 ? null : checkpoints.get(lo - 1);
+    }
+
+    /**
+     * @return the last checkpoint whose line number is smaller or equal with the given line number, or null if there
+     * is no such checkpoint, in which case the content must be read from the beginning.
+     */
+    public Checkpoint floorByLine(long lineNumber) {
+
+        int lo = 0;
+        int hi = checkpoints.size();
+
+        while(lo < hi) {
+
+            int mid = (lo + hi) >>> 1;
+
+            if (checkpoints.get(mid).getLineNumber() <= lineNumber) {
+
+                lo = mid + 1;
+            }
+            else {
+
+                hi = mid;
+            }
+        }
+
+        return lo == 0 ? null : checkpoints.get(lo - 1);
+    }
+
+    /**
+     * Writes the index in the log's sidecar file. The sidecar file is replaced atomically.
+     */
+    public void store(File file) throws IOException {
+
+        File sidecar = getSidecar(file);
+        File tmp = new File(sidecar.getPath() + ".tmp");
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+
+            write(out);
+        }
+
+        Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+
+        return "TimeIndex[" + checkpoints.size() + " checkpoint(s), " + indexedLength + " bytes]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Records the start of an event. Events must be recorded in file order. A checkpoint is created for the event if
+     * it starts at least 'checkpoint interval' bytes after the previous checkpoint, or if it is the first event.
+     *
+     * @param time null if the event has no timestamp.
+     */
+    void addEventStart(Long time, long offset, long lineNumber, long ordinal) {
+
+        Checkpoint c = new Checkpoint(time == null ? Long.MIN_VALUE : time, offset, lineNumber, ordinal);
+
+        lastEvent = c;
+
+        if (checkpoints.isEmpty()) {
+
+            checkpoints.add(c);
+            return;
+        }
+
+        long previous = checkpoints.get(checkpoints.size() - 1).getOffset();
+
+        if (offset > previous && offset - previous >= checkpointInterval) {
+
+            checkpoints.add(c);
+        }
+    }
+
+    /**
+     * Records the start of an event, and its level, logger and thread name in the inverted indexes of the block the
+     * event starts in.
+     *
+     * @see TimeIndex#addEventStart(Long, long, long, long)
+     */
+    void addEvent(Log4jEvent e, long offset, long lineNumber, long ordinal) {
+
+        addEventStart(e.getTime(), offset, lineNumber, ordinal);
+
+        int block = checkpoints.size() - 1;
+
+        Log4jLevel level = e.getLevel();
+
+        levels.add(level == null ? null : level.name(), block);
+        loggers.add(e.getLogger(), block);
+        threadNames.add(e.getThreadName(), block);
+    }
+
+    /**
+     * @return the blocks that may contain events accepted by the filter. The level, logger and thread name predicates
+     * are resolved against the inverted indexes, and the time range against the checkpoint timestamps.
+     */
+    BitSet selectBlocks(EventFilter filter) {
+
+        int blockCount = checkpoints.size();
+
+        BitSet result = new BitSet(blockCount);
+        result.set(0, blockCount);
+
+        if (filter.getLevels() != null) {
+
+            BitSet selected = new BitSet();
+
+            for(Log4jLevel l: filter.getLevels()) {
+
+                int id = levels.getId(l.name());
+
+                if (id != -1) {
+
+                    selected.set(id);
+                }
+            }
+
+            result.and(blocks(levels, selected));
+        }
+
+        if (filter.getLoggerPrefix() != null) {
+
+            BitSet selected = new BitSet();
+            List<String> values = loggers.getValues();
+
+            for(int id = 0; id < values.size(); id ++) {
+
+                if (values.get(id).startsWith(filter.getLoggerPrefix())) {
+
+                    selected.set(id);
+                }
+            }
+
+            result.and(blocks(loggers, selected));
+        }
+
+        if (filter.getThreadName() != null) {
+
+            BitSet selected = new BitSet();
+            int id = threadNames.getId(filter.getThreadName());
+
+            if (id != -1) {
+
+                selected.set(id);
+            }
+
+            result.and(blocks(threadNames, selected));
+        }
+
+        Long from = filter.getFrom();
+        Long to = filter.getTo();
+
+        for(int block = result.nextSetBit(0); block >= 0; block = result.nextSetBit(block + 1)) {
+
+            //
+            // timestamps are monotonic, so all events in the block are within [start time, next block start time];
+            // blocks that start with events without timestamps are kept
+            //
+
+            long start = checkpoints.get(block).getTime();
+            long end = block + 1 < blockCount ? checkpoints.get(block + 1).getTime() : Long.MAX_VALUE;
+
+            if ((to != null && start != Long.MIN_VALUE && start >= to) ||
+                    (from != null && end != Long.MIN_VALUE && end < from)) {
+
+                result.clear(block);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Records the fingerprint of the first 'length' bytes of the log file, the content described by this index.
+     */
+    void setIndexedLength(File file, long length) throws IOException {
+
+        long[] fingerprint = fingerprint(file, length);
+
+        if (fingerprint == null) {
+
+            throw new IOException(file + " is shorter than " + length + " bytes");
+        }
+
+        this.indexedLength = length;
+        this.headChecksum = fingerprint[0];
+        this.tailChecksum = fingerprint[1];
+    }
+
+    /**
+     * @return true if the log file still starts with the content described by this index. The file may have grown.
+     */
+    boolean matches(File file) throws IOException {
+
+        long[] fingerprint = fingerprint(file, indexedLength);
+
+        return fingerprint != null && fingerprint[0] == headChecksum && fingerprint[1] == tailChecksum;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the checksums of the first and the last FINGERPRINT_WINDOW bytes of the first 'length' bytes of the
+     * file, or null if the file is shorter than 'length'.
+     */
+    private static long[] fingerprint(File file, long length) throws IOException {
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            if (raf.length() < length) {
+
+                return null;
+            }
+
+            int headLength = (int)Math.min(FINGERPRINT_WINDOW, length);
+            int tailLength = (int)Math.min(FINGERPRINT_WINDOW, length);
+
+            return new long[] { checksum(raf, 0L, headLength), checksum(raf, length - tailLength, tailLength) };
+        }
+    }
+
+    private static long checksum(RandomAccessFile raf, long offset, int length) throws IOException {
+
+        byte[] buffer = new byte[length];
+
+        raf.seek(offset);
+        raf.readFully(buffer);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+
+        return crc.getValue();
+    }
+
+    private static BitSet blocks(FieldIndex index, BitSet selected) {
+
+        BitSet result = new BitSet();
+
+        index.collectBlocks(selected, result);
+
+        return result;
+    }
+
+    private static TimeIndex read(DataInputStream in) throws IOException {
+
+        if (in.readInt() != MAGIC) {
+
+            throw new IllegalStateException("not an index file");
+        }
+
+        int version = in.readInt();
+
+        if (version != VERSION) {
+
+            throw new IllegalStateException("unsupported index version " + version);
+        }
+
+        String layoutLiteral = in.readBoolean() ? in.readUTF() : null;
+
+        TimeIndex index = new TimeIndex(layoutLiteral, in.readLong());
+
+        index.indexedLength = in.readLong();
+        index.headChecksum = in.readLong();
+        index.tailChecksum = in.readLong();
+
+        if (in.readBoolean()) {
+
+            index.lastEvent = Checkpoint.read(in);
+        }
+
+        int count = in.readInt();
+
+        for(int i = 0; i < count; i ++) {
+
+            index.checkpoints.add(Checkpoint.read(in));
+        }
+
+        index.levels = FieldIndex.read(in);
+        index.loggers = FieldIndex.read(in);
+        index.threadNames = FieldIndex.read(in);
+
+        return index;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeBoolean(layoutLiteral != null);
+
+        if (layoutLiteral != null) {
+
+            out.writeUTF(layoutLiteral);
+        }
+
+        out.writeLong(checkpointInterval);
+        out.writeLong(indexedLength);
+        out.writeLong(headChecksum);
+        out.writeLong(tailChecksum);
+
+        out.writeBoolean(lastEvent != null);
+
+        if (lastEvent != null) {
+
+            lastEvent.write(out);
+        }
+
+        out.writeInt(checkpoints.size());
+
+        for(Checkpoint c: checkpoints) {
+
+            c.write(out);
+        }
+
+        levels.write(out);
+        loggers.write(out);
+        threadNames.write(out);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The start of an event: its timestamp, the offset and the number of the line it starts on, and its ordinal - the
+     * number of events that precede it in the file.
+     */
+    public static final class Checkpoint {
+
+        private long time;
+        private long offset;
+        private long lineNumber;
+        private long ordinal;
+
+        Checkpoint(long time, long offset, long lineNumber, long ordinal) {
+
+            this.time = time;
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+            this.ordinal = ordinal;
+        }
+
+        /**
+         * @return the timestamp, or Long.MIN_VALUE if the event has no timestamp.
+         */
+        public long getTime() {
+
+            return time;
+        }
+
+        public long getOffset() {
+
+            return offset;
+        }
+
+        public long getLineNumber() {
+
+            return lineNumber;
+        }
+
+        public long getOrdinal() {
+
+            return ordinal;
+        }
+
+        @Override
+        public String toString() {
+
+            return "#" + ordinal + " (" + time + ", " + offset + ", " + lineNumber + ")";
+        }
+
+        static Checkpoint read(DataInputStream in) throws IOException {
+
+            return new Checkpoint(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+
+        void write(DataOutputStream out) throws IOException {
+
+            out.writeLong(time);
+            out.writeLong(offset);
+            out.writeLong(lineNumber);
+            out.writeLong(ordinal);
+        }
+    }
+
+}
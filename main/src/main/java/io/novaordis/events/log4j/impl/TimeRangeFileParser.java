@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.ConversionPatternComponent;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
+import io.novaordis.events.log4j.pattern.convspec.Date;
+import io.novaordis.utilities.parsing.ParsingException;
+
+/**
+ * Extracts a time window from a log file whose timestamps are monotonic, without reading the whole file.
+ *
+ * The offset where parsing starts is identified by a binary search over byte offsets: each probe resynchronizes to the
+ * next line that starts an event (a line that is parsed successfully by the pattern layout or, in absence of a pattern
+ * layout, that starts with a timestamp recognized by the TimestampMatcher) and compares its timestamp with the start
+ * of the window. Once the search range is small enough, parsing starts at the last event known to precede the window,
+ * the events that precede the window are rejected while the lines are parsed, and parsing stops at the first event
+ * that follows the window. The cost is roughly proportional to the size of the window and not to the size of the file.
+ *
+ * If the timestamps are not monotonic, events that belong to the window may be missed.
+ *
+ * Since the content that precedes the starting offset is not read, the absolute line numbers are not known: the
+ * events are numbered relative to the starting offset, the first line that is parsed being line 1.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimeRangeFileParser {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final Logger log = LoggerFactory.getLogger(TimeRangeFileParser.class);
+
+    //
+    // below this size, the search range is parsed instead of being further bisected
+    //
+    public static final long DEFAULT_LINEAR_SCAN_THRESHOLD = 64L * 1024;
+
+    // the size of the window used to read the lines that follow a probe
+    private static final int PROBE_WINDOW_SIZE = 64 * 1024;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // null means "heuristics"
+    private Log4jPatternLayout patternLayout;
+
+    private long linearScanThreshold;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param patternLayout null is acceptable, it means the parser will use heuristics. If not null, it must contain
+     *                      a %d conversion specifier.
+     */
+    public TimeRangeFileParser(Log4jPatternLayout patternLayout) {
+
+        this(patternLayout, DEFAULT_LINEAR_SCAN_THRESHOLD);
+    }
+
+    /**
+     * @param patternLayout null is acceptable, it means the parser will use heuristics. If not null, it must contain
+     *                      a %d conversion specifier.
+     */
+    public TimeRangeFileParser(Log4jPatternLayout patternLayout, long linearScanThreshold) {
+
+        if (linearScanThreshold <= 0) {
+
+            throw new IllegalArgumentException("invalid linear scan threshold " + linearScanThreshold);
+        }
+
+        if (patternLayout != null && !hasDate(patternLayout)) {
+
+            throw new IllegalArgumentException(
+                    "pattern layout " + patternLayout.getLiteral() + " does not contain timestamps");
+        }
+
+        this.patternLayout = patternLayout;
+        this.linearScanThreshold = linearScanThreshold;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Delivers to the sink, in file order, the events whose timestamp is in the [from, to) interval.
+     *
+     * @return the number of lines read.
+     */
+    public long parse(File file, long from, long to, EventSink sink) throws IOException, ParsingException {
+
+        if (from > to) {
+
+            throw new IllegalArgumentException("invalid time range [" + from + ", " + to + ")");
+        }
+
+        long start = seek(file, from);
+
+        log.debug(this + " starts parsing " + file + " at offset " + start);
+
+        return parse(file, start, 0L, from, to, sink);
+    }
+
+    public long getLinearScanThreshold() {
+
+        return linearScanThreshold;
+    }
+
+    @Override
+    public String toString() {
+
+        return "TimeRangeFileParser[" + (patternLayout == null ? "heuristics" : patternLayout.getLiteral()) + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the file starting with the given offset, and delivers to the sink, in file order, the events whose
+     * timestamp is in the [from, to) interval. Stops at the first event past the window.
+     *
+     * @param start must be the offset of a line that starts an event, and no event in the window may precede it.
+     * @param lineNumberOffset the number of lines that precede the starting offset, if known, or 0.
+     *
+     * @return the number of lines read.
+     */
+    long parse(File file, long start, long lineNumberOffset, long from, long to, EventSink sink)
+            throws IOException, ParsingException {
+
+        Log4jParser parser = new Log4jParser(patternLayout);
+
+        //
+        // the events that precede the window are rejected while the lines are parsed; the end of the window is
+        // checked here, so we can stop reading as soon as we reach it
+        //
+
+        EventFilter filter = new EventFilter();
+        filter.setTimeRange(from, null);
+        parser.setFilter(filter);
+
+        long lineNumber = lineNumberOffset;
+
+        try(MappedLineReader reader = new MappedLineReader(
+                file, start, Long.MAX_VALUE, MappedLineReader.DEFAULT_WINDOW_SIZE, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = reader.readLine()) != null) {
+
+                List<Event> events = parser.parse(++ lineNumber, line);
+
+                if (!events.isEmpty()) {
+
+                    sink.accept(events);
+                }
+
+                Log4jEvent current = parser.getCurrentEvent();
+
+                if (current != null && current.getTime() != null && current.getTime() >= to) {
+
+                    //
+                    // the first event past the window, we're done, and it is discarded
+                    //
+
+                    return lineNumber - lineNumberOffset;
+                }
+            }
+        }
+
+        List<Event> events = parser.close(lineNumber);
+
+        //
+        // the last event may be past the window if the timestamps were not monotonic
+        //
+
+        for(Iterator<Event> i = events.iterator(); i.hasNext(); ) {
+
+            Event e = i.next();
+
+            if (e instanceof Log4jEvent && !isBefore((Log4jEvent)e, to)) {
+
+                i.remove();
+            }
+        }
+
+        if (!events.isEmpty()) {
+
+            sink.accept(events);
+        }
+
+        return lineNumber - lineNumberOffset;
+    }
+
+    /**
+     * @return the offset of a line that starts an event, such that no event that precedes it in the file has a
+     * timestamp equal or larger than 'time' (assuming monotonic timestamps). 0 if there is no such event.
+     */
+    long seek(File file, long time) throws IOException {
+
+        long lo = 0L;
+        long hi;
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+
+            FileChannel channel = raf.getChannel();
+
+            hi = channel.size();
+
+            //
+            // invariant: 'lo' is 0 or the offset of an event start whose timestamp precedes 'time'; no event that
+            // starts at or after 'hi' precedes 'time'
+            //
+
+            while(hi - lo > linearScanThreshold) {
+
+                long mid = lo + (hi - lo) / 2;
+
+                long lineStart = ParallelFileParser.nextLineStart(channel, mid);
+
+                long[] probe = lineStart >= hi ? null : probe(file, lineStart, hi);
+
+                if (probe == null || probe[1] >= time) {
+
+                    hi = mid;
+                }
+                else {
+
+                    lo = probe[0];
+                }
+            }
+        }
+
+        return lo;
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static boolean hasDate(Log4jPatternLayout patternLayout) {
+
+        for(Iterator<ConversionPatternComponent> i = patternLayout.getPatternComponentIterator(); i.hasNext(); ) {
+
+            if (i.next() instanceof Date) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isBefore(Log4jEvent e, long to) {
+
+        return e.getTime() == null || e.getTime() < to;
+    }
+
+    /**
+     * @param lineStart must be a line start.
+     *
+     * @return the offset and the timestamp of the first event that starts at or after the given line start and before
+     * 'end', or null if there is no such event.
+     */
+    private long[] probe(File file, long lineStart, long end) throws IOException {
+
+        try(MappedLineReader r = new MappedLineReader(
+                file, lineStart, end, PROBE_WINDOW_SIZE, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = r.readLine()) != null) {
+
+                Long time = timestampOf(line);
+
+                if (time != null) {
+
+                    return new long[] { r.getLineOffset(), time };
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the timestamp of the event that starts on this line, or null if the line does not start an event, or
+     * the event has no timestamp.
+     */
+    private Long timestampOf(CharSequence line) {
+
+        if (patternLayout != null) {
+
+            try {
+
+                return patternLayout.parse(0L, line).getTime();
+            }
+            catch(Log4jPatternLayoutException | IllegalArgumentException e) {
+
+                return null;
+            }
+        }
+
+        try {
+
+            TimestampMatcher t = TimestampMatcher.find(0L, line.toString());
+
+            return t == null ? null : t.getTime();
+        }
+        catch(ParsingException e) {
+
+            return null;
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
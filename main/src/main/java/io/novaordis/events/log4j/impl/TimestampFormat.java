@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.text.SimpleDateFormat;
+
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+import io.novaordis.events.log4j.pattern.convspec.DateDecoder;
+
+/**
+ * A timestamp shape recognized by the heuristic parser, described by a fixed-width SimpleDateFormat pattern. The
+ * pattern is compiled into a DateDecoder, which validates the literals and the digits at fixed positions and decodes
+ * the timestamp without allocating anything.
+ *
+ * Thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampFormat {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final long INVALID = DateDecoder.INVALID;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private String pattern;
+
+    private DateDecoder decoder;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param pattern a SimpleDateFormat pattern with a fixed-width rendering.
+     *
+     * @exception IllegalArgumentException if the pattern is invalid, or its rendering does not have a fixed width.
+     */
+    public TimestampFormat(String pattern) {
+
+        if (pattern == null) {
+
+            throw new IllegalArgumentException("null pattern");
+        }
+
+        this.pattern = pattern;
+
+        this.decoder = DateDecoder.compile(new SimpleDateFormat(pattern));
+
+        if (decoder == null) {
+
+            throw new IllegalArgumentException("\"" + pattern + "\" does not have a fixed-width rendering");
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public String getPattern() {
+
+        return pattern;
+    }
+
+    /**
+     * @return the width of the timestamp rendering.
+     */
+    public int getWidth() {
+
+        return decoder.getWidth();
+    }
+
+    /**
+     * @return false if no rendering of this format starts with the given character.
+     */
+    public boolean canStartWith(char c) {
+
+        return decoder.canStartWith(c);
+    }
+
+    /**
+     * @return the timestamp rendered at the given position, in epoch milliseconds, or INVALID if the content at the
+     * given position is not a rendering of this format.
+     */
+    public long decode(CharSequence s, int from) {
+
+        int to = from + decoder.getWidth();
+
+        if (from < 0 || to > s.length()) {
+
+            return INVALID;
+        }
+
+        return decoder.decode(s, from, to);
+    }
+
+    /**
+     * May return null if the rendering does not end with milliseconds.
+     */
+    public TimestampPrefixCache getPrefixCache() {
+
+        return decoder.getPrefixCache();
+    }
+
+    /**
+     * Renders the timestamp. Not intended for the parsing path, it creates a new SimpleDateFormat on each invocation.
+     */
+    public String format(long timestamp) {
+
+        return new SimpleDateFormat(pattern).format(timestamp);
+    }
+
+    @Override
+    public String toString() {
+
+        return pattern;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
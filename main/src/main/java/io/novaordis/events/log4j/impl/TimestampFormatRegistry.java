@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.novaordis.events.log4j.pattern.convspec.Date;
+
+/**
+ * The timestamp shapes the heuristic parser recognizes at the beginning of a line. The formats are tried in
+ * registration order, and the first one that decodes the content wins. Only the formats whose renderings may start
+ * with the first character of the content are tried, as indicated by a lookup table indexed by the character, and
+ * each attempt first compares the format's literals, so a line of a different shape is usually rejected after
+ * inspecting a couple of characters.
+ *
+ * Formats can be registered at runtime: the formats and the lookup table are replaced, not modified, on registration.
+ * Thread safe, the default registry is shared by all heuristic parsers.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampFormatRegistry {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String[] DEFAULT_PATTERNS = {
+
+            Date.ABSOLUTE_PATTERN,
+            "MM/dd/yy HH:mm:ss,SSS",
+            Date.DEFAULT_PATTERN,
+            Date.ISO8601_PATTERN,
+            Date.DATE_PATTERN,
+    };
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    private static final TimestampFormatRegistry DEFAULT_REGISTRY = new TimestampFormatRegistry(DEFAULT_PATTERNS);
+
+    /**
+     * @return the registry used by TimestampMatcher.find().
+     */
+    public static TimestampFormatRegistry getDefault() {
+
+        return DEFAULT_REGISTRY;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private volatile TimestampFormat[] formats;
+
+    //
+    // the formats whose renderings may start with a given ASCII character, in registration order, indexed by the
+    // character; the content that starts with any other character is tried against all formats
+    //
+    private volatile TimestampFormat[][] formatsByFirstCharacter;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public TimestampFormatRegistry(String... patterns) {
+
+        this.formats = new TimestampFormat[0];
+        this.formatsByFirstCharacter = index(formats);
+
+        for(String p: patterns) {
+
+            register(p);
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Registers a new format, which will be tried after the already registered ones.
+     *
+     * @exception IllegalArgumentException if the pattern is invalid, or its rendering does not have a fixed width.
+     */
+    public synchronized TimestampFormat register(String pattern) {
+
+        TimestampFormat f = new TimestampFormat(pattern);
+
+        TimestampFormat[] fs = Arrays.copyOf(formats, formats.length + 1);
+
+        fs[formats.length] = f;
+
+        //
+        // the table first, a concurrent match() may see the new table with the old formats, but never the reverse
+        //
+
+        formatsByFirstCharacter = index(fs);
+        formats = fs;
+
+        return f;
+    }
+
+    /**
+     * @return a copy of the registered formats, in the order they are tried.
+     */
+    public List<TimestampFormat> getFormats() {
+
+        return new ArrayList<>(Arrays.asList(formats));
+    }
+
+    /**
+     * Matches the content that starts at the given position against the registered formats. To be recognized, the
+     * timestamp must be followed by at least one space.
+     *
+     * @return the match, or null if no registered format matches.
+     */
+    public TimestampMatcher match(CharSequence line, int from) {
+
+        int length = line.length();
+
+        if (from >= length) {
+
+            return null;
+        }
+
+        char c = line.charAt(from);
+
+        TimestampFormat[] candidates = c < formatsByFirstCharacter.length ? formatsByFirstCharacter[c] : formats;
+
+        for(TimestampFormat f: candidates) {
+
+            int end = from + f.getWidth();
+
+            if (end >= length || line.charAt(end) != ' ') {
+
+                continue;
+            }
+
+            long t = f.decode(line, from);
+
+            if (t == TimestampFormat.INVALID) {
+
+                continue;
+            }
+
+            while(end < length && line.charAt(end) == ' ') {
+
+                end ++;
+            }
+
+            TimestampMatcher m = new TimestampMatcher(t, (DateFormat)null, end);
+            m.setTimestampFormat(f);
+            return m;
+        }
+
+        return null;
+    }
+
+    @Override
+    public String toString() {
+
+        return "TimestampFormatRegistry" + Arrays.toString(formats);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static TimestampFormat[][] index(TimestampFormat[] formats) {
+
+        TimestampFormat[][] table = new TimestampFormat[128][];
+
+        List<TimestampFormat> candidates = new ArrayList<>();
+
+        for(char c = 0; c < table.length; c ++) {
+
+            candidates.clear();
+
+            for(TimestampFormat f: formats) {
+
+                if (f.canStartWith(c)) {
+
+                    candidates.add(f);
+                }
+            }
+
+            table[c] = candidates.toArray(new TimestampFormat[candidates.size()]);
+        }
+
+        return table;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -17,11 +17,6 @@
 package io.novaordis.events.log4j.impl;
 
 import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import io.novaordis.utilities.parsing.ParsingException;
 
@@ -33,43 +28,13 @@ public class TimestampMatcher {
 
     // Constants -------------------------------------------------------------------------------------------------------
 
-    //
-    // IMPORTANT: if a new timestamp pattern is added, the corresponding date format in DATE_FORMATS
-    //
-    public static final Pattern[] KNOWN_TIMESTAMP_PATTERNS = {
-
-            Pattern.compile("(^[0-2]\\d:[0-5]\\d:[0-5]\\d,\\d\\d\\d)( +).*"),
-            Pattern.compile("(^[0-1]\\d/[0-3]\\d/\\d\\d [0-2]\\d:[0-5]\\d:[0-5]\\d,\\d\\d\\d)( +).*"),
-    };
-
-    //
-    // IMPORTANT: if a new date format is added, the corresponding timestamp pattern in KNOWN_TIMESTAMP_PATTERNS
-    //
-    public static final DateFormat[] DATE_FORMATS = {
-
-            new SimpleDateFormat("HH:mm:ss,SSS"),
-            new SimpleDateFormat("MM/dd/yy HH:mm:ss,SSS"),
-    };
-
-    static {
-
-        //
-        // sanity check
-        //
-
-        if (KNOWN_TIMESTAMP_PATTERNS.length != DATE_FORMATS.length) {
-
-            throw new IllegalArgumentException(
-                    "the KNOWN_TIMESTAMP_PATTERNS number is different from DATE_FORMATS, which means " +
-                            TimestampMatcher.class.getName() + " is incorrectly coded");
-        }
-    }
-
     // Static ----------------------------------------------------------------------------------------------------------
 
     /**
-     * Matches the line against know timestamp patterns and return a Timestamp instance if the line *begins* with
-     * a known pattern.
+     * Matches the line against the timestamp formats of the default TimestampFormatRegistry and return a
+     * TimestampMatcher instance if the line *begins* with a known timestamp, followed by at least one space.
+     *
+     * Thread safe.
      */
     public static TimestampMatcher find(long lineNumber, String line) throws ParsingException {
 
@@ -99,52 +64,11 @@ public class TimestampMatcher {
             break;
         }
 
-        if (offset != 0) {
-
-            line = line.substring(offset);
-        }
-
         //
-        // attempt to match known timestamp patterns
+        // attempt to match known timestamp formats
         //
 
-        int dateFormatIndex = -1;
-
-        for(Pattern p: KNOWN_TIMESTAMP_PATTERNS) {
-
-            dateFormatIndex++;
-
-            Matcher m = p.matcher(line);
-
-            if (m.find()) {
-
-                //
-                // pattern found, parse it and extract the date
-                //
-
-                String s = m.group(1);
-
-                Date d;
-
-                try {
-
-                    d = DATE_FORMATS[dateFormatIndex].parse(s);
-                }
-                catch(ParseException pe) {
-
-                    throw new ParsingException(lineNumber, "invalid timestamp \"" + s + "\"", pe);
-                }
-
-                return new TimestampMatcher(d.getTime(), DATE_FORMATS[dateFormatIndex], offset + m.end(2));
-
-            }
-        }
-
-        //
-        // no know timestamp pattern matched
-        //
-
-        return null;
+        return TimestampFormatRegistry.getDefault().match(line, offset);
     }
 
     // Attributes ------------------------------------------------------------------------------------------------------
@@ -152,6 +76,7 @@ public class TimestampMatcher {
     private long time;
     private int indexOfNextCharInLine;
     private DateFormat dateFormat;
+    private TimestampFormat timestampFormat;
 
     // Constructors ----------------------------------------------------------------------------------------------------
 
@@ -177,12 +102,24 @@ public class TimestampMatcher {
         return  indexOfNextCharInLine;
     }
 
+    /**
+     * @return the format of the time stamp as matched in the log. May return null.
+     */
+    public TimestampFormat getTimestampFormat() {
+
+        return timestampFormat;
+    }
+
     @Override
     public String toString() {
 
         String s = "";
 
-        if (dateFormat == null) {
+        if (timestampFormat != null) {
+
+            s += timestampFormat.format(time);
+        }
+        else if (dateFormat == null) {
 
             s += time;
         }
@@ -198,6 +135,11 @@ public class TimestampMatcher {
 
     // Package protected -----------------------------------------------------------------------------------------------
 
+    void setTimestampFormat(TimestampFormat f) {
+
+        this.timestampFormat = f;
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+/**
+ * String-like operations on CharSequence regions of log content, which do not copy the content.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/21/17
+ */
+public final class CharSequences {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return true if the given literal occurs in the log content at the 'from' index, and it ends before 'to'.
+     */
+    public static boolean regionMatches(CharSequence s, int from, int to, String literal) {
+
+        int length = literal.length();
+
+        if (from < 0 || from + length > to) {
+
+            return false;
+        }
+
+        if (s instanceof String) {
+
+            return ((String)s).startsWith(literal, from);
+        }
+
+        for(int i = 0; i < length; i ++) {
+
+            if (s.charAt(from + i) != literal.charAt(i)) {
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the index of the first occurrence of the literal within the [from, to) region, or -1 if the literal
+     * does not occur in the region.
+     */
+    public static int indexOf(CharSequence s, String literal, int from, int to) {
+
+        int length = literal.length();
+
+        if (length == 0) {
+
+            return from <= to ? from : -1;
+        }
+
+        if (s instanceof String) {
+
+            int i = ((String)s).indexOf(literal, from);
+
+            return i == -1 || i + length > to ? -1 : i;
+        }
+
+        char first = literal.charAt(0);
+
+        for(int i = from, last = to - length; i <= last; i ++) {
+
+            if (s.charAt(i) == first && regionMatches(s, i, to, literal)) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Materializes the [from, to) region as a String. This is the only place where log content gets copied, and it
+     * should be used only for the values that are stored in events.
+     */
+    public static String toString(CharSequence s, int from, int to) {
+
+        if (s instanceof String) {
+
+            return ((String)s).substring(from, to);
+        }
+
+        return s.subSequence(from, to).toString();
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private CharSequences() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
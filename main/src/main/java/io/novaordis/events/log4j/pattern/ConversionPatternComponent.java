@@ -78,6 +78,32 @@ public interface ConversionPatternComponent {
      */
     Integer find(String s, int from);
 
+    /**
+     * The offset-based equivalent of parseLogContent(String, int, ConversionPatternComponent). It parses the rendering
+     * of this component that starts at the 'from' index and ends before the 'to' index, without copying the log
+     * content. The end of the rendering is identified by the caller. Components whose rendering has an intrinsic width,
+     * such as literal text, only use 'to' as an upper bound.
+     *
+     * On success, the cursor carries the index of the first character that follows the rendering, the boundaries of
+     * the rendered value and the parsed value. Only the values that end up being stored in the log event are
+     * materialized as Strings.
+     *
+     * @exception Log4jPatternLayoutException if no valid string representation of this component is found in the
+     * given region.
+     */
+    void parseLogContent(CharSequence logContent, int from, int to, LineCursor cursor)
+            throws Log4jPatternLayoutException;
+
+    /**
+     * The offset-based equivalent of find(String, int). It scans the [from, to) region of the log content in an
+     * attempt to find the first occurrence of <b>this</b> conversion pattern component, without copying the content.
+     *
+     * @return the index of the first occurrence of this conversion pattern component within the region, or -1 if
+     * there is no such component or if is not possible to identify an occurrence of the component. The 'to' value is
+     * interpreted as "the end of the region" and it is a valid return value.
+     */
+    int find(CharSequence s, int from, int to);
+
     /**
      * Interprets the given value as the value of the corresponding log event property, and injects the property into
      * the log event.
@@ -57,13 +57,30 @@ public abstract class ConversionPatternComponentBase implements ConversionPatter
             return null;
         }
 
-        Integer i = find(s.substring(from));
+        int i = find(s, from, s.length());
 
-        if (i == null) {
+        if (i == -1) {
 
             return null;
         }
 
+        return i;
+    }
+
+    /**
+     * The default implementation falls back to find(String) on a copy of the region. Subclasses should override it
+     * with a version that scans the region in place.
+     */
+    @Override
+    public int find(CharSequence s, int from, int to) {
+
+        Integer i = find(CharSequences.toString(s, from, to));
+
+        if (i == null) {
+
+            return -1;
+        }
+
         return from + i;
     }
 
@@ -173,24 +173,30 @@ public class FormatModifier {
      */
     public ProcessedString unapply(String s, int from, Integer to) {
 
-        ProcessedString result = new ProcessedString(from);
+        LineCursor cursor = new LineCursor();
 
-        String arg;
+        unapply(s, from, to == null ? s.length() : to, cursor);
 
-        if (to == null) {
+        return new ProcessedString(
+                from, s.substring(cursor.getValueFrom(), cursor.getValueTo()), cursor.getPosition());
+    }
 
-            result.setTo(s.length());
-            arg = s.substring(from);
-        }
-        else {
+    /**
+     * The equivalent of unapply(String, int, Integer) that does not copy any part of the log content: the boundaries
+     * of the value and the position of the first character that follows the rendering are recorded in the cursor.
+     *
+     * @param to the index of the first character that follows the rendering. Use s.length() for "to the end of the
+     *           string".
+     */
+    public void unapply(CharSequence s, int from, int to, LineCursor cursor) {
 
-            result.setTo(to);
-            arg = s.substring(from, to);
-        }
+        int valueFrom = from;
+        int valueTo = to;
+        int position = to;
 
         if (minimumFieldWidth != null) {
 
-            if (arg.length() < minimumFieldWidth) {
+            if (to - from < minimumFieldWidth) {
 
                 //
                 // this is an illegal state
@@ -205,19 +211,10 @@ public class FormatModifier {
                 // drop spaces from the left of the string
                 //
 
-                int i = 0;
-
-                while(i < arg.length()) {
-
-                    if (arg.charAt(i) != ' ') {
+                while(valueFrom < valueTo && s.charAt(valueFrom) == ' ') {
 
-                        break;
-                    }
-
-                    i ++;
+                    valueFrom ++;
                 }
-
-                arg = arg.substring(i);
             }
             else {
 
@@ -228,31 +225,26 @@ public class FormatModifier {
 
                 int i;
 
-                if (arg.charAt(minimumFieldWidth - 1) == ' ') {
+                if (minimumFieldWidth > 0 && s.charAt(from + minimumFieldWidth - 1) == ' ') {
 
-                    i = minimumFieldWidth - 1;
-                    result.setTo(from + minimumFieldWidth);
+                    i = from + minimumFieldWidth - 1;
+                    position = from + minimumFieldWidth;
                 }
                 else {
 
-                    i = arg.length() - 1;
+                    i = to - 1;
                 }
 
                 //
                 // drop spaces from the right of the string
                 //
 
-                while(i >= 0) {
-
-                    if (arg.charAt(i) != ' ') {
-
-                        break;
-                    }
+                while(i >= from && s.charAt(i) == ' ') {
 
                     i --;
                 }
 
-                arg = arg.substring(0, i + 1);
+                valueTo = i + 1;
             }
         }
 
@@ -261,19 +253,14 @@ public class FormatModifier {
         // string
         //
 
-        if (maximumFieldWidth != null) {
+        if (maximumFieldWidth != null && valueTo - valueFrom > maximumFieldWidth) {
 
-            if (arg.length() > maximumFieldWidth) {
-
-                arg = arg.substring(0, maximumFieldWidth);
-
-                result.setTo(from + maximumFieldWidth);
-            }
+            valueTo = valueFrom + maximumFieldWidth;
+            position = from + maximumFieldWidth;
         }
 
-        result.setProcessedString(arg);
-
-        return result;
+        cursor.setValue(valueFrom, valueTo);
+        cursor.setPosition(position);
     }
 
     @Override
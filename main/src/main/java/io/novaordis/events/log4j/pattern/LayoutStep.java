@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.convspec.ConversionSpecifier;
+import io.novaordis.events.log4j.pattern.convspec.ConversionSpecifierBase;
+import io.novaordis.events.log4j.pattern.convspec.Date;
+import io.novaordis.events.log4j.pattern.convspec.Level;
+import io.novaordis.events.log4j.pattern.convspec.LineSeparator;
+import io.novaordis.events.log4j.pattern.convspec.Logger;
+import io.novaordis.events.log4j.pattern.convspec.Message;
+import io.novaordis.events.log4j.pattern.convspec.ThreadName;
+import io.novaordis.events.log4j.pattern.convspec.wildfly.WildFlyException;
+import io.novaordis.events.log4j.pattern.convspec.wildfly.WildFlyMessage;
+
+/**
+ * A step of the compiled form of a Log4jPatternLayout. There is one step for each conversion pattern component, and
+ * the steps are built once, when the pattern layout is created. Each step carries everything that can be figured out
+ * in advance about its component: the type, the way the end of its rendering is anchored on the line, the delimiter
+ * that follows it and its fixed width, if known.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/20/17
+ */
+class LayoutStep {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // step types
+    //
+
+    static final byte LITERAL = 0;
+    static final byte DATE = 1;
+    static final byte LEVEL = 2;
+    static final byte LOGGER = 3;
+    static final byte THREAD_NAME = 4;
+    static final byte MESSAGE = 5;
+    static final byte EXCEPTION = 6;
+    static final byte LINE_SEPARATOR = 7;
+
+    //
+    // a component we don't know anything about
+    //
+    static final byte OTHER = 8;
+
+    //
+    // anchors - the way the end of the rendering is identified on the line
+    //
+
+    // the rendering extends to the end of the line, the component is the last one or it is followed by %n
+    static final byte END_OF_LINE = 0;
+
+    // the rendering is followed by literal text
+    static final byte DELIMITER = 1;
+
+    // we have no better option than asking the next component to find itself on the line
+    static final byte NEXT_COMPONENT = 2;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    static byte typeOf(ConversionPatternComponent c) {
+
+        if (c instanceof LiteralText) {
+
+            return LITERAL;
+        }
+        else if (c instanceof Date) {
+
+            return DATE;
+        }
+        else if (c instanceof Level) {
+
+            return LEVEL;
+        }
+        else if (c instanceof Logger) {
+
+            return LOGGER;
+        }
+        else if (c instanceof ThreadName) {
+
+            return THREAD_NAME;
+        }
+        else if (c instanceof Message || c instanceof WildFlyMessage) {
+
+            return MESSAGE;
+        }
+        else if (c instanceof WildFlyException) {
+
+            return EXCEPTION;
+        }
+        else if (c instanceof LineSeparator) {
+
+            return LINE_SEPARATOR;
+        }
+
+        return OTHER;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private ConversionPatternComponent component;
+    private ConversionPatternComponent next;
+
+    private byte type;
+    private byte anchor;
+
+    // the literal text that follows the rendering, only relevant for DELIMITER anchors
+    private String delimiter;
+
+    // the width of the rendering, if known in advance, or -1
+    private int fixedWidth;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    /**
+     * @param next the component that follows in the pattern layout, may be null.
+     */
+    LayoutStep(ConversionPatternComponent component, ConversionPatternComponent next) {
+
+        if (component == null) {
+
+            throw new IllegalArgumentException("null conversion pattern component");
+        }
+
+        this.component = component;
+        this.next = next;
+        this.type = typeOf(component);
+        this.fixedWidth = -1;
+
+        FormatModifier formatModifier = null;
+
+        if (component instanceof ConversionSpecifier) {
+
+            formatModifier = ((ConversionSpecifier)component).getFormatModifier();
+        }
+
+        if (LITERAL == type) {
+
+            this.fixedWidth = component.getLiteral().length();
+        }
+        else if (DATE == type && formatModifier == null) {
+
+            this.fixedWidth = ((Date)component).getRenderingWidth();
+        }
+
+        if (next == null || next instanceof LineSeparator) {
+
+            this.anchor = END_OF_LINE;
+        }
+        else if (next instanceof LiteralText) {
+
+            this.anchor = DELIMITER;
+            this.delimiter = next.getLiteral();
+        }
+        else {
+
+            this.anchor = NEXT_COMPONENT;
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "LayoutStep[" + component + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    ConversionPatternComponent getComponent() {
+
+        return component;
+    }
+
+    byte getType() {
+
+        return type;
+    }
+
+    byte getAnchor() {
+
+        return anchor;
+    }
+
+    /**
+     * May return null.
+     */
+    String getDelimiter() {
+
+        return delimiter;
+    }
+
+    /**
+     * @return the width of the rendering, if known in advance, or -1.
+     */
+    int getFixedWidth() {
+
+        return fixedWidth;
+    }
+
+    /**
+     * Matches the step against the line, starting at the cursor position. On success, the cursor is advanced past the
+     * rendering, and it carries the rendered value boundaries and the parsed value.
+     *
+     * @exception Log4jPatternLayoutException if the line content at the cursor position is not a valid rendering.
+     */
+    void match(CharSequence line, LineCursor cursor) throws Log4jPatternLayoutException {
+
+        int from = cursor.getPosition();
+
+        //
+        // literals know their own width, they only need the upper bound
+        //
+
+        int to = LITERAL == type ? line.length() : locateEnd(line, from);
+
+        component.parseLogContent(line, from, to, cursor);
+    }
+
+    /**
+     * @return true if the value of this step's component is interned when the line is parsed with a dictionary: this is
+     * the case of the logger and thread name, whose values repeat from line to line.
+     */
+    boolean isInternable() {
+
+        return (LOGGER == type || THREAD_NAME == type) && component instanceof ConversionSpecifierBase;
+    }
+
+    /**
+     * @return true if the value of this step's component can be recorded in the event as offsets into the line, and
+     * materialized later, on first access: this is the case of the logger, thread name and message. Logger and thread
+     * names are not deferred if they are interned, as the dictionary lookup does not copy the value on a hit, and the
+     * events are better off holding the canonical instance.
+     *
+     * @param interning whether the line is parsed with a dictionary.
+     */
+    boolean isDeferrable(boolean interning) {
+
+        if (!(component instanceof ConversionSpecifierBase)) {
+
+            return false;
+        }
+
+        if (MESSAGE == type) {
+
+            return true;
+        }
+
+        return (LOGGER == type || THREAD_NAME == type) && !interning;
+    }
+
+    /**
+     * The deferred equivalent of match(): the cursor is advanced past the rendering and it carries the rendered value
+     * boundaries, but the value is not copied out of the line. Only valid for deferrable steps.
+     *
+     * @see LayoutStep#isDeferrable(boolean)
+     */
+    void locate(CharSequence line, LineCursor cursor) {
+
+        int from = cursor.getPosition();
+
+        ((ConversionSpecifierBase)component).locateValue(line, from, locateEnd(line, from), cursor);
+    }
+
+    /**
+     * Records the value boundaries carried by the cursor into the event, to be materialized on first access. Only valid
+     * for deferrable steps.
+     *
+     * @see LayoutStep#isDeferrable(boolean)
+     */
+    void injectOffsets(Log4jEventImpl e, LineCursor cursor) {
+
+        int from = cursor.getValueFrom();
+        int to = cursor.getValueTo();
+
+        if (LOGGER == type) {
+
+            e.setLoggerOffsets(from, to);
+        }
+        else if (THREAD_NAME == type) {
+
+            e.setThreadNameOffsets(from, to);
+        }
+        else {
+
+            e.setMessageOffsets(from, to);
+            e.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+        }
+    }
+
+    /**
+     * @return the index of the first character that follows the rendering of this step's component, starting at
+     * 'from'. The line length is a valid return value, and it means "to the end of the line".
+     */
+    int locateEnd(CharSequence line, int from) {
+
+        int length = line.length();
+
+        if (from >= length) {
+
+            return length;
+        }
+
+        if (END_OF_LINE == anchor) {
+
+            return length;
+        }
+        else if (DELIMITER == anchor) {
+
+            //
+            // if we know the width of the rendering, check the delimiter where we expect it first, it saves a scan
+            //
+
+            if (fixedWidth >= 0 && CharSequences.regionMatches(line, from + fixedWidth, length, delimiter)) {
+
+                return from + fixedWidth;
+            }
+
+            int i = CharSequences.indexOf(line, delimiter, from, length);
+
+            return i == -1 ? length : i;
+        }
+        else {
+
+            if (fixedWidth >= 0) {
+
+                return Math.min(from + fixedWidth, length);
+            }
+
+            int i = next.find(line, from, length);
+
+            return i == -1 ? length : i;
+        }
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+/**
+ * A mutable cursor that walks a log content line while a compiled pattern layout is matched against it.
+ *
+ * The same instance is reused for all conversion pattern components of a line: after each component is processed,
+ * the cursor carries the position of the first character that follows the component's rendering, the boundaries of
+ * the rendered value (after the format modifier, if any, was unapplied) and the parsed value, if any. This way no
+ * intermediate objects need to be created for individual components.
+ *
+ * The cursor also carries the dictionary the logger and thread names are interned with, which belongs to the parser
+ * the line is parsed for, and not to the pattern layout.
+ *
+ * Not thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/20/17
+ */
+public class LineCursor {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // the index of the first character that follows the last processed rendering
+    private int position;
+
+    // the boundaries of the rendered value, after the format modifier (if any) was unapplied
+    private int valueFrom;
+    private int valueTo;
+
+    // the parsed value, whose type depends on the conversion pattern component that was processed last
+    private Object value;
+
+    // null means the values are not interned
+    private StringDictionary dictionary;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public LineCursor() {
+
+        reset();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    public int getPosition() {
+
+        return position;
+    }
+
+    public void setPosition(int i) {
+
+        this.position = i;
+    }
+
+    public int getValueFrom() {
+
+        return valueFrom;
+    }
+
+    public int getValueTo() {
+
+        return valueTo;
+    }
+
+    /**
+     * Sets the boundaries of the rendered value.
+     */
+    public void setValue(int from, int to) {
+
+        this.valueFrom = from;
+        this.valueTo = to;
+    }
+
+    /**
+     * @return the parsed value. May return null.
+     */
+    public Object getValue() {
+
+        return value;
+    }
+
+    public void setValue(Object o) {
+
+        this.value = o;
+    }
+
+    /**
+     * @see LineCursor#setDictionary(StringDictionary)
+     */
+    public StringDictionary getDictionary() {
+
+        return dictionary;
+    }
+
+    /**
+     * Installs the dictionary the values stored verbatim in the event are interned with. The dictionary is not
+     * affected by reset().
+     *
+     * @param dictionary null means no interning.
+     */
+    public void setDictionary(StringDictionary dictionary) {
+
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Brings the cursor to the beginning of a new line.
+     */
+    public void reset() {
+
+        this.position = 0;
+        this.valueFrom = 0;
+        this.valueTo = 0;
+        this.value = null;
+    }
+
+    @Override
+    public String toString() {
+
+        return "" + position + " (" + valueFrom + ", " + valueTo + ") " + value;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -99,33 +99,35 @@ public class LiteralText extends ConversionPatternComponentBase {
     public RenderedLogEvent parseLogContent(String s, int from, ConversionPatternComponent next)
             throws Log4jPatternLayoutException {
 
-        int length = literal.length();
+        LineCursor cursor = new LineCursor();
 
-        int to = from + length;
+        parseLogContent(s, from, s.length(), cursor);
 
-        String s2 = s.substring(from, to);
+        return new RenderedLogEvent(literal, from, cursor.getPosition());
+    }
+
+    @Override
+    public void parseLogContent(CharSequence s, int from, int to, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        int end = from + literal.length();
 
-        if (!literal.equals(s2)) {
+        if (!CharSequences.regionMatches(s, from, to, literal)) {
 
             throw new Log4jPatternLayoutException(
-                    "pattern element's literal \"" + literal +
-                            "\" does not match the parsed string literal \"" + s2 + "\"");
+                    "pattern element's literal \"" + literal + "\" does not match the parsed string literal \"" +
+                            CharSequences.toString(s, from, Math.min(to, end)) + "\"");
         }
 
-        return new RenderedLogEvent(literal, from, to);
+        cursor.setValue(from, end);
+        cursor.setPosition(end);
+        cursor.setValue(literal);
     }
 
     @Override
-    public Integer find(String s) {
-
-        int i = s.indexOf(getLiteral());
-
-        if (i == -1) {
-
-            return null;
-        }
+    public int find(CharSequence s, int from, int to) {
 
-        return i;
+        return CharSequences.indexOf(s, literal, from, to);
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
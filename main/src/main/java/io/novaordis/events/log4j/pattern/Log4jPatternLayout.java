@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import io.novaordis.events.log4j.impl.EventFilter;
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
 import io.novaordis.events.log4j.pattern.convspec.ConversionSpecifier;
 import io.novaordis.events.log4j.pattern.convspec.ConversionSpecifierFinder;
@@ -29,6 +30,9 @@ import io.novaordis.events.log4j.pattern.convspec.ConversionSpecifierFinder;
  *
  * See http://logging.apache.org/log4j/2.x/manual/layouts.html#PatternLayout
  *
+ * Not thread safe: the conversion specifiers keep per-instance caches (the timestamp prefix cache, the date format),
+ * so parsers running on different threads must use distinct instances, built from the same literal.
+ *
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
  * @since 10/28/17
  */
@@ -46,6 +50,18 @@ public class Log4jPatternLayout {
 
     private List<ConversionPatternComponent> components;
 
+    //
+    // the compiled form of the pattern layout, built once, when the pattern layout is created, and executed for each
+    // parsed line
+    //
+    private LayoutStep[] steps;
+
+    //
+    // if true, the logger, thread name and message are recorded as offsets into the line and materialized on first
+    // access
+    //
+    private boolean lazyMaterialization;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Log4jPatternLayout(String literal) throws Log4jPatternLayoutException {
@@ -62,6 +78,8 @@ public class Log4jPatternLayout {
         parsePatternLayout();
 
         validatePatternLayout();
+
+        compilePatternLayout();
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
@@ -88,6 +106,27 @@ public class Log4jPatternLayout {
         return components.iterator();
     }
 
+    /**
+     * @see Log4jPatternLayout#setLazyMaterialization(boolean)
+     */
+    public boolean isLazyMaterialization() {
+
+        return lazyMaterialization;
+    }
+
+    /**
+     * If set to true, the events produced by parse() do not carry String values for logger, thread name and message,
+     * but only their offsets into the event's raw representation. The values are materialized on the first
+     * getLogger(), getThreadName() or getMessage() invocation, so a value that is never read is never copied out of
+     * the line. Logger and thread names are not deferred if they are interned. The default is false.
+     *
+     * @see Log4jPatternLayout#parse(long, CharSequence, EventFilter, StringDictionary)
+     */
+    public void setLazyMaterialization(boolean b) {
+
+        this.lazyMaterialization = b;
+    }
+
     /**
      * Parse a log4j-generated log event line. It will fail if the line does not match the pattern. The method is
      * not intended to parse (does not keep internal state of) multi-line messages or exception stack trace lines.
@@ -102,21 +141,67 @@ public class Log4jPatternLayout {
      */
     public Log4jEventImpl parse(long lineNumber, String line) throws Log4jPatternLayoutException {
 
-        Iterator<ConversionPatternComponent> i = getPatternComponentIterator();
+        return parse(lineNumber, (CharSequence)line);
+    }
+
+    /**
+     * The CharSequence equivalent of parse(long, String). The log content is not copied, except for the values that
+     * are stored in the event and the event's raw representation.
+     *
+     * @see Log4jPatternLayout#parse(long, String)
+     */
+    public Log4jEventImpl parse(long lineNumber, CharSequence line) throws Log4jPatternLayoutException {
+
+        return parse(lineNumber, line, null);
+    }
+
+    /**
+     * The equivalent of parse(long, CharSequence) that evaluates the filter predicates while the line is being parsed:
+     * the time range and the level are checked right after %d and %p are matched, the logger and the thread name right
+     * after %c and %t are matched. As soon as a predicate fails, the rest of the line is skipped.
+     *
+     * Note that a line rejected early is considered to be a log event rendering line, even if the conversion pattern
+     * components that were not processed would not have matched it.
+     *
+     * @param filter may be null, in which case no event is rejected.
+     *
+     * @return the event, or null if the line is a log event rendering line, but the event is rejected by the filter.
+     *
+     * @see Log4jPatternLayout#parse(long, String)
+     */
+    public Log4jEventImpl parse(long lineNumber, CharSequence line, EventFilter filter)
+            throws Log4jPatternLayoutException {
+
+        return parse(lineNumber, line, filter, null);
+    }
 
-        if (!i.hasNext()) {
+    /**
+     * The equivalent of parse(long, CharSequence, EventFilter) that interns the logger and thread names with the given
+     * dictionary, so all events parsed with the same dictionary carry the same instance for the same name. The
+     * dictionary belongs to the caller, typically a parser, and it is not retained by the pattern layout.
+     *
+     * @param dictionary may be null, in which case the values are not interned.
+     *
+     * @see Log4jPatternLayout#parse(long, CharSequence, EventFilter)
+     */
+    public Log4jEventImpl parse(long lineNumber, CharSequence line, EventFilter filter, StringDictionary dictionary)
+            throws Log4jPatternLayoutException {
+
+        if (steps.length == 0) {
 
             throw new IllegalStateException("no conversion pattern components");
         }
 
-        int from = 0;
-        ConversionPatternComponent crt = i.next();
-        ConversionPatternComponent next = null;
+        LineCursor cursor = new LineCursor();
 
-        if (i.hasNext()) {
+        boolean interning = dictionary != null;
+        int length = line.length();
+        int i = 0;
 
-            next = i.next();
-        }
+        //
+        // the step types whose predicates were evaluated, one bit per type
+        //
+        int checked = 0;
 
         Log4jEventImpl log4jEvent = null;
 
@@ -126,7 +211,24 @@ public class Log4jPatternLayout {
             // process the current conversion pattern
             //
 
-            RenderedLogEvent e = crt.parseLogContent(line, from, next);
+            LayoutStep step = steps[i ++];
+
+            //
+            // only the values that repeat from line to line are interned
+            //
+
+            cursor.setDictionary(interning && step.isInternable() ? dictionary : null);
+
+            boolean deferred = lazyMaterialization && step.isDeferrable(interning);
+
+            if (deferred) {
+
+                step.locate(line, cursor);
+            }
+            else {
+
+                step.match(line, cursor);
+            }
 
             //
             // lazy instantiation, if we survive current conversion pattern parsing, we avoid creating an useless
@@ -139,27 +241,37 @@ public class Log4jPatternLayout {
                 log4jEvent.setLineNumber(lineNumber);
             }
 
-            crt.injectIntoEvent(lineNumber, log4jEvent, e.get());
-
-            crt = next;
-            from = e.to();
+            if (deferred) {
 
-            if (i.hasNext()) {
-
-                next = i.next();
+                step.injectOffsets(log4jEvent, cursor);
             }
             else {
 
-                next = null;
+                step.getComponent().injectIntoEvent(lineNumber, log4jEvent, cursor.getValue());
+            }
+
+            if (filter != null) {
+
+                if (!accepts(filter, step.getType(), log4jEvent, line, cursor)) {
+
+                    return null;
+                }
+
+                checked |= 1 << step.getType();
             }
         }
-        while (crt != null && from < line.length());
+        while (i < steps.length && cursor.getPosition() < length);
+
+        if (filter != null && !acceptsUnchecked(filter, checked, log4jEvent)) {
+
+            return null;
+        }
 
         //
-        // parsing successful, load the raw representation
+        // parsing successful, load the raw representation; the deferred values are offsets into it
         //
 
-        log4jEvent.appendRawLine(line);
+        log4jEvent.appendRawLine(line.toString());
 
         return log4jEvent;
     }
@@ -179,10 +291,65 @@ public class Log4jPatternLayout {
 
     // Package protected -----------------------------------------------------------------------------------------------
 
+    LayoutStep[] getSteps() {
+
+        return steps;
+    }
+
     // Protected -------------------------------------------------------------------------------------------------------
 
     // Private ---------------------------------------------------------------------------------------------------------
 
+    /**
+     * Evaluates the predicate that corresponds to the step that was just matched, if any.
+     */
+    private static boolean accepts(EventFilter filter, byte stepType, Log4jEventImpl e, CharSequence line,
+                                   LineCursor cursor) {
+
+        if (LayoutStep.DATE == stepType) {
+
+            return filter.acceptsTime(e.getTime());
+        }
+        else if (LayoutStep.LEVEL == stepType) {
+
+            return filter.acceptsLevel(e.getLevel());
+        }
+        else if (LayoutStep.LOGGER == stepType) {
+
+            return filter.acceptsLogger(line, cursor.getValueFrom(), cursor.getValueTo());
+        }
+        else if (LayoutStep.THREAD_NAME == stepType) {
+
+            return filter.acceptsThreadName(line, cursor.getValueFrom(), cursor.getValueTo());
+        }
+
+        return true;
+    }
+
+    /**
+     * Evaluates the predicates whose conversion pattern components are not part of the layout, or were not reached on
+     * this line. The event does not carry the corresponding values.
+     */
+    private static boolean acceptsUnchecked(EventFilter filter, int checked, Log4jEventImpl e) {
+
+        if ((checked & (1 << LayoutStep.DATE)) == 0 && !filter.acceptsTime(e.getTime())) {
+
+            return false;
+        }
+
+        if ((checked & (1 << LayoutStep.LEVEL)) == 0 && !filter.acceptsLevel(e.getLevel())) {
+
+            return false;
+        }
+
+        if ((checked & (1 << LayoutStep.LOGGER)) == 0 && !filter.acceptsLogger(null, 0, 0)) {
+
+            return false;
+        }
+
+        return (checked & (1 << LayoutStep.THREAD_NAME)) != 0 || filter.acceptsThreadName(null, 0, 0);
+    }
+
     private void parsePatternLayout() throws Log4jPatternLayoutException {
 
         int i = 0;
@@ -280,6 +447,24 @@ public class Log4jPatternLayout {
 
     }
 
+    /**
+     * Builds the flat step array executed by parse(), so the per-line work does not have to figure out again how each
+     * component's rendering is delimited.
+     */
+    private void compilePatternLayout() {
+
+        int size = components.size();
+
+        steps = new LayoutStep[size];
+
+        for(int i = 0; i < size; i ++) {
+
+            ConversionPatternComponent next = i < size - 1 ? components.get(i + 1) : null;
+
+            steps[i] = new LayoutStep(components.get(i), next);
+        }
+    }
+
     // Inner classes ---------------------------------------------------------------------------------------------------
 
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+/**
+ * A bounded dictionary of canonical String instances for the values that repeat from line to line, such as logger and
+ * thread names. A value is looked up directly from the character range it occupies on the line, so a hit costs a
+ * hash computation and a region comparison, but no allocation, and all events carry the same instance for the same
+ * value, which reduces the retained heap and makes equality checks between them identity checks in most cases.
+ *
+ * Once the dictionary holds 'capacity' values, new values are not added anymore: they are returned as fresh,
+ * non-canonical instances. This keeps the memory footprint bounded for high cardinality content.
+ *
+ * Not thread safe: the table and the counters are updated without synchronization, so concurrent use may overfill the
+ * table and lose counts. A dictionary is owned by a parser, and it is passed to the pattern layout with each line.
+ *
+ * @see io.novaordis.events.log4j.impl.Log4jParser#setDictionary(StringDictionary)
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class StringDictionary {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the hash code of the [from, to) region, identical to the hash code of the equivalent String.
+     */
+    static int hash(CharSequence s, int from, int to) {
+
+        int h = 0;
+
+        for(int i = from; i < to; i ++) {
+
+            h = 31 * h + s.charAt(i);
+        }
+
+        return h;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private int capacity;
+
+    // open addressing, linear probing; the table is never more than half full
+    private String[] table;
+    private int mask;
+
+    private int size;
+
+    private long hits;
+    private long misses;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public StringDictionary() {
+
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of values the dictionary holds.
+     */
+    public StringDictionary(int capacity) {
+
+        if (capacity <= 0) {
+
+            throw new IllegalArgumentException("invalid capacity " + capacity);
+        }
+
+        this.capacity = capacity;
+
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+
+        this.table = new String[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the canonical instance of the value that occupies the [from, to) region. A value that was not seen
+     * before is copied out of the log content and, if the dictionary is not full, becomes the canonical instance.
+     */
+    public String intern(CharSequence s, int from, int to) {
+
+        int h = hash(s, from, to);
+        int length = to - from;
+
+        int i = h & mask;
+
+        for(String candidate = table[i]; candidate != null; candidate = table[i = (i + 1) & mask]) {
+
+            if (candidate.length() == length && candidate.hashCode() == h &&
+                    CharSequences.regionMatches(s, from, to, candidate)) {
+
+                hits ++;
+                return candidate;
+            }
+        }
+
+        misses ++;
+
+        String value = CharSequences.toString(s, from, to);
+
+        if (size < capacity) {
+
+            table[i] = value;
+            size ++;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the canonical instance of the given value. Null is returned as null.
+     */
+    public String intern(String s) {
+
+        return s == null ? null : intern(s, 0, s.length());
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * @return the number of canonical instances held by the dictionary.
+     */
+    public int size() {
+
+        return size;
+    }
+
+    public long getHits() {
+
+        return hits;
+    }
+
+    public long getMisses() {
+
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+
+        return "StringDictionary[" + size + "/" + capacity + ", hits=" + hits + ", misses=" + misses + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the last decoded second-resolution timestamp prefix (for example "2017-11-23 09:01:55" from
+ * "2017-11-23 09:01:55,011") and its epoch value. Consecutive log lines usually share the prefix, and for those, the
+ * timestamp decoding costs only a region comparison plus the milliseconds arithmetic.
+ *
+ * Hits and misses are counted, so the effectiveness of the cache on a specific log can be verified.
+ *
+ * Thread safe: the prefix and its value are published together as an immutable entry.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampPrefixCache {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // returned by lookup() on miss
+    //
+    public static final long MISS = Long.MIN_VALUE;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the value of the three digit milliseconds field that starts at 'from', or -1 if the characters are not
+     * digits.
+     */
+    public static int milliseconds(CharSequence s, int from) {
+
+        int value = 0;
+
+        for(int i = from; i < from + 3; i ++) {
+
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private volatile Entry last;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public TimestampPrefixCache() {
+
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the epoch value of the prefix that occupies the [from, to) region, or MISS if the region does not hold
+     * the last stored prefix.
+     */
+    public long lookup(CharSequence s, int from, int to) {
+
+        Entry e = last;
+
+        if (e != null && e.prefix.length() == to - from && CharSequences.regionMatches(s, from, to, e.prefix)) {
+
+            hits.increment();
+            return e.value;
+        }
+
+        misses.increment();
+        return MISS;
+    }
+
+    /**
+     * Stores the prefix that occupies the [from, to) region, and its epoch value.
+     */
+    public void store(CharSequence s, int from, int to, long value) {
+
+        last = new Entry(CharSequences.toString(s, from, to), value);
+    }
+
+    public long getHits() {
+
+        return hits.sum();
+    }
+
+    public long getMisses() {
+
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+
+        return "TimestampPrefixCache[hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    private static class Entry {
+
+        private final String prefix;
+        private final long value;
+
+        Entry(String prefix, long value) {
+
+            this.prefix = prefix;
+            this.value = value;
+        }
+    }
+
+}
@@ -17,13 +17,16 @@
 package io.novaordis.events.log4j.pattern.convspec;
 
 import io.novaordis.events.log4j.pattern.AddResult;
+import io.novaordis.events.log4j.pattern.CharSequences;
 import io.novaordis.events.log4j.pattern.ConversionPatternComponent;
 import io.novaordis.events.log4j.pattern.ConversionPatternComponentBase;
 import io.novaordis.events.log4j.pattern.FormatModifier;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
+import io.novaordis.events.log4j.pattern.StringDictionary;
 
 /**
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
@@ -122,14 +125,14 @@ public abstract class ConversionSpecifierBase extends ConversionPatternComponent
     public RenderedLogEvent parseLogContent(String line, int from, ConversionPatternComponent next)
             throws Log4jPatternLayoutException {
 
-        Integer renderedLogEventEnd = null;
+        int renderedLogEventEnd = -1;
 
         if (next != null) {
 
-            renderedLogEventEnd = next.find(line, from);
+            renderedLogEventEnd = next.find(line, from, line.length());
         }
 
-        if (renderedLogEventEnd == null) {
+        if (renderedLogEventEnd == -1) {
 
             //
             // we cannot unequivocally determine the occurrence of the next conversion pattern component on the line
@@ -139,29 +142,20 @@ public abstract class ConversionSpecifierBase extends ConversionPatternComponent
             renderedLogEventEnd = line.length();
         }
 
-        //
-        // process format modifier information, if available, it'll give more details about how to parse the
-        // literal
-        //
+        LineCursor cursor = new LineCursor();
 
-        ProcessedString ps;
+        parseLogContent(line, from, renderedLogEventEnd, cursor);
 
-        if (formatModifier != null) {
-
-            //
-            // a format modifier was applied to the rendering of the log event via this conversion specifier, so
-            // before an attempt to extract the original log event from the log content, apply the inverse of the
-            // format modifier rendering transformation (if possible)
-            //
+        return new RenderedLogEvent(cursor.getValue(), from, cursor.getPosition());
+    }
 
-            ps = formatModifier.unapply(line, from, renderedLogEventEnd);
-        }
-        else {
+    @Override
+    public void parseLogContent(CharSequence logContent, int from, int to, LineCursor cursor)
+            throws Log4jPatternLayoutException {
 
-            ps = new ProcessedString(from, line.substring(from, renderedLogEventEnd), renderedLogEventEnd);
-        }
+        locateValue(logContent, from, to, cursor);
 
-         return parseLiteralAfterFormatModifierWasUnapplied(ps);
+        parseValueAfterFormatModifierWasUnapplied(logContent, from, cursor);
     }
 
     // ConversionSpecifier implementation ------------------------------------------------------------------------------
@@ -199,6 +193,39 @@ public abstract class ConversionSpecifierBase extends ConversionPatternComponent
         return getLiteral();
     }
 
+    /**
+     * Establishes the boundaries of the value and the position of the first character that follows the rendering,
+     * by factoring in the format modifier information, if available, but without parsing or copying the value. After
+     * the invocation, the cursor value is null.
+     *
+     * @param to the index of the first character that follows the rendering.
+     */
+    public void locateValue(CharSequence logContent, int from, int to, LineCursor cursor) {
+
+        //
+        // process format modifier information, if available, it'll give more details about how to parse the
+        // literal
+        //
+
+        if (formatModifier != null) {
+
+            //
+            // a format modifier was applied to the rendering of the log event via this conversion specifier, so
+            // before an attempt to extract the original log event from the log content, apply the inverse of the
+            // format modifier rendering transformation (if possible)
+            //
+
+            formatModifier.unapply(logContent, from, to, cursor);
+        }
+        else {
+
+            cursor.setValue(from, to);
+            cursor.setPosition(to);
+        }
+
+        cursor.setValue(null);
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -209,6 +236,51 @@ public abstract class ConversionSpecifierBase extends ConversionPatternComponent
     protected abstract RenderedLogEvent parseLiteralAfterFormatModifierWasUnapplied(ProcessedString ps)
             throws Log4jPatternLayoutException;
 
+    /**
+     * The offset-based equivalent of parseLiteralAfterFormatModifierWasUnapplied(ProcessedString). When invoked, the
+     * cursor carries the value boundaries and the position of the first character that follows the rendering, as
+     * established after the format modifier information has been factored in. The implementation must set the parsed
+     * value, and may adjust the position.
+     *
+     * The default implementation copies the value into a ProcessedString and delegates to
+     * parseLiteralAfterFormatModifierWasUnapplied(ProcessedString). Subclasses should override it with a version that
+     * does not copy more than what gets stored in the event.
+     *
+     * @param from the index where the rendering (not the value) starts.
+     */
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        String value = CharSequences.toString(logContent, cursor.getValueFrom(), cursor.getValueTo());
+
+        RenderedLogEvent e =
+                parseLiteralAfterFormatModifierWasUnapplied(new ProcessedString(from, value, cursor.getPosition()));
+
+        cursor.setValue(e.get());
+        cursor.setPosition(e.to());
+    }
+
+    /**
+     * Stores the value as a String, for the conversion specifiers whose values are stored verbatim in the event. If the
+     * cursor carries a dictionary, the value is looked up in the dictionary first, and a canonical instance is stored.
+     */
+    protected void materializeValue(CharSequence logContent, LineCursor cursor) {
+
+        int from = cursor.getValueFrom();
+        int to = cursor.getValueTo();
+
+        StringDictionary dictionary = cursor.getDictionary();
+
+        if (dictionary == null) {
+
+            cursor.setValue(CharSequences.toString(logContent, from, to));
+        }
+        else {
+
+            cursor.setValue(dictionary.intern(logContent, from, to));
+        }
+    }
+
     // Private ---------------------------------------------------------------------------------------------------------
 
     // Inner classes ---------------------------------------------------------------------------------------------------
@@ -16,14 +16,19 @@
 
 package io.novaordis.events.log4j.pattern.convspec;
 
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
 import io.novaordis.events.log4j.pattern.AddResult;
+import io.novaordis.events.log4j.pattern.CharSequences;
+import io.novaordis.events.log4j.pattern.ConversionPatternComponent;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+import io.novaordis.utilities.time.Timestamp;
 import io.novaordis.utilities.time.TimestampImpl;
 
 /**
@@ -58,22 +63,65 @@ public class Date extends ConversionSpecifierBase {
     public static final String COMPACT = "COMPACT";
     public static final String COMPACT_PATTERN = "yyyyMMddHHmmssSSS";
 
+    // the number of seconds since the epoch
     public static final String UNIX = "UNIX";
 
+    // the number of milliseconds since the epoch
     public static final String UNIX_MILLIS = "UNIX_MILLIS";
 
+    // the longest decimal number we parse without risking overflow
+    private static final int MAX_EPOCH_DIGITS = 18;
+
     private static final short NEW = 0;
     private static final short READING_DATE_PATTERN = 1;
     private static final short CLOSED = 2;
 
     // Static ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * Parses the decimal number rendered in the given region, without allocating anything.
+     *
+     * @return the number or -1 if the region contains anything else than decimal digits, or if it is too long.
+     */
+    static long parseDecimal(CharSequence s, int from, int to) {
+
+        if (to - from > MAX_EPOCH_DIGITS) {
+
+            return -1;
+        }
+
+        long n = 0;
+
+        for(int i = from; i < to; i ++) {
+
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+
+                return -1;
+            }
+
+            n = n * 10 + (c - '0');
+        }
+
+        return n;
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
     private short state;
     private String datePatternLiteral;
     private SimpleDateFormat dateFormat;
 
+    // the width of the rendering, computed once when the date pattern is processed, or -1 for variable width
+    private int renderingWidth;
+
+    // the value of the UNIX or UNIX_MILLIS rendering unit, in milliseconds, or 0 for SimpleDateFormat patterns
+    private long epochUnitMillis;
+
+    // null if the date pattern cannot be decoded as fixed width, in which case we use the SimpleDateFormat
+    private DateDecoder decoder;
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     public Date() {
@@ -160,68 +208,222 @@ public class Date extends ConversionSpecifierBase {
         }
     }
 
+    /**
+     * The value of the returned rendered log event is a java.util.Date, the cursor-based parsing produces a Timestamp.
+     */
     @Override
-    public RenderedLogEvent parseLiteralAfterFormatModifierWasUnapplied(ProcessedString ps)
+    public RenderedLogEvent parseLogContent(String line, int from, ConversionPatternComponent next)
             throws Log4jPatternLayoutException {
 
-        int length = dateFormat.toPattern().length();
+        RenderedLogEvent e = super.parseLogContent(line, from, next);
+
+        if (!(e.get() instanceof Timestamp)) {
+
+            return e;
+        }
+
+        return new RenderedLogEvent(new java.util.Date(((Timestamp)e.get()).getTime()), e.from(), e.to());
+    }
+
+    @Override
+    public RenderedLogEvent parseLiteralAfterFormatModifierWasUnapplied(ProcessedString ps)
+            throws Log4jPatternLayoutException {
 
         String s2 = ps.getProcessedString();
 
-        int s2Length = s2.length();
+        java.util.Date d = parse(s2, 0, s2.length());
 
-        if (s2Length == 0) {
+        return new RenderedLogEvent(d, ps.from(), ps.to());
+    }
+
+    @Override
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        //
+        // the timestamp is the only object built for the date, the event keeps it as is
+        //
+
+        cursor.setValue(new TimestampImpl(parseTime(logContent, cursor.getValueFrom(), cursor.getValueTo())));
+    }
+
+    /**
+     * @param value a Timestamp, as set on the cursor, or a java.util.Date, as returned by
+     *              parseLiteralAfterFormatModifierWasUnapplied().
+     */
+    @Override
+    protected void injectIntoEvent(Log4jEventImpl e, Object value) {
+
+        //
+        // null handled by superclass method
+        //
+
+        if (value instanceof Timestamp) {
+
+            e.setTimestamp((Timestamp)value);
+        }
+        else if (value instanceof java.util.Date) {
+
+            e.setTimestamp(new TimestampImpl(((java.util.Date)value).getTime()));
+        }
+        else {
+
+            throw new IllegalArgumentException("invalid value type " + value.getClass().getSimpleName() +
+                    ", expected Timestamp or java.util.Date");
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the SimpleDateFormat corresponding to the date pattern, or null for UNIX and UNIX_MILLIS, which are
+     * not SimpleDateFormat patterns.
+     */
+    public SimpleDateFormat getSimpleDateFormat() {
+
+        return dateFormat;
+    }
+
+    /**
+     * @return true if the date pattern has a fixed width rendering that is decoded directly, without the
+     * SimpleDateFormat.
+     */
+    public boolean isFixedWidthDecoded() {
+
+        return decoder != null;
+    }
+
+    /**
+     * @return the cache of the last decoded second-resolution prefix, which also exposes the hit/miss counters. May
+     * return null if the date pattern is not decoded as fixed width, or if its rendering does not end with the
+     * milliseconds.
+     */
+    public TimestampPrefixCache getPrefixCache() {
+
+        return decoder == null ? null : decoder.getPrefixCache();
+    }
+
+    /**
+     * @return the width of the date rendering, as implied by the date pattern. The quotes that enclose literal text
+     * do not count. Returns -1 for UNIX and UNIX_MILLIS, whose renderings have variable width.
+     */
+    public int getRenderingWidth() {
+
+        return renderingWidth;
+    }
+
+    /**
+     * The java.util.Date equivalent of parseTime().
+     *
+     * @see Date#parseTime(CharSequence, int, int)
+     */
+    public java.util.Date parse(CharSequence s, int from, int to) throws Log4jPatternLayoutException {
+
+        return new java.util.Date(parseTime(s, from, to));
+    }
+
+    /**
+     * Parses the date rendered in the given region of the string, without copying the region, and without creating
+     * any object when the rendering is decoded as fixed width, or it is a UNIX or UNIX_MILLIS rendering.
+     *
+     * @param to the index of the first character that follows the rendering.
+     *
+     * @return the time, in milliseconds since the epoch.
+     *
+     * @exception Log4jPatternLayoutException if the region does not contain a valid date rendering.
+     */
+    public long parseTime(CharSequence s, int from, int to) throws Log4jPatternLayoutException {
+
+        int length = to - from;
+
+        if (length == 0) {
 
             throw new Log4jPatternLayoutException("empty string when expecting a time stamp");
         }
-        else if (s2Length < length) {
+
+        if (epochUnitMillis != 0) {
+
+            long n = parseDecimal(s, from, to);
+
+            if (n == -1) {
+
+                throw new Log4jPatternLayoutException(
+                        "date \"" + CharSequences.toString(s, from, to) + "\" does not match pattern " + getLiteral());
+            }
+
+            if (n > Long.MAX_VALUE / epochUnitMillis) {
+
+                //
+                // eighteen digits fit in a long, but their value in milliseconds may not
+                //
+
+                throw new Log4jPatternLayoutException(
+                        "date \"" + CharSequences.toString(s, from, to) + "\" is out of range for pattern " +
+                                getLiteral());
+            }
+
+            return n * epochUnitMillis;
+        }
+
+        if (length < renderingWidth) {
 
             throw new Log4jPatternLayoutException(
                     "date rendering string is shorted that what would have been expected given the pattern " +
                             getLiteral());
         }
-        else if (s2Length > length) {
+        else if (length > renderingWidth) {
 
             throw new Log4jPatternLayoutException(
                     "date rendering string is longer that what would have been expected given the pattern " +
                             getLiteral());
         }
 
-        java.util.Date d;
+        if (decoder != null) {
 
-        try {
+            long t = decoder.decode(s, from, to);
 
-            d =  dateFormat.parse(s2);
-        }
-        catch(ParseException e) {
+            if (t != DateDecoder.INVALID) {
+
+                return t;
+            }
 
-            throw new Log4jPatternLayoutException("date \"" + s2 + "\" does not match pattern " + getLiteral());
+            //
+            // not a strictly conforming rendering, let the SimpleDateFormat decide
+            //
         }
 
-        return new RenderedLogEvent(d, ps.from(), ps.to());
-    }
+        java.util.Date d = null;
 
-    @Override
-    protected void injectIntoEvent(Log4jEventImpl e, Object value) {
+        if (s instanceof String) {
 
-        //
-        // null handled by superclass method
-        //
+            ParsePosition p = new ParsePosition(from);
+
+            d = dateFormat.parse((String)s, p);
+
+            if (p.getIndex() > to) {
 
-        if (!(value instanceof java.util.Date)) {
+                //
+                // the parser read past the end of the region (a trailing numeric field followed by digits), fall
+                // back to parsing an isolated copy of the region
+                //
 
-            throw new IllegalArgumentException(
-                    "invalid value type " + value.getClass().getSimpleName() + ", expected java.util.Date");
+                d = null;
+            }
         }
 
-        e.setTimestamp(new TimestampImpl(((java.util.Date)value).getTime()));
-    }
+        if (d == null) {
 
-    // Public ----------------------------------------------------------------------------------------------------------
+            String region = CharSequences.toString(s, from, to);
 
-    public SimpleDateFormat getSimpleDateFormat() {
+            d = dateFormat.parse(region, new ParsePosition(0));
 
-        return dateFormat;
+            if (d == null) {
+
+                throw new Log4jPatternLayoutException("date \"" + region + "\" does not match pattern " + getLiteral());
+            }
+        }
+
+        return d.getTime();
     }
 
     // Package protected -----------------------------------------------------------------------------------------------
@@ -262,18 +464,22 @@ public class Date extends ConversionSpecifierBase {
 
             dpl = COMPACT_PATTERN;
         }
-        else if (UNIX.equals(dpl)) {
+        else if (UNIX.equals(dpl) || UNIX_MILLIS.equals(dpl)) {
 
-            throw new RuntimeException("Support for UNIX pattern NOT YET IMPLEMENTED");
-        }
-        else if (UNIX_MILLIS.equals(dpl)) {
+            //
+            // numeric renderings, parsed directly, without a SimpleDateFormat
+            //
 
-            throw new RuntimeException("Support for UNIX_MILLIS pattern NOT YET IMPLEMENTED");
+            this.epochUnitMillis = UNIX.equals(dpl) ? 1000L : 1L;
+            this.renderingWidth = -1;
+            return;
         }
 
         try {
 
             this.dateFormat = new SimpleDateFormat(dpl);
+            this.renderingWidth = DateDecoder.renderingWidth(dateFormat.toPattern());
+            this.decoder = DateDecoder.compile(dateFormat);
         }
         catch(Exception e) {
 
@@ -0,0 +1,644 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern.convspec;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+
+/**
+ * A compiled, fixed-width date decoder. It turns the characters of a date rendering straight into epoch milliseconds,
+ * without going through the java.text machinery, and without allocating anything.
+ *
+ * A decoder can only be compiled for SimpleDateFormat patterns whose fields all have a fixed rendering width: "yyyy",
+ * "yy" (interpreted relative to the format's two digit year start, like SimpleDateFormat does), "MM", "MMM" (if all
+ * short month names of the format's locale have the same length), "dd", "HH", "mm", "ss" and "SSS", separated by
+ * arbitrary literals. This covers all fixed-width named formats (ABSOLUTE, DEFAULT, ISO8601,
+ * ISO8601_BASIC, COMPACT, DATE). For any other pattern, compile() returns null and the SimpleDateFormat must be used.
+ *
+ * The literals are verified before any field is decoded, so a rendering of a different shape is rejected after
+ * inspecting only a few characters. This allows trying several decoders in sequence on the same content.
+ *
+ * The decoder is strict: if the rendering contains anything it does not expect (a non-digit, an out-of-range field,
+ * an invalid day of month), decode() returns INVALID and the caller should fall back to the SimpleDateFormat, which
+ * may be lenient. For valid renderings, the result is identical with the SimpleDateFormat's.
+ *
+ * If the rendering ends with the milliseconds field, the decoder keeps the last decoded second-resolution prefix in a
+ * TimestampPrefixCache, so consecutive renderings from the same second are decoded with a region comparison.
+ *
+ * Thread safe.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public final class DateDecoder {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    //
+    // the value returned by decode() for renderings the decoder cannot handle
+    //
+    public static final long INVALID = Long.MIN_VALUE;
+
+    //
+    // field types
+    //
+
+    private static final byte YEAR = 0;
+    private static final byte MONTH = 1;
+    private static final byte MONTH_NAME = 2;
+    private static final byte DAY = 3;
+    private static final byte HOUR = 4;
+    private static final byte MINUTE = 5;
+    private static final byte SECOND = 6;
+    private static final byte MILLISECOND = 7;
+    private static final byte TWO_DIGIT_YEAR = 8;
+
+    private static final long MILLISECONDS_PER_DAY = 24L * 3600 * 1000;
+
+    private static final int[] DAYS_IN_MONTH = { 31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the decoder, or null if the date format's pattern cannot be decoded as fixed width.
+     */
+    public static DateDecoder compile(SimpleDateFormat dateFormat) {
+
+        String pattern = dateFormat.toPattern();
+
+        int fieldCount = 0;
+
+        byte[] types = new byte[pattern.length()];
+        int[] offsets = new int[pattern.length()];
+        int[] widths = new int[pattern.length()];
+
+        StringBuilder template = new StringBuilder();
+
+        String[] monthNames = dateFormat.getDateFormatSymbols().getShortMonths();
+        int monthNameWidth = -1;
+
+        int i = 0;
+
+        while(i < pattern.length()) {
+
+            char c = pattern.charAt(i);
+
+            if (c == '\'') {
+
+                int end = pattern.indexOf('\'', i + 1);
+
+                if (end == -1) {
+
+                    return null;
+                }
+
+                if (end == i + 1) {
+
+                    template.append('\'');
+                }
+                else {
+
+                    template.append(pattern, i + 1, end);
+                }
+
+                i = end + 1;
+                continue;
+            }
+
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+
+                template.append(c);
+                i ++;
+                continue;
+            }
+
+            int count = 1;
+
+            while(i + count < pattern.length() && pattern.charAt(i + count) == c) {
+
+                count ++;
+            }
+
+            byte type;
+            int width = count;
+
+            if (c == 'y' && count == 4) {
+
+                type = YEAR;
+            }
+            else if (c == 'y' && count == 2) {
+
+                type = TWO_DIGIT_YEAR;
+            }
+            else if (c == 'M' && count == 2) {
+
+                type = MONTH;
+            }
+            else if (c == 'M' && count == 3) {
+
+                width = sameLength(monthNames);
+
+                if (width <= 0) {
+
+                    return null;
+                }
+
+                type = MONTH_NAME;
+                monthNameWidth = width;
+            }
+            else if (c == 'd' && count == 2) {
+
+                type = DAY;
+            }
+            else if (c == 'H' && count == 2) {
+
+                type = HOUR;
+            }
+            else if (c == 'm' && count == 2) {
+
+                type = MINUTE;
+            }
+            else if (c == 's' && count == 2) {
+
+                type = SECOND;
+            }
+            else if (c == 'S' && count == 3) {
+
+                type = MILLISECOND;
+            }
+            else {
+
+                return null;
+            }
+
+            types[fieldCount] = type;
+            offsets[fieldCount] = template.length();
+            widths[fieldCount] = width;
+            fieldCount ++;
+
+            for(int j = 0; j < width; j ++) {
+
+                template.append('\0');
+            }
+
+            i += count;
+        }
+
+        return new DateDecoder(
+                dateFormat, template.toString(), fieldCount, types, offsets, widths,
+                monthNameWidth > 0 ? monthNames : null);
+    }
+
+    /**
+     * @return the length of the rendering produced by the given SimpleDateFormat pattern, counting the content of the
+     * quoted sections and not the quotes themselves. Pattern letters count one character each.
+     */
+    static int renderingWidth(String pattern) {
+
+        int width = 0;
+
+        int i = 0;
+
+        while(i < pattern.length()) {
+
+            char c = pattern.charAt(i);
+
+            if (c != '\'') {
+
+                width ++;
+                i ++;
+                continue;
+            }
+
+            int end = pattern.indexOf('\'', i + 1);
+
+            if (end == -1) {
+
+                end = pattern.length();
+            }
+
+            //
+            // '' is an escaped quote
+            //
+
+            width += end == i + 1 ? 1 : end - i - 1;
+
+            i = end + 1;
+        }
+
+        return width;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    static long epochDay(int year, int month, int day) {
+
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * @return the common length of all non-empty names, or -1 if they don't have the same length.
+     */
+    private static int sameLength(String[] names) {
+
+        int length = -1;
+
+        //
+        // the short months array has a 13th, empty element
+        //
+
+        for(int i = 0; i < 12 && i < names.length; i ++) {
+
+            if (length == -1) {
+
+                length = names[i].length();
+            }
+            else if (length != names[i].length()) {
+
+                return -1;
+            }
+        }
+
+        return length;
+    }
+
+    private static boolean isLeapYear(int year) {
+
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    //
+    // the literal characters of the rendering, in place, with '\0' in the field positions
+    //
+    private String template;
+
+    private int fieldCount;
+    private byte[] types;
+    private int[] offsets;
+    private int[] widths;
+
+    private String[] monthNames;
+
+    private TimeZone timeZone;
+
+    //
+    // two digit years are interpreted as being in the century that starts at this moment
+    //
+    private long twoDigitYearStart;
+    private int twoDigitYearStartYear;
+
+    // the positions of the literal characters in the template
+    private int[] literals;
+
+    // null if the rendering does not end with the milliseconds field
+    private TimestampPrefixCache prefixCache;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private DateDecoder(SimpleDateFormat dateFormat, String template, int fieldCount, byte[] types, int[] offsets,
+                        int[] widths, String[] monthNames) {
+
+        this.template = template;
+        this.fieldCount = fieldCount;
+        this.types = types;
+        this.offsets = offsets;
+        this.widths = widths;
+        this.monthNames = monthNames;
+
+        //
+        // clone it, TimeZone instances are mutable and the SimpleDateFormat's may be changed
+        //
+
+        this.timeZone = (TimeZone)dateFormat.getTimeZone().clone();
+
+        this.twoDigitYearStart = dateFormat.get2DigitYearStart().getTime();
+
+        Calendar c = Calendar.getInstance(timeZone);
+        c.setTimeInMillis(twoDigitYearStart);
+        this.twoDigitYearStartYear = c.get(Calendar.YEAR);
+
+        int literalCount = 0;
+
+        for(int i = 0; i < template.length(); i ++) {
+
+            if (template.charAt(i) != '\0') {
+
+                literalCount ++;
+            }
+        }
+
+        this.literals = new int[literalCount];
+
+        for(int i = 0, j = 0; i < template.length(); i ++) {
+
+            if (template.charAt(i) != '\0') {
+
+                literals[j ++] = i;
+            }
+        }
+
+        if (fieldCount > 0 &&
+                types[fieldCount - 1] == MILLISECOND && offsets[fieldCount - 1] + 3 == template.length()) {
+
+            this.prefixCache = new TimestampPrefixCache();
+        }
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Override
+    public String toString() {
+
+        return "DateDecoder[" + template.replace('\0', '?') + "]";
+    }
+
+    /**
+     * @return the width of the renderings this decoder handles.
+     */
+    public int getWidth() {
+
+        return template.length();
+    }
+
+    /**
+     * @return the prefix cache, or null if the renderings do not end with the milliseconds field.
+     */
+    public TimestampPrefixCache getPrefixCache() {
+
+        return prefixCache;
+    }
+
+    /**
+     * @return false if no rendering this decoder handles starts with the given character. It is a cheap test that
+     * allows selecting the decoders worth trying, before decoding anything.
+     */
+    public boolean canStartWith(char c) {
+
+        if (template.isEmpty()) {
+
+            return false;
+        }
+
+        if (template.charAt(0) != '\0') {
+
+            return template.charAt(0) == c;
+        }
+
+        if (types[0] != MONTH_NAME) {
+
+            return c >= '0' && c <= '9';
+        }
+
+        for(int i = 0; i < 12; i ++) {
+
+            if (monthNames[i].charAt(0) == c) {
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the epoch milliseconds, or INVALID if the region is not a strictly conforming rendering.
+     */
+    public long decode(CharSequence s, int from, int to) {
+
+        if (to - from != template.length()) {
+
+            return INVALID;
+        }
+
+        for(int i: literals) {
+
+            if (template.charAt(i) != s.charAt(from + i)) {
+
+                return INVALID;
+            }
+        }
+
+        if (prefixCache == null) {
+
+            return decodeFields(s, from);
+        }
+
+        int millisecondsFrom = to - 3;
+
+        long second = prefixCache.lookup(s, from, millisecondsFrom);
+
+        if (second != TimestampPrefixCache.MISS) {
+
+            int milliseconds = TimestampPrefixCache.milliseconds(s, millisecondsFrom);
+
+            return milliseconds == -1 ? INVALID : second + milliseconds;
+        }
+
+        long t = decodeFields(s, from);
+
+        if (t != INVALID) {
+
+            prefixCache.store(s, from, millisecondsFrom, t - TimestampPrefixCache.milliseconds(s, millisecondsFrom));
+        }
+
+        return t;
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Decodes the fields, assuming the literals were already verified.
+     */
+    private long decodeFields(CharSequence s, int from) {
+
+        int year = 1970;
+        int month = 1;
+        int day = 1;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int millisecond = 0;
+
+        boolean ambiguousYear = false;
+
+        for(int f = 0; f < fieldCount; f ++) {
+
+            int start = from + offsets[f];
+            int width = widths[f];
+
+            if (types[f] == MONTH_NAME) {
+
+                month = monthName(s, start, width);
+
+                if (month == -1) {
+
+                    return INVALID;
+                }
+
+                continue;
+            }
+
+            int value = 0;
+
+            for(int i = start; i < start + width; i ++) {
+
+                char c = s.charAt(i);
+
+                if (c < '0' || c > '9') {
+
+                    return INVALID;
+                }
+
+                value = value * 10 + (c - '0');
+            }
+
+            switch (types[f]) {
+
+                case YEAR:
+                    year = value;
+                    break;
+                case TWO_DIGIT_YEAR:
+                    year = (twoDigitYearStartYear / 100) * 100 + value;
+                    if (value < twoDigitYearStartYear % 100) {
+                        year += 100;
+                    }
+                    ambiguousYear = value == twoDigitYearStartYear % 100;
+                    break;
+                case MONTH:
+                    month = value;
+                    break;
+                case DAY:
+                    day = value;
+                    break;
+                case HOUR:
+                    hour = value;
+                    break;
+                case MINUTE:
+                    minute = value;
+                    break;
+                case SECOND:
+                    second = value;
+                    break;
+                default:
+                    millisecond = value;
+            }
+        }
+
+        long t = toMillis(year, month, day, hour, minute, second, millisecond);
+
+        if (ambiguousYear && t != INVALID && t < twoDigitYearStart) {
+
+            //
+            // same as SimpleDateFormat, a two digit year in the start year, but before the start moment, belongs to
+            // the next century
+            //
+
+            t = toMillis(year + 100, month, day, hour, minute, second, millisecond);
+        }
+
+        return t;
+    }
+
+    /**
+     * @return the epoch milliseconds, or INVALID if any of the fields is out of range.
+     */
+    private long toMillis(int year, int month, int day, int hour, int minute, int second, int millisecond) {
+
+        //
+        // leave anything a lenient SimpleDateFormat would roll over, and the dates before the Gregorian cutover, to
+        // the SimpleDateFormat
+        //
+
+        if (year < 1583 || month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1] ||
+                (month == 2 && day == 29 && !isLeapYear(year)) || hour > 23 || minute > 59 || second > 59) {
+
+            return INVALID;
+        }
+
+        long local = epochDay(year, month, day) * MILLISECONDS_PER_DAY +
+                ((hour * 60L + minute) * 60L + second) * 1000L + millisecond;
+
+        return toUtc(local);
+    }
+
+    /**
+     * @return the month (1-12) or -1.
+     */
+    private int monthName(CharSequence s, int start, int width) {
+
+        for(int m = 0; m < 12; m ++) {
+
+            String name = monthNames[m];
+
+            int i = 0;
+
+            while(i < width && name.charAt(i) == s.charAt(start + i)) {
+
+                i ++;
+            }
+
+            if (i == width) {
+
+                return m + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Converts local wall clock milliseconds to UTC milliseconds in the decoder's time zone.
+     */
+    private long toUtc(long local) {
+
+        int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+
+        long utc = local - offset;
+
+        int offset2 = timeZone.getOffset(utc);
+
+        if (offset2 != offset) {
+
+            //
+            // the local time is close to a transition
+            //
+
+            utc = local - offset2;
+        }
+
+        return utc;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
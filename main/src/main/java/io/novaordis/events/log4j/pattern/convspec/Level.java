@@ -17,6 +17,8 @@
 package io.novaordis.events.log4j.pattern.convspec;
 
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.CharSequences;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
@@ -36,8 +38,29 @@ public class Level extends ConversionSpecifierBase {
 
     public static final char CONVERSION_CHARACTER = 'p';
 
+    // values() clones the array on each invocation
+    private static final Log4jLevel[] LEVELS = Log4jLevel.values();
+
     // Static ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * Identifies the log4j level rendered at the beginning of the given region, without copying the region.
+     *
+     * @return the level, or null if the region does not start with a level rendering.
+     */
+    public static Log4jLevel findLevel(CharSequence s, int from, int to) {
+
+        for(Log4jLevel l: LEVELS) {
+
+            if (CharSequences.regionMatches(s, from, to, l.name())) {
+
+                return l;
+            }
+        }
+
+        return null;
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
     // Constructors ----------------------------------------------------------------------------------------------------
@@ -89,6 +112,31 @@ public class Level extends ConversionSpecifierBase {
         return new RenderedLogEvent(l, from, to);
     }
 
+    @Override
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        int valueFrom = cursor.getValueFrom();
+        int valueTo = cursor.getValueTo();
+
+        Log4jLevel l = findLevel(logContent, valueFrom, valueTo);
+
+        if (l == null) {
+
+            throw new Log4jPatternLayoutException(
+                    "not a valid log4j level: " + CharSequences.toString(logContent, valueFrom, valueTo));
+        }
+
+        int length = l.name().length();
+
+        if (valueTo - valueFrom != length) {
+
+            cursor.setPosition(from + length);
+        }
+
+        cursor.setValue(l);
+    }
+
     @Override
     protected void injectIntoEvent(Log4jEventImpl e, Object value) {
 
@@ -16,6 +16,7 @@
 
 package io.novaordis.events.log4j.pattern.convspec;
 
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
@@ -68,9 +69,25 @@ public class LineSeparator extends ConversionSpecifierBase {
     }
 
     @Override
-    public Integer find(String s) {
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        //
+        // we should be at the end of the line, anything else is an error
+        //
+
+        if (from != cursor.getPosition()) {
+
+            throw new Log4jPatternLayoutException("invalid boundaries");
+        }
+
+        cursor.setValue("");
+    }
+
+    @Override
+    public int find(CharSequence s, int from, int to) {
 
-        return s.length();
+        return to;
     }
 
     // Public ----------------------------------------------------------------------------------------------------------
@@ -17,6 +17,7 @@
 package io.novaordis.events.log4j.pattern.convspec;
 
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
@@ -56,6 +57,13 @@ public class ThreadName extends ConversionSpecifierBase {
         return new RenderedLogEvent(ps.getProcessedString(), ps.from(), ps.to());
     }
 
+    @Override
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
+
+        materializeValue(logContent, cursor);
+    }
+
     @Override
     public void injectIntoEvent(Log4jEventImpl e, Object value) {
 
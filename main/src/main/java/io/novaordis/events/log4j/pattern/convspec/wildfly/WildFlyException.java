@@ -16,11 +16,8 @@
 
 package io.novaordis.events.log4j.pattern.convspec.wildfly;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import io.novaordis.events.api.event.StringProperty;
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
@@ -38,11 +35,87 @@ public class WildFlyException extends ConversionSpecifierBase {
 
     public static final char CONVERSION_CHARACTER = 'E';
 
-    private static final Pattern EXCEPTION_RENDERING_PATTERN = Pattern.compile(
-            ".*(: )[a-zA-Z][a-zA-Z_0-9]*(\\.[a-zA-Z][a-zA-Z_0-9]*)*: .+");
-
     // Static ----------------------------------------------------------------------------------------------------------
 
+    /**
+     * Scans the given region of the string for an exception rendering, without copying the region and without
+     * allocating. The region is a match if it has the form "...: some.package.SomeException: some message", where the
+     * ": " that introduces the exception class name is the rightmost one that allows a match. This is equivalent with
+     * matching the region against ".*(: )[a-zA-Z][a-zA-Z_0-9]*(\.[a-zA-Z][a-zA-Z_0-9]*)*: .+".
+     *
+     * @return the index of the ": " that introduces the exception rendering, or -1 if the region does not match.
+     */
+    public static int findRendering(CharSequence s, int from, int to) {
+
+        //
+        // none of the regular expression's elements matches a line terminator
+        //
+
+        for(int i = from; i < to; i ++) {
+
+            if (isLineTerminator(s.charAt(i))) {
+
+                return -1;
+            }
+        }
+
+        for(int i = to - 2; i >= from; i --) {
+
+            if (s.charAt(i) == ':' && s.charAt(i + 1) == ' ' && isExceptionClassAndMessage(s, i + 2, to)) {
+
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return true if the region is a fully qualified class name followed by ": " and at least one more character.
+     */
+    private static boolean isExceptionClassAndMessage(CharSequence s, int from, int to) {
+
+        int i = from;
+
+        while(true) {
+
+            if (i >= to || !isLetter(s.charAt(i))) {
+
+                return false;
+            }
+
+            i ++;
+
+            while(i < to && isIdentifierPart(s.charAt(i))) {
+
+                i ++;
+            }
+
+            if (i < to && s.charAt(i) == '.') {
+
+                i ++;
+                continue;
+            }
+
+            return i + 2 < to && s.charAt(i) == ':' && s.charAt(i + 1) == ' ';
+        }
+    }
+
+    private static boolean isLetter(char c) {
+
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isIdentifierPart(char c) {
+
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isLineTerminator(char c) {
+
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
     // Attributes ------------------------------------------------------------------------------------------------------
 
     // Constructors ----------------------------------------------------------------------------------------------------
@@ -79,20 +152,17 @@ public class WildFlyException extends ConversionSpecifierBase {
         return new RenderedLogEvent(ps.getProcessedString(), ps.from(), ps.to());
     }
 
-    /**
-     * TODO: Not thread safe.
-     */
     @Override
-    public Integer find(String s) {
-
-        Matcher m = EXCEPTION_RENDERING_PATTERN.matcher(s);
+    protected void parseValueAfterFormatModifierWasUnapplied(CharSequence logContent, int from, LineCursor cursor)
+            throws Log4jPatternLayoutException {
 
-        if (!m.matches()) {
+        materializeValue(logContent, cursor);
+    }
 
-            return null;
-        }
+    @Override
+    public int find(CharSequence s, int from, int to) {
 
-        return m.start(1);
+        return findRendering(s, from, to);
     }
 
     @Override
@@ -112,14 +182,12 @@ public class WildFlyException extends ConversionSpecifierBase {
         // this is only used to initialize the exception rendering, if it's already initialized, something is wrong
         //
 
-        StringProperty p = e.getStringProperty(Log4jEventImpl.EXCEPTION_PROPERTY_NAME);
-
-        if (p != null) {
+        if (e.getExceptionRendering() != null) {
 
             throw new IllegalArgumentException("exception already initialized");
         }
 
-        e.setStringProperty(Log4jEventImpl.EXCEPTION_PROPERTY_NAME, (String)value);
+        e.setExceptionRendering((String)value);
 
         //
         // set the logging event to "exception append mode"
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.procedures;
+
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.impl.ExceptionFingerprint;
+import io.novaordis.events.log4j.impl.Log4jEvent;
+import io.novaordis.events.processing.EventProcessingException;
+import io.novaordis.events.processing.ProcedureBase;
+
+/**
+ * Groups the events that carry exception renderings by exception fingerprint, and reports, at the end of the stream,
+ * the distinct fingerprints in the descending order of their occurrence count, with the time the exception was first
+ * and last seen, and a sample event.
+ *
+ * @see ExceptionFingerprint
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ExceptionSummary extends ProcedureBase {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    public static final String COMMAND_LINE_LABEL = "exception-summary";
+
+    private static final DateFormat TIMESTAMP_FORMAT = new SimpleDateFormat("MM/dd/yy HH:mm:ss,SSS");
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    private PrintStream out;
+
+    private Map<Long, Entry> entries;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    public ExceptionSummary() {
+
+        this(System.out);
+    }
+
+    /**
+     * @param out the stream the report is written to.
+     */
+    ExceptionSummary(PrintStream out) {
+
+        if (out == null) {
+
+            throw new IllegalArgumentException("null output stream");
+        }
+
+        this.out = out;
+        this.entries = new HashMap<>();
+    }
+
+    // Procedure implementation ----------------------------------------------------------------------------------------
+
+    @Override
+    public List<String> getCommandLineLabels() {
+
+        return Collections.singletonList(COMMAND_LINE_LABEL);
+    }
+
+    @Override
+    protected void process(AtomicLong invocationCount, Event e) throws EventProcessingException {
+
+        if (e instanceof EndOfStreamEvent) {
+
+            report();
+            return;
+        }
+
+        if (!(e instanceof Log4jEvent)) {
+
+            return;
+        }
+
+        Log4jEvent le = (Log4jEvent)e;
+
+        Long fingerprint = le.getExceptionFingerprint();
+
+        if (fingerprint == null) {
+
+            return;
+        }
+
+        Entry entry = entries.get(fingerprint);
+
+        if (entry == null) {
+
+            entry = new Entry(fingerprint, le);
+            entries.put(fingerprint, entry);
+        }
+
+        entry.update(le);
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * @return the distinct fingerprints seen so far, in the descending order of their occurrence count. Fingerprints
+     * with the same count are listed in the order they were first seen.
+     */
+    public List<Entry> getEntries() {
+
+        List<Entry> result = new ArrayList<>(entries.values());
+
+        result.sort((e1, e2) -> {
+
+            int c = Long.compare(e2.getCount(), e1.getCount());
+
+            return c != 0 ? c : Long.compare(e1.getOrdinal(), e2.getOrdinal());
+        });
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+
+        return "ExceptionSummary[" + entries.size() + " fingerprint(s)]";
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    void report() {
+
+        List<Entry> sorted = getEntries();
+
+        out.println("# fingerprint, count, first seen, last seen, exception, sample line");
+
+        for(Entry entry: sorted) {
+
+            Log4jEvent sample = entry.getSample();
+
+            out.println(ExceptionFingerprint.toHex(entry.getFingerprint()) + ", " + entry.getCount() + ", " +
+                    format(entry.getFirstSeen()) + ", " + format(entry.getLastSeen()) + ", " +
+                    entry.getExceptionClass() + ", " + sample.getLineNumber());
+        }
+    }
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static String format(Long time) {
+
+        if (time == null) {
+
+            return "N/A";
+        }
+
+        synchronized (TIMESTAMP_FORMAT) {
+
+            return TIMESTAMP_FORMAT.format(time);
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+    /**
+     * The statistics of a distinct exception fingerprint.
+     */
+    public final class Entry {
+
+        private long fingerprint;
+        private long ordinal;
+        private Log4jEvent sample;
+        private String exceptionClass;
+
+        private long count;
+        private Long firstSeen;
+        private Long lastSeen;
+
+        private Entry(long fingerprint, Log4jEvent sample) {
+
+            this.fingerprint = fingerprint;
+            this.ordinal = entries.size();
+            this.sample = sample;
+            this.exceptionClass = ExceptionFingerprint.getExceptionClass(sample.getExceptionRendering());
+        }
+
+        public long getFingerprint() {
+
+            return fingerprint;
+        }
+
+        public long getCount() {
+
+            return count;
+        }
+
+        /**
+         * @return the earliest timestamp among the events with this fingerprint, or null if none was timestamped.
+         */
+        public Long getFirstSeen() {
+
+            return firstSeen;
+        }
+
+        /**
+         * @return the latest timestamp among the events with this fingerprint, or null if none was timestamped.
+         */
+        public Long getLastSeen() {
+
+            return lastSeen;
+        }
+
+        /**
+         * @return the first event seen with this fingerprint.
+         */
+        public Log4jEvent getSample() {
+
+            return sample;
+        }
+
+        /**
+         * @return the class of the top level exception, or null if it cannot be identified.
+         */
+        public String getExceptionClass() {
+
+            return exceptionClass;
+        }
+
+        @Override
+        public String toString() {
+
+            return ExceptionFingerprint.toHex(fingerprint) + " (" + exceptionClass + "): " + count;
+        }
+
+        private long getOrdinal() {
+
+            return ordinal;
+        }
+
+        private void update(Log4jEvent e) {
+
+            count ++;
+
+            Long time = e.getTime();
+
+            if (time == null) {
+
+                return;
+            }
+
+            if (firstSeen == null || time < firstSeen) {
+
+                firstSeen = time;
+            }
+
+            if (lastSeen == null || time > lastSeen) {
+
+                lastSeen = time;
+            }
+        }
+    }
+
+}
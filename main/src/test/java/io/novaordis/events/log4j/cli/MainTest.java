@@ -20,14 +20,27 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
-
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -46,6 +59,9 @@ public class MainTest {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     // Public ----------------------------------------------------------------------------------------------------------
@@ -258,6 +274,60 @@ public class MainTest {
         parsedContentReader.close();
     }
 
+    // decompressedInput() ---------------------------------------------------------------------------------------------
+
+    @Test
+    public void decompressedInput_NoCompressedFile() throws Exception {
+
+        File f = folder.newFile();
+        Files.write(f.toPath(), "something\n".getBytes(StandardCharsets.UTF_8));
+
+        List<String> arguments = new ArrayList<>(Arrays.asList("-f", "%m%n", f.getPath()));
+
+        assertNull(Main.decompressedInput(arguments));
+
+        assertEquals(Arrays.asList("-f", "%m%n", f.getPath()), arguments);
+    }
+
+    @Test
+    public void decompressedInput_CompressedFile() throws Exception {
+
+        File f = folder.newFile();
+        Files.write(f.toPath(), "a\nb\n".getBytes(StandardCharsets.UTF_8));
+
+        File f2 = folder.newFile();
+
+        try(OutputStream os = new GZIPOutputStream(new FileOutputStream(f2))) {
+
+            os.write("c\nd\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<String> arguments = new ArrayList<>(Arrays.asList("-f", "%m%n", f.getPath(), f2.getPath()));
+
+        //
+        // all files are handed over as stdin, in command line order
+        //
+
+        try(InputStream is = Main.decompressedInput(arguments)) {
+
+            assertNotNull(is);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+            byte[] buffer = new byte[1024];
+            int n;
+
+            while((n = is.read(buffer)) != -1) {
+
+                baos.write(buffer, 0, n);
+            }
+
+            assertEquals("a\nb\nc\nd\n", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        }
+
+        assertEquals(Arrays.asList("-f", "%m%n"), arguments);
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
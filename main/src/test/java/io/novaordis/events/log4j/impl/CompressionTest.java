@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class CompressionTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("compression-test.log");
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void detect_EmptyFile() throws Exception {
+
+        assertEquals(Compression.NONE, Compression.detect(file));
+    }
+
+    @Test
+    public void detect_PlainText() throws Exception {
+
+        TestFiles.write(file, "12:00:00,000 INFO [a] (main) something\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Compression.NONE, Compression.detect(file));
+    }
+
+    @Test
+    public void detect_Gzip() throws Exception {
+
+        TestFiles.write(file, TestFiles.gzip("something\n"));
+
+        assertEquals(Compression.GZIP, Compression.detect(file));
+    }
+
+    @Test
+    public void detect_Zstd() throws Exception {
+
+        byte[] header = new byte[] { 0x28, (byte)0xb5, 0x2f, (byte)0xfd, 0, 0, 0, 0 };
+
+        assertEquals(Compression.ZSTD, Compression.detect(header, header.length));
+    }
+
+    @Test
+    public void detect_Xz() throws Exception {
+
+        byte[] header = new byte[] { (byte)0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00, 0, 0 };
+
+        assertEquals(Compression.XZ, Compression.detect(header, header.length));
+    }
+
+    @Test
+    public void detect_ShortHeader() throws Exception {
+
+        byte[] header = new byte[] { (byte)0xfd, 0x37, 0x7a, 0x58, 0x5a, 0x00, 0, 0 };
+
+        assertEquals(Compression.NONE, Compression.detect(header, 5));
+    }
+
+    @Test
+    public void open_PlainText() throws Exception {
+
+        TestFiles.write(file, "a\nb\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("a\nb\n", read(Compression.open(file)));
+    }
+
+    @Test
+    public void open_Gzip() throws Exception {
+
+        TestFiles.write(file, TestFiles.gzip("a\nb\n"));
+
+        assertEquals("a\nb\n", read(Compression.open(file)));
+    }
+
+    @Test
+    public void decompress_CodecNotAvailable() throws Exception {
+
+        TestFiles.write(file, new byte[] { 0x28, (byte)0xb5, 0x2f, (byte)0xfd, 0, 0, 0, 0 });
+
+        try {
+
+            Class.forName("com.github.luben.zstd.ZstdInputStream");
+
+            //
+            // the codec is available, nothing to test
+            //
+
+            return;
+        }
+        catch(ClassNotFoundException e) {
+
+            // expected
+        }
+
+        try {
+
+            Compression.open(file);
+
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("requires com.github.luben:zstd-jni on the classpath"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static String read(InputStream is) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(InputStream in = is) {
+
+            byte[] buffer = new byte[1024];
+            int n;
+
+            while((n = in.read(buffer)) != -1) {
+
+                baos.write(buffer, 0, n);
+            }
+        }
+
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import org.junit.Test;
+
+import io.novaordis.events.query.FieldQuery;
+import io.novaordis.events.query.Query;
+import io.novaordis.events.query.TimeQuery;
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class EventFilterTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void empty() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        assertTrue(f.isEmpty());
+        assertTrue(f.acceptsTime(null));
+        assertTrue(f.acceptsLevel(null));
+        assertTrue(f.acceptsLogger(null, 0, 0));
+        assertTrue(f.acceptsThreadName(null, 0, 0));
+        assertTrue(f.accepts(new Log4jEventImpl()));
+        assertEquals("no predicates", f.toString());
+    }
+
+    // time range ------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void timeRange() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setTimeRange(10L, 20L);
+
+        assertFalse(f.isEmpty());
+        assertEquals(10L, f.getFrom().longValue());
+        assertEquals(20L, f.getTo().longValue());
+
+        assertFalse(f.acceptsTime(null));
+        assertFalse(f.acceptsTime(9L));
+        assertTrue(f.acceptsTime(10L));
+        assertTrue(f.acceptsTime(19L));
+        assertFalse(f.acceptsTime(20L));
+    }
+
+    @Test
+    public void timeRange_Unbounded() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setTimeRange(null, 20L);
+
+        assertTrue(f.acceptsTime(Long.MIN_VALUE));
+        assertFalse(f.acceptsTime(20L));
+
+        f.setTimeRange(10L, null);
+
+        assertFalse(f.acceptsTime(9L));
+        assertTrue(f.acceptsTime(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void timeRange_Invalid() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        try {
+
+            f.setTimeRange(20L, 10L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid time range [20, 10)"));
+        }
+    }
+
+    // levels ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void levels() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setLevels(Log4jLevel.ERROR, Log4jLevel.WARN);
+
+        assertEquals(2, f.getLevels().size());
+        assertFalse(f.acceptsLevel(null));
+        assertFalse(f.acceptsLevel(Log4jLevel.INFO));
+        assertTrue(f.acceptsLevel(Log4jLevel.WARN));
+        assertTrue(f.acceptsLevel(Log4jLevel.ERROR));
+
+        f.setLevels();
+
+        assertNull(f.getLevels());
+        assertTrue(f.isEmpty());
+    }
+
+    @Test
+    public void levels_Null() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        try {
+
+            f.setLevels(Log4jLevel.ERROR, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null level"));
+        }
+    }
+
+    // logger ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void loggerPrefix() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setLoggerPrefix("a.b");
+
+        assertEquals("a.b", f.getLoggerPrefix());
+
+        String line = "[a.b.C] [a.x] [a.";
+
+        assertTrue(f.acceptsLogger(line, 1, 6));
+        assertFalse(f.acceptsLogger(line, 9, 12));
+        assertFalse(f.acceptsLogger(line, 15, 17));
+        assertFalse(f.acceptsLogger(null, 0, 0));
+    }
+
+    // thread name -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void threadName() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setThreadName("main");
+
+        assertEquals("main", f.getThreadName());
+
+        String line = "(main) (mainly) (mai)";
+
+        assertTrue(f.acceptsThreadName(line, 1, 5));
+        assertFalse(f.acceptsThreadName(line, 8, 14));
+        assertFalse(f.acceptsThreadName(line, 17, 20));
+        assertFalse(f.acceptsThreadName(null, 0, 0));
+    }
+
+    // accepts() -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void accepts() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setTimeRange(10L, 20L);
+        f.setLevels(Log4jLevel.ERROR);
+        f.setLoggerPrefix("a.b");
+        f.setThreadName("main");
+
+        assertEquals(
+                "time in [10, 20), level in [ERROR], logger starts with \"a.b\", thread is \"main\"", f.toString());
+
+        assertTrue(f.accepts(new Log4jEventImpl(1L, 15L, Log4jLevel.ERROR, "a.b.C", "main", "blah", null)));
+        assertFalse(f.accepts(new Log4jEventImpl(1L, 25L, Log4jLevel.ERROR, "a.b.C", "main", "blah", null)));
+        assertFalse(f.accepts(new Log4jEventImpl(1L, 15L, Log4jLevel.INFO, "a.b.C", "main", "blah", null)));
+        assertFalse(f.accepts(new Log4jEventImpl(1L, 15L, Log4jLevel.ERROR, "x.b.C", "main", "blah", null)));
+        assertFalse(f.accepts(new Log4jEventImpl(1L, 15L, Log4jLevel.ERROR, "a.b.C", "other", "blah", null)));
+        assertFalse(f.accepts(new Log4jEventImpl(1L, 15L, Log4jLevel.ERROR, null, "main", "blah", null)));
+    }
+
+    // selects() -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void selects_NoQuery() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        assertNull(f.getQuery());
+        assertTrue(f.selects(new Log4jEventImpl(1L, 15L, Log4jLevel.ERROR, "a.b.C", "main", "blah", null)));
+    }
+
+    // pushDown() ------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void pushDown_TimeQuery() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        Query q = new TimeQuery(10L, 20L);
+
+        f.pushDown(q);
+
+        assertEquals(q, f.getQuery());
+        assertEquals(10L, f.getFrom().longValue());
+
+        //
+        // widened by one millisecond, in case the query includes the end of the range
+        //
+
+        assertEquals(21L, f.getTo().longValue());
+    }
+
+    @Test
+    public void pushDown_FieldQuery() throws Exception {
+
+        EventFilter f = new EventFilter();
+        f.pushDown(new FieldQuery("level", "ERROR"));
+        assertEquals("level in [ERROR]", f.toString().replaceAll(", selected by .*$", ""));
+
+        f = new EventFilter();
+        f.pushDown(new FieldQuery("logger", "a.b.C"));
+        assertEquals("a.b.C", f.getLoggerPrefix());
+
+        f = new EventFilter();
+        f.pushDown(new FieldQuery("thread", "main"));
+        assertEquals("main", f.getThreadName());
+    }
+
+    @Test
+    public void pushDown_QueryThatCannotBePushedDown() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        Query q = new FieldQuery("msg", "something");
+
+        f.pushDown(q);
+
+        assertEquals(q, f.getQuery());
+        assertFalse(f.isEmpty());
+        assertNull(f.getFrom());
+        assertNull(f.getTo());
+        assertNull(f.getLevels());
+        assertNull(f.getLoggerPrefix());
+        assertNull(f.getThreadName());
+
+        //
+        // not a level
+        //
+
+        f = new EventFilter();
+        f.pushDown(new FieldQuery("level", "SOMETHING"));
+        assertNull(f.getLevels());
+    }
+
+    @Test
+    public void pushDown_PredicatesAlreadySetAreKept() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setTimeRange(100L, 200L);
+        f.setLevels(Log4jLevel.WARN);
+
+        f.pushDown(new TimeQuery(10L, 20L));
+
+        assertEquals(100L, f.getFrom().longValue());
+        assertEquals(200L, f.getTo().longValue());
+
+        f.pushDown(new FieldQuery("level", "ERROR"));
+
+        assertEquals(1, f.getLevels().size());
+        assertTrue(f.getLevels().contains(Log4jLevel.WARN));
+    }
+
+    // copy() ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void copy() throws Exception {
+
+        EventFilter f = new EventFilter();
+
+        f.setTimeRange(10L, 20L);
+        f.setLevels(Log4jLevel.ERROR);
+        f.setLoggerPrefix("a.b");
+        f.setThreadName("main");
+
+        EventFilter c = f.copy();
+
+        assertNotSame(f, c);
+        assertEquals(f.toString(), c.toString());
+
+        f.setLevels(Log4jLevel.INFO);
+        f.setThreadName("other");
+
+        assertEquals(
+                "time in [10, 20), level in [ERROR], logger starts with \"a.b\", thread is \"main\"", c.toString());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
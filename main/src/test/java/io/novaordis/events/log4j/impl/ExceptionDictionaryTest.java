@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ExceptionDictionaryTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new ExceptionDictionary(-1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid capacity -1"));
+        }
+    }
+
+    @Test
+    public void intern_NullRendering() throws Exception {
+
+        try {
+
+            new ExceptionDictionary().intern(1L, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null rendering"));
+        }
+    }
+
+    @Test
+    public void intern() throws Exception {
+
+        ExceptionDictionary d = new ExceptionDictionary();
+
+        assertEquals(ExceptionDictionary.DEFAULT_CAPACITY, d.getCapacity());
+
+        String r = new String("java.lang.Exception: A\n\tat a.B.c(B.java:1)");
+        String r2 = new String("java.lang.Exception: A\n\tat a.B.c(B.java:1)");
+
+        assertSame(r, d.intern(10L, r));
+        assertSame(r, d.intern(10L, r2));
+
+        assertEquals(1, d.size());
+        assertEquals(1L, d.getHits());
+        assertEquals(1L, d.getMisses());
+    }
+
+    @Test
+    public void intern_SameFingerprintDifferentRendering() throws Exception {
+
+        ExceptionDictionary d = new ExceptionDictionary();
+
+        String r = "java.lang.Exception: A\n\tat a.B.c(B.java:1)";
+        String r2 = "java.lang.Exception: B\n\tat a.B.c(B.java:1)";
+
+        assertSame(r, d.intern(10L, r));
+
+        //
+        // the renderings are not equal, the second one is not replaced, and it does not become canonical either
+        //
+
+        assertSame(r2, d.intern(10L, r2));
+        assertSame(r, d.intern(10L, new String(r)));
+
+        assertEquals(1, d.size());
+    }
+
+    @Test
+    public void intern_Full() throws Exception {
+
+        ExceptionDictionary d = new ExceptionDictionary(1);
+
+        String r = "java.lang.Exception: A";
+        String r2 = "java.lang.Exception: B";
+
+        assertSame(r, d.intern(1L, r));
+        assertSame(r2, d.intern(2L, r2));
+
+        String copy = new String(r2);
+
+        assertSame(copy, d.intern(2L, copy));
+
+        assertEquals(1, d.size());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ExceptionFingerprintTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String RENDERING =
+            ": java.lang.IllegalStateException: connection 17 closed\n" +
+                    "\tat io.novaordis.example.Client.send(Client.java:69) [classes:]\n" +
+                    "\tat io.novaordis.example.Servlet.doGet(Servlet.java:12) [classes:]\n" +
+                    "Caused by: java.io.IOException: broken pipe\n" +
+                    "\tat java.net.SocketOutputStream.write(SocketOutputStream.java:111)\n" +
+                    "\t... 2 more";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void compute_NullRendering() throws Exception {
+
+        try {
+
+            ExceptionFingerprint.compute(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null rendering"));
+        }
+    }
+
+    @Test
+    public void compute_MessagesLineNumbersAndJarInformationAreIgnored() throws Exception {
+
+        String other =
+                "java.lang.IllegalStateException: connection 3 closed\n" +
+                        "    at io.novaordis.example.Client.send(Client.java:70)\n" +
+                        "    at io.novaordis.example.Servlet.doGet(Servlet.java:15) [app.jar:1.0]\n" +
+                        "Caused by: java.io.IOException: connection reset\n" +
+                        "    at java.net.SocketOutputStream.write(SocketOutputStream.java:112)\n" +
+                        "    ... 3 more";
+
+        assertEquals(ExceptionFingerprint.compute(RENDERING), ExceptionFingerprint.compute(other));
+    }
+
+    @Test
+    public void compute_DifferentCause() throws Exception {
+
+        String other = RENDERING.replace("java.io.IOException", "java.net.SocketException");
+
+        assertNotEquals(ExceptionFingerprint.compute(RENDERING), ExceptionFingerprint.compute(other));
+    }
+
+    @Test
+    public void compute_DifferentFrame() throws Exception {
+
+        String other = RENDERING.replace("Servlet.doGet", "Servlet.doPost");
+
+        assertNotEquals(ExceptionFingerprint.compute(RENDERING), ExceptionFingerprint.compute(other));
+    }
+
+    @Test
+    public void compute_MissingFrame() throws Exception {
+
+        String other = RENDERING.replace("\tat io.novaordis.example.Client.send(Client.java:69) [classes:]\n", "");
+
+        assertNotEquals(ExceptionFingerprint.compute(RENDERING), ExceptionFingerprint.compute(other));
+    }
+
+    @Test
+    public void compute_GeneratedNamesAreNormalized() throws Exception {
+
+        String s =
+                ": java.lang.RuntimeException\n" +
+                        "\tat com.sun.proxy.$Proxy12.invoke(Unknown Source)\n" +
+                        "\tat sun.reflect.GeneratedMethodAccessor34.invoke(Unknown Source)\n" +
+                        "\tat a.Service$$EnhancerBySpringCGLIB$$5f1c2b.run(<generated>)\n" +
+                        "\tat a.Task$$Lambda$12/1234567.apply(Unknown Source)";
+
+        String s2 =
+                ": java.lang.RuntimeException\n" +
+                        "\tat com.sun.proxy.$Proxy7.invoke(Unknown Source)\n" +
+                        "\tat sun.reflect.GeneratedMethodAccessor101.invoke(Unknown Source)\n" +
+                        "\tat a.Service$$EnhancerBySpringCGLIB$$99aa00.run(<generated>)\n" +
+                        "\tat a.Task$$Lambda$8/7654321.apply(Unknown Source)";
+
+        assertEquals(ExceptionFingerprint.compute(s), ExceptionFingerprint.compute(s2));
+    }
+
+    @Test
+    public void compute_UnrecognizedContent() throws Exception {
+
+        long f = ExceptionFingerprint.compute("  something went wrong ");
+
+        assertEquals(f, ExceptionFingerprint.compute("something went wrong"));
+        assertNotEquals(f, ExceptionFingerprint.compute("something else went wrong"));
+        assertNotEquals(0L, ExceptionFingerprint.compute(""));
+    }
+
+    @Test
+    public void normalize() throws Exception {
+
+        String s = "\tat a.b.C$Inner.m(C.java:1) [x.jar:1.0]";
+
+        assertEquals("a.b.C$Inner.m", ExceptionFingerprint.normalize(s, 0, s.length(), false));
+
+        s = ": java.lang.Exception: SYNTHETIC";
+
+        assertEquals("java.lang.Exception", ExceptionFingerprint.normalize(s, 0, s.length(), true));
+
+        //
+        // exception classes are only recognized on the first line and on "Caused by:" lines
+        //
+
+        assertNull(ExceptionFingerprint.normalize(s, 0, s.length(), false));
+
+        s = "\tSuppressed: java.lang.IllegalStateException";
+
+        assertEquals("java.lang.IllegalStateException", ExceptionFingerprint.normalize(s, 0, s.length(), false));
+
+        s = "a message that spans: several lines";
+
+        assertNull(ExceptionFingerprint.normalize(s, 0, s.length(), true));
+
+        s = "\t... 12 more";
+
+        assertNull(ExceptionFingerprint.normalize(s, 0, s.length(), false));
+    }
+
+    @Test
+    public void getExceptionClass() throws Exception {
+
+        assertEquals("java.lang.IllegalStateException", ExceptionFingerprint.getExceptionClass(RENDERING));
+        assertEquals("java.lang.Exception", ExceptionFingerprint.getExceptionClass("java.lang.Exception"));
+        assertNull(ExceptionFingerprint.getExceptionClass("something went wrong"));
+        assertNull(ExceptionFingerprint.getExceptionClass(null));
+    }
+
+    @Test
+    public void toHex() throws Exception {
+
+        assertEquals("0000000000000001", ExceptionFingerprint.toHex(1L));
+        assertEquals("ffffffffffffffff", ExceptionFingerprint.toHex(-1L));
+        assertEquals("00000000cafebabe", ExceptionFingerprint.toHex(0xcafebabeL));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FieldIndexTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_NullName() throws Exception {
+
+        try {
+
+            new FieldIndex(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null name"));
+        }
+    }
+
+    @Test
+    public void empty() throws Exception {
+
+        FieldIndex i = new FieldIndex("logger");
+
+        assertEquals("logger", i.getName());
+        assertTrue(i.getValues().isEmpty());
+        assertEquals(-1, i.getId("something"));
+        assertEquals(0, i.getBlocks("something").length);
+    }
+
+    @Test
+    public void add() throws Exception {
+
+        FieldIndex i = new FieldIndex("thread");
+
+        i.add("main", 0);
+        i.add("worker-1", 0);
+        i.add("main", 0);
+        i.add(null, 1);
+        i.add("main", 3);
+        i.add("worker-2", 3);
+        i.add("main", 200);
+        i.add("main", 100000);
+
+        assertEquals(Arrays.asList("main", "worker-1", "worker-2"), i.getValues());
+
+        assertEquals(0, i.getId("main"));
+        assertEquals(1, i.getId("worker-1"));
+        assertEquals(2, i.getId("worker-2"));
+
+        assertArrayEquals(new int[] { 0, 3, 200, 100000 }, i.getBlocks("main"));
+        assertArrayEquals(new int[] { 0 }, i.getBlocks("worker-1"));
+        assertArrayEquals(new int[] { 3 }, i.getBlocks("worker-2"));
+    }
+
+    @Test
+    public void add_BlocksOutOfOrder() throws Exception {
+
+        FieldIndex i = new FieldIndex("thread");
+
+        i.add("main", 5);
+
+        try {
+
+            i.add("main", 4);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("block 4 recorded after block 5"));
+        }
+    }
+
+    @Test
+    public void collectBlocks() throws Exception {
+
+        FieldIndex i = new FieldIndex("logger");
+
+        i.add("a", 1);
+        i.add("b", 2);
+        i.add("c", 3);
+        i.add("a", 4);
+
+        BitSet selected = new BitSet();
+        selected.set(i.getId("a"));
+        selected.set(i.getId("c"));
+
+        BitSet result = new BitSet();
+
+        i.collectBlocks(selected, result);
+
+        assertEquals(3, result.cardinality());
+        assertTrue(result.get(1));
+        assertTrue(result.get(3));
+        assertTrue(result.get(4));
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+
+        FieldIndex i = new FieldIndex("logger");
+
+        for(int block = 0; block < 1000; block ++) {
+
+            i.add("a.b.C" + (block % 3), block);
+        }
+
+        i.add("org.hibernate.SQL", 70000);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(DataOutputStream out = new DataOutputStream(baos)) {
+
+            i.write(out);
+        }
+
+        FieldIndex i2;
+
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+
+            i2 = FieldIndex.read(in);
+        }
+
+        assertEquals("logger", i2.getName());
+        assertEquals(i.getValues(), i2.getValues());
+
+        for(String value: i.getValues()) {
+
+            assertArrayEquals(i.getBlocks(value), i2.getBlocks(value));
+            assertEquals(i.getId(value), i2.getId(value));
+        }
+
+        //
+        // the read index can be extended
+        //
+
+        i2.add("org.hibernate.SQL", 70001);
+        assertArrayEquals(new int[] { 70000, 70001 }, i2.getBlocks("org.hibernate.SQL"));
+    }
+
+    // Postings --------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void postings_DeltaEncoded() throws Exception {
+
+        FieldIndex.Postings p = new FieldIndex.Postings();
+
+        for(int block = 0; block < 1000; block ++) {
+
+            p.add(block);
+        }
+
+        //
+        // consecutive blocks cost one byte each
+        //
+
+        assertEquals(1000, p.getEncodedLength());
+        assertEquals(1000, p.decode().length);
+        assertEquals(999, p.decode()[999]);
+
+        p.add(1000 + 128);
+
+        assertEquals(1002, p.getEncodedLength());
+        assertEquals(1128, p.decode()[1000]);
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FileFollowerTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String PATTERN = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private ExecutorService executor;
+
+    private BlockingQueue<Event> events;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("file-follower-test.log");
+        executor = Executors.newSingleThreadExecutor();
+        events = new LinkedBlockingQueue<>();
+    }
+
+    @After
+    public void after() throws Exception {
+
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_NullArguments() throws Exception {
+
+        try {
+
+            new FileFollower(null, new Log4jParser());
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null file"));
+        }
+
+        try {
+
+            new FileFollower(file, null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null parser"));
+        }
+    }
+
+    @Test
+    public void setPollInterval_Invalid() throws Exception {
+
+        FileFollower f = new FileFollower(file, new Log4jParser());
+
+        assertEquals(FileFollower.DEFAULT_MIN_POLL_INTERVAL_MS, f.getMinPollInterval());
+        assertEquals(FileFollower.DEFAULT_MAX_POLL_INTERVAL_MS, f.getMaxPollInterval());
+
+        try {
+
+            f.setPollInterval(10L, 5L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid poll interval [10, 5]"));
+        }
+    }
+
+    @Test
+    public void follow() throws Exception {
+
+        TestFiles.append(file, "10:00:00,000 INFO  [a.B] (main) existing\n");
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        TestFiles.append(file, "10:00:01,000 INFO  [a.B] (main) one\n");
+
+        //
+        // the first event is delivered as soon as the next one starts
+        //
+
+        assertMessage("existing");
+
+        TestFiles.append(file, "second line of one\n10:00:02,000 ERROR [a.B] (main) two\n");
+
+        assertMessage("one\nsecond line of one");
+
+        //
+        // a line is not parsed until it is terminated
+        //
+
+        TestFiles.append(file, "10:00:03,000 INFO  [a.B] (main) thr");
+
+        Thread.sleep(100L);
+
+        TestFiles.append(file, "ee\n");
+
+        assertMessage("two");
+
+        assertNull(events.poll(100L, TimeUnit.MILLISECONDS));
+
+        f.stop();
+
+        assertEquals(5L, result.get(5, TimeUnit.SECONDS).longValue());
+
+        assertMessage("three");
+        assertTrue(f.isStopped());
+    }
+
+    @Test
+    public void follow_IdleTimeout() throws Exception {
+
+        Log4jParser parser = new Log4jParser(new Log4jPatternLayout(PATTERN));
+        parser.setIdleTimeout(50L);
+
+        FileFollower f = new FileFollower(file, parser);
+        f.setPollInterval(1L, 1000L);
+
+        Future<Long> result = start(f);
+
+        TestFiles.append(file, "10:00:00,000 ERROR [a.B] (main) one\n");
+
+        //
+        // delivered without the next event starting, and well before the maximum poll interval
+        //
+
+        Event e = events.poll(900L, TimeUnit.MILLISECONDS);
+
+        assertNotNull(e);
+        assertEquals("one", ((Log4jEvent)e).getMessage());
+        assertEquals(1L, parser.getMetrics().getIdleFlushCount());
+
+        f.stop();
+
+        assertEquals(1L, result.get(5, TimeUnit.SECONDS).longValue());
+        assertNull(events.poll());
+    }
+
+    @Test
+    public void follow_StartAtEnd() throws Exception {
+
+        TestFiles.append(file, "10:00:00,000 INFO  [a.B] (main) existing\nexisting continuation\n");
+
+        FileFollower f = follower();
+        f.setStartAtEnd(true);
+
+        Future<Long> result = start(f);
+
+        Thread.sleep(100L);
+
+        TestFiles.append(file, "10:00:01,000 INFO  [a.B] (main) one\n10:00:02,000 INFO  [a.B] (main) two\n");
+
+        assertMessage("one");
+
+        f.stop();
+
+        assertEquals(2L, result.get(5, TimeUnit.SECONDS).longValue());
+
+        assertMessage("two");
+        assertNull(events.poll());
+    }
+
+    @Test
+    public void follow_Rotation() throws Exception {
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        TestFiles.append(file, "10:00:00,000 INFO  [a.B] (main) old\n");
+
+        Thread.sleep(100L);
+
+        File rotated = new File(file.getPath() + ".1");
+
+        try {
+
+            assertTrue(file.renameTo(rotated));
+
+            //
+            // written by a writer that still has the old file open
+            //
+
+            TestFiles.append(rotated, "last line of old\n");
+
+            Thread.sleep(100L);
+
+            TestFiles.append(file, "10:00:01,000 INFO  [a.B] (main) new\n10:00:02,000 INFO  [a.B] (main) newer\n");
+
+            assertMessage("old\nlast line of old");
+
+            Event e = events.poll(5, TimeUnit.SECONDS);
+
+            assertNotNull(e);
+            assertEquals("new", ((Log4jEvent)e).getMessage());
+
+            //
+            // line numbers start over
+            //
+
+            assertEquals(1L, e.getLineNumber().longValue());
+
+            assertEquals(1L, f.getRotationCount());
+            assertEquals(0L, f.getTruncationCount());
+        }
+        finally {
+
+            f.stop();
+            result.get(5, TimeUnit.SECONDS);
+
+            assertTrue(rotated.delete());
+        }
+
+        assertMessage("newer");
+    }
+
+    @Test
+    public void follow_Truncation() throws Exception {
+
+        TestFiles.append(file, "10:00:00,000 INFO  [a.B] (main) before truncation, with a longer message\n");
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        Thread.sleep(100L);
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+            raf.setLength(0L);
+        }
+
+        Thread.sleep(100L);
+
+        TestFiles.append(file, "10:00:01,000 INFO  [a.B] (main) after\n");
+
+        assertMessage("before truncation, with a longer message");
+
+        f.stop();
+
+        result.get(5, TimeUnit.SECONDS);
+
+        assertMessage("after");
+
+        assertEquals(0L, f.getRotationCount());
+        assertEquals(1L, f.getTruncationCount());
+    }
+
+    @Test
+    public void follow_FileCreatedLater() throws Exception {
+
+        assertTrue(file.delete());
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        Thread.sleep(100L);
+
+        assertFalse(result.isDone());
+
+        TestFiles.append(file, "10:00:00,000 INFO  [a.B] (main) created\n");
+
+        Thread.sleep(100L);
+
+        f.stop();
+
+        assertEquals(1L, result.get(5, TimeUnit.SECONDS).longValue());
+
+        assertMessage("created");
+    }
+
+    @Test
+    public void follow_UnparseableLinesAreSkipped() throws Exception {
+
+        TestFiles.append(file, "orphan continuation line\n10:00:00,000 INFO  [a.B] (main) one\n");
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        Thread.sleep(100L);
+
+        f.stop();
+
+        assertEquals(2L, result.get(5, TimeUnit.SECONDS).longValue());
+
+        assertMessage("one");
+        assertNull(events.poll());
+    }
+
+    @Test
+    public void follow_Interrupted() throws Exception {
+
+        FileFollower f = follower();
+
+        Future<Long> result = start(f);
+
+        Thread.sleep(100L);
+
+        result.cancel(true);
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertTrue(f.isStopped());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private FileFollower follower() throws Exception {
+
+        FileFollower f = new FileFollower(file, new Log4jParser(new Log4jPatternLayout(PATTERN)));
+
+        f.setPollInterval(1L, 20L);
+
+        return f;
+    }
+
+    private Future<Long> start(FileFollower f) {
+
+        return executor.submit(() -> f.follow(events::addAll));
+    }
+
+    private void assertMessage(String expected) throws Exception {
+
+        Event e = events.poll(5, TimeUnit.SECONDS);
+
+        assertNotNull("no event received", e);
+        assertEquals(expected, ((Log4jEvent)e).getMessage());
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class FileSetParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        //
+        // fewer threads than files, on purpose
+        //
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        executor.shutdownNow();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_NullOrdering() throws Exception {
+
+        try {
+
+            new FileSetParser(null, null);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null ordering"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidReadAhead() throws Exception {
+
+        try {
+
+            new FileSetParser(null, FileOrdering.PER_FILE, executor, 0, 1);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid read-ahead"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidPrefetch() throws Exception {
+
+        try {
+
+            new FileSetParser(null, FileOrdering.PER_FILE, executor, 1, -1);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid prefetch"));
+        }
+    }
+
+    // newExecutor() ---------------------------------------------------------------------------------------------------
+
+    @Test
+    public void newExecutor() throws Exception {
+
+        ExecutorService e = FileSetParser.newExecutor();
+
+        try {
+
+            Future<String> f = e.submit(() -> "ok");
+
+            assertEquals("ok", f.get(5, TimeUnit.SECONDS));
+        }
+        finally {
+
+            e.shutdownNow();
+        }
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_NoFiles() throws Exception {
+
+        FileSetParser p = new FileSetParser(new Log4jPatternLayout(LAYOUT), FileOrdering.TIME_MERGED);
+
+        List<Event> events = new ArrayList<>();
+
+        assertEquals(0L, p.parse(Collections.emptyList(), events::addAll));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void parse_PerFile() throws Exception {
+
+        for(int i = 0; i < 40; i ++) {
+
+            TestFiles.newFile(folder, content(i, 20, i % 3 == 0));
+        }
+
+        List<Event> expected = sequential(new Log4jPatternLayout(LAYOUT));
+
+        for(int prefetch: new int[] { 0, 3, 100 }) {
+
+            FileSetParser p = new FileSetParser(
+                    new Log4jPatternLayout(LAYOUT), FileOrdering.PER_FILE, executor, 3, prefetch);
+
+            List<Event> actual = new ArrayList<>();
+
+            long lineCount = p.parse(TestFiles.listFiles(folder), actual::addAll);
+
+            assertEquals(lineCount(), lineCount);
+            TestFiles.assertEvents(expected, actual);
+        }
+    }
+
+    @Test
+    public void parse_PerFile_DefaultExecutor() throws Exception {
+
+        for(int i = 0; i < 10; i ++) {
+
+            TestFiles.newFile(folder, content(i, 20, true));
+        }
+
+        List<Event> expected = sequential(new Log4jPatternLayout(LAYOUT));
+
+        FileSetParser p = new FileSetParser(new Log4jPatternLayout(LAYOUT), FileOrdering.PER_FILE);
+
+        List<Event> actual = new ArrayList<>();
+
+        assertEquals(lineCount(), p.parse(TestFiles.listFiles(folder), actual::addAll));
+        TestFiles.assertEvents(expected, actual);
+    }
+
+    @Test
+    public void parse_TimeMerged() throws Exception {
+
+        File f1 = TestFiles.newFile(folder, 
+                "10:00:00,001 INFO  [a] (t) f1-1\n" +
+                        "10:00:00,004 INFO  [a] (t) f1-2\n" +
+                        "java.lang.RuntimeException: f1-2\n" +
+                        "\tat a.b.C.m(C.java:10)\n" +
+                        "10:00:00,005 INFO  [a] (t) f1-3\n");
+
+        File f2 = TestFiles.newFile(folder, 
+                "10:00:00,002 INFO  [a] (t) f2-1\n" +
+                        "10:00:00,003 INFO  [a] (t) f2-2\n" +
+                        "10:00:00,006 INFO  [a] (t) f2-3\n");
+
+        File f3 = TestFiles.newFile(folder, 
+                "10:00:00,002 INFO  [a] (t) f3-1\n" +
+                        "10:00:00,007 INFO  [a] (t) f3-2\n");
+
+        FileSetParser p = new FileSetParser(
+                new Log4jPatternLayout(LAYOUT), FileOrdering.TIME_MERGED, executor, 1, 0);
+
+        List<Event> events = new ArrayList<>();
+
+        long lineCount = p.parse(Arrays.asList(f1, f2, f3), events::addAll);
+
+        assertEquals(10L, lineCount);
+
+        TestFiles.assertMessages(events, "f1-1", "f2-1", "f3-1", "f2-2", "f1-2", "f1-3", "f2-3", "f3-2");
+
+        Log4jEvent e = (Log4jEvent)events.get(4);
+        assertEquals(2L, e.getLineNumber().longValue());
+    }
+
+    @Test
+    public void parse_TimeMerged_MoreFilesThanThreads() throws Exception {
+
+        for(int i = 0; i < 50; i ++) {
+
+            TestFiles.newFile(folder, content(i, 10, false));
+        }
+
+        FileSetParser p = new FileSetParser(
+                new Log4jPatternLayout(LAYOUT), FileOrdering.TIME_MERGED, executor, 2, 0);
+
+        List<Event> events = new ArrayList<>();
+
+        assertEquals(500L, p.parse(TestFiles.listFiles(folder), events::addAll));
+        assertEquals(500, events.size());
+
+        for(int i = 1; i < events.size(); i ++) {
+
+            assertTrue(((Log4jEvent)events.get(i - 1)).getTime() <= ((Log4jEvent)events.get(i)).getTime());
+        }
+    }
+
+    @Test
+    public void parse_CompressedFiles() throws Exception {
+
+        TestFiles.newFile(folder, content(0, 30, true));
+
+        TestFiles.newFile(folder, ".log.gz", TestFiles.gzip(content(1, 30, true)));
+
+        TestFiles.newFile(folder, content(2, 30, true));
+
+        FileSetParser p = new FileSetParser(
+                new Log4jPatternLayout(LAYOUT), FileOrdering.PER_FILE, executor, 4, 1);
+
+        List<Event> events = new ArrayList<>();
+
+        p.parse(TestFiles.listFiles(folder), events::addAll);
+
+        assertEquals(90, events.size());
+        assertEquals("file 1 message 0", ((Log4jEvent)events.get(30)).getMessage().split("\n")[0]);
+    }
+
+    @Test
+    public void parse_NoSuchFile() throws Exception {
+
+        File f = TestFiles.newFile(folder, content(0, 5, false));
+
+        File missing = new File(f.getPath() + ".does-not-exist");
+
+        FileSetParser p = new FileSetParser(
+                new Log4jPatternLayout(LAYOUT), FileOrdering.PER_FILE, executor, 2, 4);
+
+        try {
+
+            p.parse(Arrays.asList(f, missing), events -> {});
+
+            fail("should have thrown exception");
+        }
+        catch(FileNotFoundException e) {
+
+            // expected
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * @param index the file index, also used as the minute, so the files are time-disjoint.
+     */
+    private static String content(int index, int eventCount, boolean multiLine) {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < eventCount; i ++) {
+
+            sb.append(String.format("10:%02d:%02d,%03d INFO  [a.b.C] (thread-%d) file %d message %d\n",
+                    index % 60, i % 60, (index * 7 + i) % 1000, i % 2, index, i));
+
+            if (multiLine && i % 4 == 0) {
+
+                sb.append("java.lang.RuntimeException: failure ").append(i).append("\n");
+                sb.append("\tat a.b.C.m(C.java:10)\n");
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * @return the events produced by parsing the files sequentially, one after another.
+     */
+    private List<Event> sequential(Log4jPatternLayout layout) throws Exception {
+
+        List<Event> events = new ArrayList<>();
+
+        for(File f: TestFiles.listFiles(folder)) {
+
+            new Log4jParser(layout).parse(f, events::addAll);
+        }
+
+        return events;
+    }
+
+    private long lineCount() throws Exception {
+
+        long lineCount = 0L;
+
+        for(File f: TestFiles.listFiles(folder)) {
+
+            lineCount += new Log4jParser(new Log4jPatternLayout(LAYOUT)).parse(f, events -> {});
+        }
+
+        return lineCount;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,591 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class IndexedFileParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss,SSS} %-5p [%c] (%t) %m%n";
+
+    private static final int EVENT_COUNT = 3000;
+
+    private static final long CHECKPOINT_INTERVAL = 2048L;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private long base;
+
+    //
+    // the timestamps and the line numbers of the events written in the file
+    //
+    private long[] times;
+    private long[] lineNumbers;
+
+    private int lineCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("indexed-file-parser-test.log");
+        base = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-23 10:00:00,000").getTime();
+
+        times = new long[2 * EVENT_COUNT];
+        lineNumbers = new long[2 * EVENT_COUNT];
+        lineCount = 0;
+
+        write(0, EVENT_COUNT, false);
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCheckpointInterval() throws Exception {
+
+        try {
+
+            new IndexedFileParser(null, -1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid checkpoint interval -1"));
+        }
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_WholeFile_BuildsTheIndex() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        assertFalse(TimeIndex.getSidecar(file).exists());
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parse(file, actual::addAll);
+
+        assertEquals(lineCount, linesRead);
+        assertEvents(0, EVENT_COUNT, actual);
+
+        assertTrue(TimeIndex.getSidecar(file).isFile());
+
+        TimeIndex index = TimeIndex.load(file, LAYOUT);
+
+        assertNotNull(index);
+        assertEquals(file.length(), index.getIndexedLength());
+        assertTrue(index.getCheckpoints().size() > 1);
+        assertEquals(EVENT_COUNT - 1, index.getLastEvent().getOrdinal());
+        assertEquals(lineNumbers[EVENT_COUNT - 1], index.getLastEvent().getLineNumber());
+        assertEquals(times[EVENT_COUNT - 1], index.getLastEvent().getTime());
+
+        for(TimeIndex.Checkpoint c: index.getCheckpoints()) {
+
+            int i = (int)c.getOrdinal();
+
+            assertEquals(times[i], c.getTime());
+            assertEquals(lineNumbers[i], c.getLineNumber());
+        }
+    }
+
+    @Test
+    public void parse_InvalidRange() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        try {
+
+            p.parse(file, 2L, 1L, e -> {});
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid time range [2, 1)"));
+        }
+    }
+
+    @Test
+    public void parse_TimeRange_BuildsTheIndexIfMissing() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[1000], times[1100], actual::addAll);
+
+        assertEvents(1000, 1100, actual);
+        assertTrue(TimeIndex.getSidecar(file).isFile());
+    }
+
+    @Test
+    public void parse_TimeRange() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        p.getIndex(file);
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parse(file, times[1000], times[1100], actual::addAll);
+
+        assertEvents(1000, 1100, actual);
+
+        //
+        // we started reading close to the window
+        //
+
+        assertTrue(linesRead < lineCount / 4);
+    }
+
+    @Test
+    public void parse_TimeRange_Heuristics() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(null, CHECKPOINT_INTERVAL);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[2345], times[2400] + 1, actual::addAll);
+
+        assertEvents(2345, 2401, actual);
+    }
+
+    @Test
+    public void parse_TimeRange_WholeFile() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, 0L, Long.MAX_VALUE, actual::addAll);
+
+        assertEvents(0, EVENT_COUNT, actual);
+    }
+
+    // parseLines() ----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parseLines_InvalidRange() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        try {
+
+            p.parseLines(file, 2L, 1L, e -> {});
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid line range [2, 1)"));
+        }
+    }
+
+    @Test
+    public void parseLines() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        p.getIndex(file);
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parseLines(file, lineNumbers[2000], lineNumbers[2050], actual::addAll);
+
+        assertEvents(2000, 2050, actual);
+        assertTrue(linesRead < lineCount / 4);
+    }
+
+    @Test
+    public void parseLines_RangeStartsOnAContinuationLine() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        //
+        // event 700 spans three lines, only the events that start in the range are delivered
+        //
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parseLines(file, lineNumbers[700] + 1, lineNumbers[710] + 1, actual::addAll);
+
+        assertEvents(701, 711, actual);
+    }
+
+    @Test
+    public void parseLines_LastEvent() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parseLines(file, lineNumbers[EVENT_COUNT - 3], Long.MAX_VALUE, actual::addAll);
+
+        assertEvents(EVENT_COUNT - 3, EVENT_COUNT, actual);
+    }
+
+    // parse() with a filter -------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_NullFilter() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        try {
+
+            p.parse(file, (EventFilter)null, e -> {});
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null filter"));
+        }
+    }
+
+    @Test
+    public void parse_Filter_ReadsOnlyMatchingBlocks() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        p.getIndex(file);
+
+        EventFilter f = new EventFilter();
+        f.setLevels(Log4jLevel.WARN);
+        f.setLoggerPrefix("org.hibernate");
+        f.setThreadName("http-52");
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parse(file, f, actual::addAll);
+
+        assertEquals(EVENT_COUNT / 500, actual.size());
+
+        for(int i = 0; i < actual.size(); i ++) {
+
+            Log4jEvent e = (Log4jEvent)actual.get(i);
+            int n = 500 * i + 250;
+
+            assertEquals(lineNumbers[n], e.getLineNumber().longValue());
+            assertEquals(times[n], e.getTime().longValue());
+            assertEquals("org.hibernate.SQL", e.getLogger());
+        }
+
+        //
+        // only the blocks that contain the rare events were read
+        //
+
+        assertTrue(linesRead < lineCount / 10);
+    }
+
+    @Test
+    public void parse_Filter_NoMatchingBlocks() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        EventFilter f = new EventFilter();
+        f.setThreadName("no-such-thread");
+
+        List<Event> actual = new ArrayList<>();
+
+        assertEquals(0L, p.parse(file, f, actual::addAll));
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void parse_Filter_SameResultAsFullScan() throws Exception {
+
+        parse_Filter_SameResultAsFullScan(new Log4jPatternLayout(LAYOUT));
+    }
+
+    @Test
+    public void parse_Filter_SameResultAsFullScan_Heuristics() throws Exception {
+
+        parse_Filter_SameResultAsFullScan(null);
+    }
+
+    @Test
+    public void parse_Filter_AfterTheFileGrows() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        p.getIndex(file);
+
+        write(EVENT_COUNT, 2 * EVENT_COUNT, true);
+
+        EventFilter f = new EventFilter();
+        f.setThreadName("http-52");
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, f, actual::addAll);
+
+        assertEquals(2 * EVENT_COUNT / 500, actual.size());
+        assertEquals(lineNumbers[2 * EVENT_COUNT - 250], actual.get(actual.size() - 1).getLineNumber().longValue());
+    }
+
+    // getIndex() ------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getIndex_ExtendedWhenTheFileGrows() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        TimeIndex index = p.getIndex(file);
+
+        int checkpoints = index.getCheckpoints().size();
+        long length = file.length();
+
+        write(EVENT_COUNT, 2 * EVENT_COUNT, true);
+
+        TimeIndex index2 = p.getIndex(file);
+
+        assertEquals(file.length(), index2.getIndexedLength());
+        assertTrue(index2.getIndexedLength() > length);
+        assertTrue(index2.getCheckpoints().size() > checkpoints);
+        assertEquals(2 * EVENT_COUNT - 1, index2.getLastEvent().getOrdinal());
+        assertEquals(lineNumbers[2 * EVENT_COUNT - 1], index2.getLastEvent().getLineNumber());
+
+        //
+        // the old checkpoints were preserved
+        //
+
+        for(int i = 0; i < checkpoints; i ++) {
+
+            assertEquals(index.getCheckpoints().get(i).getOffset(), index2.getCheckpoints().get(i).getOffset());
+        }
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[EVENT_COUNT - 5], times[EVENT_COUNT + 5], actual::addAll);
+
+        assertEvents(EVENT_COUNT - 5, EVENT_COUNT + 5, actual);
+    }
+
+    @Test
+    public void getIndex_RebuiltWhenTheFileIsRewritten() throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL);
+
+        p.getIndex(file);
+
+        //
+        // the log was rotated: the new file is shorter and has different content
+        //
+
+        base += 3600L * 1000;
+        lineCount = 0;
+        write(0, EVENT_COUNT / 2, false);
+
+        TimeIndex index = p.getIndex(file);
+
+        assertEquals(file.length(), index.getIndexedLength());
+        assertEquals(EVENT_COUNT / 2 - 1, index.getLastEvent().getOrdinal());
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[100], times[200], actual::addAll);
+
+        assertEvents(100, 200, actual);
+    }
+
+    @Test
+    public void getIndex_DifferentLayout() throws Exception {
+
+        new IndexedFileParser(new Log4jPatternLayout(LAYOUT), CHECKPOINT_INTERVAL).getIndex(file);
+
+        IndexedFileParser p = new IndexedFileParser(null, CHECKPOINT_INTERVAL);
+
+        TimeIndex index = p.getIndex(file);
+
+        assertEquals(null, index.getLayoutLiteral());
+        assertEquals(file.length(), index.getIndexedLength());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private void parse_Filter_SameResultAsFullScan(Log4jPatternLayout layout) throws Exception {
+
+        IndexedFileParser p = new IndexedFileParser(layout, CHECKPOINT_INTERVAL);
+
+        List<Event> all = new ArrayList<>();
+
+        p.parse(file, all::addAll);
+
+        EventFilter[] filters = new EventFilter[5];
+
+        filters[0] = new EventFilter();
+        filters[0].setLevels(Log4jLevel.ERROR);
+
+        filters[1] = new EventFilter();
+        filters[1].setLoggerPrefix("a.b.C3");
+        filters[1].setThreadName("thread-1");
+
+        filters[2] = new EventFilter();
+        filters[2].setTimeRange(times[1000], times[1200]);
+        filters[2].setLevels(Log4jLevel.WARN, Log4jLevel.ERROR);
+
+        filters[3] = new EventFilter();
+        filters[3].setTimeRange(times[2990], null);
+        filters[3].setLoggerPrefix("org.");
+
+        filters[4] = new EventFilter();
+        filters[4].setThreadName("http-52");
+        filters[4].setTimeRange(null, times[1250]);
+
+        for(EventFilter f: filters) {
+
+            List<Event> expected = new ArrayList<>();
+
+            for(Event e: all) {
+
+                if (f.accepts((Log4jEvent)e)) {
+
+                    expected.add(e);
+                }
+            }
+
+            List<Event> actual = new ArrayList<>();
+
+            p.parse(file, f, actual::addAll);
+
+            assertEquals(f.toString(), expected.size(), actual.size());
+
+            for(int i = 0; i < expected.size(); i ++) {
+
+                assertEquals(expected.get(i).getLineNumber(), actual.get(i).getLineNumber());
+                assertEquals(expected.get(i).getRawRepresentation(), actual.get(i).getRawRepresentation());
+            }
+        }
+    }
+
+    /**
+     * Writes the events [from, to), 250 ms apart; every seventh event has a multi-line message, and one in 500 events
+     * is a rare WARN logged by org.hibernate.SQL on thread http-52.
+     */
+    private void write(int from, int to, boolean append) throws Exception {
+
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = from; i < to; i ++) {
+
+            times[i] = base + 250L * i;
+            lineNumbers[i] = ++ lineCount;
+
+            sb.append(f.format(new java.util.Date(times[i])));
+
+            if (i % 500 == 250) {
+
+                sb.append(" WARN  [org.hibernate.SQL] (http-52) message ").append(i).append('\n');
+            }
+            else {
+
+                sb.append(i % 3 == 0 ? " ERROR" : " INFO ").append(" [a.b.C").append(i % 5).append("] (thread-").
+                        append(i % 4).append(") message ").append(i).append('\n');
+            }
+
+            if (i % 7 == 0) {
+
+                sb.append("\tcontinuation of ").append(i).append('\n');
+                sb.append("\tanother continuation of ").append(i).append('\n');
+
+                lineCount += 2;
+            }
+        }
+
+        if (append) {
+
+            TestFiles.append(file, sb.toString());
+        }
+        else {
+
+            TestFiles.write(file, sb.toString());
+        }
+    }
+
+    /**
+     * @param from the index of the first expected event, inclusive.
+     * @param to the index of the last expected event, exclusive.
+     */
+    private void assertEvents(int from, int to, List<Event> actual) {
+
+        assertEquals(to - from, actual.size());
+
+        for(int i = from; i < to; i ++) {
+
+            Log4jEvent e = (Log4jEvent)actual.get(i - from);
+
+            String tail = "message " + i;
+
+            if (i % 7 == 0) {
+
+                tail += "\n\tcontinuation of " + i + "\n\tanother continuation of " + i;
+            }
+
+            assertEquals(times[i], e.getTime().longValue());
+            assertEquals(lineNumbers[i], e.getLineNumber().longValue());
+            assertTrue(e.getRawRepresentation().endsWith(tail));
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
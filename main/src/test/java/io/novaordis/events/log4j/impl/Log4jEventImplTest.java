@@ -16,14 +16,18 @@
 
 package io.novaordis.events.log4j.impl;
 
+import java.util.List;
 import java.util.StringTokenizer;
 
 import org.junit.Test;
 
+import io.novaordis.events.api.event.Property;
+import io.novaordis.events.api.event.StringProperty;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
 import io.novaordis.utilities.logging.log4j.Log4jLevel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -44,27 +48,6 @@ public class Log4jEventImplTest extends Log4jEventTest {
 
     // Public ----------------------------------------------------------------------------------------------------------
 
-    @Test
-    public void invalidLogLevelStorage() throws Exception {
-
-        Log4jEventImpl e = getLog4jEventToTest();
-
-        String s = "something that cannot be a log level";
-
-        e.setStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME, s);
-
-        try {
-
-            e.getLevel();
-            fail("should have failed");
-        }
-        catch(IllegalStateException ex) {
-
-            String msg = ex.getMessage();
-            assertTrue(msg.equals("invalid '" + Log4jEventImpl.LEVEL_PROPERTY_NAME + "' value: \"" + s + "\""));
-        }
-    }
-
     // Tests -----------------------------------------------------------------------------------------------------------
 
     // log level -------------------------------------------------------------------------------------------------------
@@ -156,6 +139,282 @@ public class Log4jEventImplTest extends Log4jEventTest {
         assertEquals(line, raw);
     }
 
+    // properties view -------------------------------------------------------------------------------------------------
+
+    @Test
+    public void propertiesView_Empty() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        assertTrue(e.getProperties().isEmpty());
+        assertNull(e.getStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME));
+        assertNull(e.getStringProperty(Log4jEventImpl.LOGGER_PROPERTY_NAME));
+        assertNull(e.getStringProperty(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME));
+        assertNull(e.getStringProperty(Log4jEventImpl.MESSAGE_PROPERTY_NAME));
+        assertNull(e.getStringProperty(Log4jEventImpl.EXCEPTION_PROPERTY_NAME));
+    }
+
+    @Test
+    public void propertiesView() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl(1L, 2L, Log4jLevel.WARN, "some.logger", "some thread", "blah", "raw");
+
+        e.setExceptionRendering("some exception");
+
+        e.setStringProperty("something-else", "some value");
+
+        List<Property> properties = e.getProperties();
+
+        assertEquals(6, properties.size());
+
+        assertEquals(Log4jEventImpl.LEVEL_PROPERTY_NAME, properties.get(0).getName());
+        assertEquals("WARN", properties.get(0).getValue());
+        assertEquals(Log4jEventImpl.LOGGER_PROPERTY_NAME, properties.get(1).getName());
+        assertEquals("some.logger", properties.get(1).getValue());
+        assertEquals(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME, properties.get(2).getName());
+        assertEquals("some thread", properties.get(2).getValue());
+        assertEquals(Log4jEventImpl.MESSAGE_PROPERTY_NAME, properties.get(3).getName());
+        assertEquals("blah", properties.get(3).getValue());
+        assertEquals(Log4jEventImpl.EXCEPTION_PROPERTY_NAME, properties.get(4).getName());
+        assertEquals("some exception", properties.get(4).getValue());
+        assertEquals("something-else", properties.get(5).getName());
+        assertEquals("some value", properties.get(5).getValue());
+
+        assertEquals("WARN", e.getStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME).getString());
+        assertEquals("some value", e.getStringProperty("something-else").getString());
+    }
+
+    @Test
+    public void propertiesView_TracksTheFields() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setLevel(Log4jLevel.INFO);
+
+        StringProperty p = e.getStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME);
+        assertEquals("INFO", p.getString());
+
+        e.setLevel(Log4jLevel.ERROR);
+
+        //
+        // the view is built on demand, the previously returned instance is not updated
+        //
+
+        assertEquals("INFO", p.getString());
+        assertEquals("ERROR", e.getStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME).getString());
+
+        e.setLevel(null);
+
+        assertNull(e.getStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME));
+        assertTrue(e.getProperties().isEmpty());
+    }
+
+    @Test
+    public void level_StoredAsEnum() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setLevel(Log4jLevel.DEBUG);
+
+        assertTrue(Log4jLevel.DEBUG == e.getLevel());
+    }
+
+    @Test
+    public void invalidLogLevelStorage() throws Exception {
+
+        Log4jEventImpl e = getLog4jEventToTest();
+
+        e.setLevel(Log4jLevel.INFO);
+
+        String s = "something that cannot be a log level";
+
+        try {
+
+            e.setStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME, s);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException ex) {
+
+            String msg = ex.getMessage();
+            assertTrue(msg.equals("invalid '" + Log4jEventImpl.LEVEL_PROPERTY_NAME + "' value: \"" + s + "\""));
+        }
+
+        try {
+
+            e.setProperty(new StringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME, s));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException ex) {
+
+            String msg = ex.getMessage();
+            assertTrue(msg.equals("invalid '" + Log4jEventImpl.LEVEL_PROPERTY_NAME + "' value: \"" + s + "\""));
+        }
+
+        //
+        // the level was not changed, and the invalid value did not end up in the generic storage
+        //
+
+        assertEquals(Log4jLevel.INFO, e.getLevel());
+        assertEquals("INFO", e.getProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME).getValue());
+    }
+
+    @Test
+    public void setStringProperty_FieldBacked() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setStringProperty(Log4jEventImpl.LEVEL_PROPERTY_NAME, "WARN");
+        e.setStringProperty(Log4jEventImpl.LOGGER_PROPERTY_NAME, "some.logger");
+        e.setStringProperty(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME, "some thread");
+        e.setStringProperty(Log4jEventImpl.MESSAGE_PROPERTY_NAME, "blah");
+        e.setStringProperty(Log4jEventImpl.EXCEPTION_PROPERTY_NAME, "some exception");
+
+        assertTrue(Log4jLevel.WARN == e.getLevel());
+        assertEquals("some.logger", e.getLogger());
+        assertEquals("some thread", e.getThreadName());
+        assertEquals("blah", e.getMessage());
+        assertEquals("some exception", e.getExceptionRendering());
+        assertEquals(5, e.getProperties().size());
+
+        e.setStringProperty(Log4jEventImpl.LOGGER_PROPERTY_NAME, null);
+
+        assertNull(e.getLogger());
+        assertNull(e.getProperty(Log4jEventImpl.LOGGER_PROPERTY_NAME));
+        assertEquals(4, e.getProperties().size());
+    }
+
+    @Test
+    public void setProperty_FieldBacked() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setMessage("old");
+
+        Property previous = e.setProperty(new StringProperty(Log4jEventImpl.MESSAGE_PROPERTY_NAME, "new"));
+
+        assertEquals("old", previous.getValue());
+        assertEquals("new", e.getMessage());
+        assertEquals("new", e.getProperty(Log4jEventImpl.MESSAGE_PROPERTY_NAME).getValue());
+        assertEquals(1, e.getProperties().size());
+    }
+
+    // offsets ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void offsets() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.appendRawLine("[a.b.C] (main) some message");
+
+        e.setLoggerOffsets(1, 6);
+        e.setThreadNameOffsets(9, 13);
+        e.setMessageOffsets(15, 27);
+
+        String logger = e.getLogger();
+        assertEquals("a.b.C", logger);
+        assertTrue(logger == e.getLogger());
+        assertEquals("main", e.getThreadName());
+        assertEquals("some message", e.getMessage());
+        assertEquals("main", e.getStringProperty(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME).getString());
+    }
+
+    @Test
+    public void offsets_EmptyValue() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.appendRawLine("blah");
+
+        e.setLoggerOffsets(2, 2);
+
+        assertEquals("", e.getLogger());
+    }
+
+    @Test
+    public void offsets_OverriddenBySetter() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.appendRawLine("blah");
+
+        e.setMessageOffsets(0, 4);
+        e.setMessage("something else");
+
+        assertEquals("something else", e.getMessage());
+
+        e.setMessageOffsets(1, 3);
+
+        assertEquals("la", e.getMessage());
+
+        e.setMessage(null);
+
+        assertNull(e.getMessage());
+    }
+
+    @Test
+    public void offsets_Invalid() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        try {
+
+            e.setLoggerOffsets(3, 2);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException ex) {
+
+            String msg = ex.getMessage();
+            assertTrue(msg.contains("invalid offsets [3, 2)"));
+        }
+
+        try {
+
+            e.setThreadNameOffsets(-1, 2);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException ex) {
+
+            String msg = ex.getMessage();
+            assertTrue(msg.contains("invalid offsets [-1, 2)"));
+        }
+    }
+
+    @Test
+    public void offsets_NoRawRepresentation() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.setThreadNameOffsets(0, 2);
+
+        try {
+
+            e.getThreadName();
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException ex) {
+
+            String msg = ex.getMessage();
+            assertTrue(msg.contains("no raw representation"));
+        }
+    }
+
+    @Test
+    public void offsets_AppendLine_MessageNotAtTheEndOfTheLine() throws Exception {
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        e.appendRawLine("message (main)");
+
+        e.setMessageOffsets(0, 7);
+        e.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        e.appendLine("line 2");
+
+        assertEquals("message\nline 2", e.getMessage());
+        assertEquals("message (main)\nline 2", e.getRawRepresentation());
+    }
+
     // append mode -----------------------------------------------------------------------------------------------------
 
     @Test
@@ -453,6 +712,294 @@ public class Log4jEventImplTest extends Log4jEventTest {
         assertEquals("first line\nline 1\nline 2\n \n\t\n\nline 3", le.getRawRepresentation());
     }
 
+    // continuation line accumulation ----------------------------------------------------------------------------------
+
+    @Test
+    public void appendLine_ManyLines() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.ERROR, "a.b.C", "main", "failure", "first line");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        StringBuilder expected = new StringBuilder();
+
+        for(int i = 0; i < 100000; i ++) {
+
+            String line = "\tat a.b.C.m" + i + "(C.java:" + i + ")";
+
+            le.appendLine(line);
+
+            if (i > 0) {
+
+                expected.append('\n');
+            }
+
+            expected.append(line);
+        }
+
+        le.finish();
+
+        assertEquals(expected.toString(), le.getExceptionRendering());
+        assertEquals("first line\n" + expected, le.getRawRepresentation());
+        assertEquals("failure", le.getMessage());
+    }
+
+    @Test
+    public void finish_Idempotent() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.INFO, "a.b.C", "main", "line 1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        le.appendLine("line 2");
+        le.appendLine("line 3");
+
+        le.finish();
+        le.finish();
+
+        assertEquals("line 1\nline 2\nline 3", le.getMessage());
+        assertEquals("first line\nline 2\nline 3", le.getRawRepresentation());
+
+        //
+        // the event can still be appended to
+        //
+
+        le.appendLine("line 4");
+
+        assertEquals("line 1\nline 2\nline 3\nline 4", le.getMessage());
+        assertEquals("first line\nline 2\nline 3\nline 4", le.getRawRepresentation());
+    }
+
+    @Test
+    public void appendRawLine_Accumulated() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.INFO, "a.b.C", "main", "something", "first line");
+
+        le.appendRawLine("second line");
+        le.appendRawLine("");
+        le.appendRawLine("fourth line");
+
+        assertEquals("first line\nsecond line\n\nfourth line", le.getRawRepresentation());
+
+        //
+        // raw lines do not go into the message
+        //
+
+        assertEquals("something", le.getMessage());
+    }
+
+    @Test
+    public void appendLine_AppendModeChange() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.ERROR, "a.b.C", "main", "m1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        le.appendLine("m2");
+        le.appendLine("m3");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("e1");
+        le.appendLine("e2");
+
+        le.appendRawLine("r1");
+
+        assertEquals("m1\nm2\nm3", le.getMessage());
+        assertEquals("e1\ne2", le.getExceptionRendering());
+        assertEquals("first line\nm2\nm3\ne1\ne2\nr1", le.getRawRepresentation());
+    }
+
+    @Test
+    public void appendLine_SetMessageAfterwards() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.INFO, "a.b.C", "main", "m1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        le.appendLine("m2");
+
+        le.setMessage("replaced");
+
+        assertEquals("replaced", le.getMessage());
+        assertEquals("first line\nm2", le.getRawRepresentation());
+    }
+
+    @Test
+    public void appendLine_LazyMessage_AccumulatedLinesDoNotMaterializeIt() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl();
+
+        le.appendRawLine("[a.b.C] line 1");
+        le.setLoggerOffsets(1, 6);
+        le.setMessageOffsets(8, 14);
+        le.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        le.appendLine("line 2");
+        le.appendLine("line 3");
+
+        assertEquals("[a.b.C] line 1\nline 2\nline 3", le.getRawRepresentation());
+        assertEquals("a.b.C", le.getLogger());
+        assertEquals("line 1\nline 2\nline 3", le.getMessage());
+    }
+
+    // exception fingerprint -------------------------------------------------------------------------------------------
+
+    @Test
+    public void getExceptionFingerprint_NoException() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl();
+
+        assertNull(le.getExceptionFingerprint());
+    }
+
+    @Test
+    public void getExceptionFingerprint() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl();
+
+        le.appendRawLine("failure: java.lang.Exception: SYNTHETIC");
+        le.setExceptionRendering(": java.lang.Exception: SYNTHETIC");
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        long f = le.getExceptionFingerprint();
+
+        assertEquals(ExceptionFingerprint.compute(": java.lang.Exception: SYNTHETIC"), f);
+
+        //
+        // appended lines change the fingerprint
+        //
+
+        le.appendLine("\tat a.b.C.m(C.java:10)");
+
+        long f2 = le.getExceptionFingerprint();
+
+        assertNotEquals(f, f2);
+        assertEquals(ExceptionFingerprint.compute(le.getExceptionRendering()), f2);
+
+        //
+        // an equal rendering keeps it, a different one resets it
+        //
+
+        le.setExceptionRendering(new String(le.getExceptionRendering()));
+
+        assertEquals(f2, le.getExceptionFingerprint().longValue());
+
+        le.setExceptionRendering(": java.lang.Exception: SYNTHETIC");
+
+        assertEquals(f, le.getExceptionFingerprint().longValue());
+
+        le.setExceptionRendering(null);
+
+        assertNull(le.getExceptionFingerprint());
+    }
+
+    // raw representation built from the exception rendering -----------------------------------------------------------
+
+    @Test
+    public void rawRepresentation_ExceptionLinesTakenFromTheRendering() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.ERROR, "a.b.C", "main", "m1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("java.lang.Exception: SYNTHETIC");
+        le.appendLine("\tat a.b.C.m(C.java:10)");
+
+        String expected = "first line\njava.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)";
+
+        assertEquals(expected, le.getRawRepresentation());
+
+        //
+        // the canonical instance of an equal rendering, as installed by the parser, backs the raw representation
+        //
+
+        String canonical = new String(le.getExceptionRendering());
+
+        le.setExceptionRendering(canonical);
+
+        assertTrue(canonical == le.getExceptionRendering());
+        assertEquals(expected, le.getRawRepresentation());
+
+        le.appendLine("\tat a.b.D.m(D.java:20)");
+
+        assertEquals(expected + "\n\tat a.b.D.m(D.java:20)", le.getRawRepresentation());
+    }
+
+    @Test
+    public void rawRepresentation_ExceptionOnly() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl();
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("java.lang.Exception: SYNTHETIC");
+        le.appendLine("\tat a.b.C.m(C.java:10)");
+
+        assertTrue(le.getExceptionRendering() == le.getRawRepresentation());
+
+        le.appendRawLine("r1");
+
+        assertEquals("java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)\nr1", le.getRawRepresentation());
+    }
+
+    @Test
+    public void rawRepresentation_ExceptionStartsOnTheFirstLine() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl();
+
+        le.appendRawLine("failure: java.lang.Exception: SYNTHETIC");
+        le.setExceptionRendering(": java.lang.Exception: SYNTHETIC");
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("\tat a.b.C.m(C.java:10)");
+
+        assertEquals(": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)", le.getExceptionRendering());
+        assertEquals("failure: java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)", le.getRawRepresentation());
+    }
+
+    @Test
+    public void rawRepresentation_DifferentExceptionRendering_RawRepresentationUnchanged() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.ERROR, "a.b.C", "main", "m1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("java.lang.Exception: SYNTHETIC");
+
+        le.setExceptionRendering("something else");
+
+        assertEquals("something else", le.getExceptionRendering());
+        assertEquals("first line\njava.lang.Exception: SYNTHETIC", le.getRawRepresentation());
+
+        le.setExceptionRendering(null);
+
+        assertNull(le.getExceptionRendering());
+        assertEquals("first line\njava.lang.Exception: SYNTHETIC", le.getRawRepresentation());
+    }
+
+    @Test
+    public void rawRepresentation_MessageLinesAfterTheException() throws Exception {
+
+        Log4jEventImpl le = new Log4jEventImpl(1L, 0L, Log4jLevel.ERROR, "a.b.C", "main", "m1", "first line");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("e1");
+
+        le.setAppendMode(Log4jEventImpl.MESSAGE_APPEND_MODE);
+
+        le.appendLine("m2");
+
+        le.setAppendMode(Log4jEventImpl.EXCEPTION_APPEND_MODE);
+
+        le.appendLine("e2");
+
+        assertEquals("m1\nm2", le.getMessage());
+        assertEquals("e1\ne2", le.getExceptionRendering());
+        assertEquals("first line\ne1\nm2\ne2", le.getRawRepresentation());
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -18,20 +18,30 @@ package io.novaordis.events.log4j.impl;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import io.novaordis.events.api.event.EndOfStreamEvent;
 import io.novaordis.events.api.event.Event;
 import io.novaordis.events.api.event.TimedEvent;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.events.query.FieldQuery;
+import io.novaordis.events.query.Query;
 import io.novaordis.utilities.Files;
 import io.novaordis.utilities.logging.log4j.Log4jLevel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Ovidiu Feodorov <ovidiu@novaordis.com>
@@ -45,6 +55,9 @@ public class Log4jParserTest {
 
     // Attributes ------------------------------------------------------------------------------------------------------
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     // Constructors ----------------------------------------------------------------------------------------------------
 
     // Public ----------------------------------------------------------------------------------------------------------
@@ -371,6 +384,569 @@ public class Log4jParserTest {
         assertTrue(e3 instanceof EndOfStreamEvent);
     }
 
+    // memory-mapped ingestion -----------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_File_SameEventsAsLineByLineParsing() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss-exception.log");
+        assertTrue(file.isFile());
+
+        String layout = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout(layout));
+
+        List<Event> expected = new ArrayList<>();
+
+        String[] lines = Files.read(file).split("\n");
+
+        for(int i = 0; i < lines.length; i ++) {
+
+            expected.addAll(p.parse(i + 1, lines[i], null));
+        }
+
+        expected.addAll(p.close(lines.length));
+
+        Log4jParser p2 = new Log4jParser(new Log4jPatternLayout(layout));
+
+        List<Event> actual = new ArrayList<>();
+
+        long lineCount = p2.parse(file, actual::addAll);
+
+        assertEquals(lines.length, lineCount);
+        assertEquals(expected.size(), actual.size());
+        assertTrue(actual.size() > 1);
+
+        for(int i = 0; i < expected.size(); i ++) {
+
+            Log4jEvent e = (Log4jEvent)expected.get(i);
+            Log4jEvent a = (Log4jEvent)actual.get(i);
+
+            assertEquals(e.getLineNumber(), a.getLineNumber());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getLevel(), a.getLevel());
+            assertEquals(e.getLogger(), a.getLogger());
+            assertEquals(e.getThreadName(), a.getThreadName());
+            assertEquals(e.getMessage(), a.getMessage());
+            assertEquals(e.getExceptionRendering(), a.getExceptionRendering());
+            assertEquals(e.getRawRepresentation(), a.getRawRepresentation());
+        }
+    }
+
+    @Test
+    public void parse_File_Heuristics() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss.server.log");
+        assertTrue(file.isFile());
+
+        Log4jParser p = new Log4jParser();
+
+        List<Event> events = new ArrayList<>();
+
+        long lineCount = p.parse(file, events::addAll);
+
+        assertEquals(3, lineCount);
+        assertEquals(3, events.size());
+        assertEquals("org.jboss.msc", ((Log4jEvent)events.get(1)).getLogger());
+        assertEquals(3L, ((Log4jEvent)events.get(2)).getLineNumber().longValue());
+    }
+
+    // compressed input ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_File_Gzip() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss-exception.log");
+        assertTrue(file.isFile());
+
+        String layout = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = new Log4jParser(new Log4jPatternLayout(layout)).parse(file, expected::addAll);
+
+        File compressed = folder.newFile("log4j-parser-test.log.gz");
+
+        TestFiles.write(compressed, TestFiles.gzip(Files.read(file)));
+
+        List<Event> actual = new ArrayList<>();
+
+        long lineCount = new Log4jParser(new Log4jPatternLayout(layout)).parse(compressed, actual::addAll);
+
+        assertEquals(expectedLineCount, lineCount);
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i ++) {
+
+            Log4jEvent e = (Log4jEvent)expected.get(i);
+            Log4jEvent a = (Log4jEvent)actual.get(i);
+
+            assertEquals(e.getLineNumber(), a.getLineNumber());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getMessage(), a.getMessage());
+            assertEquals(e.getExceptionRendering(), a.getExceptionRendering());
+        }
+    }
+
+    // layout inference ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void layoutInference_InvalidSampleSize() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        try {
+
+            p.setLayoutInferenceSampleSize(-1);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid sample size"));
+        }
+    }
+
+    @Test
+    public void layoutInference() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss-exception.log");
+
+        String layout = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+        List<Event> expected = new ArrayList<>();
+
+        new Log4jParser(new Log4jPatternLayout(layout)).parse(file, expected::addAll);
+
+        Log4jParser p = new Log4jParser();
+
+        //
+        // the sample covers the whole file, so both the padded and the unpadded level renderings are seen
+        //
+
+        p.setLayoutInferenceSampleSize(100);
+
+        List<Event> actual = new ArrayList<>();
+
+        String[] lines = Files.read(file).split("\n");
+
+        for(int i = 0; i < lines.length; i ++) {
+
+            //
+            // sampling
+            //
+
+            assertTrue(p.parse(i + 1, lines[i], null).isEmpty());
+            assertNull(p.getPatternLayout());
+        }
+
+        for(Event e: p.close()) {
+
+            if (e instanceof Log4jEvent) {
+
+                actual.add(e);
+            }
+        }
+
+        assertEquals(layout, p.getPatternLayout().getLiteral());
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i ++) {
+
+            Log4jEvent e = (Log4jEvent)expected.get(i);
+            Log4jEvent a = (Log4jEvent)actual.get(i);
+
+            assertEquals(e.getLineNumber(), a.getLineNumber());
+            assertEquals(e.getMessage(), a.getMessage());
+            assertEquals(e.getExceptionRendering(), a.getExceptionRendering());
+        }
+    }
+
+    @Test
+    public void layoutInference_ContentShorterThanTheSample() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setLayoutInferenceSampleSize(100);
+
+        assertTrue(p.parse(1L, "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules").isEmpty());
+        assertTrue(p.parse(2L, "09:01:55,531 INFO  [org.jboss.msc] (main) JBoss MSC").isEmpty());
+
+        List<Event> events = p.close(2L);
+
+        assertNotNull(p.getPatternLayout());
+        assertEquals(2, events.size());
+        assertEquals("org.jboss.msc", ((Log4jEvent)events.get(1)).getLogger());
+        assertEquals(2L, events.get(1).getLineNumber().longValue());
+    }
+
+    @Test
+    public void layoutInference_Fails_FallsBackToHeuristics() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setLayoutInferenceSampleSize(2);
+
+        assertTrue(p.parse(1L, "blah").isEmpty());
+        assertTrue(p.parse(2L, "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules").isEmpty());
+
+        assertNull(p.getPatternLayout());
+
+        List<Event> events = p.close(2L);
+
+        assertEquals(1, events.size());
+        assertEquals("org.jboss.modules", ((Log4jEvent)events.get(0)).getLogger());
+    }
+
+    @Test
+    public void layoutInference_LineNotMatchingTheInferredLayout_IsANewEvent() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setLayoutInferenceSampleSize(2);
+
+        assertTrue(p.parse(1L, "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules").isEmpty());
+
+        //
+        // the sample is complete, the layout is inferred and the sampled lines are parsed
+        //
+
+        assertEquals(1, p.parse(2L, "09:01:55,531 INFO  [org.jboss.msc] (main) JBoss MSC").size());
+
+        assertNotNull(p.getPatternLayout());
+
+        //
+        // starts with a timestamp, but it does not match the inferred layout
+        //
+
+        List<Event> events = p.parse(3L, "2017-11-23 09:01:56,000 WARN  [org.jboss.as] (main) another format");
+
+        assertEquals(1, events.size());
+        assertEquals(2L, events.get(0).getLineNumber().longValue());
+
+        //
+        // does not start with a timestamp, it is a continuation line of the heuristically built event
+        //
+
+        assertTrue(p.parse(4L, "continuation").isEmpty());
+
+        events = p.parse(5L, "09:01:57,000 INFO  [org.jboss.as] (main) WildFly");
+
+        assertEquals(1, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+
+        assertEquals(3L, e.getLineNumber().longValue());
+        assertEquals("2017-11-23 09:01:56,000 WARN  [org.jboss.as] (main) another format\ncontinuation",
+                e.getRawRepresentation());
+
+        events = p.close(5L);
+
+        assertEquals(1, events.size());
+        assertEquals("org.jboss.as", ((Log4jEvent)events.get(0)).getLogger());
+    }
+
+    @Test
+    public void layoutInference_LevelShorterThanTheInferredPadding_IsANewEvent() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setLayoutInferenceSampleSize(2);
+
+        assertTrue(p.parse(1L, "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules").isEmpty());
+        assertEquals(1, p.parse(2L, "09:01:55,531 INFO  [org.jboss.msc] (main) JBoss MSC").size());
+
+        assertEquals("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n", p.getPatternLayout().getLiteral());
+
+        //
+        // the level is followed by a single space, so it is shorter than the inferred %-5p
+        //
+
+        List<Event> events = p.parse(3L, "09:01:56,000 INFO [org.jboss.as] (main) not padded");
+
+        assertEquals(1, events.size());
+        assertEquals(2L, events.get(0).getLineNumber().longValue());
+
+        events = p.close(3L);
+
+        assertEquals(1, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+
+        assertEquals(3L, e.getLineNumber().longValue());
+        assertEquals("09:01:56,000 INFO [org.jboss.as] (main) not padded", e.getRawRepresentation());
+    }
+
+    @Test
+    public void layoutInference_ExplicitLayout_LineNotMatching_IsAContinuation() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+
+        assertTrue(p.parse(1L, "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules").isEmpty());
+        assertTrue(p.parse(2L, "2017-11-23 09:01:56,000 WARN  [org.jboss.as] (main) another format").isEmpty());
+
+        List<Event> events = p.close(2L);
+
+        assertEquals(1, events.size());
+        assertEquals("JBoss Modules\n2017-11-23 09:01:56,000 WARN  [org.jboss.as] (main) another format",
+                ((Log4jEvent)events.get(0)).getMessage());
+    }
+
+    @Test
+    public void layoutInference_ExplicitLayoutWins() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setLayoutInferenceSampleSize(2);
+
+        p.setPatternLayout(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] %m%n"));
+
+        List<Event> events = p.parse(1L, "09:01:55,011 INFO  [org.jboss.modules] JBoss Modules");
+
+        assertTrue(events.isEmpty());
+        assertNotNull(p.getCurrentEvent());
+        assertEquals("%d{HH:mm:ss,SSS} %-5p [%c] %m%n", p.getPatternLayout().getLiteral());
+    }
+
+    // filter ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void filter_EmptyFilterIsNotInstalled() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setFilter(new EventFilter());
+
+        assertNull(p.getFilter());
+    }
+
+    @Test
+    public void filter_Query_NonSelectedEventsAreDroppedWithTheirContinuationLines() throws Exception {
+
+        String[] content  = new String[] {
+
+                "20:00:00,000 INFO  [a.B] (thread-C) multi-line message follows:",
+                "\tcontinuation of the first INFO",
+                "21:11:11,111 ERROR [d.E] (thread-F) green",
+                "\tcontinuation of green",
+                "22:22:22,222 INFO  [a.B] (thread-I) blue",
+                "\tcontinuation of blue",
+        };
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        Query query = new FieldQuery("level", "ERROR");
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1L, content[0], query));
+
+        //
+        // pushed down: the INFO event is abandoned as soon as its first line is matched, it is never built
+        //
+
+        assertNull(p.getCurrentEvent());
+
+        events.addAll(p.parse(2L, content[1], query));
+
+        assertNull(p.getCurrentEvent());
+
+        for(int i = 2; i < content.length; i ++) {
+
+            events.addAll(p.parse(i + 1, content[i], query));
+        }
+
+        events.addAll(p.close());
+
+        assertEquals(2, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        assertEquals(3L, e.getLineNumber().longValue());
+        assertEquals("green\n\tcontinuation of green", e.getMessage());
+
+        assertTrue(events.get(1) instanceof EndOfStreamEvent);
+    }
+
+    @Test
+    public void filter_Query_ConfiguredFilterIsNotModified() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        EventFilter f = new EventFilter();
+        f.setLoggerPrefix("a.");
+
+        p.setFilter(f);
+
+        Query query = new FieldQuery("level", "ERROR");
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1L, "20:00:00,000 ERROR [a.B] (main) selected", query));
+        events.addAll(p.parse(2L, "20:00:00,001 ERROR [x.Y] (main) rejected by the configured filter", query));
+        events.addAll(p.parse(3L, "20:00:00,002 INFO  [a.B] (main) rejected by the query", query));
+        events.addAll(p.close());
+
+        assertEquals(2, events.size());
+        assertEquals("selected", ((Log4jEvent)events.get(0)).getMessage());
+
+        assertSame(f, p.getFilter());
+        assertEquals("logger starts with \"a.\"", f.toString());
+        assertNull(f.getQuery());
+        assertNull(f.getLevels());
+    }
+
+    @Test
+    public void filter_NullQueryDoesNotInstallAFilter() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        List<Event> events = p.parse("12:01:01,001 INFO  [a.b.C] (main) test", null);
+        assertTrue(events.isEmpty());
+
+        assertNull(p.getFilter());
+
+        events = p.close();
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    public void filter_PatternLayout() throws Exception {
+
+        String[] content  = new String[] {
+
+                "20:00:00,000 ERROR [a.B] (thread-C) multi-line message follows:",
+                "\tA",
+                "",
+                "21:11:11,111 INFO  [d.E] (thread-F) green",
+                "\tcontinuation of green",
+                "22:22:22,222 ERROR [a.B] (thread-I) blue",
+                "\tcontinuation of blue",
+                "23:33:33,333 ERROR [a.X] (thread-I) red",
+        };
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        EventFilter f = new EventFilter();
+        f.setLevels(Log4jLevel.ERROR);
+        f.setLoggerPrefix("a.B");
+
+        p.setFilter(f);
+
+        List<Event> events = new ArrayList<>();
+
+        for(int i = 0; i < content.length; i ++) {
+
+            events.addAll(p.parse(i + 1, content[i], null));
+        }
+
+        events.addAll(p.close());
+
+        assertEquals(3, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        assertEquals(1L, e.getLineNumber().longValue());
+        assertEquals("multi-line message follows:\n\tA\n", e.getMessage());
+
+        Log4jEvent e2 = (Log4jEvent)events.get(1);
+        assertEquals(6L, e2.getLineNumber().longValue());
+        assertEquals("blue\n\tcontinuation of blue", e2.getMessage());
+
+        assertTrue(events.get(2) instanceof EndOfStreamEvent);
+    }
+
+    @Test
+    public void filter_PatternLayout_RejectedFirstEvent() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        EventFilter f = new EventFilter();
+        f.setThreadName("thread-F");
+
+        p.setFilter(f);
+
+        assertTrue(p.parse(1, "20:00:00,000 ERROR [a.B] (thread-C) something", null).isEmpty());
+
+        //
+        // the continuation line of a rejected first event must not be reported as unparseable
+        //
+
+        assertTrue(p.parse(2, "\tcontinuation", null).isEmpty());
+        assertTrue(p.parse(3, "21:11:11,111 INFO  [d.E] (thread-F) green", null).isEmpty());
+
+        List<Event> events = p.close();
+
+        assertEquals(2, events.size());
+        assertEquals("thread-F", ((Log4jEvent)events.get(0)).getThreadName());
+    }
+
+    @Test
+    public void filter_PatternLayout_TimeRange() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss.server.log");
+
+        String layout = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+        List<Event> all = new ArrayList<>();
+
+        new Log4jParser(new Log4jPatternLayout(layout)).parse(file, all::addAll);
+
+        long from = ((TimedEvent)all.get(1)).getTime();
+        long to = ((TimedEvent)all.get(all.size() - 2)).getTime();
+
+        List<Event> expected = new ArrayList<>();
+
+        for(Event e: all) {
+
+            long t = ((TimedEvent)e).getTime();
+
+            if (t >= from && t < to) {
+
+                expected.add(e);
+            }
+        }
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout(layout));
+
+        EventFilter f = new EventFilter();
+        f.setTimeRange(from, to);
+        p.setFilter(f);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, actual::addAll);
+
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i ++) {
+
+            assertEquals(expected.get(i).getLineNumber(), actual.get(i).getLineNumber());
+            assertEquals(expected.get(i).getRawRepresentation(), actual.get(i).getRawRepresentation());
+        }
+    }
+
+    @Test
+    public void filter_Heuristics() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        EventFilter f = new EventFilter();
+        f.setLevels(Log4jLevel.INFO);
+
+        p.setFilter(f);
+
+        assertTrue(p.parse(1, "00:00:00,000 ERROR [io.novaordis] (Some Thread) test", null).isEmpty());
+        assertTrue(p.parse(2, "continuation", null).isEmpty());
+        assertNull(p.getCurrentEvent());
+        assertTrue(p.parse(3, "00:00:00,001 INFO [io.novaordis] (Some Thread) test", null).isEmpty());
+
+        List<Event> events = p.close();
+
+        assertEquals(2, events.size());
+        assertEquals(3L, events.get(0).getLineNumber().longValue());
+        assertEquals("00:00:00,001 INFO [io.novaordis] (Some Thread) test", events.get(0).getRawRepresentation());
+    }
+
     // production ------------------------------------------------------------------------------------------------------
 
     @Test
@@ -383,6 +959,499 @@ public class Log4jParserTest {
         p.parse(line, null);
     }
 
+    // continuation line cap -------------------------------------------------------------------------------------------
+
+    @Test
+    public void maxContinuationLines() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        assertEquals(Integer.MAX_VALUE, p.getMaxContinuationLines());
+        assertEquals(Integer.MAX_VALUE, p.getMaxContinuationCharacters());
+
+        try {
+
+            p.setMaxContinuationLines(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid maximum continuation line count 0"));
+        }
+
+        try {
+
+            p.setMaxContinuationCharacters(-1);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid maximum continuation character count -1"));
+        }
+    }
+
+    @Test
+    public void continuationLines_Capped() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        p.setMaxContinuationLines(3);
+
+        p.parse(1, "20:00:00,000 ERROR [a.B] (main) failure: java.lang.Exception: SYNTHETIC", null);
+
+        for(int i = 0; i < 10; i ++) {
+
+            p.parse(2 + i, "\tat a.b.C.m" + i + "(C.java:10)", null);
+        }
+
+        List<Event> events =
+                p.parse(12, "20:00:00,001 ERROR [a.B] (main) failure: java.lang.Exception: SYNTHETIC", null);
+
+        assertEquals(1, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+
+        String expected = ": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m0(C.java:10)\n\tat a.b.C.m1(C.java:10)\n" +
+                "\tat a.b.C.m2(C.java:10)\n... 7 more line(s) truncated";
+
+        assertEquals(expected, e.getExceptionRendering());
+        assertTrue(e.getRawRepresentation().endsWith(expected.substring(expected.indexOf('\n'))));
+
+        //
+        // the cap applies to each event separately
+        //
+
+        p.parse(13, "\tat a.b.C.m(C.java:10)", null);
+        p.parse(14, "\tat a.b.C.m(C.java:11)", null);
+
+        events = p.close();
+
+        assertEquals(2, events.size());
+
+        e = (Log4jEvent)events.get(0);
+
+        assertEquals(": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)\n\tat a.b.C.m(C.java:11)",
+                e.getExceptionRendering());
+    }
+
+    @Test
+    public void continuationCharacters_Capped() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+
+        p.setMaxContinuationCharacters(10);
+
+        p.parse(1, "20:00:00,000 INFO  [a.B] (main) line 1", null);
+        p.parse(2, "line 2", null);
+        p.parse(3, "line 3", null);
+        p.parse(4, "4", null);
+
+        List<Event> events = p.close();
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+
+        //
+        // once the cap is reached, all subsequent lines are dropped, even if they would fit
+        //
+
+        assertEquals("line 1\nline 2\n... 2 more line(s) truncated", e.getMessage());
+    }
+
+    @Test
+    public void continuationLines_Capped_Heuristics() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        p.setMaxContinuationLines(1);
+
+        p.parse(1, "2017-11-23 20:00:00,000 INFO  [a.B] (main) line 1", null);
+        p.parse(2, "line 2", null);
+        p.parse(3, "line 3", null);
+        p.parse(4, "line 4", null);
+
+        List<Event> events = p.close();
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+
+        assertEquals("2017-11-23 20:00:00,000 INFO  [a.B] (main) line 1\nline 2\n... 2 more line(s) truncated",
+                e.getRawRepresentation());
+    }
+
+    // exception fingerprinting ----------------------------------------------------------------------------------------
+
+    @Test
+    public void identicalExceptionRenderings_ShareOneInstance() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        assertNotNull(p.getExceptionDictionary());
+
+        List<Event> events = new ArrayList<>();
+
+        for(int i = 0; i < 3; i ++) {
+
+            String line = "20:00:0" + i + ",000 ERROR [a.B] (main) failure: java.lang.Exception: SYNTHETIC";
+
+            events.addAll(p.parse(3 * i + 1, line, null));
+            p.parse(3 * i + 2, "\tat a.b.C.m(C.java:10)", null);
+            p.parse(3 * i + 3, "\tat a.b.C.n(C.java:" + (i == 2 ? 12 : 11) + ")", null);
+        }
+
+        events.addAll(p.close());
+
+        assertEquals(4, events.size());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        Log4jEvent e2 = (Log4jEvent)events.get(1);
+        Log4jEvent e3 = (Log4jEvent)events.get(2);
+
+        assertSame(e.getExceptionRendering(), e2.getExceptionRendering());
+
+        //
+        // same fingerprint, but a different rendering
+        //
+
+        assertNotSame(e.getExceptionRendering(), e3.getExceptionRendering());
+        assertEquals(": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)\n\tat a.b.C.n(C.java:12)",
+                e3.getExceptionRendering());
+
+        assertNotNull(e.getExceptionFingerprint());
+        assertEquals(e.getExceptionFingerprint(), e2.getExceptionFingerprint());
+        assertEquals(e.getExceptionFingerprint(), e3.getExceptionFingerprint());
+
+        assertEquals(1, p.getExceptionDictionary().size());
+        assertEquals(1L, p.getExceptionDictionary().getHits());
+    }
+
+    @Test
+    public void exceptionDictionaryDisabled() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        p.setExceptionDictionary(null);
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1, "20:00:00,000 ERROR [a.B] (main) failure: java.lang.Exception: SYNTHETIC", null));
+        events.addAll(p.parse(2, "\tat a.b.C.m(C.java:10)", null));
+        events.addAll(p.parse(3, "20:00:01,000 ERROR [a.B] (main) failure: java.lang.Exception: SYNTHETIC", null));
+        events.addAll(p.parse(4, "\tat a.b.C.m(C.java:10)", null));
+        events.addAll(p.parse(5, "20:00:02,000 INFO  [a.B] (main) no failure", null));
+        events.addAll(p.close());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        Log4jEvent e2 = (Log4jEvent)events.get(1);
+        Log4jEvent e3 = (Log4jEvent)events.get(2);
+
+        assertNotSame(e.getExceptionRendering(), e2.getExceptionRendering());
+        assertEquals(e.getExceptionRendering(), e2.getExceptionRendering());
+        assertEquals(e.getExceptionFingerprint(), e2.getExceptionFingerprint());
+        assertNull(e3.getExceptionFingerprint());
+    }
+
+    @Test
+    public void loggerAndThreadNamesAreInterned() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+
+        assertNotNull(p.getDictionary());
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1, "20:00:00,000 INFO  [a.B] (main) one", null));
+        events.addAll(p.parse(2, "20:00:01,000 INFO  [a.B] (main) two", null));
+        events.addAll(p.close());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        Log4jEvent e2 = (Log4jEvent)events.get(1);
+
+        assertSame(e.getLogger(), e2.getLogger());
+        assertSame(e.getThreadName(), e2.getThreadName());
+
+        assertEquals(2, p.getDictionary().size());
+        assertEquals(2L, p.getDictionary().getHits());
+    }
+
+    @Test
+    public void dictionaryIsNotSharedBetweenParsers() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        Log4jParser p = new Log4jParser(layout);
+        Log4jParser p2 = new Log4jParser(layout);
+
+        assertNotSame(p.getDictionary(), p2.getDictionary());
+
+        p.parse(1, "20:00:00,000 INFO  [a.B] (main) one", null);
+
+        assertEquals(2, p.getDictionary().size());
+        assertEquals(0, p2.getDictionary().size());
+    }
+
+    @Test
+    public void dictionaryDisabled() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+
+        p.setDictionary(null);
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1, "20:00:00,000 INFO  [a.B] (main) one", null));
+        events.addAll(p.parse(2, "20:00:01,000 INFO  [a.B] (main) two", null));
+        events.addAll(p.close());
+
+        Log4jEvent e = (Log4jEvent)events.get(0);
+        Log4jEvent e2 = (Log4jEvent)events.get(1);
+
+        assertEquals(e.getLogger(), e2.getLogger());
+        assertNotSame(e.getLogger(), e2.getLogger());
+    }
+
+    // idle timeout ----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void setIdleTimeout_Invalid() throws Exception {
+
+        Log4jParser p = new Log4jParser();
+
+        assertEquals(0L, p.getIdleTimeout());
+        assertEquals(LateLinePolicy.FOLLOW_UP, p.getLateLinePolicy());
+
+        try {
+
+            p.setIdleTimeout(-1L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid idle timeout -1"));
+        }
+
+        try {
+
+            p.setLateLinePolicy(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null late line policy"));
+        }
+    }
+
+    @Test
+    public void flushIfIdle_NoIdleTimeout() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+
+        p.parse(1, "20:00:00,000 ERROR [a.B] (main) something", null);
+
+        assertTrue(p.flushIfIdle().isEmpty());
+        assertNotNull(p.getCurrentEvent());
+    }
+
+    @Test
+    public void flushIfIdle() throws Exception {
+
+        long[] now = new long[] { 1000L };
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+        p.setClock(() -> now[0]);
+        p.setIdleTimeout(500L);
+
+        p.parse(1, "20:00:00,000 ERROR [a.B] (main) something", null);
+
+        now[0] = 1200L;
+
+        p.parse(2, "line 2", null);
+
+        now[0] = 1600L;
+
+        assertTrue(p.flushIfIdle().isEmpty());
+
+        now[0] = 1700L;
+
+        List<Event> events = p.flushIfIdle();
+
+        assertEquals(1, events.size());
+
+        Log4jEventImpl e = (Log4jEventImpl)events.get(0);
+
+        assertEquals("something\nline 2", e.getMessage());
+        assertFalse(e.isFollowUp());
+        assertNull(p.getCurrentEvent());
+
+        //
+        // nothing left to flush
+        //
+
+        assertTrue(p.flushIfIdle().isEmpty());
+
+        Log4jParserMetrics m = p.getMetrics();
+
+        assertEquals(1L, m.getEmittedEventCount());
+        assertEquals(1L, m.getIdleFlushCount());
+        assertEquals(1L, m.getLatencyCount());
+        assertEquals(700L, m.getMaxLatency());
+        assertEquals(700d, m.getAverageLatency(), 0.001d);
+
+        //
+        // an event that starts after the flush is handled as usual
+        //
+
+        now[0] = 2000L;
+
+        p.parse(3, "20:00:01,000 INFO  [a.B] (main) next", null);
+
+        now[0] = 2100L;
+
+        events = p.parse(4, "20:00:02,000 INFO  [a.B] (main) after next", null);
+
+        assertEquals(1, events.size());
+        assertEquals("next", ((Log4jEvent)events.get(0)).getMessage());
+
+        assertEquals(2L, m.getEmittedEventCount());
+        assertEquals(1L, m.getIdleFlushCount());
+        assertEquals(0L, m.getLateLineCount());
+        assertEquals(700L, m.getMaxLatency());
+        assertEquals(400d, m.getAverageLatency(), 0.001d);
+    }
+
+    @Test
+    public void lateLines_FollowUp() throws Exception {
+
+        long[] now = new long[] { 1000L };
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+        p.setClock(() -> now[0]);
+        p.setIdleTimeout(100L);
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse(1, "20:00:00,000 ERROR [a.B] (worker) failure: java.lang.Exception: SYNTHETIC", null));
+        events.addAll(p.parse(2, "\tat a.b.C.m(C.java:10)", null));
+
+        now[0] = 1100L;
+
+        events.addAll(p.flushIfIdle());
+
+        assertEquals(1, events.size());
+
+        events.addAll(p.parse(3, "\tat a.b.C.n(C.java:11)", null));
+        events.addAll(p.parse(4, "\tat a.b.C.o(C.java:12)", null));
+        events.addAll(p.parse(5, "20:00:01,000 INFO  [a.B] (main) next: ", null));
+        events.addAll(p.close());
+
+        assertEquals(4, events.size());
+
+        Log4jEventImpl e = (Log4jEventImpl)events.get(0);
+        Log4jEventImpl followUp = (Log4jEventImpl)events.get(1);
+
+        assertEquals(": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)", e.getExceptionRendering());
+
+        assertTrue(followUp.isFollowUp());
+        assertEquals(3L, followUp.getLineNumber().longValue());
+        assertEquals(e.getTime(), followUp.getTime());
+        assertEquals(e.getLevel(), followUp.getLevel());
+        assertEquals("a.B", followUp.getLogger());
+        assertEquals("worker", followUp.getThreadName());
+        assertEquals("\tat a.b.C.n(C.java:11)\n\tat a.b.C.o(C.java:12)", followUp.getExceptionRendering());
+        assertEquals("\tat a.b.C.n(C.java:11)\n\tat a.b.C.o(C.java:12)", followUp.getRawRepresentation());
+
+        assertFalse(((Log4jEventImpl)events.get(2)).isFollowUp());
+
+        Log4jParserMetrics m = p.getMetrics();
+
+        assertEquals(2L, m.getLateLineCount());
+        assertEquals(1L, m.getFollowUpEventCount());
+        assertEquals(3L, m.getEmittedEventCount());
+    }
+
+    @Test
+    public void lateLines_Report() throws Exception {
+
+        long[] now = new long[] { 1000L };
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n"));
+        p.setClock(() -> now[0]);
+        p.setIdleTimeout(100L);
+        p.setLateLinePolicy(LateLinePolicy.REPORT);
+
+        p.parse(1, "20:00:00,000 INFO  [a.B] (main) one", null);
+
+        now[0] = 1100L;
+
+        List<Event> events = new ArrayList<>(p.flushIfIdle());
+
+        events.addAll(p.parse(2, "late line", null));
+        events.addAll(p.parse(3, "20:00:01,000 INFO  [a.B] (main) two", null));
+        events.addAll(p.close());
+
+        assertEquals(3, events.size());
+        assertEquals("one", ((Log4jEvent)events.get(0)).getMessage());
+        assertEquals("two", ((Log4jEvent)events.get(1)).getMessage());
+        assertTrue(events.get(2) instanceof EndOfStreamEvent);
+
+        assertEquals(1L, p.getMetrics().getLateLineCount());
+        assertEquals(0L, p.getMetrics().getFollowUpEventCount());
+    }
+
+    @Test
+    public void lateLines_FollowUp_Heuristics() throws Exception {
+
+        long[] now = new long[] { 1000L };
+
+        Log4jParser p = new Log4jParser();
+        p.setClock(() -> now[0]);
+        p.setIdleTimeout(100L);
+
+        p.parse(1, "2017-11-23 20:00:00,000 WARN  [a.B] (main) one", null);
+
+        now[0] = 1100L;
+
+        List<Event> events = new ArrayList<>(p.flushIfIdle());
+
+        events.addAll(p.parse(2, "late line", null));
+        events.addAll(p.close());
+
+        assertEquals(3, events.size());
+
+        Log4jEventImpl followUp = (Log4jEventImpl)events.get(1);
+
+        assertTrue(followUp.isFollowUp());
+        assertEquals("late line", followUp.getRawRepresentation());
+        assertEquals(((Log4jEvent)events.get(0)).getTime(), followUp.getTime());
+    }
+
+    @Test
+    public void flushIfIdle_WhileSampling() throws Exception {
+
+        long[] now = new long[] { 1000L };
+
+        Log4jParser p = new Log4jParser();
+        p.setLayoutInferenceSampleSize(100);
+        p.setClock(() -> now[0]);
+        p.setIdleTimeout(100L);
+
+        now[0] = 1100L;
+
+        assertTrue(p.flushIfIdle().isEmpty());
+
+        p.parse(1, "20:00:00,000 INFO  [a.B] (main) one", null);
+        p.parse(2, "20:00:01,000 INFO  [a.B] (main) two", null);
+
+        now[0] = 1200L;
+
+        List<Event> events = p.flushIfIdle();
+
+        assertEquals(2, events.size());
+        assertNotNull(p.getPatternLayout());
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
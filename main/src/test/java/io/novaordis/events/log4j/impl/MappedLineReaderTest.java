@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+public class MappedLineReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("mapped-line-reader-test.log");
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidWindowSize() throws Exception {
+
+        try {
+
+            new MappedLineReader(file, 0L, Long.MAX_VALUE, 0, StandardCharsets.UTF_8);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid window size"));
+        }
+    }
+
+    @Test
+    public void readLine_EmptyFile() throws Exception {
+
+        try(MappedLineReader r = new MappedLineReader(file)) {
+
+            assertNull(r.readLine());
+            assertEquals(0L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine() throws Exception {
+
+        TestFiles.write(file, "a\nbb\r\n\nccc");
+
+        try(MappedLineReader r = new MappedLineReader(file)) {
+
+            assertEquals("a", r.readLine().toString());
+            assertEquals(0L, r.getLineOffset());
+            assertEquals("bb", r.readLine().toString());
+            assertEquals(2L, r.getLineOffset());
+            assertEquals("", r.readLine().toString());
+            assertEquals(6L, r.getLineOffset());
+            assertEquals("ccc", r.readLine().toString());
+            assertEquals(7L, r.getLineOffset());
+            assertNull(r.readLine());
+            assertEquals(4L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine_TerminatedLastLine() throws Exception {
+
+        TestFiles.write(file, "a\nb\n");
+
+        assertEquals(lines("a", "b"), readAll(1024));
+    }
+
+    @Test
+    public void readLine_RollingWindows() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+
+        for(int i = 0; i < 1000; i ++) {
+
+            String line = "line " + i + " " + (i % 7 == 0 ? "some longer content" : "x");
+            expected.add(line);
+            sb.append(line).append('\n');
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        //
+        // a window smaller than most lines forces both rolling and growing
+        //
+
+        for(int windowSize: new int[] { 1, 5, 16, 100, 4096 }) {
+
+            assertEquals(expected, readAll(windowSize));
+        }
+    }
+
+    @Test
+    public void readLine_NonAsciiContent() throws Exception {
+
+        TestFiles.write(file, "ascii\nnon-ascii é中\nascii again");
+
+        assertEquals(lines("ascii", "non-ascii é中", "ascii again"), readAll(7));
+    }
+
+    @Test
+    public void readLine_Range() throws Exception {
+
+        TestFiles.write(file, "aaa\nbbb\nccc\nddd\n");
+
+        //
+        // the range starts with "bbb" and ends in the middle of "ccc", which is included
+        //
+
+        try(MappedLineReader r = new MappedLineReader(file, 4L, 9L, 3, StandardCharsets.UTF_8)) {
+
+            assertEquals("bbb", r.readLine().toString());
+            assertEquals("ccc", r.readLine().toString());
+            assertNull(r.readLine());
+            assertEquals(12L, r.getOffset());
+        }
+    }
+
+    @Test
+    public void lineSlice_CharSequence() throws Exception {
+
+        TestFiles.write(file, "0123456789\n");
+
+        try(MappedLineReader r = new MappedLineReader(file)) {
+
+            CharSequence s = r.readLine();
+
+            assertEquals(10, s.length());
+            assertEquals('5', s.charAt(5));
+            assertEquals("345", s.subSequence(3, 6).toString());
+
+            try {
+
+                s.charAt(10);
+
+                fail("should have thrown exception");
+            }
+            catch(IndexOutOfBoundsException e) {
+
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void isMappedToEnd_FileSmallerThanTheWindow() throws Exception {
+
+        TestFiles.write(file, "a\nb\n");
+
+        try(MappedLineReader r = new MappedLineReader(file)) {
+
+            assertTrue(r.isMappedToEnd());
+
+            //
+            // the file was closed, the content is read from the mapping
+            //
+
+            assertEquals("a", r.readLine().toString());
+            assertEquals("b", r.readLine().toString());
+            assertNull(r.readLine());
+        }
+    }
+
+    @Test
+    public void isMappedToEnd_RollingWindows() throws Exception {
+
+        TestFiles.write(file, "aaa\nbbb\nccc\n");
+
+        try(MappedLineReader r = new MappedLineReader(file, 0L, Long.MAX_VALUE, 4, StandardCharsets.UTF_8)) {
+
+            assertFalse(r.isMappedToEnd());
+            assertEquals("aaa", r.readLine().toString());
+            assertEquals("bbb", r.readLine().toString());
+            assertFalse(r.isMappedToEnd());
+            assertEquals("ccc", r.readLine().toString());
+            assertTrue(r.isMappedToEnd());
+            assertNull(r.readLine());
+        }
+    }
+
+    @Test
+    public void peek() throws Exception {
+
+        TestFiles.write(file, "abc\nd\n");
+
+        try(MappedLineReader r = new MappedLineReader(file)) {
+
+            byte[] b = new byte[4];
+
+            assertEquals(4, r.peek(b));
+            assertEquals("abc\n", new String(b, StandardCharsets.UTF_8));
+
+            byte[] b2 = new byte[10];
+
+            assertEquals(6, r.peek(b2));
+
+            //
+            // the read position does not move
+            //
+
+            assertEquals("abc", r.readLine().toString());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private List<String> readAll(int windowSize) throws Exception {
+
+        List<String> result = new ArrayList<>();
+
+        try(MappedLineReader r = new MappedLineReader(file, 0L, Long.MAX_VALUE, windowSize, StandardCharsets.UTF_8)) {
+
+            CharSequence line;
+
+            while((line = r.readLine()) != null) {
+
+                result.add(line.toString());
+            }
+        }
+
+        return result;
+    }
+
+    private static List<String> lines(String... lines) {
+
+        List<String> result = new ArrayList<>();
+
+        for(String s: lines) {
+
+            result.add(s);
+        }
+
+        return result;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.parsing.ParsingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class MultiFileParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void after() throws Exception {
+
+        executor.shutdownNow();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidReadAhead() throws Exception {
+
+        try {
+
+            new MultiFileParser(null, executor, 0);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid read-ahead"));
+        }
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_NoFiles() throws Exception {
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 10);
+
+        List<Event> events = new ArrayList<>();
+
+        assertEquals(0L, p.parse(Collections.emptyList(), events::addAll));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void parse_EventsAreMergedByTime() throws Exception {
+
+        File f1 = TestFiles.newFile(folder, 
+                "10:00:00,001 INFO  [a] (t) f1-1\n" +
+                        "10:00:00,004 INFO  [a] (t) f1-2\n" +
+                        "java.lang.RuntimeException: f1-2\n" +
+                        "\tat a.b.C.m(C.java:10)\n" +
+                        "10:00:00,005 INFO  [a] (t) f1-3\n");
+
+        File f2 = TestFiles.newFile(folder, 
+                "10:00:00,002 INFO  [a] (t) f2-1\n" +
+                        "10:00:00,003 INFO  [a] (t) f2-2\n" +
+                        "10:00:00,006 INFO  [a] (t) f2-3\n");
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 1);
+
+        List<Event> events = new ArrayList<>();
+
+        long lineCount = p.parse(Arrays.asList(f1, f2), events::addAll);
+
+        assertEquals(8L, lineCount);
+
+        TestFiles.assertMessages(events, "f1-1", "f2-1", "f2-2", "f1-2", "f1-3", "f2-3");
+
+        Log4jEvent e = (Log4jEvent)events.get(3);
+        assertEquals(2L, e.getLineNumber().longValue());
+        assertTrue(e.getRawRepresentation().contains("at a.b.C.m(C.java:10)"));
+    }
+
+    @Test
+    public void parse_TiesAreBrokenByFileThenLineNumber() throws Exception {
+
+        File f1 = TestFiles.newFile(folder, 
+                "10:00:00,001 INFO  [a] (t) f1-1\n" +
+                        "10:00:00,001 INFO  [a] (t) f1-2\n");
+
+        File f2 = TestFiles.newFile(folder, 
+                "10:00:00,001 INFO  [a] (t) f2-1\n" +
+                        "10:00:00,001 INFO  [a] (t) f2-2\n");
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 1);
+
+        List<Event> events = new ArrayList<>();
+
+        p.parse(Arrays.asList(f2, f1), events::addAll);
+
+        TestFiles.assertMessages(events, "f2-1", "f2-2", "f1-1", "f1-2");
+    }
+
+    @Test
+    public void parse_LargeFiles_BoundedReadAhead() throws Exception {
+
+        int fileCount = 4;
+        int eventsPerFile = 2000;
+
+        for(int f = 0; f < fileCount; f ++) {
+
+            StringBuilder sb = new StringBuilder();
+
+            for(int i = 0; i < eventsPerFile; i ++) {
+
+                int millis = i * fileCount + f;
+
+                sb.append(String.format("10:%02d:%02d,%03d INFO  [a] (t) %d\n",
+                        millis / 60000, millis / 1000 % 60, millis % 1000, millis));
+            }
+
+            TestFiles.newFile(folder, sb.toString());
+        }
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 8);
+
+        List<Event> events = new ArrayList<>();
+
+        long lineCount = p.parse(TestFiles.listFiles(folder), events::addAll);
+
+        assertEquals(fileCount * eventsPerFile, lineCount);
+        assertEquals(fileCount * eventsPerFile, events.size());
+
+        for(int i = 0; i < events.size(); i ++) {
+
+            assertEquals(Integer.toString(i), ((Log4jEvent)events.get(i)).getMessage());
+        }
+    }
+
+    @Test
+    public void parse_ParsingFailureIsPropagated() throws Exception {
+
+        File f1 = TestFiles.newFile(folder, "10:00:00,001 INFO  [a] (t) f1-1\n");
+        File f2 = TestFiles.newFile(folder, "this is not a log4j line\n");
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 1);
+
+        try {
+
+            p.parse(Arrays.asList(f1, f2), events -> {});
+
+            fail("should have thrown exception");
+        }
+        catch(ParsingException e) {
+
+            assertEquals(1L, e.getLineNumber().longValue());
+        }
+    }
+
+    @Test
+    public void parse_ErrorIsPropagated() throws Exception {
+
+        File f1 = TestFiles.newFile(folder, "10:00:00,001 INFO  [a] (t) f1-1\n");
+
+        File f2 = new File(f1.getPath()) {
+
+            @Override
+            public String getPath() {
+
+                throw new StackOverflowError("SYNTHETIC");
+            }
+        };
+
+        MultiFileParser p = new MultiFileParser(new Log4jPatternLayout(LAYOUT), executor, 1);
+
+        try {
+
+            p.parse(Arrays.asList(f1, f2), events -> {});
+
+            fail("should have thrown exception");
+        }
+        catch(StackOverflowError e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("SYNTHETIC"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+import io.novaordis.utilities.parsing.ParsingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/22/17
+ */
+public class ParallelFileParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private ForkJoinPool pool;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("parallel-file-parser-test.log");
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        pool.shutdownNow();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidChunkSize() throws Exception {
+
+        try {
+
+            new ParallelFileParser((Log4jPatternLayout)null, pool, 0L);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid chunk size"));
+        }
+    }
+
+    @Test
+    public void constructor_NullParser() throws Exception {
+
+        try {
+
+            new ParallelFileParser((Log4jParser)null, pool, 10L);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null parser"));
+        }
+    }
+
+    @Test
+    public void setMaxChunksInFlight() throws Exception {
+
+        ParallelFileParser p = new ParallelFileParser(new Log4jPatternLayout(LAYOUT), pool, 10L);
+
+        assertEquals(8, p.getMaxChunksInFlight());
+
+        p.setMaxChunksInFlight(1);
+
+        assertEquals(1, p.getMaxChunksInFlight());
+
+        try {
+
+            p.setMaxChunksInFlight(0);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid maximum number of chunks in flight"));
+        }
+    }
+
+    // isEventStart() --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void isEventStart_LevelShorterThanThePadding() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] %m%n");
+
+        assertTrue(ParallelFileParser.isEventStart(layout, "10:00:00,000 INFO  [a.b.C] padded"));
+        assertFalse(ParallelFileParser.isEventStart(layout, "10:00:00,000 INFO [a.b.C] not padded"));
+    }
+
+    // split() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void split_EmptyFile() throws Exception {
+
+        ParallelFileParser p = new ParallelFileParser(new Log4jPatternLayout(LAYOUT), pool, 10L);
+
+        long[] boundaries = p.split(file);
+
+        assertEquals(2, boundaries.length);
+        assertEquals(0L, boundaries[0]);
+        assertEquals(0L, boundaries[1]);
+    }
+
+    @Test
+    public void split_BoundariesAreSnappedToEventStarts() throws Exception {
+
+        String content =
+                "10:00:00,001 INFO  [a] (t) one\n" +
+                        "continuation 1\n" +
+                        "continuation 2\n" +
+                        "10:00:00,002 INFO  [a] (t) two\n";
+
+        TestFiles.write(file, content);
+
+        //
+        // the first boundary falls in the first line, the next event start is the fourth line
+        //
+
+        ParallelFileParser p = new ParallelFileParser(new Log4jPatternLayout(LAYOUT), pool, 5L);
+
+        long[] boundaries = p.split(file);
+
+        assertEquals(3, boundaries.length);
+        assertEquals(0L, boundaries[0]);
+        assertEquals(content.indexOf("10:00:00,002"), boundaries[1]);
+        assertEquals(content.length(), boundaries[2]);
+    }
+
+    @Test
+    public void split_NoEventStartAfterTheFirstLine() throws Exception {
+
+        String content =
+                "10:00:00,001 INFO  [a] (t) one\n" +
+                        "continuation 1\n" +
+                        "continuation 2\n";
+
+        TestFiles.write(file, content);
+
+        ParallelFileParser p = new ParallelFileParser(new Log4jPatternLayout(LAYOUT), pool, 5L);
+
+        long[] boundaries = p.split(file);
+
+        assertEquals(2, boundaries.length);
+        assertEquals(0L, boundaries[0]);
+        assertEquals(content.length(), boundaries[1]);
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_SameEventsAsSequentialParsing() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 500; i ++) {
+
+            sb.append(String.format("10:%02d:%02d,%03d INFO  [a.b.C] (thread-%d) message %d\n",
+                    i / 60 % 60, i % 60, i % 1000, i % 7, i));
+
+            if (i % 11 == 0) {
+
+                //
+                // multi-line events, some of them will straddle the raw chunk boundaries
+                //
+
+                sb.append("java.lang.RuntimeException: failure ").append(i).append("\n");
+                sb.append("\tat a.b.C.m(C.java:10)\n");
+                sb.append("\tat a.b.C.n(C.java:20)\n");
+            }
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = new Log4jParser(new Log4jPatternLayout(LAYOUT)).parse(file, expected::addAll);
+
+        for(long chunkSize: new long[] { 1L, 17L, 100L, 1024L, 1024L * 1024 }) {
+
+            ParallelFileParser p = new ParallelFileParser(new Log4jPatternLayout(LAYOUT), pool, chunkSize);
+
+            List<Event> actual = new ArrayList<>();
+
+            long lineCount = p.parse(file, actual::addAll);
+
+            assertEquals(expectedLineCount, lineCount);
+            TestFiles.assertEvents(expected, actual);
+        }
+    }
+
+    @Test
+    public void parse_Heuristics() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 100; i ++) {
+
+            sb.append(String.format("2017-11-22 10:00:%02d,%03d INFO  [a.b.C] (thread-1) message %d\n", i % 60, i, i));
+
+            if (i % 3 == 0) {
+
+                sb.append("\tat a.b.C.m(C.java:10)\n");
+            }
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = new Log4jParser().parse(file, expected::addAll);
+
+        ParallelFileParser p = new ParallelFileParser((Log4jPatternLayout)null, pool, 64L);
+
+        List<Event> actual = new ArrayList<>();
+
+        long lineCount = p.parse(file, actual::addAll);
+
+        assertEquals(expectedLineCount, lineCount);
+        TestFiles.assertEvents(expected, actual);
+    }
+
+    @Test
+    public void parse_ParserConfigurationIsCopied() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 200; i ++) {
+
+            sb.append(String.format("10:00:%02d,%03d %-5s [a.b.C] (main) message %d\n",
+                    i % 60, i, i % 2 == 0 ? "INFO" : "ERROR", i));
+
+            for(int j = 0; j < i % 5; j ++) {
+
+                sb.append("\tat a.b.C.m(C.java:").append(j).append(")\n");
+            }
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        EventFilter filter = new EventFilter();
+        filter.setLevels(Log4jLevel.ERROR);
+
+        Log4jParser sequential = new Log4jParser(new Log4jPatternLayout(LAYOUT));
+        sequential.setFilter(filter);
+        sequential.setMaxContinuationLines(2);
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = sequential.parse(file, expected::addAll);
+
+        assertEquals(100, expected.size());
+
+        Log4jParser configuration = new Log4jParser(new Log4jPatternLayout(LAYOUT));
+        configuration.setFilter(filter);
+        configuration.setMaxContinuationLines(2);
+
+        ParallelFileParser p = new ParallelFileParser(configuration, pool, 256L);
+
+        p.setMaxChunksInFlight(2);
+
+        List<Event> actual = new ArrayList<>();
+
+        long lineCount = p.parse(file, actual::addAll);
+
+        assertEquals(expectedLineCount, lineCount);
+        TestFiles.assertEvents(expected, actual);
+
+        //
+        // the configuration parser was not used to parse anything
+        //
+
+        assertNull(configuration.getCurrentEvent());
+        assertEquals(0L, configuration.getMetrics().getEmittedEventCount());
+    }
+
+    @Test
+    public void parse_ParsingExceptionReportsTheFileLineNumber() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 100; i ++) {
+
+            sb.append(String.format("2017-11-22 10:00:%02d,%03d INFO  [a.b.C] (thread-1) message %d\n", i % 60, i, i));
+        }
+
+        //
+        // line 101 starts with a timestamp, but it is not followed by a log level
+        //
+
+        sb.append("2017-11-22 10:01:40,000 something else\n");
+
+        TestFiles.write(file, sb.toString());
+
+        ParallelFileParser p = new ParallelFileParser((Log4jPatternLayout)null, pool, 64L);
+
+        try {
+
+            p.parse(file, events -> {});
+
+            fail("should have thrown exception");
+        }
+        catch(ParsingException e) {
+
+            assertEquals(101L, e.getLineNumber().longValue());
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
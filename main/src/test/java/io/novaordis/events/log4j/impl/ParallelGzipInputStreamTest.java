@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ParallelGzipInputStreamTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private ExecutorService executor;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("parallel-gzip-input-stream-test.log.gz");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void after() throws Exception {
+
+        executor.shutdownNow();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidChunkSize() throws Exception {
+
+        try {
+
+            new ParallelGzipInputStream(file, executor, 0, 1);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid chunk size"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidReadAhead() throws Exception {
+
+        try {
+
+            new ParallelGzipInputStream(file, executor, 1024, 0);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid read-ahead"));
+        }
+    }
+
+    @Test
+    public void read_MultiMember() throws Exception {
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        try(OutputStream os = new FileOutputStream(file)) {
+
+            for(int i = 0; i < 200; i ++) {
+
+                byte[] member = lines(i * 10, 10);
+
+                expected.write(member);
+
+                os.write(TestFiles.gzip(member));
+            }
+        }
+
+        try(ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 256, 3)) {
+
+            assertArrayEquals(expected.toByteArray(), read(is));
+
+            assertFalse(is.isSequential());
+            assertTrue(is.getParallelChunkCount() > 1);
+        }
+    }
+
+    @Test
+    public void read_SingleMember() throws Exception {
+
+        byte[] content = lines(0, 2000);
+
+        TestFiles.write(file, TestFiles.gzip(content));
+
+        try(ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 256, 3)) {
+
+            assertArrayEquals(content, read(is));
+
+            assertTrue(is.isSequential());
+        }
+    }
+
+    @Test
+    public void read_SmallSingleMember() throws Exception {
+
+        byte[] content = lines(0, 3);
+
+        TestFiles.write(file, TestFiles.gzip(content));
+
+        try(ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 64 * 1024, 3)) {
+
+            assertArrayEquals(content, read(is));
+
+            assertFalse(is.isSequential());
+            assertEquals(1L, is.getParallelChunkCount());
+        }
+    }
+
+    @Test
+    public void read_FalseMemberBoundary() throws Exception {
+
+        //
+        // stored (not compressed) content that contains a gzip member header, which will be mistaken for a member
+        // boundary
+        //
+
+        byte[] content = new byte[2048];
+        new Random(7).nextBytes(content);
+
+        byte[] header = new byte[] { 0x1f, (byte)0x8b, 8, 0 };
+
+        for(int i = 0; i < content.length; i += 200) {
+
+            System.arraycopy(header, 0, content, i, header.length);
+        }
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(content);
+        expected.write(lines(0, 10));
+
+        try(OutputStream os = new FileOutputStream(file)) {
+
+            os.write(TestFiles.gzip(content, Deflater.NO_COMPRESSION));
+            os.write(TestFiles.gzip(lines(0, 10)));
+        }
+
+        try(ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 256, 3)) {
+
+            assertArrayEquals(expected.toByteArray(), read(is));
+
+            assertTrue(is.isSequential());
+        }
+    }
+
+    @Test
+    public void read_NotGzip() throws Exception {
+
+        TestFiles.write(file, lines(0, 10));
+
+        try(ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 256, 3)) {
+
+            read(is);
+
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            // the sequential GZIPInputStream complains
+        }
+    }
+
+    @Test
+    public void read_Closed() throws Exception {
+
+        TestFiles.write(file, TestFiles.gzip(lines(0, 10)));
+
+        ParallelGzipInputStream is = new ParallelGzipInputStream(file, executor, 256, 3);
+
+        is.close();
+
+        try {
+
+            is.read();
+
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("stream closed"));
+        }
+    }
+
+    @Test
+    public void decompress_TruncatedMember() throws Exception {
+
+        byte[] member = TestFiles.gzip(lines(0, 10));
+
+        assertNull(ParallelGzipInputStream.decompress(member, member.length - 4));
+    }
+
+    @Test
+    public void decompress_CorruptedTrailer() throws Exception {
+
+        byte[] member = TestFiles.gzip(lines(0, 10));
+
+        member[member.length - 5] ^= 0x01;
+
+        assertNull(ParallelGzipInputStream.decompress(member, member.length));
+    }
+
+    @Test
+    public void headerLength() throws Exception {
+
+        //
+        // FNAME and FCOMMENT
+        //
+
+        byte[] header = new byte[] { 0x1f, (byte)0x8b, 8, 0x18, 0, 0, 0, 0, 0, 3, 'a', 'b', 0, 'c', 0 };
+
+        assertEquals(15, ParallelGzipInputStream.headerLength(header, 0, header.length));
+        assertEquals(-1, ParallelGzipInputStream.headerLength(header, 0, 12));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static byte[] lines(int first, int count) {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = first; i < first + count; i ++) {
+
+            sb.append("12:00:00,000 INFO  [io.novaordis.Test] (main) line ").append(i).append('\n');
+        }
+
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        byte[] buffer = new byte[100];
+        int n;
+
+        while((n = is.read(buffer)) != -1) {
+
+            baos.write(buffer, 0, n);
+        }
+
+        return baos.toByteArray();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+import io.novaordis.utilities.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class PatternLayoutInferenceTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // shapeOf() -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void shapeOf_NoTimestamp() throws Exception {
+
+        assertNull(PatternLayoutInference.shapeOf("\tat a.b.C.m(C.java:10)"));
+        assertNull(PatternLayoutInference.shapeOf(""));
+    }
+
+    @Test
+    public void shapeOf_WildFly() throws Exception {
+
+        PatternLayoutInference.Shape s = PatternLayoutInference.shapeOf(
+                "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules version 1.3.8.Final-redhat-1");
+
+        assertNotNull(s);
+        assertEquals("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n", s.toLiteral());
+    }
+
+    @Test
+    public void shapeOf_NotPadded() throws Exception {
+
+        PatternLayoutInference.Shape s = PatternLayoutInference.shapeOf(
+                "2017-11-23 09:01:55,011 ERROR [org.example.A] something happened");
+
+        assertNotNull(s);
+        assertEquals("%d{yyyy-MM-dd HH:mm:ss,SSS} %p [%c] %m%n", s.toLiteral());
+    }
+
+    @Test
+    public void shapeOf_ThreadInBrackets() throws Exception {
+
+        PatternLayoutInference.Shape s = PatternLayoutInference.shapeOf(
+                "2017-11-23T09:01:55,011 [org.example.A] [main] something happened");
+
+        assertNotNull(s);
+        assertEquals("%d{yyyy-MM-dd'T'HH:mm:ss,SSS} [%c] [%t] %s%E%n", s.toLiteral());
+    }
+
+    // infer() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void infer_EmptySample() throws Exception {
+
+        assertNull(PatternLayoutInference.infer(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void infer_NoTimestamps() throws Exception {
+
+        assertNull(PatternLayoutInference.infer(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void infer_PaddingAcrossLines() throws Exception {
+
+        List<String> sample = Arrays.asList(
+                "2017-11-23 09:01:55,011 ERROR [a.b.C] one",
+                "2017-11-23 09:01:55,012 INFO  [a.b.C] two",
+                "2017-11-23 09:01:55,013 WARN  [a.b.C] three");
+
+        Log4jPatternLayout layout = PatternLayoutInference.infer(sample);
+
+        assertNotNull(layout);
+        assertEquals("%d{yyyy-MM-dd HH:mm:ss,SSS} %-5p [%c] %m%n", layout.getLiteral());
+    }
+
+    @Test
+    public void infer_LevelShorterThanThePadding() throws Exception {
+
+        //
+        // the padding inferred from the first lines does not fit the last one, whose level is followed by a single
+        // space; the format modifier reports it with an IllegalArgumentException, which must reject the candidate
+        //
+
+        List<String> sample = Arrays.asList(
+                "2017-11-23 09:01:55,011 ERROR [a.b.C] one",
+                "2017-11-23 09:01:55,012 WARN  [a.b.C] two",
+                "2017-11-23 09:01:55,013 INFO [a.b.C] three");
+
+        Log4jPatternLayout layout = PatternLayoutInference.infer(sample);
+
+        assertTrue(layout == null || !layout.getLiteral().contains("%-5p"));
+    }
+
+    @Test
+    public void infer_FirstLineNotAnEvent() throws Exception {
+
+        List<String> sample = Arrays.asList(
+                "something else",
+                "2017-11-23 09:01:55,012 INFO  [a.b.C] two");
+
+        assertNull(PatternLayoutInference.infer(sample));
+    }
+
+    @Test
+    public void infer_JBossLogWithExceptions() throws Exception {
+
+        File file = new File(System.getProperty("basedir"), "src/test/resources/data/jboss-exception.log");
+
+        List<String> sample = Arrays.asList(Files.read(file).split("\n"));
+
+        Log4jPatternLayout layout = PatternLayoutInference.infer(sample);
+
+        assertNotNull(layout);
+        assertEquals("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n", layout.getLiteral());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class PipelinedFileParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n";
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("pipelined-file-parser-test.log");
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidParserStageCount() throws Exception {
+
+        try {
+
+            new PipelinedFileParser(null, 0, 10, 10);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid parser stage count"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidBatchSize() throws Exception {
+
+        try {
+
+            new PipelinedFileParser(null, 1, 0, 10);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid batch size"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidQueueCapacity() throws Exception {
+
+        try {
+
+            new PipelinedFileParser(null, 1, 10, 0);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid queue capacity"));
+        }
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_EmptyFile() throws Exception {
+
+        PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT));
+
+        List<Event> events = new ArrayList<>();
+
+        assertEquals(0L, p.parse(file, events::addAll));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void parse_SameEventsAsSequentialParsing() throws Exception {
+
+        TestFiles.write(file, content());
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = new Log4jParser(new Log4jPatternLayout(LAYOUT)).parse(file, expected::addAll);
+
+        for(int stages: new int[] { 1, 2, 3 }) {
+
+            for(int batchSize: new int[] { 1, 7, 100, 10000 }) {
+
+                PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT), stages, batchSize, 2);
+
+                List<Event> actual = new ArrayList<>();
+
+                long lineCount = p.parse(file, actual::addAll);
+
+                assertEquals(expectedLineCount, lineCount);
+                TestFiles.assertEvents(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void parse_LinesLongerThanTheBatchBuffer() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 20; i ++) {
+
+            sb.append("10:00:").append(String.format("%02d", i)).append(",000 INFO  [a.b.C] (main) ");
+
+            for(int j = 0; j < 100 * i; j ++) {
+
+                sb.append((char)('a' + j % 26));
+            }
+
+            sb.append("\n\u00e9\u00e8 continuation ").append(i).append("\n");
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        List<Event> expected = new ArrayList<>();
+
+        new Log4jParser(new Log4jPatternLayout(LAYOUT)).parse(file, expected::addAll);
+
+        for(int batchSize: new int[] { 1, 3 }) {
+
+            PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT), 2, batchSize, 2);
+
+            List<Event> actual = new ArrayList<>();
+
+            assertEquals(40L, p.parse(file, actual::addAll));
+            TestFiles.assertEvents(expected, actual);
+        }
+
+        assertEquals(20, expected.size());
+    }
+
+    @Test
+    public void parse_Heuristics() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 100; i ++) {
+
+            sb.append(String.format("2017-11-22 10:00:%02d,%03d INFO  [a.b.C] (thread-1) message %d\n", i % 60, i, i));
+
+            if (i % 3 == 0) {
+
+                sb.append("\tat a.b.C.m(C.java:10)\n");
+            }
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        List<Event> expected = new ArrayList<>();
+
+        long expectedLineCount = new Log4jParser().parse(file, expected::addAll);
+
+        PipelinedFileParser p = new PipelinedFileParser(null, 3, 5, 4);
+
+        List<Event> actual = new ArrayList<>();
+
+        long lineCount = p.parse(file, actual::addAll);
+
+        assertEquals(expectedLineCount, lineCount);
+        TestFiles.assertEvents(expected, actual);
+    }
+
+    @Test
+    public void parse_StageMetrics() throws Exception {
+
+        TestFiles.write(file, content());
+
+        PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT), 2, 10, 4);
+
+        assertTrue(p.getStageMetrics().isEmpty());
+
+        p.parse(file, events -> {
+
+            //
+            // a slow procedure, the upstream stages stall on it
+            //
+
+            try {
+
+                Thread.sleep(1L);
+            }
+            catch(InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        List<PipelineStageMetrics> stages = p.getStageMetrics();
+
+        assertEquals(4, stages.size());
+
+        PipelineStageMetrics reader = stages.get(0);
+        PipelineStageMetrics parser0 = stages.get(1);
+        PipelineStageMetrics parser1 = stages.get(2);
+        PipelineStageMetrics procedure = stages.get(3);
+
+        assertEquals("reader", reader.getName());
+        assertEquals("parser-0", parser0.getName());
+        assertEquals("parser-1", parser1.getName());
+        assertEquals("procedure", procedure.getName());
+
+        assertTrue(reader.getBatchCount() > 10);
+        assertEquals(reader.getBatchCount(), parser0.getBatchCount() + parser1.getBatchCount());
+        assertEquals(reader.getBatchCount(), procedure.getBatchCount());
+
+        assertEquals(0, reader.getQueueCapacity());
+        assertEquals(4, parser0.getQueueCapacity());
+        assertEquals(8, procedure.getQueueCapacity());
+
+        assertEquals(0, procedure.getQueueDepth());
+        assertTrue(parser0.getMaxQueueDepth() > 0);
+        assertTrue(parser0.getMaxQueueDepth() <= 4);
+
+        assertTrue(reader.getOutputStallNanos() + parser0.getOutputStallNanos() + parser1.getOutputStallNanos() > 0L);
+        assertEquals(0L, procedure.getOutputStallNanos());
+        assertEquals(0L, reader.getInputStallNanos());
+    }
+
+    @Test
+    public void parse_SinkFailure() throws Exception {
+
+        TestFiles.write(file, content());
+
+        PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT), 2, 10, 2);
+
+        try {
+
+            p.parse(file, events -> { throw new IllegalStateException("SYNTHETIC"); });
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalStateException e) {
+
+            String msg = e.getMessage();
+            assertEquals("SYNTHETIC", msg);
+        }
+    }
+
+    @Test
+    public void parse_NoSuchFile() throws Exception {
+
+        PipelinedFileParser p = new PipelinedFileParser(new Log4jPatternLayout(LAYOUT));
+
+        try {
+
+            p.parse(new File(file.getPath() + ".does-not-exist"), events -> {});
+
+            fail("should have thrown exception");
+        }
+        catch(FileNotFoundException e) {
+
+            // expected
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static String content() {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 500; i ++) {
+
+            sb.append(String.format("10:%02d:%02d,%03d INFO  [a.b.C] (thread-%d) message %d\n",
+                    i / 60 % 60, i % 60, i % 1000, i % 7, i));
+
+            if (i % 11 == 0) {
+
+                //
+                // multi-line events, some of them will straddle the nominal batch boundaries
+                //
+
+                sb.append("java.lang.RuntimeException: failure ").append(i).append("\n");
+                sb.append("\tat a.b.C.m(C.java:10)\n");
+                sb.append("\tat a.b.C.n(C.java:20)\n");
+            }
+        }
+
+        return sb.toString();
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class SpscRingBufferTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new SpscRingBuffer<String>(0);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid capacity"));
+        }
+    }
+
+    @Test
+    public void constructor_CapacityIsRoundedUp() throws Exception {
+
+        assertEquals(1, new SpscRingBuffer<String>(1).capacity());
+        assertEquals(4, new SpscRingBuffer<String>(3).capacity());
+        assertEquals(16, new SpscRingBuffer<String>(16).capacity());
+    }
+
+    @Test
+    public void offerAndPoll() throws Exception {
+
+        SpscRingBuffer<String> b = new SpscRingBuffer<>(2);
+
+        assertNull(b.poll());
+
+        assertTrue(b.offer("a"));
+        assertTrue(b.offer("b"));
+        assertFalse(b.offer("c"));
+
+        assertEquals(2, b.size());
+        assertEquals(2, b.getHighWaterMark());
+
+        assertEquals("a", b.poll());
+        assertTrue(b.offer("c"));
+        assertEquals("b", b.poll());
+        assertEquals("c", b.poll());
+        assertNull(b.poll());
+
+        assertEquals(0, b.size());
+    }
+
+    @Test
+    public void offer_Null() throws Exception {
+
+        try {
+
+            new SpscRingBuffer<String>(1).offer(null);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null element"));
+        }
+    }
+
+    @Test
+    public void take_Closed() throws Exception {
+
+        SpscRingBuffer<String> b = new SpscRingBuffer<>(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            Future<String> f = executor.submit(b::take);
+
+            Thread.sleep(50L);
+
+            b.close();
+
+            assertNull(f.get(5, TimeUnit.SECONDS));
+            assertTrue(b.getConsumerStallNanos() > 0L);
+        }
+        finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void put_Closed() throws Exception {
+
+        SpscRingBuffer<String> b = new SpscRingBuffer<>(1);
+
+        assertTrue(b.put("a"));
+
+        b.close();
+
+        assertFalse(b.put("b"));
+        assertTrue(b.getProducerStallNanos() > 0L);
+    }
+
+    @Test
+    public void producerAndConsumer() throws Exception {
+
+        SpscRingBuffer<Integer> b = new SpscRingBuffer<>(8);
+
+        int count = 100000;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            Future<?> producer = executor.submit(() -> {
+
+                for(int i = 0; i < count; i ++) {
+
+                    b.put(i);
+                }
+
+                return null;
+            });
+
+            for(int i = 0; i < count; i ++) {
+
+                assertEquals(i, b.take().intValue());
+            }
+
+            producer.get(5, TimeUnit.SECONDS);
+
+            assertNull(b.poll());
+            assertTrue(b.getHighWaterMark() <= 8);
+        }
+        finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class StreamLineReaderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidBufferSize() throws Exception {
+
+        try {
+
+            new StreamLineReader(stream(""), 0, StandardCharsets.UTF_8);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid buffer size"));
+        }
+    }
+
+    @Test
+    public void readLine_EmptyStream() throws Exception {
+
+        try(StreamLineReader r = new StreamLineReader(stream(""), 16, StandardCharsets.UTF_8)) {
+
+            assertNull(r.readLine());
+            assertEquals(0L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine() throws Exception {
+
+        try(StreamLineReader r = new StreamLineReader(stream("a\nbb\r\n\nccc"), 16, StandardCharsets.UTF_8)) {
+
+            assertEquals("a", r.readLine().toString());
+            assertEquals("bb", r.readLine().toString());
+            assertEquals("", r.readLine().toString());
+            assertEquals("ccc", r.readLine().toString());
+            assertNull(r.readLine());
+            assertEquals(4L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine_TerminatedLastLine() throws Exception {
+
+        try(StreamLineReader r = new StreamLineReader(stream("a\nb\n"), 16, StandardCharsets.UTF_8)) {
+
+            assertEquals("a", r.readLine().toString());
+            assertEquals("b", r.readLine().toString());
+            assertNull(r.readLine());
+            assertEquals(2L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine_LinesLongerThanTheBuffer() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 100; i ++) {
+
+            sb.append(i).append(i % 7 == 0 ? "0123456789012345678901234567890123456789" : "").append('\n');
+        }
+
+        try(StreamLineReader r = new StreamLineReader(stream(sb.toString()), 4, StandardCharsets.UTF_8)) {
+
+            for(int i = 0; i < 100; i ++) {
+
+                String expected = i + (i % 7 == 0 ? "0123456789012345678901234567890123456789" : "");
+                assertEquals(expected, r.readLine().toString());
+            }
+
+            assertNull(r.readLine());
+            assertEquals(100L, r.getLineCount());
+        }
+    }
+
+    @Test
+    public void readLine_NonAscii() throws Exception {
+
+        try(StreamLineReader r = new StreamLineReader(stream("a\nété\nb"), 16, StandardCharsets.UTF_8)) {
+
+            assertEquals("a", r.readLine().toString());
+
+            CharSequence line = r.readLine();
+            assertTrue(line instanceof String);
+            assertEquals("été", line);
+
+            assertEquals("b", r.readLine().toString());
+            assertNull(r.readLine());
+        }
+    }
+
+    @Test
+    public void readLine_Closed() throws Exception {
+
+        StreamLineReader r = new StreamLineReader(stream("a\n"), 16, StandardCharsets.UTF_8);
+
+        r.close();
+
+        try {
+
+            r.readLine();
+
+            fail("should have thrown exception");
+        }
+        catch(IOException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("reader closed"));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    private static InputStream stream(String content) {
+
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Content and assertion helpers shared by the tests that read files. The files themselves are created in a JUnit
+ * TemporaryFolder, which deletes them, together with the sidecars written next to them, when the test completes.
+ *
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+final class TestFiles {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the content of the file with the UTF-8 encoding of the given string.
+     */
+    static void write(File file, String content) throws IOException {
+
+        write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void write(File file, byte[] content) throws IOException {
+
+        try(OutputStream os = new FileOutputStream(file)) {
+
+            os.write(content);
+        }
+    }
+
+    static void append(File file, String content) throws IOException {
+
+        try(OutputStream os = new FileOutputStream(file, true)) {
+
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Creates a new ".log" file in the folder. The files are named in creation order.
+     *
+     * @see TestFiles#listFiles(TemporaryFolder)
+     */
+    static File newFile(TemporaryFolder folder, String content) throws IOException {
+
+        return newFile(folder, ".log", content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static File newFile(TemporaryFolder folder, String suffix, byte[] content) throws IOException {
+
+        String[] names = folder.getRoot().list();
+
+        File f = folder.newFile(String.format("file-%03d%s", names == null ? 0 : names.length, suffix));
+
+        write(f, content);
+
+        return f;
+    }
+
+    /**
+     * @return the files in the folder, in creation order.
+     */
+    static List<File> listFiles(TemporaryFolder folder) {
+
+        File[] files = folder.getRoot().listFiles();
+
+        Arrays.sort(files);
+
+        return Arrays.asList(files);
+    }
+
+    static byte[] gzip(String content) throws IOException {
+
+        return gzip(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] gzip(byte[] content) throws IOException {
+
+        return gzip(content, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    static byte[] gzip(byte[] content, final int level) throws IOException {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try(GZIPOutputStream os = new GZIPOutputStream(baos) {{ def.setLevel(level); }}) {
+
+            os.write(content);
+        }
+
+        return baos.toByteArray();
+    }
+
+    /**
+     * Compares all fields of the events, in order.
+     */
+    static void assertEvents(List<Event> expected, List<Event> actual) {
+
+        assertEquals(expected.size(), actual.size());
+
+        for(int i = 0; i < expected.size(); i ++) {
+
+            Log4jEvent e = (Log4jEvent)expected.get(i);
+            Log4jEvent a = (Log4jEvent)actual.get(i);
+
+            assertEquals(e.getLineNumber(), a.getLineNumber());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getLevel(), a.getLevel());
+            assertEquals(e.getLogger(), a.getLogger());
+            assertEquals(e.getThreadName(), a.getThreadName());
+            assertEquals(e.getMessage(), a.getMessage());
+            assertEquals(e.getExceptionRendering(), a.getExceptionRendering());
+            assertEquals(e.getRawRepresentation(), a.getRawRepresentation());
+        }
+    }
+
+    /**
+     * Compares the first line of each event's message, so multi-line events can be identified by their first line.
+     */
+    static void assertMessages(List<Event> events, String... messages) {
+
+        assertEquals(messages.length, events.size());
+
+        for(int i = 0; i < messages.length; i ++) {
+
+            String m = ((Log4jEvent)events.get(i)).getMessage();
+            assertEquals(messages[i], m.split("\n")[0]);
+        }
+    }
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    private TestFiles() {
+    }
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.utilities.logging.log4j.Log4jLevel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimeIndexTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("time-index-test.log");
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < 1000; i ++) {
+
+            sb.append("line ").append(i).append('\n');
+        }
+
+        TestFiles.write(file, sb.toString());
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCheckpointInterval() throws Exception {
+
+        try {
+
+            new TimeIndex(null, 0L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid checkpoint interval 0"));
+        }
+    }
+
+    @Test
+    public void getSidecar() throws Exception {
+
+        assertEquals(new File("/tmp/server.log.lgidx"), TimeIndex.getSidecar(new File("/tmp/server.log")));
+    }
+
+    // addEventStart() -------------------------------------------------------------------------------------------------
+
+    @Test
+    public void addEventStart() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+
+        assertNull(index.getLastEvent());
+
+        index.addEventStart(1000L, 0L, 1L, 0L);
+        index.addEventStart(1001L, 50L, 2L, 1L);
+        index.addEventStart(1002L, 99L, 4L, 2L);
+        index.addEventStart(null, 100L, 5L, 3L);
+        index.addEventStart(1004L, 150L, 6L, 4L);
+        index.addEventStart(1005L, 250L, 8L, 5L);
+
+        assertEquals(3, index.getCheckpoints().size());
+
+        TimeIndex.Checkpoint c = index.getCheckpoints().get(0);
+        assertEquals(1000L, c.getTime());
+        assertEquals(0L, c.getOffset());
+        assertEquals(1L, c.getLineNumber());
+        assertEquals(0L, c.getOrdinal());
+
+        c = index.getCheckpoints().get(1);
+        assertEquals(Long.MIN_VALUE, c.getTime());
+        assertEquals(100L, c.getOffset());
+
+        c = index.getCheckpoints().get(2);
+        assertEquals(250L, c.getOffset());
+
+        c = index.getLastEvent();
+        assertEquals(1005L, c.getTime());
+        assertEquals(250L, c.getOffset());
+        assertEquals(8L, c.getLineNumber());
+        assertEquals(5L, c.getOrdinal());
+
+        //
+        // re-recording the last event, as it happens when indexing is resumed, does not create a new checkpoint
+        //
+
+        index.addEventStart(1005L, 250L, 8L, 5L);
+        assertEquals(3, index.getCheckpoints().size());
+    }
+
+    // floorByTime()/floorByLine() -------------------------------------------------------------------------------------
+
+    @Test
+    public void floorByTime() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 1L);
+
+        index.addEventStart(10L, 0L, 1L, 0L);
+        index.addEventStart(20L, 10L, 3L, 1L);
+        index.addEventStart(20L, 20L, 5L, 2L);
+        index.addEventStart(30L, 30L, 7L, 3L);
+
+        assertNull(index.floorByTime(5L));
+        assertNull(index.floorByTime(10L));
+        assertEquals(0L, index.floorByTime(11L).getOffset());
+        assertEquals(0L, index.floorByTime(20L).getOffset());
+        assertEquals(20L, index.floorByTime(21L).getOffset());
+        assertEquals(30L, index.floorByTime(31L).getOffset());
+        assertEquals(30L, index.floorByTime(Long.MAX_VALUE).getOffset());
+    }
+
+    @Test
+    public void floorByLine() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 1L);
+
+        assertNull(index.floorByLine(100L));
+
+        index.addEventStart(10L, 0L, 2L, 0L);
+        index.addEventStart(20L, 10L, 5L, 1L);
+
+        assertNull(index.floorByLine(1L));
+        assertEquals(0L, index.floorByLine(2L).getOffset());
+        assertEquals(0L, index.floorByLine(4L).getOffset());
+        assertEquals(10L, index.floorByLine(5L).getOffset());
+        assertEquals(10L, index.floorByLine(1000L).getOffset());
+    }
+
+    // store()/load() --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void load_NoSidecar() throws Exception {
+
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    @Test
+    public void storeAndLoad() throws Exception {
+
+        TimeIndex index = new TimeIndex("%d %m%n", 100L);
+
+        index.addEventStart(10L, 0L, 1L, 0L);
+        index.addEventStart(20L, 200L, 30L, 7L);
+        index.setIndexedLength(file, file.length());
+
+        index.store(file);
+
+        assertTrue(TimeIndex.getSidecar(file).isFile());
+
+        TimeIndex index2 = TimeIndex.load(file, "%d %m%n");
+
+        assertNotNull(index2);
+        assertEquals("%d %m%n", index2.getLayoutLiteral());
+        assertEquals(100L, index2.getCheckpointInterval());
+        assertEquals(file.length(), index2.getIndexedLength());
+        assertEquals(2, index2.getCheckpoints().size());
+        assertEquals(200L, index2.getCheckpoints().get(1).getOffset());
+        assertEquals(30L, index2.getCheckpoints().get(1).getLineNumber());
+        assertEquals(7L, index2.getCheckpoints().get(1).getOrdinal());
+        assertEquals(20L, index2.getLastEvent().getTime());
+    }
+
+    @Test
+    public void load_DifferentLayout() throws Exception {
+
+        TimeIndex index = new TimeIndex("%d %m%n", 100L);
+        index.setIndexedLength(file, file.length());
+        index.store(file);
+
+        assertNull(TimeIndex.load(file, "%d %p %m%n"));
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    @Test
+    public void load_FileGrew() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+        index.setIndexedLength(file, file.length());
+        index.store(file);
+
+        long length = file.length();
+
+        try(FileOutputStream fos = new FileOutputStream(file, true)) {
+
+            fos.write("more content\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        TimeIndex index2 = TimeIndex.load(file, null);
+
+        assertNotNull(index2);
+        assertEquals(length, index2.getIndexedLength());
+    }
+
+    @Test
+    public void load_FileTruncated() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+        index.setIndexedLength(file, file.length());
+        index.store(file);
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    @Test
+    public void load_FileRewritten() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+        index.setIndexedLength(file, file.length());
+        index.store(file);
+
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+
+            raf.seek(raf.length() - 3);
+            raf.write('X');
+        }
+
+        assertFalse(index.matches(file));
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    @Test
+    public void load_InvalidSidecar() throws Exception {
+
+        try(FileOutputStream fos = new FileOutputStream(TimeIndex.getSidecar(file))) {
+
+            fos.write("this is not an index".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    @Test
+    public void load_TruncatedSidecar() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+        index.addEventStart(10L, 0L, 1L, 0L);
+        index.setIndexedLength(file, file.length());
+        index.store(file);
+
+        File sidecar = TimeIndex.getSidecar(file);
+
+        try(RandomAccessFile raf = new RandomAccessFile(sidecar, "rw")) {
+
+            raf.setLength(raf.length() - 5);
+        }
+
+        assertNull(TimeIndex.load(file, null));
+    }
+
+    // blocks and field indexes ----------------------------------------------------------------------------------------
+
+    @Test
+    public void getFieldIndex() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+
+        assertEquals(Log4jEventImpl.LEVEL_PROPERTY_NAME,
+                index.getFieldIndex(Log4jEventImpl.LEVEL_PROPERTY_NAME).getName());
+        assertEquals(Log4jEventImpl.LOGGER_PROPERTY_NAME,
+                index.getFieldIndex(Log4jEventImpl.LOGGER_PROPERTY_NAME).getName());
+        assertEquals(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME,
+                index.getFieldIndex(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME).getName());
+
+        try {
+
+            index.getFieldIndex(Log4jEventImpl.MESSAGE_PROPERTY_NAME);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("property msg is not indexed"));
+        }
+    }
+
+    @Test
+    public void addEvent() throws Exception {
+
+        TimeIndex index = blockIndex();
+
+        assertEquals(3, index.getBlockCount());
+        assertEquals(100L, index.getBlockEnd(0));
+        assertEquals(200L, index.getBlockEnd(1));
+        assertEquals(250L, index.getBlockEnd(2));
+
+        FieldIndex levels = index.getFieldIndex(Log4jEventImpl.LEVEL_PROPERTY_NAME);
+        assertArrayEquals(new int[] { 0, 1, 2 }, levels.getBlocks("INFO"));
+        assertArrayEquals(new int[] { 1 }, levels.getBlocks("ERROR"));
+        assertArrayEquals(new int[0], levels.getBlocks("WARN"));
+
+        FieldIndex loggers = index.getFieldIndex(Log4jEventImpl.LOGGER_PROPERTY_NAME);
+        assertArrayEquals(new int[] { 0, 2 }, loggers.getBlocks("org.hibernate.SQL"));
+        assertArrayEquals(new int[] { 1 }, loggers.getBlocks("org.hibernate.cache"));
+        assertArrayEquals(new int[] { 0, 1, 2 }, loggers.getBlocks("a.b.C"));
+
+        FieldIndex threads = index.getFieldIndex(Log4jEventImpl.THREAD_NAME_PROPERTY_NAME);
+        assertArrayEquals(new int[] { 1 }, threads.getBlocks("http-52"));
+        assertArrayEquals(new int[] { 0, 1, 2 }, threads.getBlocks("main"));
+    }
+
+    @Test
+    public void selectBlocks() throws Exception {
+
+        TimeIndex index = blockIndex();
+
+        EventFilter f = new EventFilter();
+        assertEquals(3, index.selectBlocks(f).cardinality());
+
+        f = new EventFilter();
+        f.setLevels(Log4jLevel.ERROR);
+        assertEquals(bits(1), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setLevels(Log4jLevel.WARN);
+        assertTrue(index.selectBlocks(f).isEmpty());
+
+        f = new EventFilter();
+        f.setLoggerPrefix("org.hibernate");
+        assertEquals(bits(0, 1, 2), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setLoggerPrefix("org.hibernate.S");
+        assertEquals(bits(0, 2), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setLoggerPrefix("org.hibernate");
+        f.setThreadName("http-52");
+        assertEquals(bits(1), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setLoggerPrefix("org.hibernate.S");
+        f.setThreadName("http-52");
+        assertTrue(index.selectBlocks(f).isEmpty());
+
+        f = new EventFilter();
+        f.setThreadName("http-");
+        assertTrue(index.selectBlocks(f).isEmpty());
+    }
+
+    @Test
+    public void selectBlocks_TimeRange() throws Exception {
+
+        TimeIndex index = blockIndex();
+
+        //
+        // block 0 covers [1000, 2000], block 1 covers [2000, 3000], block 2 covers [3000, ...)
+        //
+
+        EventFilter f = new EventFilter();
+        f.setTimeRange(2500L, null);
+        assertEquals(bits(1, 2), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setTimeRange(null, 2000L);
+        assertEquals(bits(0), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setTimeRange(2000L, 2001L);
+        assertEquals(bits(0, 1), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setTimeRange(5000L, 6000L);
+        assertEquals(bits(2), index.selectBlocks(f));
+
+        f = new EventFilter();
+        f.setTimeRange(1L, 2L);
+        assertTrue(index.selectBlocks(f).isEmpty());
+
+        f = new EventFilter();
+        f.setTimeRange(2500L, null);
+        f.setLevels(Log4jLevel.ERROR);
+        assertEquals(bits(1), index.selectBlocks(f));
+    }
+
+    @Test
+    public void storeAndLoad_FieldIndexes() throws Exception {
+
+        TimeIndex index = blockIndex();
+        index.store(file);
+
+        TimeIndex index2 = TimeIndex.load(file, null);
+
+        assertNotNull(index2);
+        assertEquals(3, index2.getBlockCount());
+
+        for(String name: new String[] {
+                Log4jEventImpl.LEVEL_PROPERTY_NAME,
+                Log4jEventImpl.LOGGER_PROPERTY_NAME,
+                Log4jEventImpl.THREAD_NAME_PROPERTY_NAME }) {
+
+            FieldIndex fi = index.getFieldIndex(name);
+            FieldIndex fi2 = index2.getFieldIndex(name);
+
+            assertEquals(fi.getValues(), fi2.getValues());
+
+            for(String value: fi.getValues()) {
+
+                assertArrayEquals(fi.getBlocks(value), fi2.getBlocks(value));
+            }
+        }
+
+        EventFilter f = new EventFilter();
+        f.setThreadName("http-52");
+        assertEquals(bits(1), index2.selectBlocks(f));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Three 100-byte blocks, starting at 1000, 2000 and 3000 ms.
+     */
+    private TimeIndex blockIndex() throws Exception {
+
+        TimeIndex index = new TimeIndex(null, 100L);
+
+        index.addEvent(event(1000L, Log4jLevel.INFO, "org.hibernate.SQL", "main"), 0L, 1L, 0L);
+        index.addEvent(event(1500L, Log4jLevel.INFO, "a.b.C", "main"), 50L, 2L, 1L);
+        index.addEvent(event(2000L, Log4jLevel.INFO, "a.b.C", "main"), 100L, 3L, 2L);
+        index.addEvent(event(2500L, Log4jLevel.ERROR, "org.hibernate.cache", "http-52"), 150L, 4L, 3L);
+        index.addEvent(event(3000L, Log4jLevel.INFO, "org.hibernate.SQL", "main"), 200L, 5L, 4L);
+        index.addEvent(event(3500L, Log4jLevel.INFO, "a.b.C", "main"), 220L, 6L, 5L);
+
+        index.setIndexedLength(file, 250L);
+
+        return index;
+    }
+
+    private static Log4jEvent event(long time, Log4jLevel level, String logger, String thread) {
+
+        return new Log4jEventImpl(1L, time, level, logger, thread, "something", "raw");
+    }
+
+    private static BitSet bits(int... indexes) {
+
+        BitSet b = new BitSet();
+
+        for(int i: indexes) {
+
+            b.set(i);
+        }
+
+        return b;
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
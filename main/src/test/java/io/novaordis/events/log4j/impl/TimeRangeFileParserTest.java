@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimeRangeFileParserTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    private static final String LAYOUT = "%d{yyyy-MM-dd HH:mm:ss,SSS} %-5p [%c] (%t) %m%n";
+
+    private static final int EVENT_COUNT = 3000;
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private long base;
+
+    //
+    // the offsets and the timestamps of the events written in the file
+    //
+    private long[] offsets;
+    private long[] times;
+
+    private int lineCount;
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    @Before
+    public void before() throws Exception {
+
+        file = folder.newFile("time-range-file-parser-test.log");
+        base = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-23 10:00:00,000").getTime();
+        write();
+    }
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidThreshold() throws Exception {
+
+        try {
+
+            new TimeRangeFileParser(null, 0L);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid linear scan threshold 0"));
+        }
+    }
+
+    @Test
+    public void constructor_NoTimestampsInLayout() throws Exception {
+
+        try {
+
+            new TimeRangeFileParser(new Log4jPatternLayout("%-5p [%c] %m%n"));
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("does not contain timestamps"));
+        }
+    }
+
+    // seek() ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void seek() throws Exception {
+
+        long threshold = 1024L;
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), threshold);
+
+        for(int i: new int[] { 1, 17, 1000, 1001, 2345, EVENT_COUNT - 1 }) {
+
+            long offset = p.seek(file, times[i]);
+
+            //
+            // we start before the first event in the window, but not far before
+            //
+
+            assertTrue(offset < offsets[i]);
+            assertTrue(offsets[i] - offset <= 2 * threshold);
+        }
+
+        assertEquals(0L, p.seek(file, times[0]));
+        assertEquals(0L, p.seek(file, times[0] - 1000L));
+    }
+
+    @Test
+    public void seek_Heuristics() throws Exception {
+
+        long threshold = 1024L;
+
+        TimeRangeFileParser p = new TimeRangeFileParser(null, threshold);
+
+        long offset = p.seek(file, times[2000]);
+
+        assertTrue(offset < offsets[2000]);
+        assertTrue(offsets[2000] - offset <= 2 * threshold);
+    }
+
+    @Test
+    public void seek_LevelShorterThanThePadding() throws Exception {
+
+        //
+        // one line in five has the level followed by a single space, so it does not match %-5p and the probes that
+        // land on it must skip it, instead of failing
+        //
+
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+
+        StringBuilder sb = new StringBuilder();
+
+        long[] offsets = new long[2000];
+
+        for(int i = 0; i < offsets.length; i ++) {
+
+            offsets[i] = sb.length();
+
+            sb.append(f.format(new java.util.Date(base + 250L * i))).
+                    append(i % 5 == 0 ? " INFO [a.b.C] (main) message " : " INFO  [a.b.C] (main) message ").
+                    append(i).append('\n');
+        }
+
+        TestFiles.write(file, sb.toString());
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        for(int i: new int[] { 1, 17, 1001, 1999 }) {
+
+            long offset = p.seek(file, base + 250L * i);
+
+            assertTrue(offset <= offsets[i]);
+            assertTrue(offsets[i] - offset <= 2 * 1024L);
+        }
+    }
+
+    // parse() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_InvalidRange() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT));
+
+        try {
+
+            p.parse(file, 2L, 1L, events -> {});
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid time range [2, 1)"));
+        }
+    }
+
+    @Test
+    public void parse_WindowInTheMiddle() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parse(file, times[1000], times[1100], actual::addAll);
+
+        assertWindow(1000, 1100, actual);
+
+        //
+        // we did not read the whole file
+        //
+
+        assertTrue(linesRead < lineCount / 4);
+    }
+
+    @Test
+    public void parse_WindowInTheMiddle_Heuristics() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(null, 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[1234], times[1300] + 1, actual::addAll);
+
+        assertWindow(1234, 1301, actual);
+    }
+
+    @Test
+    public void parse_WindowBoundariesBetweenEvents() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[500] - 1, times[600] - 1, actual::addAll);
+
+        assertWindow(500, 600, actual);
+    }
+
+    @Test
+    public void parse_WholeFile() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        long linesRead = p.parse(file, 0L, Long.MAX_VALUE, actual::addAll);
+
+        assertWindow(0, EVENT_COUNT, actual);
+        assertEquals(lineCount, linesRead);
+    }
+
+    @Test
+    public void parse_WindowAtTheEnd() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[EVENT_COUNT - 10], Long.MAX_VALUE, actual::addAll);
+
+        assertWindow(EVENT_COUNT - 10, EVENT_COUNT, actual);
+    }
+
+    @Test
+    public void parse_WindowPastTheEnd() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[EVENT_COUNT - 1] + 1, Long.MAX_VALUE, actual::addAll);
+
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    public void parse_EmptyWindow() throws Exception {
+
+        TimeRangeFileParser p = new TimeRangeFileParser(new Log4jPatternLayout(LAYOUT), 1024L);
+
+        List<Event> actual = new ArrayList<>();
+
+        p.parse(file, times[7], times[7], actual::addAll);
+
+        assertTrue(actual.isEmpty());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    /**
+     * Writes EVENT_COUNT events, 250 ms apart; every seventh event has a multi-line message.
+     */
+    private void write() throws Exception {
+
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+
+        offsets = new long[EVENT_COUNT];
+        times = new long[EVENT_COUNT];
+        lineCount = 0;
+
+        StringBuilder sb = new StringBuilder();
+
+        for(int i = 0; i < EVENT_COUNT; i ++) {
+
+            offsets[i] = sb.length();
+            times[i] = base + 250L * i;
+
+            sb.append(f.format(new java.util.Date(times[i]))).append(i % 3 == 0 ? " ERROR" : " INFO ").
+                    append(" [a.b.C").append(i % 5).append("] (thread-").append(i % 4).append(") message ").
+                    append(i).append('\n');
+
+            lineCount ++;
+
+            if (i % 7 == 0) {
+
+                sb.append("\tcontinuation of ").append(i).append('\n');
+                sb.append("\tanother continuation of ").append(i).append('\n');
+
+                lineCount += 2;
+            }
+        }
+
+        TestFiles.write(file, sb.toString());
+    }
+
+    /**
+     * @param from the index of the first expected event, inclusive.
+     * @param to the index of the last expected event, exclusive.
+     */
+    private void assertWindow(int from, int to, List<Event> actual) {
+
+        assertEquals(to - from, actual.size());
+
+        for(int i = from; i < to; i ++) {
+
+            Log4jEvent e = (Log4jEvent)actual.get(i - from);
+
+            String tail = "message " + i;
+
+            if (i % 7 == 0) {
+
+                tail += "\n\tcontinuation of " + i + "\n\tanother continuation of " + i;
+            }
+
+            assertEquals(times[i], e.getTime().longValue());
+            assertTrue(e.getRawRepresentation().endsWith(tail));
+        }
+    }
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampFormatRegistryTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // getDefault() ----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void getDefault() throws Exception {
+
+        List<TimestampFormat> formats = TimestampFormatRegistry.getDefault().getFormats();
+
+        assertEquals(TimestampFormatRegistry.DEFAULT_PATTERNS.length, formats.size());
+
+        for(int i = 0; i < formats.size(); i ++) {
+
+            assertEquals(TimestampFormatRegistry.DEFAULT_PATTERNS[i], formats.get(i).getPattern());
+        }
+    }
+
+    // register() ------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void register_VariableWidthPattern() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry();
+
+        try {
+
+            r.register("MMMM d, yyyy");
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("does not have a fixed-width rendering"));
+        }
+
+        assertTrue(r.getFormats().isEmpty());
+    }
+
+    @Test
+    public void register() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry();
+
+        assertNull(r.match("2017/11/23 10:00:00.001 INFO", 0));
+
+        TimestampFormat f = r.register("yyyy/MM/dd HH:mm:ss.SSS");
+
+        assertEquals(23, f.getWidth());
+
+        TimestampMatcher m = r.match("2017/11/23 10:00:00.001 INFO", 0);
+
+        assertNotNull(m);
+        assertEquals(f, m.getTimestampFormat());
+        assertEquals(24, m.getIndexOfNextCharInLine());
+        assertEquals(new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS").parse("2017/11/23 10:00:00.001").getTime(),
+                m.getTime());
+    }
+
+    // match() ---------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void match_FirstRegisteredFormatWins() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry("HH:mm:ss", "HH:mm:ss");
+
+        TimestampMatcher m = r.match("10:00:00 x", 0);
+
+        assertEquals(r.getFormats().get(0), m.getTimestampFormat());
+    }
+
+    @Test
+    public void match_Offset() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry(TimestampFormatRegistry.DEFAULT_PATTERNS);
+
+        TimestampMatcher m = r.match("xyz10:00:00,001   INFO", 3);
+
+        assertNotNull(m);
+        assertEquals(18, m.getIndexOfNextCharInLine());
+    }
+
+    @Test
+    public void match_OnlyTheFormatsThatMayStartWithTheFirstCharacterAreTried() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry("HH:mm:ss", "[HH:mm:ss]");
+
+        TimestampMatcher m = r.match("[10:00:00] x", 0);
+
+        assertNotNull(m);
+        assertEquals(r.getFormats().get(1), m.getTimestampFormat());
+
+        m = r.match("10:00:00 x", 0);
+
+        assertNotNull(m);
+        assertEquals(r.getFormats().get(0), m.getTimestampFormat());
+
+        assertNull(r.match("x10:00:00 x", 0));
+        assertNull(r.match("\u00e910:00:00 x", 0));
+        assertNull(r.match("10:00:00", 8));
+    }
+
+    @Test
+    public void match_FormatRegisteredAfterConstruction() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry("HH:mm:ss");
+
+        assertNull(r.match("Nov 23 10:00:00 x", 0));
+
+        r.register("MMM dd HH:mm:ss");
+
+        assertNotNull(r.match("Nov 23 10:00:00 x", 0));
+    }
+
+    @Test
+    public void match_ConcurrentAccess() throws Exception {
+
+        TimestampFormatRegistry r = new TimestampFormatRegistry(TimestampFormatRegistry.DEFAULT_PATTERNS);
+
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            List<Future<?>> futures = new ArrayList<>();
+
+            for(int i = 0; i < 4; i ++) {
+
+                final int thread = i;
+
+                futures.add(executor.submit(() -> {
+
+                    for(int j = 0; j < 5000; j ++) {
+
+                        String s = String.format("2017-11-%02d 10:%02d:%02d,%03d INFO",
+                                1 + thread, j / 60 % 60, j % 60, j % 1000);
+
+                        TimestampMatcher m = r.match(s, 0);
+
+                        long expected;
+
+                        synchronized (f) {
+
+                            expected = f.parse(s.substring(0, 23)).getTime();
+                        }
+
+                        assertEquals(s, expected, m.getTime());
+                    }
+
+                    return null;
+                }));
+            }
+
+            for(Future<?> future: futures) {
+
+                future.get();
+            }
+        }
+        finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.impl;
+
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampFormatTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // constructor -----------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_NullPattern() throws Exception {
+
+        try {
+
+            new TimestampFormat(null);
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null pattern"));
+        }
+    }
+
+    @Test
+    public void constructor_InvalidPattern() throws Exception {
+
+        try {
+
+            new TimestampFormat("HH:mm:ss,SSS bb");
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            // ok
+        }
+    }
+
+    // decode() --------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void decode() throws Exception {
+
+        TimestampFormat f = new TimestampFormat("HH:mm:ss,SSS");
+
+        assertEquals("HH:mm:ss,SSS", f.getPattern());
+        assertEquals(12, f.getWidth());
+        assertNotNull(f.getPrefixCache());
+
+        assertEquals(new SimpleDateFormat("HH:mm:ss,SSS").parse("10:00:00,001").getTime(), f.decode("x10:00:00,001", 1));
+    }
+
+    @Test
+    public void decode_ContentTooShort() throws Exception {
+
+        TimestampFormat f = new TimestampFormat("HH:mm:ss,SSS");
+
+        assertEquals(TimestampFormat.INVALID, f.decode("10:00:00,001", 1));
+        assertEquals(TimestampFormat.INVALID, f.decode("10:00", 0));
+    }
+
+    @Test
+    public void getPrefixCache_NoMilliseconds() throws Exception {
+
+        assertNull(new TimestampFormat("HH:mm:ss").getPrefixCache());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
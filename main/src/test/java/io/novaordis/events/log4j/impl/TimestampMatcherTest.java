@@ -20,6 +20,8 @@ import java.text.SimpleDateFormat;
 
 import org.junit.Test;
 
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -102,6 +104,85 @@ public class TimestampMatcherTest {
         assertEquals(s.indexOf('W'), i);
     }
 
+    @Test
+    public void find_DEFAULT() throws Exception {
+
+        String s = "2017-11-23 14:56:16,781 INFO  [org.jboss.modules] (main) JBoss Modules version 1.3.7";
+
+        TimestampMatcher t = TimestampMatcher.find(1, s);
+
+        assertNotNull(t);
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-23 14:56:16,781").getTime();
+        assertEquals(expected, t.getTime());
+        assertEquals(s.indexOf('I'), t.getIndexOfNextCharInLine());
+    }
+
+    @Test
+    public void find_ISO8601() throws Exception {
+
+        String s = "2017-11-23T14:56:16,781 INFO  [org.jboss.modules] (main) JBoss Modules version 1.3.7";
+
+        TimestampMatcher t = TimestampMatcher.find(1, s);
+
+        assertNotNull(t);
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-23 14:56:16,781").getTime();
+        assertEquals(expected, t.getTime());
+        assertEquals(s.indexOf('I'), t.getIndexOfNextCharInLine());
+    }
+
+    @Test
+    public void find_DATE() throws Exception {
+
+        String month = new SimpleDateFormat("MMM").format(new SimpleDateFormat("MM").parse("11"));
+
+        String s = "23 " + month + " 2017 14:56:16,781 INFO  [org.jboss.modules] (main) JBoss Modules";
+
+        TimestampMatcher t = TimestampMatcher.find(1, s);
+
+        assertNotNull(t);
+        long expected = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-23 14:56:16,781").getTime();
+        assertEquals(expected, t.getTime());
+        assertEquals(s.indexOf('I'), t.getIndexOfNextCharInLine());
+    }
+
+    @Test
+    public void find_TimestampNotFollowedBySpace() throws Exception {
+
+        assertNull(TimestampMatcher.find(1, "14:56:16,781INFO"));
+        assertNull(TimestampMatcher.find(1, "14:56:16,781"));
+    }
+
+    @Test
+    public void find_NoTimestamp() throws Exception {
+
+        assertNull(TimestampMatcher.find(1, ""));
+        assertNull(TimestampMatcher.find(1, "\tat a.b.C.m(C.java:10)"));
+        assertNull(TimestampMatcher.find(1, "2017-11-23 14:56"));
+    }
+
+    @Test
+    public void find_SameSecond_PrefixCacheHit() throws Exception {
+
+        TimestampMatcher t = TimestampMatcher.find(1, "14:57:01,001 INFO  [a] (main) one");
+
+        TimestampPrefixCache cache = t.getTimestampFormat().getPrefixCache();
+
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        TimestampMatcher t2 = TimestampMatcher.find(2, "14:57:01,999 INFO  [a] (main) two");
+
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(misses, cache.getMisses());
+        assertEquals(t.getTime() + 998, t2.getTime());
+        assertEquals(new SimpleDateFormat("HH:mm:ss,SSS").parse("14:57:01,999").getTime(), t2.getTime());
+
+        TimestampMatcher t3 = TimestampMatcher.find(3, "14:57:02,000 INFO  [a] (main) three");
+
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(t2.getTime() + 1, t3.getTime());
+    }
+
 
     // Package protected -----------------------------------------------------------------------------------------------
 
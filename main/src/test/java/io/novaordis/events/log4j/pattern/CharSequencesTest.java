@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/21/17
+ */
+public class CharSequencesTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void regionMatches() throws Exception {
+
+        for(CharSequence s: new CharSequence[] { "abc def", new StringBuilder("abc def") }) {
+
+            assertTrue(CharSequences.regionMatches(s, 0, 7, "abc"));
+            assertTrue(CharSequences.regionMatches(s, 4, 7, "def"));
+            assertFalse(CharSequences.regionMatches(s, 4, 6, "def"));
+            assertFalse(CharSequences.regionMatches(s, 1, 7, "abc"));
+            assertFalse(CharSequences.regionMatches(s, 5, 7, "def"));
+            assertFalse(CharSequences.regionMatches(s, -1, 7, "abc"));
+        }
+    }
+
+    @Test
+    public void indexOf() throws Exception {
+
+        for(CharSequence s: new CharSequence[] { "a: b: c", new StringBuilder("a: b: c") }) {
+
+            assertEquals(1, CharSequences.indexOf(s, ": ", 0, 7));
+            assertEquals(4, CharSequences.indexOf(s, ": ", 2, 7));
+            assertEquals(-1, CharSequences.indexOf(s, ": ", 2, 5));
+            assertEquals(4, CharSequences.indexOf(s, ": ", 2, 6));
+            assertEquals(-1, CharSequences.indexOf(s, "x", 0, 7));
+        }
+    }
+
+    @Test
+    public void toStringRegion() throws Exception {
+
+        assertEquals("b", CharSequences.toString("a: b: c", 3, 4));
+        assertEquals("b", CharSequences.toString(new StringBuilder("a: b: c"), 3, 4));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
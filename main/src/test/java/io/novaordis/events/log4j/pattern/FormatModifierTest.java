@@ -407,6 +407,88 @@ public class FormatModifierTest {
         assertEquals(18, ps.to());
     }
 
+    // unapply() with cursor ------------------------------------------------------------------------------------------
+
+    @Test
+    public void unapplyWithCursor_ArgumentShorterThanMinimumFieldWidth() throws Exception {
+
+        FormatModifier m = new FormatModifier("5");
+
+        try {
+
+            m.unapply("ABC", 0, 3, new LineCursor());
+
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("string argument shorter than minimum field width"));
+        }
+    }
+
+    @Test
+    public void unapplyWithCursor_Production() throws Exception {
+
+        FormatModifier m = new FormatModifier("-5");
+
+        String s = "09:01:56,538 INFO  [org.xnio] (MSC service thread 1-3) XNIO Version 3.0.16.GA-redhat-1";
+
+        LineCursor c = new LineCursor();
+
+        m.unapply(s, 13, 18, c);
+
+        assertEquals("INFO", s.substring(c.getValueFrom(), c.getValueTo()));
+        assertEquals(18, c.getPosition());
+    }
+
+    @Test
+    public void unapplyWithCursor_SameResultsAsStringUnapply() throws Exception {
+
+        String[] modifiers = { "5", "-5", ".3", ".-3", "4.6", "-4.6", "-4" };
+        String[] strings = { ">  ABC<", ">ABC  <", ">ABCDEFGH<", ">A B <", ">     <", ">ABC D   <" };
+
+        for(String modifier: modifiers) {
+
+            FormatModifier m = new FormatModifier(modifier);
+
+            for(String s: strings) {
+
+                int from = 1;
+                int to = s.length() - 1;
+
+                ProcessedString ps;
+
+                try {
+
+                    ps = m.unapply(s, from, to);
+                }
+                catch(IllegalArgumentException e) {
+
+                    try {
+
+                        m.unapply(s, from, to, new LineCursor());
+
+                        fail("should have thrown exception");
+                    }
+                    catch(IllegalArgumentException e2) {
+
+                        assertEquals(e.getMessage(), e2.getMessage());
+                    }
+
+                    continue;
+                }
+
+                LineCursor c = new LineCursor();
+
+                m.unapply(s, from, to, c);
+
+                assertEquals(ps.getProcessedString(), s.substring(c.getValueFrom(), c.getValueTo()));
+                assertEquals(ps.to(), c.getPosition());
+            }
+        }
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/20/17
+ */
+public class LayoutStepTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void compiledPatternLayout() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n");
+
+        LayoutStep[] steps = layout.getSteps();
+
+        assertEquals(layout.getPatternComponentCount(), steps.length);
+
+        LayoutStep s = steps[0];
+        assertEquals(LayoutStep.DATE, s.getType());
+        assertEquals(LayoutStep.DELIMITER, s.getAnchor());
+        assertEquals(" ", s.getDelimiter());
+        assertEquals(12, s.getFixedWidth());
+
+        s = steps[1];
+        assertEquals(LayoutStep.LITERAL, s.getType());
+        assertEquals(1, s.getFixedWidth());
+
+        s = steps[2];
+        assertEquals(LayoutStep.LEVEL, s.getType());
+        assertEquals(LayoutStep.DELIMITER, s.getAnchor());
+        assertEquals(" [", s.getDelimiter());
+        assertEquals(-1, s.getFixedWidth());
+
+        s = steps[4];
+        assertEquals(LayoutStep.LOGGER, s.getType());
+        assertEquals("] (", s.getDelimiter());
+
+        s = steps[6];
+        assertEquals(LayoutStep.THREAD_NAME, s.getType());
+
+        s = steps[8];
+        assertEquals(LayoutStep.MESSAGE, s.getType());
+        assertEquals(LayoutStep.NEXT_COMPONENT, s.getAnchor());
+        assertNull(s.getDelimiter());
+
+        s = steps[9];
+        assertEquals(LayoutStep.EXCEPTION, s.getType());
+        assertEquals(LayoutStep.END_OF_LINE, s.getAnchor());
+
+        s = steps[10];
+        assertEquals(LayoutStep.LINE_SEPARATOR, s.getType());
+        assertEquals(LayoutStep.END_OF_LINE, s.getAnchor());
+    }
+
+    @Test
+    public void locateEnd_Delimiter_FixedWidth() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{yyyy-MM-dd HH:mm:ss} %m");
+
+        LayoutStep s = layout.getSteps()[0];
+
+        //
+        // the date rendering contains the delimiter, but the fixed width places the end correctly
+        //
+
+        assertEquals(19, s.locateEnd("2017-11-20 10:11:12 message", 0));
+    }
+
+    @Test
+    public void locateEnd_Delimiter_NotFound() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%c] %m");
+
+        LayoutStep s = layout.getSteps()[0];
+
+        assertEquals(5, s.locateEnd("a.b.C", 0));
+    }
+
+    @Test
+    public void locateEnd_StartingAtTheEndOfTheLine() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%c] %m");
+
+        LayoutStep s = layout.getSteps()[0];
+
+        assertEquals(5, s.locateEnd("a.b.C", 5));
+    }
+
+    @Test
+    public void match_Literal() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("[%c]");
+
+        LayoutStep s = layout.getSteps()[0];
+
+        LineCursor c = new LineCursor();
+
+        s.match("[a.b.C]", c);
+
+        assertEquals(1, c.getPosition());
+        assertEquals("[", c.getValue());
+    }
+
+    @Test
+    public void match_Level_FormatModifier() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%-5p [%c]");
+
+        LayoutStep s = layout.getSteps()[0];
+
+        LineCursor c = new LineCursor();
+
+        s.match("INFO  [a.b.C]", c);
+
+        assertEquals(5, c.getPosition());
+        assertEquals(0, c.getValueFrom());
+        assertEquals(4, c.getValueTo());
+    }
+
+    @Test
+    public void isDeferrable() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss} %-5p [%c] (%t) %m%n");
+
+        LayoutStep[] steps = layout.getSteps();
+
+        assertFalse(steps[0].isDeferrable(false));
+        assertFalse(steps[1].isDeferrable(false));
+        assertFalse(steps[2].isDeferrable(false));
+        assertFalse(steps[3].isDeferrable(false));
+        assertTrue(steps[4].isDeferrable(false));
+        assertFalse(steps[5].isDeferrable(false));
+        assertTrue(steps[6].isDeferrable(false));
+        assertFalse(steps[7].isDeferrable(false));
+        assertTrue(steps[8].isDeferrable(false));
+        assertFalse(steps[9].isDeferrable(false));
+    }
+
+    @Test
+    public void isInternable() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss} %-5p [%c] (%t) %m%n");
+
+        LayoutStep[] steps = layout.getSteps();
+
+        assertFalse(steps[0].isInternable());
+        assertFalse(steps[2].isInternable());
+        assertTrue(steps[4].isInternable());
+        assertTrue(steps[6].isInternable());
+        assertFalse(steps[8].isInternable());
+    }
+
+    @Test
+    public void isDeferrable_InternedValuesAreNotDeferred() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("%d{HH:mm:ss} %-5p [%c] (%t) %m%n");
+
+        LayoutStep[] steps = layout.getSteps();
+
+        assertFalse(steps[4].isDeferrable(true));
+        assertFalse(steps[6].isDeferrable(true));
+        assertTrue(steps[8].isDeferrable(true));
+    }
+
+    @Test
+    public void locate_FormatModifier() throws Exception {
+
+        Log4jPatternLayout layout = new Log4jPatternLayout("[%-8c] %m");
+
+        LayoutStep s = layout.getSteps()[1];
+
+        LineCursor c = new LineCursor();
+        c.setPosition(1);
+
+        s.locate("[a.b.C   ] blah", c);
+
+        assertEquals(9, c.getPosition());
+        assertEquals(1, c.getValueFrom());
+        assertEquals(6, c.getValueTo());
+        assertNull(c.getValue());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
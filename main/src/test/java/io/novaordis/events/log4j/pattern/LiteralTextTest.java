@@ -201,6 +201,55 @@ public class LiteralTextTest extends ConversionPatternComponentTest {
         assertNull(i);
     }
 
+    @Test
+    public void find_Region() throws Exception {
+
+        LiteralText lt = new LiteralText("] (");
+
+        StringBuilder sb = new StringBuilder("[a.b.C] (main) [x] (y)");
+
+        assertEquals(6, lt.find(sb, 0, sb.length()));
+        assertEquals(17, lt.find(sb, 7, sb.length()));
+        assertEquals(-1, lt.find(sb, 7, 19));
+    }
+
+    // parseLogContent() with cursor -----------------------------------------------------------------------------------
+
+    @Test
+    public void parseLogContent_Cursor() throws Exception {
+
+        LiteralText lt = new LiteralText("] (");
+
+        StringBuilder sb = new StringBuilder("[a.b.C] (main)");
+
+        LineCursor c = new LineCursor();
+
+        lt.parseLogContent(sb, 6, sb.length(), c);
+
+        assertEquals(9, c.getPosition());
+        assertEquals(6, c.getValueFrom());
+        assertEquals(9, c.getValueTo());
+        assertEquals("] (", c.getValue());
+    }
+
+    @Test
+    public void parseLogContent_Cursor_RegionShorterThanLiteral() throws Exception {
+
+        LiteralText lt = new LiteralText("] (");
+
+        try {
+
+            lt.parseLogContent(new StringBuilder("[a.b.C] (main)"), 6, 8, new LineCursor());
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertEquals("pattern element's literal \"] (\" does not match the parsed string literal \"] \"", msg);
+        }
+    }
+
     // injectIntoEvent() -----------------------------------------------------------------------------------------------
 
     @Test
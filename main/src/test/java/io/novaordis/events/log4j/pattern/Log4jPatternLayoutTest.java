@@ -21,6 +21,7 @@ import java.util.Iterator;
 
 import org.junit.Test;
 
+import io.novaordis.events.log4j.impl.EventFilter;
 import io.novaordis.events.log4j.impl.Log4jEvent;
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
 import io.novaordis.events.log4j.pattern.convspec.Date;
@@ -622,6 +623,342 @@ public class Log4jPatternLayoutTest {
         assertEquals(Log4jEventImpl.MESSAGE_APPEND_MODE, e.getAppendMode());
     }
 
+    @Test
+    public void parse_DatePatternContainsSpaces() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{yyyy-MM-dd HH:mm:ss,SSS} %-5p [%c] %m%n");
+
+        String line = "2017-11-20 10:11:12,131 WARN  [org.example.A] something happened";
+
+        Log4jEventImpl e = patternLayout.parse(1L, line);
+
+        assertEquals(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").parse("2017-11-20 10:11:12,131").getTime(),
+                e.getTime().longValue());
+        assertEquals(Log4jLevel.WARN, e.getLevel());
+        assertEquals("org.example.A", e.getLogger());
+        assertEquals("something happened", e.getMessage());
+    }
+
+    @Test
+    public void parse_UNIX() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{UNIX} %-5p [%c] %m%n");
+
+        Log4jEventImpl e = patternLayout.parse(1L, "1511427715 WARN  [org.example.A] something happened");
+
+        assertEquals(1511427715000L, e.getTime().longValue());
+        assertEquals(Log4jLevel.WARN, e.getLevel());
+        assertEquals("org.example.A", e.getLogger());
+        assertEquals("something happened", e.getMessage());
+    }
+
+    @Test
+    public void parse_UNIX_MILLIS() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{UNIX_MILLIS} %-5p [%c] %m%n");
+
+        Log4jEventImpl e = patternLayout.parse(1L, "1511427715011 INFO  [org.example.A] something happened");
+
+        assertEquals(1511427715011L, e.getTime().longValue());
+        assertEquals(Log4jLevel.INFO, e.getLevel());
+    }
+
+    @Test
+    public void parse_LineShorterThanLiteral() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout(">>> %c");
+
+        try {
+
+            patternLayout.parse(1L, ">>");
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("pattern element's literal \">>> \" does not match the parsed string literal \">>\""));
+        }
+    }
+
+    @Test
+    public void parse_SameLayoutInstance_ManyLines() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n");
+
+        String[] lines = new String[] {
+                "09:01:55,011 INFO  [org.jboss.modules] (main) JBoss Modules version 1.3.8.Final-redhat-1",
+                "09:01:56,538 DEBUG [org.xnio] (MSC service thread 1-3) XNIO Version 3.0.16.GA-redhat-1",
+                "18:14:06,481 ERROR [a.b.C] (http-127.0.0.1:8080-1) failure: java.lang.Exception: SYNTHETIC",
+        };
+
+        Log4jEventImpl e = patternLayout.parse(1L, lines[0]);
+        assertEquals(Log4jLevel.INFO, e.getLevel());
+        assertEquals("main", e.getThreadName());
+        assertEquals("JBoss Modules version 1.3.8.Final-redhat-1", e.getMessage());
+
+        e = patternLayout.parse(2L, lines[1]);
+        assertEquals(Log4jLevel.DEBUG, e.getLevel());
+        assertEquals("org.xnio", e.getLogger());
+        assertEquals("MSC service thread 1-3", e.getThreadName());
+        assertEquals("XNIO Version 3.0.16.GA-redhat-1", e.getMessage());
+        assertNull(e.getExceptionRendering());
+
+        e = patternLayout.parse(3L, lines[2]);
+        assertEquals(Log4jLevel.ERROR, e.getLevel());
+        assertEquals("failure", e.getMessage());
+        assertEquals(": java.lang.Exception: SYNTHETIC", e.getExceptionRendering());
+        assertEquals(3L, e.getLineNumber().longValue());
+    }
+
+    @Test
+    public void parse_CharSequence() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n");
+
+        StringBuilder line = new StringBuilder(
+                "18:14:06,481 ERROR [a.b.C] (http-127.0.0.1:8080-1) failure: java.lang.Exception: SYNTHETIC");
+
+        Log4jEventImpl e = patternLayout.parse(3L, line);
+
+        assertEquals(new SimpleDateFormat("HH:mm:ss,SSS").parse("18:14:06,481").getTime(), e.getTime().longValue());
+        assertEquals(Log4jLevel.ERROR, e.getLevel());
+        assertEquals("a.b.C", e.getLogger());
+        assertEquals("http-127.0.0.1:8080-1", e.getThreadName());
+        assertEquals("failure", e.getMessage());
+        assertEquals(": java.lang.Exception: SYNTHETIC", e.getExceptionRendering());
+        assertEquals(line.toString(), e.getRawRepresentation());
+    }
+
+    // lazy materialization --------------------------------------------------------------------------------------------
+
+    @Test
+    public void lazyMaterialization_DisabledByDefault() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        assertFalse(patternLayout.isLazyMaterialization());
+    }
+
+    @Test
+    public void parse_LazyMaterialization() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%-6t) %m%n");
+
+        patternLayout.setLazyMaterialization(true);
+
+        assertTrue(patternLayout.isLazyMaterialization());
+
+        String line = "18:14:06,481 ERROR [a.b.C] (main  ) something went wrong";
+
+        Log4jEventImpl e = patternLayout.parse(7L, line);
+
+        assertEquals(7L, e.getLineNumber().longValue());
+        assertEquals(new SimpleDateFormat("HH:mm:ss,SSS").parse("18:14:06,481").getTime(), e.getTime().longValue());
+        assertEquals(Log4jLevel.ERROR, e.getLevel());
+        assertEquals(Log4jEventImpl.MESSAGE_APPEND_MODE, e.getAppendMode());
+        assertEquals(line, e.getRawRepresentation());
+
+        String logger = e.getLogger();
+        assertEquals("a.b.C", logger);
+        assertEquals("main", e.getThreadName());
+        assertEquals("something went wrong", e.getMessage());
+
+        //
+        // materialized once
+        //
+
+        assertTrue(logger == e.getLogger());
+    }
+
+    @Test
+    public void parse_LazyMaterialization_MultiLineMessage() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        patternLayout.setLazyMaterialization(true);
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 INFO  [a.b.C] (main) line 1");
+
+        e.appendLine("line 2");
+        e.appendLine("");
+        e.appendLine("line 4");
+
+        assertEquals("line 1\nline 2\n\nline 4", e.getMessage());
+
+        e.appendLine("line 5");
+
+        assertEquals("line 1\nline 2\n\nline 4\nline 5", e.getMessage());
+        assertEquals("main", e.getThreadName());
+        assertEquals(
+                "18:14:06,481 INFO  [a.b.C] (main) line 1\nline 2\n\nline 4\nline 5", e.getRawRepresentation());
+    }
+
+    @Test
+    public void parse_LazyMaterialization_WildFlyMessageAndException() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n");
+
+        patternLayout.setLazyMaterialization(true);
+
+        Log4jEventImpl e = patternLayout.parse(
+                3L, "18:14:06,481 ERROR [a.b.C] (http-127.0.0.1:8080-1) failure: java.lang.Exception: SYNTHETIC");
+
+        e.appendLine("\tat a.b.C.m(C.java:10)");
+
+        assertEquals("a.b.C", e.getLogger());
+        assertEquals("http-127.0.0.1:8080-1", e.getThreadName());
+        assertEquals("failure", e.getMessage());
+        assertEquals(": java.lang.Exception: SYNTHETIC\n\tat a.b.C.m(C.java:10)", e.getExceptionRendering());
+    }
+
+    // interning -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_LoggerAndThreadNamesAreInterned() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        StringDictionary d = new StringDictionary();
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 INFO  [a.b.C] (http-127.0.0.1:8080-1) one", null, d);
+        Log4jEventImpl e2 = patternLayout.parse(2L, "18:14:06,482 ERROR [a.b.C] (http-127.0.0.1:8080-1) two", null, d);
+
+        assertEquals("a.b.C", e.getLogger());
+        assertTrue(e.getLogger() == e2.getLogger());
+        assertEquals("http-127.0.0.1:8080-1", e.getThreadName());
+        assertTrue(e.getThreadName() == e2.getThreadName());
+
+        //
+        // the messages are not interned
+        //
+
+        assertEquals(2, d.size());
+    }
+
+    @Test
+    public void parse_LoggerAndThreadNamesAreInterned_LazyMaterialization() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%-6t) %m%n");
+
+        patternLayout.setLazyMaterialization(true);
+
+        StringDictionary d = new StringDictionary();
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 INFO  [a.b.C] (main  ) one", null, d);
+        Log4jEventImpl e2 = patternLayout.parse(2L, "18:14:06,482 ERROR [a.b.C] (main  ) two", null, d);
+
+        assertTrue(e.getLogger() == e2.getLogger());
+        assertEquals("main", e.getThreadName());
+        assertTrue(e.getThreadName() == e2.getThreadName());
+        assertEquals("two", e2.getMessage());
+    }
+
+    @Test
+    public void parse_NoInterning() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 INFO  [a.b.C] (main) one", null, null);
+        Log4jEventImpl e2 = patternLayout.parse(2L, "18:14:06,482 ERROR [a.b.C] (main) two", null, null);
+
+        assertEquals(e.getLogger(), e2.getLogger());
+        assertFalse(e.getLogger() == e2.getLogger());
+    }
+
+    @Test
+    public void parse_NoDictionary_NoInterning() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        //
+        // the pattern layout does not own a dictionary, the values are only interned with the caller's
+        //
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 INFO  [a.b.C] (main) one");
+        Log4jEventImpl e2 = patternLayout.parse(2L, "18:14:06,482 ERROR [a.b.C] (main) two");
+
+        assertEquals(e.getThreadName(), e2.getThreadName());
+        assertFalse(e.getThreadName() == e2.getThreadName());
+    }
+
+    // filter ----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void parse_Filter_Accepted() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        EventFilter f = new EventFilter();
+        f.setLevels(Log4jLevel.ERROR);
+        f.setLoggerPrefix("a.b");
+        f.setThreadName("main");
+
+        Log4jEventImpl e = patternLayout.parse(1L, "18:14:06,481 ERROR [a.b.C] (main) blah", f);
+
+        assertEquals("a.b.C", e.getLogger());
+        assertEquals("blah", e.getMessage());
+    }
+
+    @Test
+    public void parse_Filter_RejectedEarly() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        EventFilter f = new EventFilter();
+        f.setLevels(Log4jLevel.ERROR);
+
+        //
+        // the rest of the line is not even looked at, so it does not matter that it does not match the pattern
+        //
+
+        assertNull(patternLayout.parse(1L, "18:14:06,481 INFO  this does not match the layout", f));
+
+        try {
+
+            patternLayout.parse(1L, "18:14:06,481 INFO  this does not match the layout");
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            // expected
+        }
+    }
+
+    @Test
+    public void parse_Filter_Logger_LazyMaterialization() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %m%n");
+
+        patternLayout.setLazyMaterialization(true);
+
+        EventFilter f = new EventFilter();
+        f.setLoggerPrefix("a.b");
+
+        assertNull(patternLayout.parse(1L, "18:14:06,481 ERROR [a.x.C] (main) blah", f));
+        assertEquals("a.b.C", patternLayout.parse(1L, "18:14:06,481 ERROR [a.b.C] (main) blah", f).getLogger());
+    }
+
+    @Test
+    public void parse_Filter_ComponentNotInLayout() throws Exception {
+
+        Log4jPatternLayout patternLayout = new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p %m%n");
+
+        EventFilter f = new EventFilter();
+        f.setThreadName("main");
+
+        //
+        // the event does not carry a thread name, so it cannot match
+        //
+
+        assertNull(patternLayout.parse(1L, "18:14:06,481 ERROR blah", f));
+
+        f.setThreadName(null);
+        f.setLevels(Log4jLevel.ERROR);
+
+        assertEquals("blah", patternLayout.parse(1L, "18:14:06,481 ERROR blah", f).getMessage());
+    }
+
     // Package protected -----------------------------------------------------------------------------------------------
 
     // Protected -------------------------------------------------------------------------------------------------------
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class StringDictionaryTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_InvalidCapacity() throws Exception {
+
+        try {
+
+            new StringDictionary(0);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("invalid capacity 0"));
+        }
+    }
+
+    @Test
+    public void hash() throws Exception {
+
+        String s = "xx[org.apache.catalina.core.ContainerBase.[jboss.web]]yy";
+
+        assertEquals("org.apache.catalina.core.ContainerBase.[jboss.web]".hashCode(),
+                StringDictionary.hash(new StringBuilder(s), 3, s.length() - 3));
+        assertEquals("".hashCode(), StringDictionary.hash(s, 2, 2));
+    }
+
+    @Test
+    public void intern() throws Exception {
+
+        StringDictionary d = new StringDictionary();
+
+        assertEquals(StringDictionary.DEFAULT_CAPACITY, d.getCapacity());
+
+        String line = "18:14:06,481 INFO  [a.b.C] (http-10.76.157.141:8443-52) something";
+        String line2 = "18:14:07,001 ERROR [a.b.C] (http-10.76.157.141:8443-52) something else";
+
+        String logger = d.intern(line, 20, 25);
+        String thread = d.intern(new StringBuilder(line), 28, 54);
+
+        assertEquals("a.b.C", logger);
+        assertEquals("http-10.76.157.141:8443-52", thread);
+        assertEquals(2, d.size());
+        assertEquals(0L, d.getHits());
+        assertEquals(2L, d.getMisses());
+
+        //
+        // same instances, no matter where they come from
+        //
+
+        assertTrue(logger == d.intern(line2, 20, 25));
+        assertTrue(thread == d.intern(new StringBuilder(line2), 28, 54));
+        assertTrue(logger == d.intern(new String("a.b.C")));
+
+        assertEquals(2, d.size());
+        assertEquals(3L, d.getHits());
+        assertEquals(2L, d.getMisses());
+    }
+
+    @Test
+    public void intern_Null() throws Exception {
+
+        assertNull(new StringDictionary().intern(null));
+    }
+
+    @Test
+    public void intern_Empty() throws Exception {
+
+        StringDictionary d = new StringDictionary();
+
+        String s = d.intern("abc", 1, 1);
+
+        assertEquals("", s);
+        assertTrue(s == d.intern("xyz", 2, 2));
+    }
+
+    @Test
+    public void intern_HashCollisions() throws Exception {
+
+        StringDictionary d = new StringDictionary(16);
+
+        //
+        // "Aa" and "BB" have the same hash code
+        //
+
+        String s = d.intern("Aa");
+        String s2 = d.intern("BB");
+
+        assertEquals("Aa", s);
+        assertEquals("BB", s2);
+        assertTrue(s == d.intern(new String("Aa")));
+        assertTrue(s2 == d.intern(new String("BB")));
+        assertEquals(2, d.size());
+    }
+
+    @Test
+    public void intern_Bounded() throws Exception {
+
+        StringDictionary d = new StringDictionary(3);
+
+        String a = d.intern("a");
+        d.intern("b");
+        d.intern("c");
+
+        assertEquals(3, d.size());
+
+        //
+        // the dictionary is full, new values are returned but not kept
+        //
+
+        String x = d.intern(new String("x"));
+        String x2 = d.intern(new String("x"));
+
+        assertEquals("x", x);
+        assertEquals("x", x2);
+        assertFalse(x == x2);
+        assertEquals(3, d.size());
+
+        //
+        // the canonical instances are still served
+        //
+
+        assertTrue(a == d.intern(new String("a")));
+    }
+
+    @Test
+    public void intern_ManyValues() throws Exception {
+
+        StringDictionary d = new StringDictionary(1000);
+
+        String[] canonical = new String[1000];
+
+        for(int i = 0; i < 1000; i ++) {
+
+            canonical[i] = d.intern("thread-" + i);
+        }
+
+        assertEquals(1000, d.size());
+
+        for(int i = 0; i < 1000; i ++) {
+
+            assertTrue(canonical[i] == d.intern("thread-" + i));
+        }
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class TimestampPrefixCacheTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // milliseconds() --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void milliseconds() throws Exception {
+
+        assertEquals(11, TimestampPrefixCache.milliseconds("09:01:55,011", 9));
+        assertEquals(999, TimestampPrefixCache.milliseconds("999", 0));
+        assertEquals(-1, TimestampPrefixCache.milliseconds("09:01:55,0a1", 9));
+    }
+
+    // lookup() --------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void lookup_Empty() throws Exception {
+
+        TimestampPrefixCache c = new TimestampPrefixCache();
+
+        assertEquals(TimestampPrefixCache.MISS, c.lookup("09:01:55,011", 0, 8));
+        assertEquals(0L, c.getHits());
+        assertEquals(1L, c.getMisses());
+    }
+
+    @Test
+    public void lookup() throws Exception {
+
+        TimestampPrefixCache c = new TimestampPrefixCache();
+
+        c.store("xx 09:01:55,011", 3, 11, 7L);
+
+        assertEquals(7L, c.lookup("09:01:55,012", 0, 8));
+        assertEquals(7L, c.lookup(new StringBuilder("yyyy 09:01:55,999"), 5, 13));
+        assertEquals(TimestampPrefixCache.MISS, c.lookup("09:01:56,012", 0, 8));
+
+        //
+        // same content, different length
+        //
+
+        assertEquals(TimestampPrefixCache.MISS, c.lookup("09:01:55,012", 0, 9));
+
+        assertEquals(2L, c.getHits());
+        assertEquals(2L, c.getMisses());
+
+        c.store("09:01:56,012", 0, 8, 8L);
+
+        assertEquals(8L, c.lookup("09:01:56,013", 0, 8));
+        assertEquals(TimestampPrefixCache.MISS, c.lookup("09:01:55,013", 0, 8));
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.pattern.convspec;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class DateDecoderTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    // compile() -------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void compile_NamedFormats() throws Exception {
+
+        String[] patterns = {
+                Date.ABSOLUTE_PATTERN, Date.DEFAULT_PATTERN, Date.ISO8601_PATTERN, Date.ISO8601_BASIC_PATTERN,
+                Date.COMPACT_PATTERN, Date.DATE_PATTERN
+        };
+
+        for(String p: patterns) {
+
+            DateDecoder d = DateDecoder.compile(new SimpleDateFormat(p, Locale.US));
+
+            assertNotNull(p, d);
+            assertEquals(p, DateDecoder.renderingWidth(p), d.getWidth());
+        }
+    }
+
+    @Test
+    public void compile_VariableWidthFields() throws Exception {
+
+        assertNull(DateDecoder.compile(new SimpleDateFormat("y-MM-dd")));
+        assertNull(DateDecoder.compile(new SimpleDateFormat("MMMM dd")));
+        assertNull(DateDecoder.compile(new SimpleDateFormat("HH:mm:ss a")));
+        assertNull(DateDecoder.compile(new SimpleDateFormat("H:mm")));
+    }
+
+    // renderingWidth() ------------------------------------------------------------------------------------------------
+
+    @Test
+    public void renderingWidth() throws Exception {
+
+        assertEquals(12, DateDecoder.renderingWidth("HH:mm:ss,SSS"));
+        assertEquals(23, DateDecoder.renderingWidth("yyyy-MM-dd'T'HH:mm:ss,SSS"));
+        assertEquals(8, DateDecoder.renderingWidth("HH 'at' mm"));
+        assertEquals(3, DateDecoder.renderingWidth("H''m"));
+    }
+
+    // epochDay() ------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void epochDay() throws Exception {
+
+        assertEquals(0L, DateDecoder.epochDay(1970, 1, 1));
+        assertEquals(-1L, DateDecoder.epochDay(1969, 12, 31));
+        assertEquals(11016L, DateDecoder.epochDay(2000, 2, 29));
+        assertEquals(17493L, DateDecoder.epochDay(2017, 11, 23));
+    }
+
+    // canStartWith() --------------------------------------------------------------------------------------------------
+
+    @Test
+    public void canStartWith() throws Exception {
+
+        DateDecoder d = DateDecoder.compile(new SimpleDateFormat(Date.DEFAULT_PATTERN));
+
+        assertTrue(d.canStartWith('0'));
+        assertTrue(d.canStartWith('9'));
+        assertFalse(d.canStartWith('['));
+        assertFalse(d.canStartWith('N'));
+    }
+
+    @Test
+    public void canStartWith_Literal() throws Exception {
+
+        DateDecoder d = DateDecoder.compile(new SimpleDateFormat("[HH:mm:ss]"));
+
+        assertTrue(d.canStartWith('['));
+        assertFalse(d.canStartWith('1'));
+    }
+
+    @Test
+    public void canStartWith_MonthName() throws Exception {
+
+        DateDecoder d = DateDecoder.compile(new SimpleDateFormat("MMM dd HH:mm:ss", Locale.US));
+
+        assertTrue(d.canStartWith('N'));
+        assertTrue(d.canStartWith('J'));
+        assertFalse(d.canStartWith('X'));
+        assertFalse(d.canStartWith('1'));
+    }
+
+    // decode() --------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void decode_InvalidRenderings() throws Exception {
+
+        DateDecoder d = DateDecoder.compile(new SimpleDateFormat(Date.DEFAULT_PATTERN));
+
+        assertEquals(DateDecoder.INVALID, d.decode("2017-11-23 09:01:55,01", 0, 22));
+        assertEquals(DateDecoder.INVALID, d.decode("2017-11-23T09:01:55,011", 0, 23));
+        assertEquals(DateDecoder.INVALID, d.decode("2017-11-2a 09:01:55,011", 0, 23));
+        assertEquals(DateDecoder.INVALID, d.decode("2017-13-23 09:01:55,011", 0, 23));
+        assertEquals(DateDecoder.INVALID, d.decode("2017-02-29 09:01:55,011", 0, 23));
+        assertEquals(DateDecoder.INVALID, d.decode("2017-11-23 09:60:55,011", 0, 23));
+    }
+
+    @Test
+    public void decode_MonthName() throws Exception {
+
+        SimpleDateFormat f = new SimpleDateFormat(Date.DATE_PATTERN, Locale.US);
+
+        DateDecoder d = DateDecoder.compile(f);
+
+        String s = "xx 23 Nov 2017 09:01:55,011 xx";
+
+        assertEquals(f.parse("23 Nov 2017 09:01:55,011").getTime(), d.decode(s, 3, 27));
+        assertEquals(DateDecoder.INVALID, d.decode("23 Nox 2017 09:01:55,011", 0, 24));
+    }
+
+    @Test
+    public void decode_SameResultAsSimpleDateFormat_DaylightSavingTransitions() throws Exception {
+
+        for(String tz: new String[] { "UTC", "America/New_York", "Europe/Bucharest", "Australia/Lord_Howe" }) {
+
+            SimpleDateFormat f = new SimpleDateFormat(Date.DEFAULT_PATTERN);
+            f.setTimeZone(TimeZone.getTimeZone(tz));
+
+            DateDecoder d = DateDecoder.compile(f);
+
+            //
+            // render in UTC, so we also get local times that fall in the daylight saving gaps and overlaps
+            //
+
+            SimpleDateFormat renderer = new SimpleDateFormat(Date.DEFAULT_PATTERN);
+            renderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+            Random r = new Random(1);
+
+            for(int i = 0; i < 20000; i ++) {
+
+                long t = 1483228800000L + (long)(r.nextDouble() * 3.0e10);
+
+                //
+                // bunch up around the half hour boundaries, where the transitions happen
+                //
+
+                t = t - t % 1800000L + r.nextInt(7200000) - 3600000;
+
+                String s = renderer.format(new java.util.Date(t));
+
+                assertEquals(tz + ": " + s, f.parse(s).getTime(), d.decode(s, 0, s.length()));
+            }
+        }
+    }
+
+    @Test
+    public void decode_TwoDigitYear_SameResultAsSimpleDateFormat() throws Exception {
+
+        SimpleDateFormat f = new SimpleDateFormat("MM/dd/yy HH:mm:ss,SSS");
+
+        DateDecoder d = DateDecoder.compile(f);
+
+        assertNotNull(d);
+
+        //
+        // walk across the two digit year start, which is where the century switches
+        //
+
+        long start = f.get2DigitYearStart().getTime();
+
+        SimpleDateFormat renderer = new SimpleDateFormat("MM/dd/yy HH:mm:ss,SSS");
+
+        for(long t = start - 400L * 86400000L; t < start + 400L * 86400000L; t += 3600000L + 17L) {
+
+            String s = renderer.format(new java.util.Date(t));
+
+            assertEquals(s, f.parse(s).getTime(), d.decode(s, 0, s.length()));
+        }
+
+        for(int yy = 0; yy < 100; yy ++) {
+
+            String s = String.format("07/18/%02d 12:57:28,348", yy);
+
+            assertEquals(s, f.parse(s).getTime(), d.decode(s, 0, s.length()));
+        }
+    }
+
+    @Test
+    public void decode_PrefixCache() throws Exception {
+
+        SimpleDateFormat f = new SimpleDateFormat(Date.DEFAULT_PATTERN);
+
+        DateDecoder d = DateDecoder.compile(f);
+
+        TimestampPrefixCache cache = d.getPrefixCache();
+
+        assertNotNull(cache);
+
+        String[] samples = {
+                "2017-11-23 09:01:55,011",
+                "2017-11-23 09:01:55,012",
+                "2017-11-23 09:01:55,999",
+                "2017-11-23 09:01:56,000",
+                "2017-11-23 09:01:56,001",
+        };
+
+        for(String s: samples) {
+
+            assertEquals(s, f.parse(s).getTime(), d.decode(s, 0, s.length()));
+        }
+
+        assertEquals(3L, cache.getHits());
+        assertEquals(2L, cache.getMisses());
+
+        //
+        // a cached prefix does not make invalid milliseconds valid
+        //
+
+        assertEquals(DateDecoder.INVALID, d.decode("2017-11-23 09:01:56,0x1", 0, 23));
+    }
+
+    @Test
+    public void decode_MillisecondsNotTrailing_NoPrefixCache() throws Exception {
+
+        DateDecoder d = DateDecoder.compile(new SimpleDateFormat("SSS HH:mm:ss"));
+
+        assertNotNull(d);
+        assertNull(d.getPrefixCache());
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}
@@ -24,12 +24,18 @@ import org.junit.Test;
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
 import io.novaordis.events.log4j.pattern.AddResult;
 import io.novaordis.events.log4j.pattern.FormatModifier;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.LiteralText;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
+import io.novaordis.events.log4j.pattern.TimestampPrefixCache;
+import io.novaordis.utilities.time.Timestamp;
+import io.novaordis.utilities.time.TimestampImpl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -362,23 +368,12 @@ public class DateTest extends ConversionSpecifierTest {
             assertEquals(AddResult.ACCEPTED, d.add(s.charAt(i)));
         }
 
-//        assertEquals(AddResult.LAST, d.add(s.charAt(i)));
-//
-//        assertEquals("%d" + s, d.getLiteral());
-//
-//        // TODO: test format
-
-        try {
-
-            d.add(s.charAt(i));
-
-            fail("should have thrown exception");
-        }
-        catch(RuntimeException e) {
+        assertEquals(AddResult.LAST, d.add(s.charAt(i)));
 
-            String msg = e.getMessage();
-            assertEquals("Support for UNIX pattern NOT YET IMPLEMENTED", msg);
-        }
+        assertEquals("%d" + s, d.getLiteral());
+        assertNull(d.getSimpleDateFormat());
+        assertEquals(-1, d.getRenderingWidth());
+        assertFalse(d.isFixedWidthDecoded());
     }
 
     @Test
@@ -394,23 +389,12 @@ public class DateTest extends ConversionSpecifierTest {
             assertEquals(AddResult.ACCEPTED, d.add(s.charAt(i)));
         }
 
-//        assertEquals(AddResult.LAST, d.add(s.charAt(i)));
-//
-//        assertEquals("%d" + s, d.getLiteral());
-//
-//        // TODO: test format
-
-        try {
-
-            d.add(s.charAt(i));
-
-            fail("should have thrown exception");
-        }
-        catch(RuntimeException e) {
+        assertEquals(AddResult.LAST, d.add(s.charAt(i)));
 
-            String msg = e.getMessage();
-            assertEquals("Support for UNIX_MILLIS pattern NOT YET IMPLEMENTED", msg);
-        }
+        assertEquals("%d" + s, d.getLiteral());
+        assertNull(d.getSimpleDateFormat());
+        assertEquals(-1, d.getRenderingWidth());
+        assertFalse(d.isFixedWidthDecoded());
     }
 
     // getLiteral() ----------------------------------------------------------------------------------------------------
@@ -457,6 +441,253 @@ public class DateTest extends ConversionSpecifierTest {
         assertEquals("09:01:55,011", line.substring(p.from(), p.to()));
     }
 
+    @Test
+    public void parse_Region() throws Exception {
+
+        Date cs = new Date("d{HH:mm:ss,SSS}");
+
+        assertEquals(12, cs.getRenderingWidth());
+
+        StringBuilder sb = new StringBuilder("something 09:01:55,011 INFO");
+
+        java.util.Date d = cs.parse(sb, 10, 22);
+
+        assertEquals("09:01:55,011", new SimpleDateFormat("HH:mm:ss,SSS").format(d));
+    }
+
+    @Test
+    public void parse_Region_DigitsFollowTheRendering() throws Exception {
+
+        Date cs = new Date("d{HH:mm:ss,SSS}");
+
+        String line = "09:01:55,0115555";
+
+        java.util.Date d = cs.parse(line, 0, 12);
+
+        assertEquals("09:01:55,011", new SimpleDateFormat("HH:mm:ss,SSS").format(d));
+    }
+
+    @Test
+    public void parseLogContent_Cursor() throws Exception {
+
+        Date cs = new Date("d{HH:mm:ss,SSS}");
+
+        String line = "something 09:01:55,011 INFO";
+
+        LineCursor c = new LineCursor();
+
+        cs.parseLogContent(line, 10, 22, c);
+
+        assertEquals(22, c.getPosition());
+
+        Timestamp t = (Timestamp)c.getValue();
+
+        assertEquals("09:01:55,011", new SimpleDateFormat("HH:mm:ss,SSS").format(new java.util.Date(t.getTime())));
+    }
+
+    @Test
+    public void parse_ISO8601_QuotedLiteralDoesNotCountTowardsWidth() throws Exception {
+
+        Date cs = new Date("d{ISO8601}");
+
+        assertEquals(23, cs.getRenderingWidth());
+        assertTrue(cs.isFixedWidthDecoded());
+
+        String line = "2017-11-23T09:01:55,011 INFO";
+
+        java.util.Date d = cs.parse(line, 0, 23);
+
+        assertEquals("2017-11-23 09:01:55,011", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS").format(d));
+    }
+
+    @Test
+    public void parse_FixedWidthDecoder_SameResultAsSimpleDateFormat() throws Exception {
+
+        String[][] samples = {
+                { "ABSOLUTE", "09:01:55,011" },
+                { "DEFAULT", "2017-11-23 09:01:55,011" },
+                { "ISO8601", "2017-02-28T23:59:59,999" },
+                { "ISO8601_BASIC", "20160229T000000,000" },
+                { "COMPACT", "20171123090155011" },
+                { "DATE", "23 Nov 2017 09:01:55,011" },
+        };
+
+        for(String[] sample: samples) {
+
+            Date cs = new Date("d{" + sample[0] + "}");
+
+            assertTrue(cs.isFixedWidthDecoded());
+
+            java.util.Date expected = cs.getSimpleDateFormat().parse(sample[1]);
+
+            assertEquals(expected, cs.parse(sample[1], 0, sample[1].length()));
+        }
+    }
+
+    @Test
+    public void parse_FixedWidthDecoder_FallsBackToSimpleDateFormatForLenientRenderings() throws Exception {
+
+        Date cs = new Date("d{HH:mm:ss,SSS}");
+
+        assertTrue(cs.isFixedWidthDecoded());
+
+        //
+        // the decoder does not accept the hour, but a lenient SimpleDateFormat rolls it over
+        //
+
+        String s = "25:01:55,011";
+
+        java.util.Date d = cs.parse(s, 0, s.length());
+
+        assertEquals(cs.getSimpleDateFormat().parse(s), d);
+    }
+
+    @Test
+    public void parse_ConsecutiveTimestampsFromTheSameSecond_PrefixCacheHits() throws Exception {
+
+        Date cs = new Date("d{DEFAULT}");
+
+        TimestampPrefixCache cache = cs.getPrefixCache();
+
+        String line = "2017-11-23 09:01:55,011 2017-11-23 09:01:55,345";
+
+        java.util.Date d = cs.parse(line, 0, 23);
+        java.util.Date d2 = cs.parse(line, 24, 47);
+
+        assertEquals(334L, d2.getTime() - d.getTime());
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getMisses());
+    }
+
+    @Test
+    public void parse_VariableWidthPattern_NotFixedWidthDecoded() throws Exception {
+
+        Date cs = new Date("d{MMMM d yyyy}");
+
+        assertFalse(cs.isFixedWidthDecoded());
+    }
+
+    @Test
+    public void parse_UNIX() throws Exception {
+
+        Date cs = new Date("d{UNIX}");
+
+        String line = "x 1511427715 INFO";
+
+        assertEquals(1511427715000L, cs.parse(line, 2, 12).getTime());
+    }
+
+    @Test
+    public void parse_UNIX_MILLIS() throws Exception {
+
+        Date cs = new Date("d{UNIX_MILLIS}");
+
+        StringBuilder line = new StringBuilder("x 1511427715011 INFO");
+
+        assertEquals(1511427715011L, cs.parse(line, 2, 15).getTime());
+    }
+
+    @Test
+    public void parseTime() throws Exception {
+
+        Date cs = new Date("d{HH:mm:ss,SSS}");
+
+        String line = "something 09:01:55,011 INFO";
+
+        assertEquals(cs.parse(line, 10, 22).getTime(), cs.parseTime(line, 10, 22));
+        assertEquals("09:01:55,011", new SimpleDateFormat("HH:mm:ss,SSS").format(cs.parseTime(line, 10, 22)));
+    }
+
+    @Test
+    public void parseTime_UNIX() throws Exception {
+
+        Date cs = new Date("d{UNIX}");
+
+        assertEquals(1511427715000L, cs.parseTime("x 1511427715 INFO", 2, 12));
+    }
+
+    @Test
+    public void parseTime_UNIX_Overflow() throws Exception {
+
+        Date cs = new Date("d{UNIX}");
+
+        //
+        // the largest number of seconds whose value in milliseconds fits in a long
+        //
+
+        assertEquals(9223372036854775000L, cs.parseTime("9223372036854775", 0, 16));
+
+        try {
+
+            cs.parseTime("9223372036854776", 0, 16);
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("date \"9223372036854776\" is out of range for pattern %d{UNIX}"));
+        }
+
+        try {
+
+            cs.parseTime("999999999999999999", 0, 18);
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("is out of range"));
+        }
+    }
+
+    @Test
+    public void parse_UNIX_NotANumber() throws Exception {
+
+        Date cs = new Date("d{UNIX}");
+
+        try {
+
+            cs.parse("15114x7715", 0, 10);
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("date \"15114x7715\" does not match pattern %d{UNIX}"));
+        }
+    }
+
+    @Test
+    public void parse_UNIX_MILLIS_TooLong() throws Exception {
+
+        Date cs = new Date("d{UNIX_MILLIS}");
+
+        String s = "1234567890123456789";
+
+        try {
+
+            cs.parse(s, 0, s.length());
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("does not match pattern"));
+        }
+    }
+
+    @Test
+    public void parseDecimal() throws Exception {
+
+        assertEquals(0L, Date.parseDecimal("0", 0, 1));
+        assertEquals(1511427715L, Date.parseDecimal("a1511427715a", 1, 11));
+        assertEquals(-1L, Date.parseDecimal("-1", 0, 2));
+    }
+
     // parseLiteralAfterFormatModifierWasUnapplied() -------------------------------------------------------------------
 
     @Test
@@ -559,6 +790,18 @@ public class DateTest extends ConversionSpecifierTest {
         assertEquals(7L, e.getTime().longValue());
     }
 
+    @Test
+    public void injectIntoLog4jEvent_Timestamp() throws Exception {
+
+        Date cs = new Date();
+
+        Log4jEventImpl e = new Log4jEventImpl();
+
+        cs.injectIntoEvent(e, new TimestampImpl(7L));
+
+        assertEquals(7L, e.getTime().longValue());
+    }
+
     @Test
     public void injectIntoEvent_InvalidType() throws Exception {
 
@@ -577,7 +820,7 @@ public class DateTest extends ConversionSpecifierTest {
             String msg = ex.getMessage();
             assertTrue(msg.contains("invalid value type"));
             assertTrue(msg.contains("String"));
-            assertTrue(msg.contains("expected java.util.Date"));
+            assertTrue(msg.contains("expected Timestamp or java.util.Date"));
         }
     }
 
@@ -21,6 +21,7 @@ import org.junit.Test;
 import io.novaordis.events.log4j.impl.Log4jEventImpl;
 import io.novaordis.events.log4j.pattern.AddResult;
 import io.novaordis.events.log4j.pattern.FormatModifier;
+import io.novaordis.events.log4j.pattern.LineCursor;
 import io.novaordis.events.log4j.pattern.Log4jPatternLayoutException;
 import io.novaordis.events.log4j.pattern.ProcessedString;
 import io.novaordis.events.log4j.pattern.RenderedLogEvent;
@@ -206,6 +207,41 @@ public class LevelTest extends ConversionSpecifierTest {
         }
     }
 
+    @Test
+    public void parseLogContent_Cursor_FormatModifier() throws Exception {
+
+        Level l = new Level("-5p");
+
+        StringBuilder sb = new StringBuilder("09:01:56,538 INFO  [org.xnio]");
+
+        LineCursor c = new LineCursor();
+
+        l.parseLogContent(sb, 13, 18, c);
+
+        assertEquals(Log4jLevel.INFO, c.getValue());
+        assertEquals(18, c.getPosition());
+        assertEquals(13, c.getValueFrom());
+        assertEquals(17, c.getValueTo());
+    }
+
+    @Test
+    public void parseLogContent_Cursor_Invalid() throws Exception {
+
+        Level l = new Level();
+
+        try {
+
+            l.parseLogContent("09:01:56,538 BLAH [org.xnio]", 13, 17, new LineCursor());
+
+            fail("should have thrown exception");
+        }
+        catch(Log4jPatternLayoutException e) {
+
+            String msg = e.getMessage();
+            assertEquals("not a valid log4j level: BLAH", msg);
+        }
+    }
+
     // parseLiteralAfterFormatModifierWasUnapplied() -------------------------------------------------------------------
 
     @Test
@@ -238,6 +238,50 @@ public class WildFlyExceptionTest extends ConversionSpecifierTest {
         assertNull(i);
     }
 
+    @Test
+    public void findRendering_Region() throws Exception {
+
+        String s = "_____blah: java.lang.Exception: SYNTHETIC_____";
+
+        //
+        // the region excludes the last five characters
+        //
+
+        assertEquals(9, WildFlyException.findRendering(s, 5, s.length() - 5));
+    }
+
+    @Test
+    public void findRendering_RightmostMatch() throws Exception {
+
+        String s = "a: b: java.lang.Exception: some message";
+
+        assertEquals(4, WildFlyException.findRendering(s, 0, s.length()));
+    }
+
+    @Test
+    public void findRendering_NoMessage() throws Exception {
+
+        String s = "blah: java.lang.Exception: ";
+
+        assertEquals(-1, WildFlyException.findRendering(s, 0, s.length()));
+    }
+
+    @Test
+    public void findRendering_InvalidClassName() throws Exception {
+
+        String s = "blah: java..Exception: SYNTHETIC";
+
+        assertEquals(-1, WildFlyException.findRendering(s, 0, s.length()));
+    }
+
+    @Test
+    public void findRendering_LineTerminator() throws Exception {
+
+        String s = "blah: java.lang.Exception: SYNTHETIC\n";
+
+        assertEquals(-1, WildFlyException.findRendering(s, 0, s.length()));
+    }
+
     // parseLiteralAfterFormatModifierWasUnapplied() -------------------------------------------------------------------
 
     @Test
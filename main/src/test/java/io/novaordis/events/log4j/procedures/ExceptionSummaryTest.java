@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Nova Ordis LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.novaordis.events.log4j.procedures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.novaordis.events.api.event.EndOfStreamEvent;
+import io.novaordis.events.api.event.Event;
+import io.novaordis.events.log4j.impl.ExceptionFingerprint;
+import io.novaordis.events.log4j.impl.Log4jEvent;
+import io.novaordis.events.log4j.impl.Log4jEventImpl;
+import io.novaordis.events.log4j.impl.Log4jParser;
+import io.novaordis.events.log4j.pattern.Log4jPatternLayout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Ovidiu Feodorov <ovidiu@novaordis.com>
+ * @since 11/23/17
+ */
+public class ExceptionSummaryTest {
+
+    // Constants -------------------------------------------------------------------------------------------------------
+
+    // Static ----------------------------------------------------------------------------------------------------------
+
+    // Attributes ------------------------------------------------------------------------------------------------------
+
+    // Constructors ----------------------------------------------------------------------------------------------------
+
+    // Public ----------------------------------------------------------------------------------------------------------
+
+    // Tests -----------------------------------------------------------------------------------------------------------
+
+    @Test
+    public void constructor_NullOutputStream() throws Exception {
+
+        try {
+
+            new ExceptionSummary(null);
+            fail("should have thrown exception");
+        }
+        catch(IllegalArgumentException e) {
+
+            String msg = e.getMessage();
+            assertTrue(msg.contains("null output stream"));
+        }
+    }
+
+    @Test
+    public void getCommandLineLabels() throws Exception {
+
+        ExceptionSummary s = new ExceptionSummary();
+
+        assertEquals(Collections.singletonList("exception-summary"), s.getCommandLineLabels());
+    }
+
+    @Test
+    public void summary() throws Exception {
+
+        Log4jParser p = new Log4jParser(new Log4jPatternLayout("%d{HH:mm:ss,SSS} %-5p [%c] (%t) %s%E%n"));
+
+        List<Event> events = new ArrayList<>();
+
+        events.addAll(p.parse("20:00:00,000 ERROR [a.B] (main) failure: java.lang.IllegalStateException: A", null));
+        events.addAll(p.parse("\tat a.b.C.m(C.java:10)", null));
+        events.addAll(p.parse("20:00:01,000 INFO  [a.B] (main) no failure", null));
+        events.addAll(p.parse("20:00:02,000 ERROR [a.B] (main) failure: java.io.IOException: B", null));
+        events.addAll(p.parse("\tat a.b.C.n(C.java:10)", null));
+        events.addAll(p.parse("20:00:03,000 ERROR [a.B] (main) failure: java.io.IOException: C", null));
+        events.addAll(p.parse("\tat a.b.C.n(C.java:11)", null));
+        events.addAll(p.parse("20:00:04,000 ERROR [a.B] (main) failure: java.io.IOException: D", null));
+        events.addAll(p.parse("\tat a.b.C.n(C.java:12)", null));
+
+        events.addAll(p.close());
+
+        assertEquals(6, events.size());
+        assertTrue(events.get(5) instanceof EndOfStreamEvent);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        ExceptionSummary s = new ExceptionSummary(new PrintStream(baos, true));
+
+        for(Event e: events.subList(0, 5)) {
+
+            s.process(e);
+        }
+
+        List<ExceptionSummary.Entry> entries = s.getEntries();
+
+        assertEquals(2, entries.size());
+
+        ExceptionSummary.Entry entry = entries.get(0);
+
+        Log4jEvent sample = (Log4jEvent)events.get(2);
+
+        assertEquals(sample.getExceptionFingerprint().longValue(), entry.getFingerprint());
+        assertEquals(3L, entry.getCount());
+        assertEquals(sample.getTime(), entry.getFirstSeen());
+        assertEquals(((Log4jEvent)events.get(4)).getTime(), entry.getLastSeen());
+        assertSame(sample, entry.getSample());
+        assertEquals("java.io.IOException", entry.getExceptionClass());
+
+        ExceptionSummary.Entry entry2 = entries.get(1);
+
+        assertEquals(1L, entry2.getCount());
+        assertEquals(entry2.getFirstSeen(), entry2.getLastSeen());
+        assertEquals("java.lang.IllegalStateException", entry2.getExceptionClass());
+
+        //
+        // nothing is reported until the end of the stream
+        //
+
+        assertEquals(0, baos.size());
+
+        s.process(events.get(5));
+
+        String[] lines = baos.toString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("#"));
+        assertTrue(lines[1].startsWith(ExceptionFingerprint.toHex(entry.getFingerprint()) + ", 3, "));
+        assertTrue(lines[1].endsWith(", java.io.IOException, 4"));
+        assertTrue(lines[2].startsWith(ExceptionFingerprint.toHex(entry2.getFingerprint()) + ", 1, "));
+        assertTrue(lines[2].endsWith(", java.lang.IllegalStateException, 1"));
+    }
+
+    @Test
+    public void eventsWithoutTimestamp() throws Exception {
+
+        ExceptionSummary s = new ExceptionSummary(new PrintStream(new ByteArrayOutputStream()));
+
+        Log4jEventImpl e = new Log4jEventImpl();
+        e.setTimestamp(null);
+        e.setExceptionRendering("java.lang.Exception");
+
+        s.process(e);
+
+        ExceptionSummary.Entry entry = s.getEntries().get(0);
+
+        assertEquals(1L, entry.getCount());
+        assertNull(entry.getFirstSeen());
+        assertNull(entry.getLastSeen());
+
+        s.report();
+    }
+
+    // Package protected -----------------------------------------------------------------------------------------------
+
+    // Protected -------------------------------------------------------------------------------------------------------
+
+    // Private ---------------------------------------------------------------------------------------------------------
+
+    // Inner classes ---------------------------------------------------------------------------------------------------
+
+}